@@ -20,7 +20,10 @@ package org.simbrain.network;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.simbrain.network.core.Network;
 import org.simbrain.network.core.Neuron;
@@ -34,6 +37,7 @@ import org.simbrain.network.listeners.NetworkEvent;
 import org.simbrain.network.listeners.NeuronListener;
 import org.simbrain.network.listeners.SynapseListener;
 import org.simbrain.workspace.AttributeType;
+import org.simbrain.workspace.Coupling;
 import org.simbrain.workspace.PotentialConsumer;
 import org.simbrain.workspace.PotentialProducer;
 import org.simbrain.workspace.WorkspaceComponent;
@@ -46,6 +50,10 @@ public final class NetworkComponent extends WorkspaceComponent {
     /** Reference to root network, the main model network. */
     private Network network = new Network();
 
+    /** Couplings whose producers are in this network. */
+    private final Set<Coupling<?>> producingCouplings = Collections
+            .newSetFromMap(new ConcurrentHashMap<Coupling<?>, Boolean>());
+
     /**
      * Create a new network component.
      *
@@ -452,6 +460,21 @@ public final class NetworkComponent extends WorkspaceComponent {
         network.update();
     }
 
+    @Override
+    public void couplingAdded(final Coupling<?> coupling) {
+        if (coupling.getProducer().getParentComponent() == this) {
+            producingCouplings.add(coupling);
+            network.setReadByCouplings(true);
+        }
+    }
+
+    @Override
+    public void couplingRemoved(final Coupling<?> coupling) {
+        if (producingCouplings.remove(coupling)) {
+            network.setReadByCouplings(!producingCouplings.isEmpty());
+        }
+    }
+
     @Override
     public void closing() {
         // TODO Auto-generated method stub
@@ -0,0 +1,170 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.core;
+
+import java.util.Arrays;
+
+/**
+ * <b>DelayBuffer</b> holds the input to one neuron from its delayed synapses
+ * until it arrives. It is a circular buffer indexed by arrival time: a synapse
+ * with delay d deposits its response d slots ahead of the current slot, and
+ * each time the neuron computes its input it takes (and clears) the current
+ * slot and moves to the next. Excitatory and inhibitory input are kept apart
+ * so that rules using separated input see the same values as without delay.
+ * <p>
+ * One buffer is shared by all delayed synapses onto a neuron, so memory grows
+ * with the longest delay onto each neuron rather than with the sum of the
+ * delays of all synapses, and no work is done for synapses with nothing in
+ * flight. The buffer grows as needed when longer delays are deposited.
+ */
+public class DelayBuffer {
+
+    /** Initial number of slots. */
+    private static final int INITIAL_CAPACITY = 8;
+
+    /** Excitatory (non-negative) input arriving at each slot. */
+    private double[] excitatory;
+
+    /** Inhibitory (negative) input arriving at each slot. */
+    private double[] inhibitory;
+
+    /** Slot holding the input that arrives next. */
+    private int current;
+
+    /**
+     * Construct an empty buffer.
+     */
+    public DelayBuffer() {
+        excitatory = new double[INITIAL_CAPACITY];
+        inhibitory = new double[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Deposit input which will arrive after the given number of input
+     * computations.
+     *
+     * @param delay the delay in time steps, at least 1
+     * @param value the input to deposit
+     */
+    public void deposit(final int delay, final double value) {
+        if (delay >= excitatory.length) {
+            grow(delay + 1);
+        }
+        int slot = current + delay;
+        if (slot >= excitatory.length) {
+            slot -= excitatory.length;
+        }
+        if (value >= 0) {
+            excitatory[slot] += value;
+        } else {
+            inhibitory[slot] += value;
+        }
+    }
+
+    /**
+     * Take the input arriving now and advance to the next slot.
+     *
+     * @return the total arriving input
+     */
+    public double take() {
+        double ret = excitatory[current] + inhibitory[current];
+        advance();
+        return ret;
+    }
+
+    /**
+     * Take the input arriving now, separated into excitatory and inhibitory
+     * parts, and advance to the next slot.
+     *
+     * @param ei an array to add the excitatory input to at index 0 and the
+     *            inhibitory input to at index 1
+     */
+    public void take(final double[] ei) {
+        ei[0] += excitatory[current];
+        ei[1] += inhibitory[current];
+        advance();
+    }
+
+    /**
+     * @param delay a delay in time steps
+     * @return the total input which will arrive after that many steps
+     */
+    public double peek(final int delay) {
+        if (delay >= excitatory.length) {
+            return 0;
+        }
+        int slot = (current + delay) % excitatory.length;
+        return excitatory[slot] + inhibitory[slot];
+    }
+
+    /**
+     * Discard everything in flight.
+     */
+    public void clear() {
+        Arrays.fill(excitatory, 0);
+        Arrays.fill(inhibitory, 0);
+        current = 0;
+    }
+
+    /**
+     * Clear the current slot and move to the next.
+     */
+    private void advance() {
+        excitatory[current] = 0;
+        inhibitory[current] = 0;
+        if (++current == excitatory.length) {
+            current = 0;
+        }
+    }
+
+    /**
+     * Increase the number of slots, keeping input in flight at the same
+     * distance from the current slot.
+     *
+     * @param minCapacity the smallest number of slots needed
+     */
+    private void grow(final int minCapacity) {
+        int capacity = Math.max(minCapacity, excitatory.length * 2);
+        excitatory = unroll(excitatory, capacity);
+        inhibitory = unroll(inhibitory, capacity);
+        current = 0;
+    }
+
+    /**
+     * @param ring a circular buffer
+     * @param capacity the new capacity
+     * @return a copy of the buffer starting at the current slot
+     */
+    private double[] unroll(final double[] ring, final int capacity) {
+        double[] ret = new double[capacity];
+        int tail = ring.length - current;
+        System.arraycopy(ring, current, ret, 0, tail);
+        System.arraycopy(ring, 0, ret, tail, current);
+        return ret;
+    }
+
+    /**
+     * @return the number of slots, one more than the longest delay which can
+     *         be held without growing
+     */
+    public int getCapacity() {
+        return excitatory.length;
+    }
+
+}
@@ -22,9 +22,12 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
@@ -41,6 +44,10 @@ import org.simbrain.network.listeners.NetworkListener;
 import org.simbrain.network.listeners.NeuronListener;
 import org.simbrain.network.listeners.SynapseListener;
 import org.simbrain.network.listeners.TextListener;
+import org.simbrain.network.neuron_update_rules.AdExIFRule;
+import org.simbrain.network.neuron_update_rules.HodgkinHuxleyRule;
+import org.simbrain.network.neuron_update_rules.IzhikevichRule;
+import org.simbrain.network.neuron_update_rules.MorrisLecarRule;
 import org.simbrain.network.neuron_update_rules.interfaces.BiasedUpdateRule;
 import org.simbrain.network.update_actions.ConcurrentBufferedUpdate;
 import org.simbrain.network.update_actions.CustomUpdate;
@@ -135,6 +142,28 @@ public class Network {
      */
     private List<Neuron> prioritySortedNeuronList;
 
+    /**
+     * Cached result of {@link #getFlatNeuronList()}, or null if it must be
+     * rebuilt. Cached lists are replaced, never modified, so lists already
+     * handed out stay as they were.
+     */
+    private List<Neuron> flatNeuronList;
+
+    /** Cached result of {@link #getFlatSynapseList()}, or null. */
+    private List<Synapse> flatSynapseList;
+
+    /** Cached result of {@link #getFlatGroupList()}, or null. */
+    private List<Group> flatGroupList;
+
+    /** Neurons by lower case id, or null if the index must be rebuilt. */
+    private Map<String, Neuron> neuronIndex;
+
+    /** Synapses by lower case id, or null if the index must be rebuilt. */
+    private Map<String, Synapse> synapseIndex;
+
+    /** Groups by lower case id, or null if the index must be rebuilt. */
+    private Map<String, Group> groupIndex;
+
     /** Comparator used for sorting the priority sorted neuron list. */
     private PriorityComparator priorityComparator = new PriorityComparator();
 
@@ -159,6 +188,13 @@ public class Network {
      */
     private volatile boolean fireUpdates = true;
 
+    /**
+     * Whether a workspace coupling reads from this network, so that update
+     * actions which keep state outside of the neuron objects must write it
+     * back every step.
+     */
+    private transient volatile boolean readByCouplings;
+
     /** Static initializer */
     {
         try {
@@ -223,7 +259,8 @@ public class Network {
      * Update the priority list used for priority based update.
      */
     void updatePriorityList() {
-        prioritySortedNeuronList = this.getFlatNeuronList();
+        prioritySortedNeuronList = new ArrayList<Neuron>(
+                this.getFlatNeuronList());
         resortPriorities();
     }
 
@@ -350,12 +387,22 @@ public class Network {
      * @return neuron with that id, null otherwise
      */
     public Neuron getNeuron(final String id) {
-        for (Neuron n : getFlatNeuronList()) {
-            if (n.getId().equalsIgnoreCase(id)) {
+        Map<String, Neuron> index = neuronIndex;
+        if (index != null) {
+            Neuron n = index.get(indexKey(id));
+            if (n != null && n.getId().equalsIgnoreCase(id)) {
                 return n;
             }
         }
-        return null;
+        // Missing or stale entry: rebuild from the live structures in case
+        // a change bypassed invalidation, which leaves the flat list stale too
+        flatNeuronList = null;
+        index = new HashMap<String, Neuron>();
+        for (Neuron n : getFlatNeuronList()) {
+            putFirst(index, n.getId(), n);
+        }
+        neuronIndex = index;
+        return index.get(indexKey(id));
     }
 
     /**
@@ -366,12 +413,20 @@ public class Network {
      * @return group with that id, null otherwise
      */
     public Group getGroup(final String id) {
-        for (Group group : getFlatGroupList()) {
-            if (group.getId().equalsIgnoreCase(id)) {
+        Map<String, Group> index = groupIndex;
+        if (index != null) {
+            Group group = index.get(indexKey(id));
+            if (group != null && group.getId().equalsIgnoreCase(id)) {
                 return group;
             }
         }
-        return null;
+        flatGroupList = null;
+        index = new HashMap<String, Group>();
+        for (Group group : getFlatGroupList()) {
+            putFirst(index, group.getId(), group);
+        }
+        groupIndex = index;
+        return index.get(indexKey(id));
     }
 
     /**
@@ -471,12 +526,60 @@ public class Network {
      * @return synapse with that id, null otherwise
      */
     public Synapse getSynapse(final String id) {
-        for (Synapse s : getFlatSynapseList()) {
-            if (s.getId().equalsIgnoreCase(id)) {
+        Map<String, Synapse> index = synapseIndex;
+        if (index != null) {
+            Synapse s = index.get(indexKey(id));
+            if (s != null && s.getId().equalsIgnoreCase(id)) {
                 return s;
             }
         }
-        return null;
+        flatSynapseList = null;
+        index = new HashMap<String, Synapse>();
+        for (Synapse s : getFlatSynapseList()) {
+            putFirst(index, s.getId(), s);
+        }
+        synapseIndex = index;
+        return index.get(indexKey(id));
+    }
+
+    /**
+     * @param id an id
+     * @return the key of the id in the id indices, which ignore case
+     */
+    private static String indexKey(final String id) {
+        return id == null ? null : id.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Add an item to an id index unless an earlier item has the same id, so
+     * that lookups return the first match as a scan would.
+     *
+     * @param index the index
+     * @param id the id of the item
+     * @param item the item
+     * @param <T> the type of item
+     */
+    private static <T> void putFirst(final Map<String, T> index,
+            final String id, final T item) {
+        String key = indexKey(id);
+        if (!index.containsKey(key)) {
+            index.put(key, item);
+        }
+    }
+
+    /**
+     * Discard the cached flat lists and id indices so that they are rebuilt
+     * when next used. Called on every add and remove event; code which adds
+     * or removes neurons, synapses or groups without firing an event must
+     * call it directly.
+     */
+    public void invalidateIndex() {
+        flatNeuronList = null;
+        flatSynapseList = null;
+        flatGroupList = null;
+        neuronIndex = null;
+        synapseIndex = null;
+        groupIndex = null;
     }
 
     /**
@@ -604,6 +707,7 @@ public class Network {
             neuronList.remove(neuron);
             group.addNeuron(neuron, false);
         }
+        invalidateIndex();
     }
 
     /**
@@ -826,13 +930,25 @@ public class Network {
     }
 
     /**
-     * Create "flat" list of neurons, which includes the top-level neurons plus
-     * all group neurons.
+     * Returns a "flat" list of neurons, which includes the top-level neurons
+     * plus all group neurons. The list is cached until neurons are added or
+     * removed, and cannot be modified.
      *
      * @return the flat list
      */
     public List<Neuron> getFlatNeuronList() {
+        List<Neuron> ret = flatNeuronList;
+        if (ret == null) {
+            ret = Collections.unmodifiableList(buildFlatNeuronList());
+            flatNeuronList = ret;
+        }
+        return ret;
+    }
 
+    /**
+     * @return a new flat list of neurons
+     */
+    private List<Neuron> buildFlatNeuronList() {
         List<Neuron> ret = new ArrayList<Neuron>();
         ret.addAll(neuronList);
 
@@ -851,18 +967,33 @@ public class Network {
     }
 
     /**
-     * Create "flat" list of synapses, which includes the top-level synapses
-     * plus all subnet synapses.
+     * Returns a "flat" list of synapses, which includes the top-level synapses
+     * plus all subnet synapses. Compressed synapse groups have no synapse
+     * objects and contribute none. The list is cached until synapses are
+     * added or removed, and cannot be modified.
      *
      * @return the flat list
      */
     public List<Synapse> getFlatSynapseList() {
-        List<Synapse> ret = new ArrayList<Synapse>(10000);
-        ret.addAll(synapseList);
+        List<Synapse> ret = flatSynapseList;
+        if (ret == null) {
+            ret = Collections.unmodifiableList(buildFlatSynapseList());
+            flatSynapseList = ret;
+        }
+        return ret;
+    }
+
+    /**
+     * @return a new flat list of synapses
+     */
+    private List<Synapse> buildFlatSynapseList() {
+        List<Synapse> ret = new ArrayList<Synapse>(synapseList);
         for (int i = 0; i < groupList.size(); i++) {
             if (groupList.get(i) instanceof SynapseGroup) {
                 SynapseGroup group = (SynapseGroup) groupList.get(i);
-                ret.addAll(group.getAllSynapses());
+                if (!group.isCompressed()) {
+                    ret.addAll(group.getAllSynapses());
+                }
             } else if (groupList.get(i) instanceof Subnetwork) {
                 Subnetwork group = (Subnetwork) groupList.get(i);
                 ret.addAll(group.getFlatSynapseList());
@@ -872,12 +1003,25 @@ public class Network {
     }
 
     /**
-     * Create a "flat" list of groups, which includes the top-level groups plus
-     * all subgroups.
+     * Returns a "flat" list of groups, which includes the top-level groups
+     * plus all subgroups. The list is cached until groups are added or
+     * removed, and cannot be modified.
      *
      * @return the flat list
      */
     public List<Group> getFlatGroupList() {
+        List<Group> ret = flatGroupList;
+        if (ret == null) {
+            ret = Collections.unmodifiableList(buildFlatGroupList());
+            flatGroupList = ret;
+        }
+        return ret;
+    }
+
+    /**
+     * @return a new flat list of groups
+     */
+    private List<Group> buildFlatGroupList() {
         List<Group> ret = new ArrayList<Group>();
         ret.addAll(groupList);
         for (Group group : groupList) {
@@ -962,6 +1106,12 @@ public class Network {
         xstream.omitField(Network.class, "updateCompleted");
         xstream.omitField(Network.class, "logger");
         xstream.omitField(Network.class, "synapseVisibilityThreshold");
+        xstream.omitField(Network.class, "flatNeuronList");
+        xstream.omitField(Network.class, "flatSynapseList");
+        xstream.omitField(Network.class, "flatGroupList");
+        xstream.omitField(Network.class, "neuronIndex");
+        xstream.omitField(Network.class, "synapseIndex");
+        xstream.omitField(Network.class, "groupIndex");
 
         xstream.omitField(NetworkUpdateManager.class, "listeners");
         xstream.omitField(ConcurrentBufferedUpdate.class, "consumerThreads");
@@ -975,6 +1125,26 @@ public class Network {
         xstream.omitField(CustomUpdate.class, "interpreter");
         xstream.omitField(CustomUpdate.class, "theAction");
 
+        // Per-synapse delay queues of older versions; delays are now
+        // buffered by the target neuron
+        xstream.omitField(Synapse.class, "delayManager");
+        xstream.omitField(Synapse.class, "dlyPtr");
+        xstream.omitField(Synapse.class, "dlyVal");
+
+        // Per-neuron state kept in update rules by older versions; it is now
+        // kept by the neurons so that rules can be shared
+        xstream.omitField(SpikingNeuronUpdateRule.class, "lastSpikeTime");
+        xstream.omitField(IzhikevichRule.class, "recovery");
+        xstream.omitField(IzhikevichRule.class, "timeStep");
+        xstream.omitField(IzhikevichRule.class, "inputs");
+        xstream.omitField(IzhikevichRule.class, "val");
+        xstream.omitField(AdExIFRule.class, "v_mem");
+        xstream.omitField(AdExIFRule.class, "w");
+        xstream.omitField(MorrisLecarRule.class, "w_K");
+        xstream.omitField(HodgkinHuxleyRule.class, "n");
+        xstream.omitField(HodgkinHuxleyRule.class, "m");
+        xstream.omitField(HodgkinHuxleyRule.class, "h");
+
         xstream.omitField(SynapseGroup.class, "exTemp");
         xstream.omitField(SynapseGroup.class, "inTemp");
         xstream.omitField(Sparse.class, "sparseOrdering");
@@ -1085,12 +1255,9 @@ public class Network {
     public void setTime(final double i) {
     	if (i < time) {
     		for (Neuron n : this.getFlatNeuronList()) {
-    			NeuronUpdateRule nur = n.getUpdateRule();
-    			if (nur.isSpikingNeuron()) {
-    				SpikingNeuronUpdateRule snur =
-    						(SpikingNeuronUpdateRule) nur;
-    				double diff = i - (time - snur.getLastSpikeTime());
-    				snur.setLastSpikeTime(diff < 0 ? 0 : diff);
+    			if (n.getUpdateRule().isSpikingNeuron()) {
+    				double diff = i - (time - n.getLastSpikeTime());
+    				n.setLastSpikeTime(diff < 0 ? 0 : diff);
     			}
     		}
     	}
@@ -1183,6 +1350,7 @@ public class Network {
      *            neuron which has been deleted
      */
     public void fireNeuronRemoved(final Neuron deleted) {
+        invalidateIndex();
         for (NeuronListener listener : neuronListeners) {
             listener.neuronRemoved(new NetworkEvent<Neuron>(this, deleted));
         }
@@ -1255,6 +1423,7 @@ public class Network {
      *            neuron which was added
      */
     public void fireNeuronAdded(final Neuron added) {
+        invalidateIndex();
         for (NeuronListener listener : neuronListeners) {
             listener.neuronAdded(new NetworkEvent<Neuron>(this, added));
         }
@@ -1307,6 +1476,7 @@ public class Network {
      *            synapse which was added
      */
     public void fireSynapseAdded(final Synapse added) {
+        invalidateIndex();
         for (SynapseListener listener : synapseListeners) {
             listener.synapseAdded(new NetworkEvent<Synapse>(this, added));
         }
@@ -1319,6 +1489,7 @@ public class Network {
      *            synapse which was deleted
      */
     public void fireSynapseRemoved(final Synapse deleted) {
+        invalidateIndex();
         for (SynapseListener listener : synapseListeners) {
             listener.synapseRemoved(new NetworkEvent<Synapse>(this, deleted));
         }
@@ -1418,6 +1589,7 @@ public class Network {
      *            Group that has been added
      */
     public void fireGroupAdded(final Group added) {
+        invalidateIndex();
         for (GroupListener listener : groupListeners) {
             listener.groupAdded(new NetworkEvent<Group>(this, added));
         }
@@ -1430,6 +1602,7 @@ public class Network {
      *            Group to be deleted
      */
     public void fireGroupRemoved(final Group deleted) {
+        invalidateIndex();
         for (GroupListener listener : groupListeners) {
             listener.groupRemoved(new NetworkEvent<Group>(this, deleted));
         }
@@ -1449,6 +1622,7 @@ public class Network {
      */
     public void fireGroupChanged(final Group old, final Group changed,
             final String changeDescription) {
+        invalidateIndex();
 
         for (GroupListener listener : groupListeners) {
             listener.groupChanged(new NetworkEvent<Group>(this, old, changed),
@@ -1467,6 +1641,7 @@ public class Network {
      */
     public void fireGroupChanged(final NetworkEvent<Group> event,
             final String changeDescription) {
+        invalidateIndex();
 
         for (GroupListener listener : groupListeners) {
             listener.groupChanged(event, changeDescription);
@@ -1480,6 +1655,7 @@ public class Network {
      */
     public void fireGroupChanged(final Group group,
     		final String changeDescription) {
+        invalidateIndex();
         for (GroupListener listener : groupListeners) {
             listener.groupChanged(new NetworkEvent<Group>(this, group),
             		changeDescription);
@@ -1588,6 +1764,16 @@ public class Network {
         neuronListeners.add(listener);
     }
 
+    /**
+     * Remove a neuron listener.
+     *
+     * @param listener
+     *            the observer to remove
+     */
+    public void removeNeuronListener(final NeuronListener listener) {
+        neuronListeners.remove(listener);
+    }
+
     /**
      * Register a synapse listener.
      *
@@ -1861,4 +2047,19 @@ public class Network {
         this.fireUpdates = fireUpdates;
     }
 
+    /**
+     * @return whether a workspace coupling reads from this network
+     */
+    public boolean isReadByCouplings() {
+        return readByCouplings;
+    }
+
+    /**
+     * @param readByCouplings whether a workspace coupling reads from this
+     *            network
+     */
+    public void setReadByCouplings(boolean readByCouplings) {
+        this.readByCouplings = readByCouplings;
+    }
+
 }
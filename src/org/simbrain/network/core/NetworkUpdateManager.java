@@ -22,13 +22,17 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.simbrain.network.groups.Group;
 import org.simbrain.network.listeners.GroupAdapter;
 import org.simbrain.network.listeners.NetworkEvent;
 import org.simbrain.network.update_actions.BufferedUpdate;
+import org.simbrain.network.update_actions.CompiledUpdate;
 import org.simbrain.network.update_actions.ConcurrentBufferedUpdate;
 import org.simbrain.network.update_actions.CustomUpdate;
+import org.simbrain.network.update_actions.EventDrivenUpdate;
+import org.simbrain.network.update_actions.ForkJoinUpdate;
 import org.simbrain.network.update_actions.PriorityUpdate;
 import org.simbrain.network.update_actions.UpdateGroup;
 
@@ -49,10 +53,11 @@ public class NetworkUpdateManager {
             new ArrayList<NetworkUpdateAction>();
 
     /**
-     * List of listeners on this update manager.
+     * List of listeners on this update manager. Listeners may remove
+     * themselves when notified.
      */
     private List<UpdateManagerListener> listeners =
-            new ArrayList<UpdateManagerListener>();
+            new CopyOnWriteArrayList<UpdateManagerListener>();
 
     /** Reference to parent network. */
     private final Network network;
@@ -76,7 +81,7 @@ public class NetworkUpdateManager {
      * constructor ands its fields populated using xstream.
      */
     public void postUnmarshallingInit() {
-        listeners = new ArrayList<UpdateManagerListener>();
+        listeners = new CopyOnWriteArrayList<UpdateManagerListener>();
         addListeners();
         Iterator<NetworkUpdateAction> actions = actionList.iterator();
         // TODO: Hack-y solution. Revisit this.
@@ -89,6 +94,19 @@ public class NetworkUpdateManager {
                 break;
             }
         }
+        for (int i = 0; i < actionList.size(); i++) {
+            if (actionList.get(i) instanceof CompiledUpdate) {
+                actionList.set(i,
+                        CompiledUpdate.createCompiledUpdate(network));
+            } else if (actionList.get(i) instanceof EventDrivenUpdate) {
+                actionList.set(i,
+                        EventDrivenUpdate.createEventDrivenUpdate(network));
+            } else if (actionList.get(i) instanceof ForkJoinUpdate) {
+                actionList.set(i, ForkJoinUpdate.createForkJoinUpdate(
+                        network, ((ForkJoinUpdate) actionList.get(i))
+                                .getParallelism()));
+            }
+        }
 
         for (NetworkUpdateAction action : getActionList()) {
             if (action instanceof CustomUpdate) {
@@ -105,7 +123,8 @@ public class NetworkUpdateManager {
         network.addGroupListener(new GroupAdapter() {
 
             public void groupAdded(NetworkEvent<Group> e) {
-                if (e.getObject().isTopLevelGroup()) {
+                if (e.getObject().isTopLevelGroup()
+                        && !isCompiled(e.getObject())) {
                     addAction(new UpdateGroup(e.getObject()));
                 }
             }
@@ -127,11 +146,41 @@ public class NetworkUpdateManager {
         final List<NetworkUpdateAction> availableActionList =
                 new ArrayList<NetworkUpdateAction>();
 
-        // By default these guys are always available
+        // By default these guys are always available. Those that listen to
+        // the network or start threads are only created when added.
         availableActionList.add(new BufferedUpdate(network));
         availableActionList.add(new PriorityUpdate(network));
-        availableActionList.add(ConcurrentBufferedUpdate
-                .createConcurrentBufferedUpdate(network));
+        availableActionList.add(new AvailableAction(
+                ConcurrentBufferedUpdate.DESCRIPTION,
+                ConcurrentBufferedUpdate.LONG_DESCRIPTION) {
+            @Override
+            NetworkUpdateAction create() {
+                return ConcurrentBufferedUpdate
+                        .createConcurrentBufferedUpdate(network);
+            }
+        });
+        availableActionList.add(new AvailableAction(
+                CompiledUpdate.DESCRIPTION, CompiledUpdate.LONG_DESCRIPTION) {
+            @Override
+            NetworkUpdateAction create() {
+                return CompiledUpdate.createCompiledUpdate(network);
+            }
+        });
+        availableActionList.add(new AvailableAction(
+                ForkJoinUpdate.DESCRIPTION, ForkJoinUpdate.LONG_DESCRIPTION) {
+            @Override
+            NetworkUpdateAction create() {
+                return ForkJoinUpdate.createForkJoinUpdate(network);
+            }
+        });
+        availableActionList.add(new AvailableAction(
+                EventDrivenUpdate.DESCRIPTION,
+                EventDrivenUpdate.LONG_DESCRIPTION) {
+            @Override
+            NetworkUpdateAction create() {
+                return EventDrivenUpdate.createEventDrivenUpdate(network);
+            }
+        });
 
         // Add update actions for all groups available
         for (Group group : network.getGroupList()) {
@@ -143,6 +192,58 @@ public class NetworkUpdateManager {
         return availableActionList;
     }
 
+    /**
+     * Whether an action in the action list that updates plain groups itself
+     * (a compiled, fork/join or event-driven update) will update the provided
+     * group, in which case it should not be given its own group action.
+     *
+     * @param group the group to check
+     * @return true if the group is updated by such an action
+     */
+    private boolean isCompiled(Group group) {
+        if (!CompiledUpdate.canUpdate(group)) {
+            return false;
+        }
+        for (NetworkUpdateAction action : actionList) {
+            if (isScoped(action)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param action the action to check
+     * @return true if the action updates plain groups itself
+     */
+    private static boolean isScoped(NetworkUpdateAction action) {
+        return action instanceof CompiledUpdate
+                || action instanceof ForkJoinUpdate
+                || action instanceof EventDrivenUpdate;
+    }
+
+    /**
+     * Give a group action to each top-level plain group that is no longer
+     * updated by anything: it has no group action of its own, and no
+     * remaining action updates plain groups itself. Called when such an
+     * action is removed, since groups added while it was in the list got no
+     * group action.
+     */
+    private void restoreGroupActions() {
+        List<Group> updated = new ArrayList<Group>();
+        for (NetworkUpdateAction action : actionList) {
+            if (action instanceof UpdateGroup) {
+                updated.add(((UpdateGroup) action).getGroup());
+            }
+        }
+        for (Group group : network.getGroupList()) {
+            if (CompiledUpdate.canUpdate(group) && !updated.contains(group)
+                    && !isCompiled(group)) {
+                addAction(new UpdateGroup(group));
+            }
+        }
+    }
+
     /**
      * Remove action (if one exists) associated with the provided group.
      *
@@ -207,12 +308,16 @@ public class NetworkUpdateManager {
     }
 
     /**
-     * Add an action to the list.
+     * Add an action to the list. Entries of the available action list are
+     * created here.
      *
      * @param action
      *            the action to add.
      */
     public void addAction(NetworkUpdateAction action) {
+        if (action instanceof AvailableAction) {
+            action = ((AvailableAction) action).create();
+        }
         actionList.add(action);
         for (UpdateManagerListener listener : listeners) {
             listener.actionAdded(action);
@@ -230,6 +335,9 @@ public class NetworkUpdateManager {
         for (UpdateManagerListener listener : listeners) {
             listener.actionRemoved(action);
         }
+        if (isScoped(action)) {
+            restoreGroupActions();
+        }
     }
 
     /**
@@ -257,6 +365,53 @@ public class NetworkUpdateManager {
         void actionOrderChanged();
     }
 
+    /**
+     * An entry of the available action list for an action that registers
+     * listeners on the network or starts threads when it is created, so that
+     * listing it costs nothing. The action is created when the entry is
+     * added to the update manager.
+     */
+    private abstract static class AvailableAction implements
+            NetworkUpdateAction {
+
+        /** Short description of the action. */
+        private final String description;
+
+        /** Long description of the action. */
+        private final String longDescription;
+
+        /**
+         * @param description short description of the action
+         * @param longDescription long description of the action
+         */
+        AvailableAction(final String description,
+                final String longDescription) {
+            this.description = description;
+            this.longDescription = longDescription;
+        }
+
+        /**
+         * @return the action
+         */
+        abstract NetworkUpdateAction create();
+
+        @Override
+        public void invoke() {
+            throw new IllegalStateException(description
+                    + " must be added to the update manager before use");
+        }
+
+        @Override
+        public String getDescription() {
+            return description;
+        }
+
+        @Override
+        public String getLongDescription() {
+            return longDescription;
+        }
+    }
+
     /**
      * Remove all actions completely.
      */
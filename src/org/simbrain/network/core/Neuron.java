@@ -97,6 +97,32 @@ public class Neuron {
      */
     private double inputValue;
 
+    /**
+     * Post-synaptic responses of the fan-in computed by an event-driven update
+     * rather than by the synapses themselves, as {excitatory, inhibitory,
+     * number of excitatory afferents, number of inhibitory afferents}. Null
+     * (the default) if the fan-in computes its own responses.
+     */
+    private transient double[] deliveredResponses;
+
+    /**
+     * Input from delayed synapses waiting to arrive, or null if no delayed
+     * synapse has sent any.
+     */
+    private DelayBuffer delayBuffer;
+
+    /**
+     * Dynamic state of the update rule, or null until first used. Shared with
+     * the other neurons of a group sharing one rule.
+     */
+    private RuleState ruleState;
+
+    /** Slot of this neuron in {@link #ruleState}. */
+    private int stateSlot;
+
+    /** Time of the last spike, for spiking update rules. */
+    private double lastSpikeTime;
+
     /** Reference to network this neuron is part of. */
     private final Network parent;
 
@@ -210,6 +236,10 @@ public class Neuron {
         // current api changes would have to be made to add neuron update rule's
         // sub classes.
         getUpdateRule().setInputType(n.getUpdateRule().getInputType());
+        for (int i = 0, size = updateRule.getStateSize(); i < size; i++) {
+            setState(i, n.getState(i));
+        }
+        setLastSpikeTime(n.getLastSpikeTime());
         forceSetActivation(n.getActivation());
         setInputValue(n.getInputValue());
         setX(n.getX());
@@ -237,6 +267,9 @@ public class Neuron {
         if (polarity == null) {
             polarity = Polarity.BOTH;
         }
+        if (updateRule != null) {
+            updateRule.setNeuron(this);
+        }
     }
 
     /**
@@ -299,8 +332,18 @@ public class Neuron {
     public void setUpdateRule(final NeuronUpdateRule updateRule) {
         NeuronUpdateRule oldRule = updateRule;
         this.updateRule = updateRule;
+        this.ruleState = null;
+        updateRule.setNeuron(this);
         for (Synapse s : getFanOut().values()) {
             s.initSpikeResponder();
+            if (s.getParentGroup() != null) {
+                s.getParentGroup().learningRuleChanged();
+            }
+        }
+        for (Synapse s : getFanIn()) {
+            if (s.getParentGroup() != null) {
+                s.getParentGroup().learningRuleChanged();
+            }
         }
         if (getNetwork() != null) {
             getNetwork().updateTimeType();
@@ -473,6 +516,9 @@ public class Neuron {
         for (int i = 0, n = fanIn.size(); i < n; i++) {
         	wtdSum += fanIn.get(i).calcWeightedSum();
         }
+        if (delayBuffer != null) {
+            wtdSum += delayBuffer.take();
+        }
         return wtdSum;
     }
 
@@ -486,13 +532,137 @@ public class Neuron {
      * neuron.
      */
     public double getSynapticInput() {
+        if (deliveredResponses != null) {
+            return inputValue + deliveredResponses[0] + deliveredResponses[1];
+        }
         double wtdSum = inputValue;
         for (int i = 0, n = fanIn.size(); i < n; i++) {
         	wtdSum += fanIn.get(i).calcPSR();
         }
+        if (delayBuffer != null) {
+            wtdSum += delayBuffer.take();
+        }
         return wtdSum;
     }
 
+    /**
+     * Send input to this neuron which arrives after a delay. Used by delayed
+     * synapses in the fan-in.
+     *
+     * @param delay number of input computations before the input arrives
+     * @param value the input
+     */
+    public void addDelayedInput(final int delay, final double value) {
+        if (delayBuffer == null) {
+            delayBuffer = new DelayBuffer();
+        }
+        delayBuffer.deposit(delay, value);
+    }
+
+    /**
+     * @return the input from delayed synapses waiting to arrive, or null if
+     *         no delayed synapse has sent any input
+     */
+    public DelayBuffer getDelayBuffer() {
+        return delayBuffer;
+    }
+
+    /**
+     * Returns a state variable of this neuron's update rule. Rules keep their
+     * dynamic state here rather than in their own fields, so that one rule
+     * object can be shared by many neurons.
+     *
+     * @param var index of the state variable, less than
+     *            {@link NeuronUpdateRule#getStateSize()}
+     * @return the value of the variable for this neuron
+     */
+    public double getState(final int var) {
+        if (ruleState == null) {
+            allocateRuleState();
+        }
+        return ruleState.get(stateSlot, var);
+    }
+
+    /**
+     * Sets a state variable of this neuron's update rule.
+     *
+     * @param var index of the state variable, less than
+     *            {@link NeuronUpdateRule#getStateSize()}
+     * @param value the new value of the variable for this neuron
+     */
+    public void setState(final int var, final double value) {
+        if (ruleState == null) {
+            allocateRuleState();
+        }
+        ruleState.set(stateSlot, var, value);
+    }
+
+    /**
+     * Move the state of this neuron's update rule to a slot of a shared
+     * state and initialize it there. The state is discarded when the update
+     * rule is changed.
+     *
+     * @param state the state, with as many variables as the update rule needs
+     * @param slot the slot of this neuron
+     */
+    public void setRuleState(final RuleState state, final int slot) {
+        this.ruleState = state;
+        this.stateSlot = slot;
+        updateRule.initState(this);
+    }
+
+    /**
+     * @return the state of this neuron's update rule (possibly shared with
+     *         other neurons), or null if none has been used yet
+     */
+    public RuleState getRuleState() {
+        return ruleState;
+    }
+
+    /**
+     * Give this neuron an initialized state of its own.
+     */
+    private void allocateRuleState() {
+        setRuleState(new RuleState(updateRule.getStateSize(), 1), 0);
+    }
+
+    /**
+     * @return the time of this neuron's last spike
+     */
+    public double getLastSpikeTime() {
+        return lastSpikeTime;
+    }
+
+    /**
+     * @param lastSpikeTime the time of this neuron's last spike
+     */
+    public void setLastSpikeTime(final double lastSpikeTime) {
+        this.lastSpikeTime = lastSpikeTime;
+    }
+
+    /**
+     * @return post-synaptic responses delivered to this neuron by an
+     *         event-driven update, or null if its fan-in computes them. See
+     *         {@link #setDeliveredResponses(double[])}.
+     */
+    public double[] getDeliveredResponses() {
+        return deliveredResponses;
+    }
+
+    /**
+     * Have synaptic input read from the provided array instead of from the
+     * spike responders of the fan-in. The array holds {excitatory,
+     * inhibitory, number of excitatory afferents, number of inhibitory
+     * afferents} and is kept up to date by the caller, which takes over the
+     * job of updating the responses of every afferent synapse.
+     *
+     * @param deliveredResponses the responses, or null to compute them from
+     *            the fan-in again
+     */
+    public void setDeliveredResponses(double[] deliveredResponses) {
+        this.deliveredResponses = deliveredResponses;
+    }
+
     /**
      * A helper method which iterates over each afferent synapse to this neuron
      * and calls their update functions.
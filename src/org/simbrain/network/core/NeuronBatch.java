@@ -0,0 +1,270 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.core;
+
+import java.util.List;
+
+/**
+ * <b>NeuronBatch</b> holds the state of a set of neurons in primitive arrays
+ * so that a rule with a batch form (see
+ * {@link NeuronUpdateRule#update(NeuronBatch, int, int)}) can update many
+ * neurons in one loop, instead of being called once per neuron.
+ * <p>
+ * Indices are shared by all arrays: entry i of each array belongs to neuron i.
+ * A rule's batch update reads {@link #getInputs()} (and for rules using
+ * separated input, {@link #getInhibitoryInputs()}) and
+ * {@link #getActivations()}, and writes {@link #getBuffers()} and, for
+ * spiking rules, {@link #getSpikes()}.
+ */
+public class NeuronBatch {
+
+    /** The neurons. */
+    private Neuron[] neurons;
+
+    /** The update rule of each neuron. */
+    private NeuronUpdateRule[] rules;
+
+    /** Activation of each neuron at the start of the update. */
+    private double[] activations;
+
+    /** Input to each neuron; the excitatory input for separated input. */
+    private double[] inputs;
+
+    /** Inhibitory input to each neuron, for rules using separated input. */
+    private double[] inhibitoryInputs;
+
+    /** New activation of each neuron. */
+    private double[] buffers;
+
+    /** Whether each neuron spikes, for spiking rules. */
+    private boolean[] spikes;
+
+    /** Time step of the network, for the current update. */
+    private double timeStep;
+
+    /** Time of the network, for the current update. */
+    private double time;
+
+    /**
+     * Construct an empty batch, to be filled by {@link #update(List)}.
+     */
+    public NeuronBatch() {
+        this(new Neuron[0], new NeuronUpdateRule[0], new double[0],
+                new double[0], new double[0]);
+    }
+
+    /**
+     * Construct a batch over existing arrays, for callers which compute
+     * inputs and activations themselves. The activation array may be longer
+     * than the others.
+     *
+     * @param neurons the neurons
+     * @param rules the update rule of each neuron
+     * @param activations the activation of each neuron
+     * @param inputs the input to each neuron
+     * @param buffers the array to write new activations to
+     */
+    public NeuronBatch(final Neuron[] neurons, final NeuronUpdateRule[] rules,
+            final double[] activations, final double[] inputs,
+            final double[] buffers) {
+        this.neurons = neurons;
+        this.rules = rules;
+        this.activations = activations;
+        this.inputs = inputs;
+        this.buffers = buffers;
+        this.inhibitoryInputs = new double[neurons.length];
+        this.spikes = new boolean[neurons.length];
+    }
+
+    /**
+     * Compute the buffers of a list of neurons. If every neuron has a rule of
+     * the same class, the rule has a batch form, and no neuron is clamped, the
+     * inputs are gathered into the arrays and the rule updates all of the
+     * neurons in one call. Otherwise each neuron is updated with
+     * {@link Neuron#update()}. Either way the results end up in the neurons'
+     * buffers; call {@link Neuron#setToBufferVals()} afterwards.
+     *
+     * @param neuronList the neurons to update
+     */
+    public void update(final List<Neuron> neuronList) {
+        int n = neuronList.size();
+        if (n == 0) {
+            return;
+        }
+        if (neurons.length != n) {
+            neurons = new Neuron[n];
+            rules = new NeuronUpdateRule[n];
+            activations = new double[n];
+            inputs = new double[n];
+            inhibitoryInputs = new double[n];
+            buffers = new double[n];
+            spikes = new boolean[n];
+        }
+        boolean batchable = true;
+        Class<?> ruleClass = neuronList.get(0).getUpdateRule().getClass();
+        for (int i = 0; i < n; i++) {
+            Neuron neuron = neuronList.get(i);
+            neurons[i] = neuron;
+            rules[i] = neuron.getUpdateRule();
+            batchable &= rules[i].getClass() == ruleClass
+                    && !neuron.isClamped();
+        }
+        NeuronUpdateRule rule = rules[0];
+        if (!batchable || !rule.hasBatchUpdate()) {
+            for (int i = 0; i < n; i++) {
+                neurons[i].update();
+            }
+            return;
+        }
+        Network network = neurons[0].getNetwork();
+        timeStep = network.getTimeStep();
+        time = network.getTime();
+        for (int i = 0; i < n; i++) {
+            activations[i] = neurons[i].getActivation();
+        }
+        if (rule.usesSeparatedInput()) {
+            gatherSeparatedInputs(0, n);
+        } else {
+            gatherInputs(0, n);
+        }
+        rule.update(this, 0, n);
+        for (int i = 0; i < n; i++) {
+            neurons[i].setBuffer(buffers[i]);
+        }
+        if (rule.isSpikingNeuron()) {
+            for (int i = 0; i < n; i++) {
+                neurons[i].setSpkBuffer(spikes[i]);
+            }
+        }
+    }
+
+    /**
+     * Fill {@link #getInputs()} with the input of each neuron in [start, end)
+     * according to the input type of its rule.
+     *
+     * @param start first index (inclusive)
+     * @param end last index (exclusive)
+     */
+    public void gatherInputs(final int start, final int end) {
+        for (int i = start; i < end; i++) {
+            inputs[i] = rules[i].getInputType().getInput(neurons[i]);
+        }
+    }
+
+    /**
+     * Fill {@link #getInputs()} with the excitatory and
+     * {@link #getInhibitoryInputs()} with the inhibitory input of each neuron
+     * in [start, end) according to the input type of its rule.
+     *
+     * @param start first index (inclusive)
+     * @param end last index (exclusive)
+     */
+    public void gatherSeparatedInputs(final int start, final int end) {
+        for (int i = start; i < end; i++) {
+            double[] ei = rules[i].getInputType().getSeparatedInput(
+                    neurons[i]);
+            inputs[i] = ei[0];
+            inhibitoryInputs[i] = ei[1];
+        }
+    }
+
+    /**
+     * Set the time step and time used by spiking rules.
+     *
+     * @param timeStep the time step of the network
+     * @param time the current time of the network
+     */
+    public void setTime(final double timeStep, final double time) {
+        this.timeStep = timeStep;
+        this.time = time;
+    }
+
+    /**
+     * @return the neurons
+     */
+    public Neuron[] getNeurons() {
+        return neurons;
+    }
+
+    /**
+     * @return the update rule of each neuron
+     */
+    public NeuronUpdateRule[] getRules() {
+        return rules;
+    }
+
+    /**
+     * @return the activation of each neuron at the start of the update
+     */
+    public double[] getActivations() {
+        return activations;
+    }
+
+    /**
+     * @return the input to each neuron (the excitatory input for rules using
+     *         separated input)
+     */
+    public double[] getInputs() {
+        return inputs;
+    }
+
+    /**
+     * @return the inhibitory input to each neuron, for rules using separated
+     *         input
+     */
+    public double[] getInhibitoryInputs() {
+        return inhibitoryInputs;
+    }
+
+    /**
+     * @return the array new activations are written to
+     */
+    public double[] getBuffers() {
+        return buffers;
+    }
+
+    /**
+     * @return the array spikes are written to by spiking rules
+     */
+    public boolean[] getSpikes() {
+        return spikes;
+    }
+
+    /**
+     * @return the time step of the network for the current update
+     */
+    public double getTimeStep() {
+        return timeStep;
+    }
+
+    /**
+     * @return the time of the network for the current update
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * @return the number of neurons in the batch
+     */
+    public int size() {
+        return neurons.length;
+    }
+
+}
@@ -61,6 +61,9 @@ public abstract class NeuronUpdateRule {
 						ei[1] += wt;
 					}
 				}
+				if (n.getDelayBuffer() != null) {
+					n.getDelayBuffer().take(ei);
+				}
 				return ei;
 			}
 			
@@ -79,6 +82,9 @@ public abstract class NeuronUpdateRule {
 						i++;
 					}
 				}
+				if (n.getDelayBuffer() != null) {
+					n.getDelayBuffer().take(ei);
+				}
 				if (e > 1) {
 					ei[0] /= e;
 				}
@@ -106,6 +112,10 @@ public abstract class NeuronUpdateRule {
             
 			@Override
 			public double[] getSeparatedInput(Neuron n) {
+				double [] delivered = n.getDeliveredResponses();
+				if (delivered != null) {
+					return new double[] {delivered[0], delivered[1]};
+				}
 				double [] ei = new double[2];
 				for (Synapse s : n.getFanIn()) {
 					double psr = s.calcPSR();
@@ -115,12 +125,21 @@ public abstract class NeuronUpdateRule {
 						ei[1] += psr;
 					}
 				}
+				if (n.getDelayBuffer() != null) {
+					n.getDelayBuffer().take(ei);
+				}
 				return ei;
 			}
 
 
 			@Override
 			public double[] getNormalizedSeparatedInput(Neuron n) {
+				double [] delivered = n.getDeliveredResponses();
+				if (delivered != null) {
+					return new double[] {
+						delivered[0] / Math.max(1, delivered[2]),
+						delivered[1] / Math.max(1, delivered[3])};
+				}
 				double [] ei = new double[2];
 				double e = 0;
 				double i = 0;
@@ -134,6 +153,9 @@ public abstract class NeuronUpdateRule {
 						i++;
 					}
 				}
+				if (n.getDelayBuffer() != null) {
+					n.getDelayBuffer().take(ei);
+				}
 				if (e > 1) {
 					ei[0] /= e;
 				}
@@ -184,6 +206,12 @@ public abstract class NeuronUpdateRule {
     /** Amount by which to increment or decrement neuron. */
     protected double increment = DEFAULT_INCREMENT;
 
+    /**
+     * The neuron most recently given this rule, used by deprecated accessors
+     * of state which has moved from the rule to the neuron.
+     */
+    private transient Neuron neuron;
+
     /**
      * Returns the type of time update (discrete or continuous) associated with
      * this neuron.
@@ -199,6 +227,94 @@ public abstract class NeuronUpdateRule {
      */
     public abstract void update(Neuron neuron);
 
+    /**
+     * Apply the update rule to the neurons in [start, end) of a batch, all of
+     * which use a rule of this class. Reads the inputs and activations of the
+     * batch and writes its buffers (and spikes, for spiking rules); parameters
+     * are read from each neuron's own rule and state from each neuron, so
+     * this rule need not belong to any of the neurons.
+     * <p>
+     * By default each neuron is updated by its own rule with
+     * {@link #update(Neuron)}, which takes the input from the neuron's fan-in
+     * rather than from the batch, and its buffer and spike are copied into the
+     * batch.
+     *
+     * @param batch the neurons to update and their inputs
+     * @param start first index to update (inclusive)
+     * @param end last index to update (exclusive)
+     */
+    public void update(NeuronBatch batch, int start, int end) {
+        Neuron[] neurons = batch.getNeurons();
+        NeuronUpdateRule[] rules = batch.getRules();
+        double[] buffers = batch.getBuffers();
+        boolean[] spikes = batch.getSpikes();
+        for (int i = start; i < end; i++) {
+            rules[i].update(neurons[i]);
+            buffers[i] = neurons[i].getBuffer();
+            spikes[i] = neurons[i].getSpkBuffer();
+        }
+    }
+
+    /**
+     * Override along with {@link #update(NeuronBatch, int, int)}. Callers use
+     * this as a hint that the batch update is faster than updating the
+     * neurons one at a time.
+     *
+     * @return true if this rule has its own batch update
+     */
+    public boolean hasBatchUpdate() {
+        return false;
+    }
+
+    /**
+     * @return true if the batch update of this rule expects excitatory and
+     *         inhibitory inputs separately
+     */
+    public boolean usesSeparatedInput() {
+        return false;
+    }
+
+    /**
+     * Returns the number of dynamic state variables this rule keeps for each
+     * neuron, accessed with {@link Neuron#getState(int)} and
+     * {@link Neuron#setState(int, double)}. Rules with per-neuron state
+     * override this and {@link #initState(Neuron)} instead of keeping the
+     * state in fields, so that one rule object can serve many neurons.
+     *
+     * @return the number of state variables
+     */
+    public int getStateSize() {
+        return 0;
+    }
+
+    /**
+     * Set the initial values of the state variables of a neuron. State
+     * variables start at zero; override for other initial values.
+     *
+     * @param neuron the neuron whose state to initialize
+     */
+    public void initState(Neuron neuron) {
+    }
+
+    /**
+     * @param neuron the neuron most recently given this rule
+     */
+    void setNeuron(Neuron neuron) {
+        this.neuron = neuron;
+    }
+
+    /**
+     * Returns the neuron most recently given this rule. Only meant for
+     * accessors kept for compatibility from before the state of rules moved
+     * to the neurons; for a rule shared by several neurons it is just one of
+     * them.
+     *
+     * @return the neuron, or null if the rule has not been given to one
+     */
+    protected Neuron getNeuron() {
+        return neuron;
+    }
+
     /**
      * Returns a deep copy of the update rule.
      *
@@ -0,0 +1,84 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.core;
+
+/**
+ * <b>RuleState</b> holds the dynamic state of a neuron update rule (for
+ * example the recovery variable of an Izhikevich neuron) for one or more
+ * neurons, in a single array with one fixed-size slot per neuron. Rule objects
+ * then hold only parameters, so many neurons can share one rule and editing
+ * the rule edits all of them at once.
+ * <p>
+ * A neuron not sharing its rule gets a state of its own with one slot. A
+ * neuron group sharing one rule among its neurons (see
+ * {@link org.simbrain.network.groups.NeuronGroup#shareNeuronType(
+ * NeuronUpdateRule)}) allocates one state with a slot per neuron.
+ */
+public class RuleState {
+
+    /** Number of state variables per neuron. */
+    private final int size;
+
+    /** The values, slot by slot. */
+    private final double[] values;
+
+    /**
+     * Construct a state with all values zero.
+     *
+     * @param size number of state variables per neuron
+     * @param capacity number of neurons (slots)
+     */
+    public RuleState(final int size, final int capacity) {
+        this.size = size;
+        this.values = new double[size * capacity];
+    }
+
+    /**
+     * @param slot the neuron's slot
+     * @param var the state variable
+     * @return the value of the variable for that neuron
+     */
+    public double get(final int slot, final int var) {
+        return values[slot * size + var];
+    }
+
+    /**
+     * @param slot the neuron's slot
+     * @param var the state variable
+     * @param value the new value of the variable for that neuron
+     */
+    public void set(final int slot, final int var, final double value) {
+        values[slot * size + var] = value;
+    }
+
+    /**
+     * @return the number of state variables per neuron
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return the number of slots
+     */
+    public int getCapacity() {
+        return size == 0 ? 0 : values.length / size;
+    }
+
+}
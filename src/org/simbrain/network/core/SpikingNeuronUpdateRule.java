@@ -36,9 +36,6 @@ public abstract class SpikingNeuronUpdateRule extends NeuronUpdateRule {
         inputType = InputType.SYNAPTIC;
     }
 
-    /** Time of last spike. */
-    private double lastSpikeTime;
-
     /**
      * An aux value for applied inputs to the neuron (eg injected current)
      * usable across all spiking neuron update rules.
@@ -48,7 +45,7 @@ public abstract class SpikingNeuronUpdateRule extends NeuronUpdateRule {
     @Override
     public void clear(Neuron neuron) {
         super.clear(neuron);
-        setLastSpikeTime(0);
+        neuron.setLastSpikeTime(0);
     }
 
     /**
@@ -64,6 +61,10 @@ public abstract class SpikingNeuronUpdateRule extends NeuronUpdateRule {
     public abstract void update(Neuron neuron);
 
     /**
+     * Records the time of the neuron's spike, if it spiked. The time is kept
+     * by the neuron (see {@link Neuron#getLastSpikeTime()}) so that the rule
+     * can be shared.
+     *
      * @param hasSpiked
      *            the hasSpiked to set
      * @param neuron
@@ -71,23 +72,31 @@ public abstract class SpikingNeuronUpdateRule extends NeuronUpdateRule {
      */
     public void setHasSpiked(final boolean hasSpiked, final Neuron neuron) {
         if (hasSpiked) {
-            lastSpikeTime = neuron.getNetwork().getTime();
+            neuron.setLastSpikeTime(neuron.getNetwork().getTime());
         }
     }
 
     /**
-     * @return the lastSpikeTime
+     * @return the time of the last spike of the neuron given this rule
+     * @deprecated the time is kept by each neuron; use
+     *             {@link Neuron#getLastSpikeTime()}
      */
+    @Deprecated
     public double getLastSpikeTime() {
-        return lastSpikeTime;
+        return getNeuron() == null ? 0 : getNeuron().getLastSpikeTime();
     }
 
     /**
-     * @param lastSpikeTime
-     *            the lastSpikeTime to set
+     * @param lastSpikeTime the time of the last spike of the neuron given
+     *            this rule
+     * @deprecated the time is kept by each neuron; use
+     *             {@link Neuron#setLastSpikeTime(double)}
      */
+    @Deprecated
     public void setLastSpikeTime(double lastSpikeTime) {
-        this.lastSpikeTime = lastSpikeTime;
+        if (getNeuron() != null) {
+            getNeuron().setLastSpikeTime(lastSpikeTime);
+        }
     }
 
     /**
@@ -96,7 +96,10 @@ public class Synapse {
     /** Lower limit of synapse. */
     private double lowerBound = DEFAULT_LOWER_BOUND;
 
-    /** Time to delay sending activation to target neuron. */
+    /**
+     * Time to delay sending activation to target neuron. Responses in flight
+     * are held by the {@link DelayBuffer} of the target.
+     */
     private int delay;
 
     /** Parent group, if any (null if none). */
@@ -114,18 +117,6 @@ public class Synapse {
      */
     private boolean frozen;
 
-    /** Manages synaptic delay */
-    private double[] delayManager;
-
-    /**
-     * Points to the location in the delay manager that corresponds to the
-     * current time.
-     */
-    private int dlyPtr = 0;
-
-    /** The value {@link #dlyPtr} points to in the delay manager. */
-    private double dlyVal = 0;
-
     /**
      * This special tag denotes that the synapse is a template to other
      * synapses. That is, it exists solely to store parameter values for a large
@@ -322,7 +313,9 @@ public class Synapse {
     /**
      * For spiking source neurons, returns the spike-responder's value times the
      * synapse strength. For non-spiking neurons, returns the pre-synaptic
-     * activation times the synapse strength.
+     * activation times the synapse strength. If the synapse is delayed the
+     * response is deposited in the target's {@link DelayBuffer} instead, and
+     * 0 is returned.
      *
      * @return the post-synaptic response as determined by a spike responder.
      */
@@ -338,9 +331,8 @@ public class Synapse {
             if (delay == 0) {
                 return psr;
             } else {
-                dlyVal = dequeu();
-                enqueu(psr);
-                return dlyVal;
+                target.addDelayedInput(delay, psr);
+                return 0;
             }
         }
     }
@@ -348,7 +340,8 @@ public class Synapse {
     /**
      * For non-spiking neurons returns the weighted sum, i.e. the activation of
      * the pre-synaptic (source) neuron multiplied by the strength of this
-     * synapse.
+     * synapse. If the synapse is delayed the sum is deposited in the target's
+     * {@link DelayBuffer} instead, and 0 is returned.
      *
      * @return the post synaptic response calculated as a simple weighted sum
      */
@@ -358,9 +351,8 @@ public class Synapse {
         } else {
             psr = source.getActivation() * strength;
             if (delay != 0) {
-                dlyVal = dequeu();
-                enqueu(psr);
-                return dlyVal;
+                target.addDelayedInput(delay, psr);
+                return 0;
             } else {
                 return psr;
             }
@@ -652,7 +644,8 @@ public class Synapse {
     }
 
     /**
-     * Delay manager.
+     * Set the delay, in time steps. Responses already in flight arrive at the
+     * time set when they were sent.
      *
      * @param dly Amount of delay
      */
@@ -661,19 +654,6 @@ public class Synapse {
             return;
         }
         delay = dly;
-
-        if (delay <= 0) {
-            delayManager = null;
-
-            return;
-        }
-
-        delayManager = new double[delay];
-
-        for (int i = 0; i < delay; i++) {
-            delayManager[i] = 0;
-        }
-        dlyPtr = 0;
     }
 
     //
@@ -708,29 +688,6 @@ public class Synapse {
         return delay;
     }
 
-    /**
-     * @return the deque.
-     */
-    private double dequeu() {
-        if (dlyPtr == delay) {
-            dlyPtr = 0;
-        }
-        return delayManager[dlyPtr++];
-    }
-
-    /**
-     * Enqueeu.
-     *
-     * @param val Value to enqueu
-     */
-    private void enqueu(final double val) {
-        if (dlyPtr == 0) {
-            delayManager[delay - 1] = val;
-        } else {
-            delayManager[dlyPtr - 1] = val;
-        }
-    }
-
     @Override
     public String toString() {
         String ret = new String();
@@ -819,6 +776,9 @@ public class Synapse {
         SynapseUpdateRule oldRule = learningRule;
         this.learningRule = newLearningRule;
         initSpikeResponder();
+        if (parentGroup != null) {
+            parentGroup.learningRuleChanged();
+        }
         if (parentNetwork != null) {
             getNetwork().fireSynapseTypeChanged(oldRule, learningRule);
             // getNetwork().Network.updateTimeType();
@@ -970,12 +930,12 @@ public class Synapse {
         bBuf.putInt(delay);
         bBuf.putDouble(strength);
         bBuf.putDouble(psr);
-        if (delay > 0) {
-            for (double d : delayManager) {
-                bBuf.putDouble(d);
-            }
+        // Slots formerly used for per-synapse delay queues; responses in
+        // flight are now held by the target neuron and are not saved here.
+        for (int i = 0; i < delay; i++) {
+            bBuf.putDouble(0);
         }
-        bBuf.putInt(dlyPtr);
+        bBuf.putInt(0);
         byte enFr = 0x0;
         byte en = (byte) (enabled ? 2 : 0);
         byte fr = (byte) (frozen ? 1 : 0);
@@ -988,12 +948,10 @@ public class Synapse {
         setDelay(byteValues.getInt());
         setStrength(byteValues.getDouble());
         setPsr(byteValues.getDouble());
-        if (delay > 0) {
-            for (int i = 0; i < delay; i++) {
-                delayManager[i] = byteValues.getDouble();
-            }
+        for (int i = 0; i < delay; i++) {
+            byteValues.getDouble();
         }
-        dlyPtr = byteValues.getInt();
+        byteValues.getInt();
         byte enFr = byteValues.get();
         setEnabled(enFr >= 2);
         setFrozen(enFr == 1 || enFr == 3);
@@ -45,6 +45,18 @@ public abstract class SynapseUpdateRule {
      */
     public abstract void update(Synapse synapse);
 
+    /**
+     * Returns true if {@link #update(Synapse)} changes a synapse only in steps
+     * where its source or target neuron spikes. A synapse group whose
+     * synapses all have spike-triggered rules only updates the synapses of
+     * neurons which spiked.
+     *
+     * @return whether this rule only acts on spikes
+     */
+    public boolean isSpikeTriggered() {
+        return false;
+    }
+
     /**
      * Returns a deep copy of the update rule.
      *
@@ -32,7 +32,9 @@ import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.simbrain.network.core.Network;
 import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.NeuronBatch;
 import org.simbrain.network.core.NeuronUpdateRule;
+import org.simbrain.network.core.RuleState;
 import org.simbrain.network.core.Synapse;
 import org.simbrain.network.layouts.GridLayout;
 import org.simbrain.network.layouts.Layout;
@@ -41,6 +43,7 @@ import org.simbrain.network.layouts.LineLayout.LineOrientation;
 import org.simbrain.network.neuron_update_rules.interfaces.BiasedUpdateRule;
 import org.simbrain.util.Utils;
 import org.simbrain.util.math.SimbrainMath;
+import org.simbrain.workspace.CopiesArray;
 
 /**
  * A group of neurons. A primary abstraction for larger network structures.
@@ -134,6 +137,12 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
     
     /** Indices used with subsampling. */
     private int[] subsamplingIndices;
+
+    /**
+     * Holds the neurons' state in arrays during an update, so that neurons
+     * sharing a rule class with a batch form are updated in one call.
+     */
+    private transient NeuronBatch batch;
     
     /**
      * Reset the indices used for subsampling
@@ -248,6 +257,9 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
         for (Neuron neuron : toCopy.getNeuronList()) {
             this.addNeuron(new Neuron(network, neuron), false);
         }
+        if (toCopy.getSharedNeuronType() != null && !neuronList.isEmpty()) {
+            share(neuronList.get(0).getUpdateRule(), true);
+        }
         this.updateRule = toCopy.updateRule;
         resetSubsamplingIndices();
     }
@@ -283,9 +295,10 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
 
     /**
      * Updates all the neurons in the neuron group according to their 
-     * NeuronUpdateRule(s). If the group is in input mode reads in the next
-     * set of values from the input table and sets the neuron values
-     * accordingly.
+     * NeuronUpdateRule(s), after adding the input of any compressed incoming
+     * synapse groups to their external inputs. If the group is in input mode
+     * reads in the next set of values from the input table and sets the
+     * neuron values accordingly.
      */
     @Override
     public void update() {
@@ -298,7 +311,16 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
             // Surrounded by checks, so actually safe.
             readNextInputUnsafe();
         } else {
-            Network.updateNeurons(neuronList);
+            for (SynapseGroup sg : incomingSgs) {
+                sg.deliverCompressedInput();
+            }
+            if (batch == null) {
+                batch = new NeuronBatch();
+            }
+            batch.update(neuronList);
+            for (int i = 0, n = neuronList.size(); i < n; i++) {
+                neuronList.get(i).setToBufferVals();
+            }
         }
         if (isRecording()) {
             writeActsToFile();
@@ -496,6 +518,66 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
         }
     }
 
+    /**
+     * Set one update rule object for all the neurons in this group, instead of
+     * a copy per neuron as in {@link #setNeuronType(NeuronUpdateRule)}. The
+     * dynamic state of the rule is kept for all the neurons in one
+     * {@link RuleState}, one slot per neuron, and is initialized. Parameters
+     * set on the rule apply to every neuron at once; giving a neuron a rule of
+     * its own takes it out of the sharing.
+     *
+     * @param rule the neuron update rule to share
+     */
+    public void shareNeuronType(NeuronUpdateRule rule) {
+        isSpikingNeuronGroup = rule.isSpikingNeuron();
+        share(rule, false);
+    }
+
+    /**
+     * Give every neuron the same rule and a slot in a new shared state.
+     *
+     * @param rule the rule to share
+     * @param keepState whether to carry over each neuron's current state
+     *            values, which must belong to a rule of the same class
+     */
+    private void share(final NeuronUpdateRule rule, final boolean keepState) {
+        int size = rule.getStateSize();
+        RuleState state = new RuleState(size, neuronList.size());
+        double[] values = new double[size];
+        for (int i = 0, n = neuronList.size(); i < n; i++) {
+            Neuron neuron = neuronList.get(i);
+            if (keepState) {
+                for (int v = 0; v < size; v++) {
+                    values[v] = neuron.getState(v);
+                }
+            }
+            neuron.setUpdateRule(rule);
+            neuron.setRuleState(state, i);
+            if (keepState) {
+                for (int v = 0; v < size; v++) {
+                    neuron.setState(v, values[v]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the update rule shared by all the neurons in this group, or
+     *         null if the group is empty or neurons have rules of their own
+     */
+    public NeuronUpdateRule getSharedNeuronType() {
+        if (neuronList.isEmpty()) {
+            return null;
+        }
+        NeuronUpdateRule rule = neuronList.get(0).getUpdateRule();
+        for (int i = 1, n = neuronList.size(); i < n; i++) {
+            if (neuronList.get(i).getUpdateRule() != rule) {
+                return null;
+            }
+        }
+        return rule;
+    }
+
     /**
      * Set the string update rule for the neurons in this group.
      *
@@ -630,6 +712,8 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
             neuron.setId(getParentNetwork().getNeuronIdGenerator().getId());
             if (fireEvent) {
                 getParentNetwork().fireNeuronAdded(neuron);
+            } else {
+                getParentNetwork().invalidateIndex();
             }
         }
         if (fireEvent) {
@@ -655,6 +739,9 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
      */
     public void removeNeuron(Neuron toDelete) {
         neuronList.remove(toDelete);
+        if (getParentNetwork() != null) {
+            getParentNetwork().invalidateIndex();
+        }
         if (isEmpty()) {
             delete();
         }
@@ -700,6 +787,7 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
      * @param inputs
      *            the input vector as a double array.
      */
+    @CopiesArray
     public void setInputValues(double[] inputs) {
         for (int i = 0, n = size(); i < n; i++) {
             if (i >= inputs.length) {
@@ -719,6 +807,7 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
      * @param inputs
      *            the input vector as a double array.
      */
+    @CopiesArray
     public void setActivations(double[] inputs) {
         for (int i = 0, n = size(); i < n; i++) {
             if (i >= inputs.length) {
@@ -739,6 +828,7 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
      * @param inputs
      *            the input vector as a double array.
      */
+    @CopiesArray
     public void forceSetActivations(double[] inputs) {
         for (int i = 0, n = size(); i < n; i++) {
             if (i >= inputs.length) {
@@ -754,7 +844,22 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
      * @return the activation array
      */
     public double[] getActivations() {
-        double[] retArray = new double[neuronList.size()];
+        return getActivations(null);
+    }
+
+    /**
+     * Write activations into an array, so that callers polling every update
+     * (e.g. couplings) can reuse one array.
+     *
+     * @param buffer the array to write into if its length is the number of
+     *            neurons, or null
+     * @return buffer, or a new array if it did not have the right length
+     */
+    public double[] getActivations(double[] buffer) {
+        double[] retArray = buffer;
+        if (retArray == null || retArray.length != neuronList.size()) {
+            retArray = new double[neuronList.size()];
+        }
         int i = 0;
         for (Neuron neuron : neuronList) {
             retArray[i++] = neuron.getActivation();
@@ -1448,6 +1553,9 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
      */
     public void clearNeuronList() {
         neuronList.clear();
+        if (getParentNetwork() != null) {
+            getParentNetwork().invalidateIndex();
+        }
     }
 
     /**
@@ -1561,13 +1669,28 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
      * @return the vector of external activations.
      */
     public double[] getExternalActivations() {
+        return getExternalActivations(null);
+    }
+
+    /**
+     * Write the vector of external activations into an array. See
+     * {@link #getExternalActivations()}.
+     *
+     * @param buffer the array to write into if it has the right length, or
+     *            null
+     * @return buffer, or a new array if it did not have the right length
+     */
+    public double[] getExternalActivations(double[] buffer) {
         if (!useSubSampling) {
-            return getActivations();
+            return getActivations(buffer);
         }
         if (neuronList.size() < numSubSamples) {
-            return getActivations();
+            return getActivations(buffer);
         } else {
-            double[] retArray = new double[numSubSamples];
+            double[] retArray = buffer;
+            if (retArray == null || retArray.length != numSubSamples) {
+                retArray = new double[numSubSamples];
+            }
             for (int i = 0; i < numSubSamples; i++) {
                 retArray[i] = neuronList.get(i).getActivation();
             }
@@ -105,6 +105,9 @@ public abstract class Subnetwork extends Group {
         numMembers += group.size();
         synapseGroupList.add(group);
         group.setParentGroup(this);
+        if (getParentNetwork() != null) {
+            getParentNetwork().invalidateIndex();
+        }
     }
 
     /**
@@ -117,6 +120,9 @@ public abstract class Subnetwork extends Group {
         numMembers += group.size();
         neuronGroupList.add(group);
         group.setParentGroup(this);
+        if (getParentNetwork() != null) {
+            getParentNetwork().invalidateIndex();
+        }
     }
 
     /**
@@ -413,14 +419,17 @@ public abstract class Subnetwork extends Group {
 
     /**
      * Return a "flat" list containing every synapse in every synapse group in
-     * this subnetwork.
+     * this subnetwork. Compressed synapse groups have no synapse objects and
+     * contribute none.
      *
      * @return the flat synapse list.
      */
     public List<Synapse> getFlatSynapseList() {
         List<Synapse> ret = new ArrayList<Synapse>();
         for (SynapseGroup group : synapseGroupList) {
-            ret.addAll(group.getAllSynapses());
+            if (!group.isCompressed()) {
+                ret.addAll(group.getAllSynapses());
+            }
         }
         return Collections.unmodifiableList(ret);
     }
@@ -35,8 +35,10 @@ import org.simbrain.network.connections.ConnectionUtilities.SynapseParameterSett
 import org.simbrain.network.connections.Sparse;
 import org.simbrain.network.core.Network;
 import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.SpikingNeuronUpdateRule;
 import org.simbrain.network.core.Synapse;
 import org.simbrain.network.core.SynapseUpdateRule;
+import org.simbrain.network.synapse_update_rules.SpikeTriggeredPlasticity;
 import org.simbrain.network.synapse_update_rules.StaticSynapseRule;
 import org.simbrain.network.synapse_update_rules.spikeresponders.SpikeResponder;
 import org.simbrain.network.util.io_utilities.GroupDeserializer;
@@ -45,7 +47,9 @@ import org.simbrain.network.util.io_utilities.GroupSerializer.Precision;
 import org.simbrain.util.SimbrainConstants;
 import org.simbrain.util.SimbrainConstants.Polarity;
 import org.simbrain.util.Utils;
+import org.simbrain.util.math.SparseMatrix;
 import org.simbrain.util.randomizer.PolarizedRandomizer;
+import org.simbrain.util.randomizer.Randomizer;
 
 /**
  *
@@ -231,6 +235,33 @@ public class SynapseGroup extends Group {
     /** Whether or not to use the compressed rep or the full rep. */
     private boolean useFullRepOnSave = false;
 
+    /**
+     * When non-null the group is compressed: its connections exist only as
+     * entries of this matrix (rows are source neuron indices, columns target
+     * neuron indices) and no synapse objects are held by the group or by its
+     * neurons. See {@link #compress()}.
+     */
+    private SparseMatrix compressedWeights;
+
+    /** Scratch source activations used when delivering compressed input. */
+    private transient double[] srcScratch;
+
+    /** Scratch target inputs used when delivering compressed input. */
+    private transient double[] tarScratch;
+
+    /**
+     * Updates the synapses of neurons which spiked when every learning rule
+     * in the group is spike-triggered; null if not built yet or if some rule
+     * is not. See {@link #learningRuleChanged()}.
+     */
+    private transient SpikeTriggeredPlasticity plasticity;
+
+    /**
+     * True if the learning rules have been checked since they last changed
+     * and {@link #plasticity} reflects the result.
+     */
+    private transient boolean plasticityChecked;
+
     /**
      * Completely creates a synapse group between the two neuron groups with all
      * default parameters. This method creates the individual connections.
@@ -422,6 +453,7 @@ public class SynapseGroup extends Group {
      * be called to sort synapses into their appropriate sets.
      */
     public void revalidateSynapseSets() {
+        decompressIfNeeded();
         Iterator<Synapse> exIterator = exSynapseSet.iterator();
         ArrayList<Synapse> exSwitches = new ArrayList<Synapse>(
                 exSynapseSet.size());
@@ -453,6 +485,23 @@ public class SynapseGroup extends Group {
      * call super.update() some time during the custom update.
      */
     public void update() {
+        if (isCompressed()) {
+            // Compressed synapses are static; their input is delivered by
+            // the target group (see deliverCompressedInput)
+            return;
+        }
+        if (plasticityChecked && plasticity != null && plasticity.isStale()) {
+            plasticityChecked = false;
+        }
+        if (!plasticityChecked) {
+            plasticity = isSpikeTriggered() ? new SpikeTriggeredPlasticity(
+                    this) : null;
+            plasticityChecked = true;
+        }
+        if (plasticity != null) {
+            plasticity.update();
+            return;
+        }
         if (useGroupLevelSettings) {
             if (!exStatic) { // Only iterate if excitatory synapses aren't
                              // static
@@ -477,6 +526,34 @@ public class SynapseGroup extends Group {
         }
     }
 
+    /**
+     * @return true if every learning rule in the group only changes its
+     *         synapse when a neuron spikes, and some rule is not static
+     */
+    private boolean isSpikeTriggered() {
+        boolean learning = false;
+        for (Synapse synapse : getAllSynapses()) {
+            SynapseUpdateRule rule = synapse.getLearningRule();
+            if (!rule.isSpikeTriggered()) {
+                return false;
+            }
+            if (!(rule instanceof StaticSynapseRule)) {
+                learning = true;
+            }
+        }
+        return learning;
+    }
+
+    /**
+     * Notify the group that the learning rule of one of its synapses, or the
+     * update rule of one of its neurons, has been replaced, so that the way it
+     * updates is chosen again.
+     */
+    public void learningRuleChanged() {
+        plasticityChecked = false;
+        plasticity = null;
+    }
+
     /**
      *
      */
@@ -497,6 +574,9 @@ public class SynapseGroup extends Group {
 
     /** {@inheritDoc} */
     public int size() {
+        if (isCompressed()) {
+            return compressedWeights.getNnz();
+        }
         return exSynapseSet.size() + inSynapseSet.size();
     }
 
@@ -505,9 +585,170 @@ public class SynapseGroup extends Group {
      */
     @Override
     public boolean isEmpty() {
+        if (isCompressed()) {
+            return compressedWeights.getNnz() == 0;
+        }
         return exSynapseSet.isEmpty() && inSynapseSet.isEmpty();
     }
 
+    /**
+     * Replace the synapse objects of this group with a compressed sparse
+     * matrix of their strengths, releasing the per-synapse objects and the
+     * fan-in and fan-out entries they occupy in the source and target
+     * neurons. This greatly reduces the memory used by large groups.
+     * <p>
+     * Only connections which can not change are compressed: every synapse
+     * must be enabled, have no delay, have a non-spiking source, and be
+     * static or frozen. While compressed the
+     * group delivers its weighted input to target neurons as part of their
+     * external input when the target neuron group updates (see
+     * {@link #deliverCompressedInput()}), and the strength of a connection
+     * can be read and changed through {@link #getCompressedWeights()}.
+     * Methods which work on the synapse objects, such as
+     * {@link #getAllSynapses()}, randomization, and the group-level
+     * parameter setters, decompress the group first. Settings of individual
+     * synapses are restored from the group prototypes by
+     * {@link #decompress()}.
+     *
+     * @throws IllegalStateException if some synapse can not be compressed
+     */
+    public void compress() throws IllegalStateException {
+        if (isCompressed()) {
+            return;
+        }
+        List<Synapse> synapses = getAllSynapses();
+        for (Synapse s : synapses) {
+            if (!s.isEnabled() || s.getDelay() != 0
+                    || s.getSource()
+                            .getUpdateRule() instanceof SpikingNeuronUpdateRule
+                    || !(s.isFrozen()
+                    || s.getLearningRule() instanceof StaticSynapseRule)) {
+                throw new IllegalStateException("Synapse group "
+                        + getLabel() + " contains synapses which are"
+                        + " disabled, delayed, spiking, or learning and"
+                        + " can not be compressed.");
+            }
+        }
+        Map<Neuron, Integer> srcMap = new HashMap<Neuron, Integer>(
+                (int) (sourceNeuronGroup.size() / 0.75));
+        Map<Neuron, Integer> tarMap = new HashMap<Neuron, Integer>(
+                (int) (targetNeuronGroup.size() / 0.75));
+        int i = 0;
+        for (Neuron n : getSourceNeurons()) {
+            srcMap.put(n, i++);
+        }
+        i = 0;
+        for (Neuron n : getTargetNeurons()) {
+            tarMap.put(n, i++);
+        }
+        int[] rows = new int[synapses.size()];
+        int[] cols = new int[synapses.size()];
+        double[] vals = new double[synapses.size()];
+        i = 0;
+        for (Synapse s : synapses) {
+            rows[i] = srcMap.get(s.getSource());
+            cols[i] = tarMap.get(s.getTarget());
+            vals[i++] = s.getStrength();
+        }
+        SparseMatrix weights = new SparseMatrix(sourceNeuronGroup.size(),
+                targetNeuronGroup.size(), rows, cols, vals);
+        clear();
+        compressedWeights = weights;
+        getParentNetwork().fireGroupChanged(this, this, "compressed");
+    }
+
+    /**
+     * Recreate a synapse object for every entry of a compressed group. All
+     * settings other than strength are taken from the excitatory or
+     * inhibitory prototype, according to the sign of the strength.
+     */
+    public void decompress() {
+        if (!isCompressed()) {
+            return;
+        }
+        SparseMatrix weights = compressedWeights;
+        compressedWeights = null;
+        srcScratch = null;
+        tarScratch = null;
+        List<Neuron> srcs = getSourceNeurons();
+        List<Neuron> tars = getTargetNeurons();
+        int[] rowPtr = weights.getRowPtr();
+        int[] colInds = weights.getColIndices();
+        double[] vals = weights.getValues();
+        for (int i = 0; i < weights.getNumRows(); i++) {
+            for (int k = rowPtr[i]; k < rowPtr[i + 1]; k++) {
+                Synapse proto = vals[k] >= 0 ? excitatoryPrototype
+                        : inhibitoryPrototype;
+                Synapse s = new Synapse(getParentNetwork(), srcs.get(i),
+                        tars.get(colInds[k]), proto.getLearningRule()
+                                .deepCopy(), proto);
+                s.forceSetStrength(vals[k]);
+                s.setId(getParentNetwork().getSynapseIdGenerator().getId());
+                s.setParentGroup(this);
+                if (vals[k] >= 0) {
+                    exSynapseSet.add(s);
+                } else {
+                    inSynapseSet.add(s);
+                }
+            }
+        }
+        getParentNetwork().fireGroupChanged(this, this, "decompressed");
+    }
+
+    /**
+     * Add the weighted input of a compressed group to the external input of
+     * its target neurons. Called by the target neuron group before it
+     * updates; does nothing if the group is not compressed.
+     */
+    public void deliverCompressedInput() {
+        if (!isCompressed()) {
+            return;
+        }
+        List<Neuron> srcs = getSourceNeurons();
+        List<Neuron> tars = getTargetNeurons();
+        if (srcScratch == null || srcScratch.length != srcs.size()) {
+            srcScratch = new double[srcs.size()];
+        }
+        if (tarScratch == null || tarScratch.length != tars.size()) {
+            tarScratch = new double[tars.size()];
+        }
+        for (int i = 0, n = srcs.size(); i < n; i++) {
+            srcScratch[i] = srcs.get(i).getActivation();
+        }
+        Arrays.fill(tarScratch, 0);
+        compressedWeights.transposeMultiplyAdd(srcScratch, tarScratch);
+        for (int j = 0, n = tars.size(); j < n; j++) {
+            Neuron tar = tars.get(j);
+            tar.setInputValue(tar.getInputValue() + tarScratch[j]);
+        }
+    }
+
+    /**
+     * Decompress the group before its synapse objects are used, so that
+     * callers never silently work on empty sets.
+     */
+    private void decompressIfNeeded() {
+        if (isCompressed()) {
+            decompress();
+        }
+    }
+
+    /**
+     * @return true if this group holds its connections in a compressed
+     *         matrix rather than as synapse objects
+     */
+    public boolean isCompressed() {
+        return compressedWeights != null;
+    }
+
+    /**
+     * @return the compressed weights (rows are source neurons, columns target
+     *         neurons), or null if the group is not compressed
+     */
+    public SparseMatrix getCompressedWeights() {
+        return compressedWeights;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -600,6 +841,7 @@ public class SynapseGroup extends Group {
      * @return the deleted synapse
      */
     public Synapse removeSynapse(Synapse toDelete) {
+        decompressIfNeeded();
         exSynapseSet.remove(toDelete);
         inSynapseSet.remove(toDelete);
         toDelete.getSource().removeEfferent(toDelete);
@@ -649,6 +891,10 @@ public class SynapseGroup extends Group {
         }
         exSynapseSet.clear();
         inSynapseSet.clear();
+        compressedWeights = null;
+        if (getParentNetwork() != null) {
+            getParentNetwork().invalidateIndex();
+        }
     }
 
     /**
@@ -661,6 +907,7 @@ public class SynapseGroup extends Group {
      * based on the parameters of this group.
      */
     public void addNewSynapse(final Synapse synapse) {
+        decompressIfNeeded();
         if (synapse.getSource().isPolarized()) {
             if (Polarity.EXCITATORY.equals(synapse.getSource().getPolarity())) {
                 addNewExcitatorySynapse(synapse);
@@ -686,6 +933,7 @@ public class SynapseGroup extends Group {
      * group and have its parameters set based on the parameters of this group.
      */
     public void addNewExcitatorySynapse(final Synapse synapse) {
+        decompressIfNeeded();
         getParentNetwork().fireGroupChanged(this, this, "synapseAdded");
         synapse.setId(getParentNetwork().getSynapseIdGenerator().getId());
         synapse.setParentGroup(this);
@@ -712,6 +960,7 @@ public class SynapseGroup extends Group {
      * group and have its parameters set based on the parameters of this group.
      */
     public void addNewInhibitorySynapse(final Synapse synapse) {
+        decompressIfNeeded();
         getParentNetwork().fireGroupChanged(this, this, "synapseAdded");
         synapse.setId(getParentNetwork().getSynapseIdGenerator().getId());
         synapse.setParentGroup(this);
@@ -752,6 +1001,7 @@ public class SynapseGroup extends Group {
      *            synapse to add
      */
     public void addSynapseUnsafe(final Synapse synapse) {
+        decompressIfNeeded();
         if (synapse.getStrength() > 0) {
             addExcitatorySynapseUnsafe(synapse);
         }
@@ -769,11 +1019,13 @@ public class SynapseGroup extends Group {
      *            the synapse to add.
      */
     public void addExcitatorySynapseUnsafe(final Synapse synapse) {
+        decompressIfNeeded();
         exSynapseSet.add(synapse);
         excitatoryRatio = exSynapseSet.size() / (double) size();
         if (getParentNetwork() != null) {
             synapse.setId(getParentNetwork().getSynapseIdGenerator().getId());
             synapse.setParentGroup(this);
+            getParentNetwork().invalidateIndex();
         }
     }
 
@@ -786,11 +1038,13 @@ public class SynapseGroup extends Group {
      *            the synapse to add.
      */
     public void addInhibitorySynapseUnsafe(final Synapse synapse) {
+        decompressIfNeeded();
         inSynapseSet.add(synapse);
         excitatoryRatio = exSynapseSet.size() / (double) size();
         if (getParentNetwork() != null) {
             synapse.setId(getParentNetwork().getSynapseIdGenerator().getId());
             synapse.setParentGroup(this);
+            getParentNetwork().invalidateIndex();
         }
     }
 
@@ -812,6 +1066,7 @@ public class SynapseGroup extends Group {
      */
     public void setExcitatoryRatio(double excitatoryRatio)
             throws IllegalArgumentException {
+        decompressIfNeeded();
         if (excitatoryRatio > 1 || excitatoryRatio < 0) {
             throw new IllegalArgumentException("The parameter"
                     + " 'excitatoryRatio' passed to setExcitatoryRatio"
@@ -903,6 +1158,9 @@ public class SynapseGroup extends Group {
      *         excitatory synapses divided by the total.
      */
     public double getExcitatoryRatioPrecise() {
+        if (isCompressed()) {
+            return getExcitatoryStrengths().length / (double) size();
+        }
         return exSynapseSet.size() / (double) size();
     }
 
@@ -921,6 +1179,7 @@ public class SynapseGroup extends Group {
      * @return the set of excitatory synapses
      */
     public Set<Synapse> getExcitatorySynapses() {
+        decompressIfNeeded();
         return new HashSet<Synapse>(exSynapseSet);
     }
 
@@ -928,6 +1187,7 @@ public class SynapseGroup extends Group {
      * @return the set of inhibitory synapses
      */
     public Set<Synapse> getInhibitorySynapses() {
+        decompressIfNeeded();
         return new HashSet<Synapse>(inSynapseSet);
     }
 
@@ -937,6 +1197,9 @@ public class SynapseGroup extends Group {
      * @return weights
      */
     public double[] getWeightVector() {
+        if (isCompressed()) {
+            return Arrays.copyOf(compressedWeights.getValues(), size());
+        }
         double[] retArray = new double[size()];
         int i = 0;
         for (Synapse synapse : exSynapseSet) {
@@ -952,6 +1215,9 @@ public class SynapseGroup extends Group {
      * @return the strengths of all the inhibitory synapses as a double array
      */
     public double[] getInhibitoryStrengths() {
+        if (isCompressed()) {
+            return getCompressedStrengths(false);
+        }
         double[] retArray = new double[inSynapseSet.size()];
         int i = 0;
         for (Synapse synapse : inSynapseSet) {
@@ -964,6 +1230,9 @@ public class SynapseGroup extends Group {
      * @return the strengths of all the excitatory synapses as a double array
      */
     public double[] getExcitatoryStrengths() {
+        if (isCompressed()) {
+            return getCompressedStrengths(true);
+        }
         double[] retArray = new double[exSynapseSet.size()];
         int i = 0;
         for (Synapse synapse : exSynapseSet) {
@@ -972,6 +1241,29 @@ public class SynapseGroup extends Group {
         return retArray;
     }
 
+    /**
+     * @param excitatory whether to collect non-negative (true) or negative
+     *            (false) strengths
+     * @return the matching strengths of a compressed group
+     */
+    private double[] getCompressedStrengths(boolean excitatory) {
+        double[] vals = compressedWeights.getValues();
+        int count = 0;
+        for (double v : vals) {
+            if ((v >= 0) == excitatory) {
+                count++;
+            }
+        }
+        double[] retArray = new double[count];
+        int i = 0;
+        for (double v : vals) {
+            if ((v >= 0) == excitatory) {
+                retArray[i++] = v;
+            }
+        }
+        return retArray;
+    }
+
     //TODO: Consider putting some of the below methods or part of their bodies
     // into SimbrainMath or Utils
     
@@ -983,6 +1275,9 @@ public class SynapseGroup extends Group {
      * as a weight matrix between two activation vectors (neuron groups).
      */
     public double[][] getWeightMatrix() {
+        if (isCompressed()) {
+            return compressedWeights.toDense();
+        }
         double[][] weightMatrix =
                 new double[getSourceNeurons().size()][getTargetNeurons()
                         .size()];
@@ -1030,6 +1325,18 @@ public class SynapseGroup extends Group {
      *      1   2   .9
      */
     public double [][] getNumericIndices() {
+        if (isCompressed()) {
+            double[][] pairs = new double[size()][];
+            int[] rowPtr = compressedWeights.getRowPtr();
+            int[] colInds = compressedWeights.getColIndices();
+            double[] vals = compressedWeights.getValues();
+            for (int r = 0; r < compressedWeights.getNumRows(); r++) {
+                for (int k = rowPtr[r]; k < rowPtr[r + 1]; k++) {
+                    pairs[k] = new double[] { r, colInds[k], vals[k] };
+                }
+            }
+            return pairs;
+        }
         double[][] pairs = new double[size()][3];
         int i = 0;
         int j = 0;
@@ -1098,6 +1405,7 @@ public class SynapseGroup extends Group {
      *      1   2   .9
      */
     public Number [][] getNumericIndices(SynapseParameterGetter<Number> getter) {
+        decompressIfNeeded();
         Number [][] pairs = new Number[size()][3];
         int i = 0;
         int j = 0;
@@ -1256,6 +1564,7 @@ public class SynapseGroup extends Group {
      *         it did not and thus failed to set the strength value.
      */
     public boolean setSynapseStrength(Synapse synapse, double newWeight) {
+        decompressIfNeeded();
         if (synapse.getStrength() >= 0 && exSynapseSet.contains(synapse)) {
             synapse.setStrength(newWeight);
             if (newWeight < 0) {
@@ -1295,6 +1604,7 @@ public class SynapseGroup extends Group {
      * {@link #revalidateSynapseSets()} first.
      */
     public void randomizeExcitatoryConnections() {
+        decompressIfNeeded();
         ConnectionUtilities.randomizeExcitatorySynapsesUnsafe(exSynapseSet,
                 exciteRand);
     }
@@ -1307,6 +1617,7 @@ public class SynapseGroup extends Group {
      * {@link #revalidateSynapseSets()} first.
      */
     public void randomizeInhibitoryConnections() {
+        decompressIfNeeded();
         ConnectionUtilities.randomizeInhibitorySynapsesUnsafe(inSynapseSet,
                 inhibRand);
     }
@@ -1389,6 +1700,7 @@ public class SynapseGroup extends Group {
      * @return the ratio of synapses in this group that are excitatory.
      */
     public double calculateExcitatoryRatio() {
+        decompressIfNeeded();
         excitatoryRatio = exSynapseSet.size() / (double) size();
         if (Double.isNaN(excitatoryRatio)) {
             return 0;
@@ -1437,10 +1749,12 @@ public class SynapseGroup extends Group {
     }
 
     public boolean hasExcitatory() {
+        decompressIfNeeded();
         return !exSynapseSet.isEmpty();
     }
 
     public boolean hasInhibitory() {
+        decompressIfNeeded();
         return !inSynapseSet.isEmpty();
     }
 
@@ -1537,6 +1851,73 @@ public class SynapseGroup extends Group {
         setSynapses(setDelay, delay, polarity);
     }
 
+    /**
+     * Set the delay of each synapse of the given polarity to a value drawn
+     * from a distribution, in time steps. Draws are rounded to the nearest
+     * integer and negative draws are set to 0. The prototypes are left
+     * unchanged.
+     *
+     * @param delayDistribution the distribution to draw delays from
+     * @param polarity the synapses to set
+     */
+    public void setDelays(Randomizer delayDistribution, Polarity polarity) {
+        Collection<Synapse> synapses;
+        if (Polarity.EXCITATORY == polarity) {
+            synapses = exSynapseSet;
+        } else if (Polarity.INHIBITORY == polarity) {
+            synapses = inSynapseSet;
+        } else {
+            synapses = getAllSynapses();
+        }
+        for (Synapse s : synapses) {
+            s.setDelay((int) Math.max(0,
+                    Math.round(delayDistribution.getRandom())));
+        }
+    }
+
+    /**
+     * Set the delay of each synapse in the order of {@link #getAllSynapses()}
+     * (excitatory synapses first, then inhibitory).
+     *
+     * @param delays the delays in time steps, one per synapse
+     * @throws IllegalArgumentException if the number of delays does not match
+     *             the number of synapses
+     */
+    public void setDelays(int[] delays) {
+        List<Synapse> synapses = getAllSynapses();
+        if (delays.length != synapses.size()) {
+            throw new IllegalArgumentException("Expected " + synapses.size()
+                    + " delays but got " + delays.length + ".");
+        }
+        for (int i = 0; i < delays.length; i++) {
+            synapses.get(i).setDelay(Math.max(0, delays[i]));
+        }
+    }
+
+    /**
+     * @return the delay of each synapse in the order of
+     *         {@link #getAllSynapses()}
+     */
+    public int[] getDelays() {
+        List<Synapse> synapses = getAllSynapses();
+        int[] delays = new int[synapses.size()];
+        for (int i = 0; i < delays.length; i++) {
+            delays[i] = synapses.get(i).getDelay();
+        }
+        return delays;
+    }
+
+    /**
+     * @return the longest delay of any synapse in the group
+     */
+    public int getMaxDelay() {
+        int max = 0;
+        for (Synapse s : getAllSynapses()) {
+            max = Math.max(max, s.getDelay());
+        }
+        return max;
+    }
+
     /**
      *
      * @param enabled
@@ -1816,6 +2197,7 @@ public class SynapseGroup extends Group {
      */
     public <T> T checkSynapses(SynapseParameterGetter<T> check,
             Polarity polarity) {
+        decompressIfNeeded();
         Collection<Synapse> synapses;
         Synapse prototype;
         if (Polarity.EXCITATORY == polarity) {
@@ -1861,6 +2243,7 @@ public class SynapseGroup extends Group {
      */
     public <T> void setSynapses(SynapseParameterSetter<T> set, T val,
             Polarity polarity) {
+        decompressIfNeeded();
         Collection<Synapse> synapses;
         if (Polarity.EXCITATORY == polarity) {
             synapses = exSynapseSet;
@@ -1890,6 +2273,11 @@ public class SynapseGroup extends Group {
      * Perform operations required before saving a synapse group.
      */
     public void preSaveInit() {
+        if (isCompressed()) {
+            // The compressed weights are saved as they are
+            compressedMatrixRep = null;
+            return;
+        }
         if (isUseFullRepOnSave()) {
             preSaveInitFull();
             return;
@@ -1965,7 +2353,7 @@ public class SynapseGroup extends Group {
      * process sets the synapse sets to null.
      */
     public void postSaveReInit() {
-        if (isUseGroupLevelSettings()) {
+        if (isUseGroupLevelSettings() && inTemp != null) {
             inSynapseSet = inTemp;
             exSynapseSet = exTemp;
             inTemp = null;
@@ -1979,7 +2367,15 @@ public class SynapseGroup extends Group {
     public void postUnmarshallingInit() {
 
         // Rebuild weight matrix if needed.
-        if (this.isUseGroupLevelSettings() && compressedMatrixRep != null) {
+        if (isCompressed()) {
+            if (exSynapseSet == null) {
+                exSynapseSet = new HashSet<Synapse>();
+            }
+            if (inSynapseSet == null) {
+                inSynapseSet = new HashSet<Synapse>();
+            }
+        } else if (this.isUseGroupLevelSettings()
+                && compressedMatrixRep != null) {
             exSynapseSet = new HashSet<Synapse>();
             inSynapseSet = new HashSet<Synapse>();
             GroupDeserializer.reconstructCompressedSynapseStrengths(
@@ -19,6 +19,7 @@
 package org.simbrain.network.neuron_update_rules;
 
 import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.NeuronBatch;
 import org.simbrain.network.core.NeuronUpdateRule;
 import org.simbrain.network.core.SpikingNeuronUpdateRule;
 import org.simbrain.network.core.Network.TimeType;
@@ -84,11 +85,11 @@ public class AdExIFRule extends SpikingNeuronUpdateRule implements
 	/** Inhibitory reversal. (mV) */
 	private double inReversal = -75;
 
-	/** Membrane potential (mV). */
-	private double v_mem = leakReversal;
+	/** Index of the adaptation variable in each neuron's state. */
+	private static final int W = 0;
 
-	/** Adaptation variable. */
-	private double w = 200;
+	/** Initial value of the adaptation variable. */
+	private static final double DEFAULT_W = 200;
 
 	/** Adaptation reset parameter (nA). */
 	private double b = 0.0805;
@@ -127,14 +128,15 @@ public class AdExIFRule extends SpikingNeuronUpdateRule implements
 //        final double ref = neuron.getNetwork().getTimeType()
 //                == TimeType.DISCRETE ? refractoryPeriod / dt
 //                        : refractoryPeriod;
-        final boolean refractory = getLastSpikeTime() + refractoryPeriod
+        final boolean refractory = neuron.getLastSpikeTime() + refractoryPeriod
                 >= neuron.getNetwork().getTime();
 
 
 		// Retrieve membrane potential from host neuron's activation
 		// in case some outside entity has explicitly changed the membrane
 		// potential between updates.
-		v_mem = neuron.getActivation();
+		double v_mem = neuron.getActivation();
+		double w = neuron.getState(W);
 
 		// Retrieve incoming ex/in currents or proportion of open channels
 		double[] ei = inputType.getSeparatedInput(neuron);
@@ -188,10 +190,79 @@ public class AdExIFRule extends SpikingNeuronUpdateRule implements
 		}
 
 		// Set the buffer to the membrane potential
+		neuron.setState(W, w);
 		neuron.setBuffer(v_mem);
 
 	}
 
+	@Override
+	public void update(NeuronBatch batch, int start, int end) {
+		Neuron[] neurons = batch.getNeurons();
+		NeuronUpdateRule[] rules = batch.getRules();
+		double[] activations = batch.getActivations();
+		double[] ex = batch.getInputs();
+		double[] in = batch.getInhibitoryInputs();
+		double[] buffers = batch.getBuffers();
+		boolean[] spikes = batch.getSpikes();
+		final double dt = batch.getTimeStep();
+		final double time = batch.getTime();
+		for (int i = start; i < end; i++) {
+			AdExIFRule rule = (AdExIFRule) rules[i];
+			final boolean refractory = neurons[i].getLastSpikeTime()
+					+ rule.refractoryPeriod >= time;
+			double v = activations[i];
+			double w = neurons[i].getState(W);
+			double iSyn_ex = rule.g_e_bar * ex[i] * (rule.exReversal - v);
+			double iSyn_in = -rule.g_i_bar * in[i] * (rule.inReversal - v);
+			double i_leak = rule.g_L * (rule.leakReversal - v);
+			double ibg = rule.i_bg;
+			if (rule.addNoise) {
+				ibg += rule.noiseGenerator.getRandom();
+			}
+			double dVdt = (rule.g_L * rule.slopeFactor
+					* Math.exp((v - rule.v_Th) / rule.slopeFactor))
+					+ i_leak + iSyn_ex + iSyn_in + ibg - w;
+			dVdt /= rule.memCapacitance;
+			double dwdt = (rule.a * (v - rule.leakReversal) - w) / rule.tauW;
+			v += (dVdt * dt);
+			w += (dwdt * dt);
+			boolean spiked = false;
+			if (v >= rule.v_Peak) {
+				v = rule.v_Reset;
+				w = w + (rule.b * CURRENT_CONVERTER);
+				spiked = !refractory;
+			}
+			spikes[i] = spiked;
+			rule.setHasSpiked(spiked, neurons[i]);
+			neurons[i].setState(W, w);
+			buffers[i] = v;
+		}
+	}
+
+	/**
+	 * Subclasses overriding {@link #update(Neuron)} are updated one at a
+	 * time.
+	 */
+	@Override
+	public boolean hasBatchUpdate() {
+		return getClass() == AdExIFRule.class;
+	}
+
+	@Override
+	public boolean usesSeparatedInput() {
+		return true;
+	}
+
+	@Override
+	public int getStateSize() {
+		return 1;
+	}
+
+	@Override
+	public void initState(Neuron neuron) {
+		neuron.setState(W, DEFAULT_W);
+	}
+
 	@Override
 	public AdExIFRule deepCopy() {
 		AdExIFRule cpy = new AdExIFRule();
@@ -206,10 +277,8 @@ public class AdExIFRule extends SpikingNeuronUpdateRule implements
 		cpy.noiseGenerator = new Randomizer(noiseGenerator);
 		cpy.slopeFactor = this.slopeFactor;
 		cpy.tauW = this.tauW;
-		cpy.v_mem = this.v_mem;
 		cpy.v_Reset = this.v_Reset;
 		cpy.v_Th = this.v_Th;
-		cpy.w = this.w;
 		return cpy;
 	}
 
@@ -283,20 +352,46 @@ public class AdExIFRule extends SpikingNeuronUpdateRule implements
 		this.leakReversal = leakReversal;
 	}
 
+	/**
+	 * @return the membrane potential of the neuron given this rule
+	 * @deprecated the membrane potential is the activation of each neuron
+	 */
+	@Deprecated
 	public double getV_mem() {
-		return v_mem;
+		return getNeuron() == null ? 0 : getNeuron().getActivation();
 	}
 
+	/**
+	 * @param v_mem the membrane potential of the neuron given this rule
+	 * @deprecated the membrane potential is the activation of each neuron
+	 */
+	@Deprecated
 	public void setV_mem(double v_mem) {
-		this.v_mem = v_mem;
+		if (getNeuron() != null) {
+			getNeuron().setActivation(v_mem);
+		}
 	}
 
+	/**
+	 * @return the adaptation current of the neuron given this rule
+	 * @deprecated the adaptation current is kept in the state of each neuron;
+	 *             use {@link Neuron#getState(int)}
+	 */
+	@Deprecated
 	public double getW() {
-		return w;
+		return getNeuron() == null ? DEFAULT_W : getNeuron().getState(W);
 	}
 
+	/**
+	 * @param w the adaptation current of the neuron given this rule
+	 * @deprecated the adaptation current is kept in the state of each neuron;
+	 *             use {@link Neuron#setState(int, double)}
+	 */
+	@Deprecated
 	public void setW(double w) {
-		this.w = w;
+		if (getNeuron() != null) {
+			getNeuron().setState(W, w);
+		}
 	}
 
 	public double getB() {
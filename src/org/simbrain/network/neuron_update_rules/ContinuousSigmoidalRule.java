@@ -56,15 +56,13 @@ public class ContinuousSigmoidalRule extends AbstractSigmoidalRule {
     private double leak = DEFAULT_LEAK_CONSTANT;
 
     /**
-     * The net value of this neuron. This is the value that is integrated over
-     * time and then passed to the squashing function. NOTE: the net inputs are
-     * integrated and that value is passed through a squashing function to give
-     * the neurons activation. The activation post-squashing is NOT what is
-     * being numerically integrated.
+     * Index of the net value of a neuron in its state. This is the value that
+     * is integrated over time and then passed to the squashing function.
+     * NOTE: the net inputs are integrated and that value is passed through a
+     * squashing function to give the neurons activation. The activation
+     * post-squashing is NOT what is being numerically integrated.
      */
-    private double netActivation;
-
-    private double inputTerm;
+    private static final int NET_ACTIVATION = 0;
 
     /**
      * Default sigmoidal.
@@ -123,6 +121,7 @@ public class ContinuousSigmoidalRule extends AbstractSigmoidalRule {
     public void update(Neuron neuron) {
 
         double dt = neuron.getNetwork().getTimeStep();
+        double inputTerm;
 
         if (addNoise) {
             inputTerm = (dt / tau) * (inputType.getInput(neuron) + bias
@@ -131,7 +130,9 @@ public class ContinuousSigmoidalRule extends AbstractSigmoidalRule {
             inputTerm = (dt / tau) * (inputType.getInput(neuron) + bias);
         }
 
-        netActivation = netActivation * (1 - (leak * dt / tau)) + inputTerm;
+        double netActivation = neuron.getState(NET_ACTIVATION)
+            * (1 - (leak * dt / tau)) + inputTerm;
+        neuron.setState(NET_ACTIVATION, netActivation);
 
         double output = sFunction.valueOf(netActivation, getUpperBound(),
             getLowerBound(), getSlope());
@@ -344,7 +345,12 @@ public class ContinuousSigmoidalRule extends AbstractSigmoidalRule {
     @Override
     public void clear(Neuron neuron) {
         super.clear(neuron);
-        netActivation = 0;
+        neuron.setState(NET_ACTIVATION, 0);
+    }
+
+    @Override
+    public int getStateSize() {
+        return 1;
     }
 
 }
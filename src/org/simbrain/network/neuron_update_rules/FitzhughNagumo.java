@@ -29,11 +29,11 @@ public class FitzhughNagumo extends SpikingNeuronUpdateRule implements
     NoisyUpdateRule {
 
 
-    /** W. - recovery variable */
-    private double w;
+    /** Index of W, the recovery variable, in each neuron's state. */
+    private static final int W = 0;
 
-    /** V. - membrane potential */
-    private double v;
+    /** Index of V, the membrane potential, in each neuron's state. */
+    private static final int V = 1;
 
     /** Constant background current. KEEP */
     private double iBg = 1;
@@ -62,8 +62,6 @@ public class FitzhughNagumo extends SpikingNeuronUpdateRule implements
      */
     public FitzhughNagumo deepCopy() {
         FitzhughNagumo in = new FitzhughNagumo();
-        in.setW(getW());
-        in.setV(getV());
         in.setAddNoise(getAddNoise());
         in.noiseGenerator = new Randomizer(noiseGenerator);
 
@@ -85,9 +83,10 @@ public class FitzhughNagumo extends SpikingNeuronUpdateRule implements
             inputs += noiseGenerator.getRandom();
         }
         inputs += iBg;
-        w += (timeStep * (a*(b*v+0.7-(c*w))));
+        double w = neuron.getState(W);
+        w += (timeStep * (a*(b*neuron.getState(V)+0.7-(c*w))));
 
-        v = activation + (timeStep * (activation - (Math.pow(activation, 3)/3) - w + inputs) );
+        double v = activation + (timeStep * (activation - (Math.pow(activation, 3)/3) - w + inputs) );
         // You want this
         if (v >= threshold) {
             neuron.setSpkBuffer(true);
@@ -97,9 +96,16 @@ public class FitzhughNagumo extends SpikingNeuronUpdateRule implements
             setHasSpiked(false, neuron);
         }
         //till here
+        neuron.setState(W, w);
+        neuron.setState(V, v);
         neuron.setBuffer(v);
     }
 
+    @Override
+    public int getStateSize() {
+        return 2;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -111,31 +117,75 @@ public class FitzhughNagumo extends SpikingNeuronUpdateRule implements
     }
 
     /**
-     * @return Returns the w.
+     * @param neuron the neuron to consider
+     * @return Returns the w of the neuron.
      */
-    public double getW() {
-        return w;
+    public double getW(final Neuron neuron) {
+        return neuron.getState(W);
     }
 
     /**
+     * @param neuron the neuron to change
      * @param w The w to set.
      */
+    public void setW(final Neuron neuron, final double w) {
+        neuron.setState(W, w);
+    }
+
+    /**
+     * @param neuron the neuron to consider
+     * @return Returns the v of the neuron.
+     */
+    public double getV(final Neuron neuron) {
+        return neuron.getState(V);
+    }
+
+    /**
+     * @param neuron the neuron to change
+     * @param v The v to set.
+     */
+    public void setV(final Neuron neuron, final double v) {
+        neuron.setState(V, v);
+    }
+
+    /**
+     * @return Returns the w of the neuron given this rule.
+     * @deprecated kept by each neuron; use {@link #getW(Neuron)}
+     */
+    @Deprecated
+    public double getW() {
+        return getNeuron() == null ? 0 : getW(getNeuron());
+    }
+
+    /**
+     * @param w The w to set on the neuron given this rule.
+     * @deprecated kept by each neuron; use {@link #setW(Neuron, double)}
+     */
+    @Deprecated
     public void setW(final double w) {
-        this.w = w;
+        if (getNeuron() != null) {
+            setW(getNeuron(), w);
+        }
     }
 
     /**
-     * @return Returns the v.
+     * @return Returns the v of the neuron given this rule.
+     * @deprecated kept by each neuron; use {@link #getV(Neuron)}
      */
+    @Deprecated
     public double getV() {
-        return v;
+        return getNeuron() == null ? 0 : getV(getNeuron());
     }
 
     /**
-     * @param v The v to set.
+     * @param v The v to set on the neuron given this rule.
+     * @deprecated kept by each neuron; use {@link #setV(Neuron, double)}
      */
+    @Deprecated
     public void setV(final double v) {
-        this.v = v;
+        if (getNeuron() != null) {
+            setV(getNeuron(), v);
+        }
     }
 
     public double getiBg() {
@@ -25,26 +25,23 @@ public class HodgkinHuxleyRule extends SpikingNeuronUpdateRule {
     /** Resting Membrane Potential */
     private double resting_v = 65;
 
-    /** */
-    private double elapsedTime = 0;
-
-    /** */
-    private double dv;
-
     /** Membrane Capacitance */
     private double cm;
 
     /** Constant leak permeabilities */
     private double gk, gna, gl;
 
-    /** voltage-dependent gating parameters */
-    private double n, m, h;
+    /** Indices of the voltage-dependent gating parameters in each neuron's
+     * state. */
+    private static final int N = 0, M = 1, H = 2;
 
-    /** corresponding deltas */
-    private double dn, dm, dh;
-
-    /** // rate constants */
-    private double an, bn, am, bm, ah, bh;
+    /**
+     * Indices of n^4, m^3 h, the sodium and potassium currents of the last
+     * update and the elapsed time in each neuron's state. They are kept per
+     * neuron, since one rule can update many neurons at once.
+     */
+    private static final int N4 = 3, M3H = 4, NA_CURRENT = 5, K_CURRENT = 6,
+            ELAPSED_TIME = 7;
 
     /** time step */
     private double dt;
@@ -52,18 +49,6 @@ public class HodgkinHuxleyRule extends SpikingNeuronUpdateRule {
     /** Ek-Er, Ena - Er, Eleak - Er */
     private double vk, vna, vl;
 
-    /** */
-    private double n4;
-
-    /** */
-    private double m3h;
-
-    /** Sodium current */
-    private double na_current;
-
-    /** Potassium current */
-    private double k_current;
-
     /** */
     private double temp = 0;
 
@@ -81,30 +66,36 @@ public class HodgkinHuxleyRule extends SpikingNeuronUpdateRule {
         // Advances the model by dt and returns the new voltage
 
         double v = inputType.getInput(neuron);
-        bh = 1 / (Math.exp((v + 30) / 10) + 1);
-        ah = 0.07 * Math.exp(v / 20);
-        dh = (ah * (1 - h) - bh * h) * dt;
-        bm = 4 * Math.exp(v / 18);
-        am = 0.1 * (v + 25) / (Math.exp((v + 25) / 10) - 1);
-        bn = 0.125 * Math.exp(v / 80);
-        an = 0.01 * (v + 10) / (Math.exp((v + 10) / 10) - 1);
-        dm = (am * (1 - m) - bm * m) * dt;
-        dn = (an * (1 - n) - bn * n) * dt;
-
-        n4 = n * n * n * n;
-        m3h = m * m * m * h;
-
-        na_current = gna * m3h * (v - vna);
-        k_current = gk * n4 * (v - vk);
-
-        dv = -1 * dt * (k_current + na_current + gl * (v - vl)) / cm;
+        double n = neuron.getState(N);
+        double m = neuron.getState(M);
+        double h = neuron.getState(H);
+        double bh = 1 / (Math.exp((v + 30) / 10) + 1);
+        double ah = 0.07 * Math.exp(v / 20);
+        double dh = (ah * (1 - h) - bh * h) * dt;
+        double bm = 4 * Math.exp(v / 18);
+        double am = 0.1 * (v + 25) / (Math.exp((v + 25) / 10) - 1);
+        double bn = 0.125 * Math.exp(v / 80);
+        double an = 0.01 * (v + 10) / (Math.exp((v + 10) / 10) - 1);
+        double dm = (am * (1 - m) - bm * m) * dt;
+        double dn = (an * (1 - n) - bn * n) * dt;
+
+        double n4 = n * n * n * n;
+        double m3h = m * m * m * h;
+
+        double na_current = gna * m3h * (v - vna);
+        double k_current = gk * n4 * (v - vk);
+
+        double dv = -1 * dt * (k_current + na_current + gl * (v - vl)) / cm;
 
         neuron.setBuffer(-1 * (v + dv + resting_v));
-        h += dh;
-        m += dm;
-        n += dn;
-
-        elapsedTime += dt;
+        neuron.setState(H, h + dh);
+        neuron.setState(M, m + dm);
+        neuron.setState(N, n + dn);
+        neuron.setState(N4, n4);
+        neuron.setState(M3H, m3h);
+        neuron.setState(NA_CURRENT, na_current);
+        neuron.setState(K_CURRENT, k_current);
+        neuron.setState(ELAPSED_TIME, neuron.getState(ELAPSED_TIME) + dt);
 
         // if (vClampOn)
         // v = vClampValue;
@@ -121,6 +112,9 @@ public class HodgkinHuxleyRule extends SpikingNeuronUpdateRule {
 
         cm = 1.0;
         double v = neuron.getActivation();
+        double n = neuron.getState(N);
+        double m = neuron.getState(M);
+        double h = neuron.getState(H);
         vna = -115;
         vk = 12;
         vl = -10.613;
@@ -129,25 +123,27 @@ public class HodgkinHuxleyRule extends SpikingNeuronUpdateRule {
         gl = 0.3;
         dt = .005;
 
-        bh = 1 / (Math.exp((v + 30) / 10) + 1);
-        ah = 0.07 * Math.exp(v / 20);
-        bm = 4 * Math.exp(v / 18);
-        am = 0.1 * (v + 25) / (Math.exp((v + 25) / 10) - 1);
-        bn = 0.125 * Math.exp(v / 80);
-        an = 0.01 * (v + 10) / (Math.exp((v + 10) / 10) - 1);
-        dh = (ah * (1 - h) - bh * h) * dt;
-        dm = (am * (1 - m) - bm * m) * dt;
-        dn = (an * (1 - n) - bn * n) * dt;
+        double bh = 1 / (Math.exp((v + 30) / 10) + 1);
+        double ah = 0.07 * Math.exp(v / 20);
+        double bm = 4 * Math.exp(v / 18);
+        double am = 0.1 * (v + 25) / (Math.exp((v + 25) / 10) - 1);
+        double bn = 0.125 * Math.exp(v / 80);
+        double an = 0.01 * (v + 10) / (Math.exp((v + 10) / 10) - 1);
 
         // start these parameters in steady state
-        n = an / (an + bn);
-        m = am / (am + bm);
-        h = ah / (ah + bh);
+        neuron.setState(N, an / (an + bn));
+        neuron.setState(M, am / (am + bm));
+        neuron.setState(H, ah / (ah + bh));
 
         update(neuron);
 
     }
 
+    @Override
+    public int getStateSize() {
+        return 8;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -155,12 +151,30 @@ public class HodgkinHuxleyRule extends SpikingNeuronUpdateRule {
         return TimeType.CONTINUOUS;
     }
 
+    public double get_n4(Neuron neuron) {
+        return neuron.getState(N4);
+    }
+
+    public double get_m3h(Neuron neuron) {
+        return neuron.getState(M3H);
+    }
+
+    /**
+     * @return n^4 of the neuron given this rule
+     * @deprecated kept by each neuron; use {@link #get_n4(Neuron)}
+     */
+    @Deprecated
     public double get_n4() {
-        return n4;
+        return getNeuron() == null ? 0 : get_n4(getNeuron());
     }
 
+    /**
+     * @return m^3 h of the neuron given this rule
+     * @deprecated kept by each neuron; use {@link #get_m3h(Neuron)}
+     */
+    @Deprecated
     public double get_m3h() {
-        return m3h;
+        return getNeuron() == null ? 0 : get_m3h(getNeuron());
     }
 
     public synchronized float getEna() {
@@ -181,12 +195,30 @@ public class HodgkinHuxleyRule extends SpikingNeuronUpdateRule {
 
     // The -1 is to correct for the fact that in the H & H paper, the currents
     // are reversed.
+    public double get_na_current(Neuron neuron) {
+        return -1 * neuron.getState(NA_CURRENT);
+    }
+
+    public double get_k_current(Neuron neuron) {
+        return -1 * neuron.getState(K_CURRENT);
+    }
+
+    /**
+     * @return the sodium current of the neuron given this rule
+     * @deprecated kept by each neuron; use {@link #get_na_current(Neuron)}
+     */
+    @Deprecated
     public double get_na_current() {
-        return -1 * na_current;
+        return getNeuron() == null ? 0 : get_na_current(getNeuron());
     }
 
+    /**
+     * @return the potassium current of the neuron given this rule
+     * @deprecated kept by each neuron; use {@link #get_k_current(Neuron)}
+     */
+    @Deprecated
     public double get_k_current() {
-        return -1 * k_current;
+        return getNeuron() == null ? 0 : get_k_current(getNeuron());
     }
 
     // negative values set to zero
@@ -237,24 +269,75 @@ public class HodgkinHuxleyRule extends SpikingNeuronUpdateRule {
         return dt;
     }
 
+    public double getElapsedTime(Neuron neuron) {
+        return neuron.getState(ELAPSED_TIME);
+    }
+
+    public void resetElapsedTime(Neuron neuron) {
+        neuron.setState(ELAPSED_TIME, 0.0);
+    }
+
+    /**
+     * @return the elapsed time of the neuron given this rule
+     * @deprecated kept by each neuron; use {@link #getElapsedTime(Neuron)}
+     */
+    @Deprecated
     public double getElapsedTime() {
-        return elapsedTime;
+        return getNeuron() == null ? 0 : getElapsedTime(getNeuron());
     }
 
+    /**
+     * Reset the elapsed time of the neuron given this rule.
+     *
+     * @deprecated kept by each neuron; use {@link #resetElapsedTime(Neuron)}
+     */
+    @Deprecated
     public void resetElapsedTime() {
-        elapsedTime = 0.0;
+        if (getNeuron() != null) {
+            resetElapsedTime(getNeuron());
+        }
+    }
+
+    public double getN(Neuron neuron) {
+        return neuron.getState(N);
+    }
+
+    public double getM(Neuron neuron) {
+        return neuron.getState(M);
+    }
+
+    public double getH(Neuron neuron) {
+        return neuron.getState(H);
     }
 
+    /**
+     * @return the n gate of the neuron given this rule
+     * @deprecated kept in the state of each neuron; use
+     *             {@link #getN(Neuron)}
+     */
+    @Deprecated
     public double getN() {
-        return n;
+        return getNeuron() == null ? 0 : getN(getNeuron());
     }
 
+    /**
+     * @return the m gate of the neuron given this rule
+     * @deprecated kept in the state of each neuron; use
+     *             {@link #getM(Neuron)}
+     */
+    @Deprecated
     public double getM() {
-        return m;
+        return getNeuron() == null ? 0 : getM(getNeuron());
     }
 
+    /**
+     * @return the h gate of the neuron given this rule
+     * @deprecated kept in the state of each neuron; use
+     *             {@link #getH(Neuron)}
+     */
+    @Deprecated
     public double getH() {
-        return h;
+        return getNeuron() == null ? 0 : getH(getNeuron());
     }
 
     /**
@@ -292,8 +375,22 @@ public class HodgkinHuxleyRule extends SpikingNeuronUpdateRule {
     }
 
     public NeuronUpdateRule deepCopy() {
-        // TODO
-        return null;
+        HodgkinHuxleyRule hh = new HodgkinHuxleyRule();
+        hh.perNaChannels = perNaChannels;
+        hh.perKChannels = perKChannels;
+        hh.resting_v = resting_v;
+        hh.cm = cm;
+        hh.gk = gk;
+        hh.gna = gna;
+        hh.gl = gl;
+        hh.dt = dt;
+        hh.vk = vk;
+        hh.vna = vna;
+        hh.vl = vl;
+        hh.temp = temp;
+        hh.vClampOn = vClampOn;
+        hh.vClampValue = vClampValue;
+        return hh;
     }
 
     @Override
@@ -60,9 +60,6 @@ public class IACRule extends NeuronUpdateRule implements BoundedUpdateRule,
     /** The lower bound of the activity if clipping is used. */
     private double floor = DEFAULT_FLOOR;
 
-    /** Local variables as class variables for a minor performance gain. */
-    private double effect, netInput, act;
-
     /**
      * @return
      * {@inheritDoc}
@@ -94,7 +91,7 @@ public class IACRule extends NeuronUpdateRule implements BoundedUpdateRule,
         // annual cog-sci meeting
 
         // Sum of the "active excitors" and "active inhibitors"
-        netInput = neuron.getInputValue();
+        double netInput = neuron.getInputValue();
         for (Synapse w : neuron.getFanIn()) {
             if (w.getSource().getActivation() > 0) {
                 netInput += (w.getStrength() * w.getSource().getActivation());
@@ -102,7 +99,7 @@ public class IACRule extends NeuronUpdateRule implements BoundedUpdateRule,
         }
 
         // Determine "effect" value.
-        effect = 0;
+        double effect = 0;
         if (netInput >= 0) {
             effect = (getUpperBound() - neuron.getActivation()) * netInput;
         } else {
@@ -110,7 +107,7 @@ public class IACRule extends NeuronUpdateRule implements BoundedUpdateRule,
         }
 
         // Update activation using Euler integration of main ODE
-        act = neuron.getActivation() + neuron.getNetwork().getTimeStep()
+        double act = neuron.getActivation() + neuron.getNetwork().getTimeStep()
                 * (effect - decay * (neuron.getActivation() - rest));
 
         if (addNoise) {
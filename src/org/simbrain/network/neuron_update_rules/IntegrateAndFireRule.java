@@ -19,6 +19,8 @@
 package org.simbrain.network.neuron_update_rules;
 
 import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.NeuronBatch;
+import org.simbrain.network.core.NeuronUpdateRule;
 import org.simbrain.network.core.SpikingNeuronUpdateRule;
 import org.simbrain.network.neuron_update_rules.interfaces.NoisyUpdateRule;
 import org.simbrain.util.randomizer.Randomizer;
@@ -130,6 +132,43 @@ public class IntegrateAndFireRule extends SpikingNeuronUpdateRule implements
         neuron.setBuffer(memPotential);
     }
 
+    @Override
+    public void update(NeuronBatch batch, int start, int end) {
+        Neuron[] neurons = batch.getNeurons();
+        NeuronUpdateRule[] rules = batch.getRules();
+        double[] activations = batch.getActivations();
+        double[] inputs = batch.getInputs();
+        double[] buffers = batch.getBuffers();
+        boolean[] spikes = batch.getSpikes();
+        double timeStep = batch.getTimeStep();
+        for (int i = start; i < end; i++) {
+            IntegrateAndFireRule rule = (IntegrateAndFireRule) rules[i];
+            double iSyn = inputs[i];
+            if (rule.addNoise) {
+                iSyn += rule.noiseGenerator.getRandom();
+            }
+            double memPotential = activations[i];
+            memPotential += timeStep
+                * (-(memPotential - rule.restingPotential) + rule.resistance
+                    * (iSyn + rule.backgroundCurrent))
+                / rule.timeConstant;
+            spikes[i] = memPotential >= rule.threshold;
+            if (spikes[i]) {
+                memPotential = rule.resetPotential;
+            }
+            rule.setHasSpiked(spikes[i], neurons[i]);
+            buffers[i] = memPotential;
+        }
+    }
+
+    /**
+     * Subclasses overriding {@link #update(Neuron)} are updated one at a time.
+     */
+    @Override
+    public boolean hasBatchUpdate() {
+        return getClass() == IntegrateAndFireRule.class;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -19,6 +19,8 @@
 package org.simbrain.network.neuron_update_rules;
 
 import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.NeuronBatch;
+import org.simbrain.network.core.NeuronUpdateRule;
 import org.simbrain.network.core.SpikingNeuronUpdateRule;
 import org.simbrain.network.neuron_update_rules.interfaces.NoisyUpdateRule;
 import org.simbrain.util.randomizer.Randomizer;
@@ -32,8 +34,8 @@ import org.simbrain.util.randomizer.Randomizer;
 public class IzhikevichRule extends SpikingNeuronUpdateRule implements
     NoisyUpdateRule {
 
-    /** Recovery. */
-    private double recovery;
+    /** Index of the recovery variable in each neuron's state. */
+    private static final int RECOVERY = 0;
 
     /** A. */
     private double a = .02;
@@ -79,15 +81,18 @@ public class IzhikevichRule extends SpikingNeuronUpdateRule implements
 
         return in;
     }
-    private double timeStep;
-    private double inputs = 0;
-    private double val;
+
+    @Override
+    public int getStateSize() {
+        return 1;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void update(final Neuron neuron) {
-        timeStep = neuron.getNetwork().getTimeStep();
+        double timeStep = neuron.getNetwork().getTimeStep();
         final double activation = neuron.getActivation();
         double inputs = 0;
         inputs = inputType.getInput(neuron);
@@ -95,9 +100,10 @@ public class IzhikevichRule extends SpikingNeuronUpdateRule implements
             inputs += noiseGenerator.getRandom();
         }
         inputs += iBg;
+        double recovery = neuron.getState(RECOVERY);
         recovery += (timeStep * (a * ((b * activation) - recovery)));
 
-        val = activation
+        double val = activation
             + (timeStep * (((.04 * (activation * activation))
                 + (5 * activation) + 140)
                 - recovery + inputs));
@@ -112,9 +118,52 @@ public class IzhikevichRule extends SpikingNeuronUpdateRule implements
             setHasSpiked(false, neuron);
         }
 
+        neuron.setState(RECOVERY, recovery);
         neuron.setBuffer(val);
     }
 
+    @Override
+    public void update(NeuronBatch batch, int start, int end) {
+        Neuron[] neurons = batch.getNeurons();
+        NeuronUpdateRule[] rules = batch.getRules();
+        double[] activations = batch.getActivations();
+        double[] in = batch.getInputs();
+        double[] buffers = batch.getBuffers();
+        boolean[] spikes = batch.getSpikes();
+        double dt = batch.getTimeStep();
+        for (int i = start; i < end; i++) {
+            IzhikevichRule rule = (IzhikevichRule) rules[i];
+            double activation = activations[i];
+            double input = in[i];
+            if (rule.addNoise) {
+                input += rule.noiseGenerator.getRandom();
+            }
+            input += rule.iBg;
+            double rec = neurons[i].getState(RECOVERY);
+            rec += (dt * (rule.a * ((rule.b * activation) - rec)));
+            double v = activation
+                + (dt * (((.04 * (activation * activation))
+                    + (5 * activation) + 140)
+                    - rec + input));
+            spikes[i] = v >= rule.threshold;
+            if (spikes[i]) {
+                v = rule.c;
+                rec += rule.d;
+            }
+            rule.setHasSpiked(spikes[i], neurons[i]);
+            neurons[i].setState(RECOVERY, rec);
+            buffers[i] = v;
+        }
+    }
+
+    /**
+     * Subclasses overriding {@link #update(Neuron)} are updated one at a time.
+     */
+    @Override
+    public boolean hasBatchUpdate() {
+        return getClass() == IzhikevichRule.class;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -20,6 +20,7 @@ package org.simbrain.network.neuron_update_rules;
 
 import org.simbrain.network.core.Network.TimeType;
 import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.NeuronBatch;
 import org.simbrain.network.core.NeuronUpdateRule;
 import org.simbrain.network.neuron_update_rules.interfaces.BiasedUpdateRule;
 import org.simbrain.network.neuron_update_rules.interfaces.BoundedUpdateRule;
@@ -105,6 +106,36 @@ public class LinearRule extends NeuronUpdateRule implements BiasedUpdateRule,
         neuron.setBuffer(val);
     }
 
+    @Override
+    public void update(NeuronBatch batch, int start, int end) {
+        NeuronUpdateRule[] rules = batch.getRules();
+        double[] inputs = batch.getInputs();
+        double[] buffers = batch.getBuffers();
+        for (int i = start; i < end; i++) {
+            LinearRule rule = (LinearRule) rules[i];
+            double val = (rule.slope * inputs[i]) + rule.bias;
+            if (rule.addNoise) {
+                val += rule.noiseGenerator.getRandom();
+            }
+            if (rule.clipping) {
+                if (val > rule.upperBound) {
+                    val = rule.upperBound;
+                } else if (val < rule.lowerBound) {
+                    val = rule.lowerBound;
+                }
+            }
+            buffers[i] = val;
+        }
+    }
+
+    /**
+     * Subclasses overriding {@link #update(Neuron)} are updated one at a time.
+     */
+    @Override
+    public boolean hasBatchUpdate() {
+        return getClass() == LinearRule.class;
+    }
+
     /**
      * {@inheritDoc}
      */
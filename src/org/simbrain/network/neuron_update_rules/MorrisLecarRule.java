@@ -47,8 +47,9 @@ public class MorrisLecarRule extends SpikingNeuronUpdateRule
 	/** Potassium channel constant 2. */
 	private double v_w2 = 17.4;
 	
-	/** Fraction of open potassium channels. */
-	private double w_K;
+	/** Index of the fraction of open potassium channels in each neuron's
+	 * state. */
+	private static final int W_K = 0;
 	
 	/** Potassium channel time constant/decay rate (s^-1). */
 	private double phi = 0.06667; // 1/15
@@ -73,14 +74,16 @@ public class MorrisLecarRule extends SpikingNeuronUpdateRule
 		double i_syn = inputType.getInput(neuron);
 		// Under normal circumstances this will cause no change.
 		double vMembrane = neuron.getActivation();
+		double w_K = neuron.getState(W_K);
 		
-		double dVdt = dVdt(vMembrane, i_syn);
+		double dVdt = dVdt(vMembrane, w_K, i_syn);
 		double dWdt = dWdt(vMembrane, w_K);
 		
 		double vmFut = vMembrane + dt * dVdt;
 		double wKFut = w_K + dt * dWdt;
-		vMembrane = vMembrane + (dt/2) * ((dVdt) + dVdt(vmFut, i_syn));
+		vMembrane = vMembrane + (dt/2) * ((dVdt) + dVdt(vmFut, w_K, i_syn));
 		w_K = w_K + (dt/2) * ((dWdt) + dWdt(vMembrane, wKFut));
+		neuron.setState(W_K, w_K);
 		
 		neuron.setSpkBuffer(vMembrane > threshold);
 		setHasSpiked(vMembrane > threshold, neuron);
@@ -89,7 +92,7 @@ public class MorrisLecarRule extends SpikingNeuronUpdateRule
 		
 	}
 	
-	private double dVdt(double vMembrane, double i_syn) {
+	private double dVdt(double vMembrane, double w_K, double i_syn) {
 		double i_Ca = g_Ca * membraneFunction(vMembrane)
 				* (vMembrane - vRest_Ca);
 		double i_K = g_K * w_K * (vMembrane - vRest_k);
@@ -119,6 +122,11 @@ public class MorrisLecarRule extends SpikingNeuronUpdateRule
 		return Math.cosh((vMembrane - v_w1) / (2 * v_w2));
 	}
 	
+	@Override
+	public int getStateSize() {
+		return 1;
+	}
+
 	@Override
 	public NeuronUpdateRule deepCopy() {
 		MorrisLecarRule cpy = new MorrisLecarRule();
@@ -137,7 +145,6 @@ public class MorrisLecarRule extends SpikingNeuronUpdateRule
 		cpy.vRest_Ca = this.vRest_Ca;
 		cpy.vRest_k = this.vRest_k;
 		cpy.vRest_L = this.vRest_L;
-		cpy.w_K = this.w_K;
 		cpy.noiseGenerator = new Randomizer(this.noiseGenerator);
 
 		return cpy;
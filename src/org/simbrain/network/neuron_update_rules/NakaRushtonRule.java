@@ -60,11 +60,8 @@ public class NakaRushtonRule extends NeuronUpdateRule implements
     /** Add noise to neuron. */
     private boolean addNoise = false;
 
-    /** Local variable. */
-    private double s = 0;
-
-    /** Local variable. */
-    private double a = 0;
+    /** Index of the adaptation term in each neuron's state. */
+    private static final int ADAPTATION = 0;
 
     /** The upper bound of the activity. */
     private double upperBound = DEFAULT_UPPER_BOUND;
@@ -112,13 +109,16 @@ public class NakaRushtonRule extends NeuronUpdateRule implements
         double val = neuron.getActivation();
 
         // Update adaptation term; see Spike, p. 81
+        double a = neuron.getState(ADAPTATION);
         if (useAdaptation) {
             a += (neuron.getNetwork().getTimeStep() / adaptationTimeConstant)
                 * (adaptationParameter * val - a);
         } else {
             a = 0;
         }
+        neuron.setState(ADAPTATION, a);
 
+        double s;
         if (p > 0) {
             s = (getUpperBound() * Math.pow(p, steepness))
                 / (Math.pow(semiSaturationConstant + a, steepness) + Math
@@ -256,14 +256,19 @@ public class NakaRushtonRule extends NeuronUpdateRule implements
     @Override
     public void clear(Neuron neuron) {
         super.clear(neuron);
-        a = 0;
-        s = 0;
+        neuron.setState(ADAPTATION, 0);
+    }
+
+    @Override
+    public int getStateSize() {
+        return 1;
     }
 
     @Override
     public String getToolTipText(Neuron neuron) {
         if (useAdaptation) {
-            return "" + neuron.getActivation() + " A = " + a;
+            return "" + neuron.getActivation() + " A = "
+                + neuron.getState(ADAPTATION);
         } else {
             return super.getToolTipText(neuron);
         }
@@ -18,16 +18,12 @@
  */
 package org.simbrain.network.neuron_update_rules;
 
-import java.util.ArrayList;
 import java.util.Random;
 
 import org.simbrain.network.core.Network.TimeType;
 import org.simbrain.network.core.Neuron;
 import org.simbrain.network.core.NeuronUpdateRule;
 import org.simbrain.network.core.Synapse;
-import org.simbrain.network.core.SynapseUpdateRule;
-import org.simbrain.network.listeners.NetworkEvent;
-import org.simbrain.network.listeners.SynapseListener;
 import org.simbrain.network.neuron_update_rules.interfaces.BiasedUpdateRule;
 import org.simbrain.util.math.SimbrainMath;
 
@@ -37,13 +33,28 @@ import org.simbrain.util.math.SimbrainMath;
  * book.
  */
 public class PointNeuronRule extends NeuronUpdateRule implements
-        SynapseListener, BiasedUpdateRule {
+        BiasedUpdateRule {
 
-    /** Excitatory inputs for connected Synapses. */
-    private ArrayList<Synapse> excitatoryInputs = new ArrayList<Synapse>();
+    /** Index of the excitatory conductance in each neuron's state. */
+    private static final int EXCITATORY_CONDUCTANCE = 0;
 
-    /** Inhibitory inputs for connected Synapses. */
-    private ArrayList<Synapse> inhibitoryInputs = new ArrayList<Synapse>();
+    /** Index of the inhibitory conductance in each neuron's state. */
+    private static final int INHIBITORY_CONDUCTANCE = 1;
+
+    /** Index of the membrane potential in each neuron's state. */
+    private static final int MEMBRANE_POTENTIAL = 2;
+
+    /** Index of the excitatory current in each neuron's state. */
+    private static final int EXCITATORY_CURRENT = 3;
+
+    /** Index of the inhibitory current in each neuron's state. */
+    private static final int INHIBITORY_CURRENT = 4;
+
+    /** Index of the leak current in each neuron's state. */
+    private static final int LEAK_CURRENT = 5;
+
+    /** Index of the net current in each neuron's state. */
+    private static final int NET_CURRENT = 6;
 
     /** Time average constant for updating the net current field. (p. 43-44) */
     private double netTimeConstant = 0.7;
@@ -54,21 +65,12 @@ public class PointNeuronRule extends NeuronUpdateRule implements
      */
     private double excitatoryMaxConductance = 0.4;
 
-    /** Excitatory conductance field. Proportion of channels open. */
-    private double excitatoryConductance;
-
-    /** Current inhibitory conductance. */
-    private double inhibitoryConductance;
-
     /** Maximal inhibitory conductance. */
     private double inhibitoryMaxConductance = 1;
 
     /** Default value for membrane potential. */
     private static final double DEFAULT_MEMBRANE_POTENTIAL = .15;
 
-    /** Membrane potential field. (p. 45) */
-    private double membranePotential = DEFAULT_MEMBRANE_POTENTIAL;
-
     /** Excitatory reversal potential field. (p. 45) */
     private double excitatoryReversal = 1;
 
@@ -83,24 +85,12 @@ public class PointNeuronRule extends NeuronUpdateRule implements
     /** Leak Conductance field. Proportion of channels open. (p. 49) */
     private double leakConductance = 1;
 
-    /** Net current field. Sum of all currents. */
-    private double netCurrent;
-
     /**
      * Time averaging constant for updating the membrane potential field. (p.
      * 37, Equation 2.7)
      */
     private double potentialTimeConstant = 0.1;
 
-    /** Excitatory current field. */
-    private double excitatoryCurrent;
-
-    /** Leak current field. */
-    private double leakCurrent;
-
-    /** Inhibitory current field. */
-    private double inhibitoryCurrent;
-
     /** Inhibitory reversal field. */
     private double inhibitoryReversal = 0.15;
 
@@ -194,49 +184,25 @@ public class PointNeuronRule extends NeuronUpdateRule implements
     };
 
     /**
-     * {@inheritDoc}
-     * @param neuron
+     * Formerly registered this rule for synapse events to keep lists of
+     * excitatory and inhibitory inputs. The inputs are now read from the fan
+     * in of the neuron being updated.
+     *
+     * @param neuron the neuron given this rule
+     * @deprecated nothing to initialize
      */
+    @Deprecated
     public void init(Neuron neuron) {
-        setInputLists(neuron);
-        if (neuron.getNetwork() != null) {
-            neuron.getNetwork().addSynapseListener(this);
-        }
-
     }
 
-    /**
-     * Update the lists of excitatory and inhibitory currents based on synapse
-     * values.
-     *
-     * @param neuron the neuron to set the input list for
-     */
-    private void setInputLists(Neuron neuron) {
-        excitatoryInputs.clear();
-        inhibitoryInputs.clear();
-
-        for (Synapse synapse : neuron.getFanIn()) {
-            addSynapseToList(synapse);
-        }
+    @Override
+    public int getStateSize() {
+        return 7;
     }
 
-    /**
-     * Adds a synapse to the appropriate internal list.
-     *
-     * @param synapse synapse to add.
-     */
-    private void addSynapseToList(Synapse synapse) {
-        if (excitatoryInputs.contains(synapse)) {
-            excitatoryInputs.remove(synapse);
-        }
-        if (inhibitoryInputs.contains(synapse)) {
-            inhibitoryInputs.remove(synapse);
-        }
-        if (synapse.getStrength() > 0) {
-            excitatoryInputs.add(synapse);
-        } else {
-            inhibitoryInputs.add(synapse);
-        }
+    @Override
+    public void initState(Neuron neuron) {
+        neuron.setState(MEMBRANE_POTENTIAL, DEFAULT_MEMBRANE_POTENTIAL);
     }
 
     /**
@@ -258,18 +224,13 @@ public class PointNeuronRule extends NeuronUpdateRule implements
 
     @Override
     public void clear(final Neuron neuron) {
-        membranePotential = DEFAULT_MEMBRANE_POTENTIAL;
         neuron.setActivation(0);
         neuron.setBuffer(0);
-        excitatoryConductance = 0;
-        inhibitoryConductance = 0;
+        for (int i = 0; i < getStateSize(); i++) {
+            neuron.setState(i, 0);
+        }
+        neuron.setState(MEMBRANE_POTENTIAL, DEFAULT_MEMBRANE_POTENTIAL);
         leakConductance = 0;
-        excitatoryCurrent = 0;
-        leakCurrent = 0;
-        inhibitoryCurrent = 0;
-        netCurrent = 0;
-        setInputLists(neuron); // Temporary hack to allow input lists to be
-        // updated by pressing "clear"
     }
 
     /**
@@ -277,28 +238,35 @@ public class PointNeuronRule extends NeuronUpdateRule implements
      */
     public void update(Neuron neuron) {
 
+        double membranePotential = neuron.getState(MEMBRANE_POTENTIAL);
+
         // Calculate the excitatory conductance (p. 44, eq. 2.16)
-        excitatoryConductance = (1 - netTimeConstant) * excitatoryConductance
-                + netTimeConstant * (getExcitatoryInputs());
+        double excitatoryConductance = (1 - netTimeConstant)
+                * neuron.getState(EXCITATORY_CONDUCTANCE) + netTimeConstant
+                * (getExcitatoryInputs(neuron));
 
         // Calculate the excitatory current (p. 37 equation 2.5)
-        excitatoryCurrent = excitatoryConductance * excitatoryMaxConductance
+        double excitatoryCurrent = excitatoryConductance
+                * excitatoryMaxConductance
                 * (membranePotential - excitatoryReversal);
 
         // Calculate the excitatory conductance using time averaging constant.
-        inhibitoryConductance = (1 - netTimeConstant) * inhibitoryConductance
-                + netTimeConstant * (getInhibitoryInputs());
+        double inhibitoryConductance = (1 - netTimeConstant)
+                * neuron.getState(INHIBITORY_CONDUCTANCE) + netTimeConstant
+                * (getInhibitoryInputs(neuron));
 
         // Calculate the inhibitory current.
-        inhibitoryCurrent = inhibitoryConductance * inhibitoryMaxConductance
+        double inhibitoryCurrent = inhibitoryConductance
+                * inhibitoryMaxConductance
                 * (membranePotential - inhibitoryReversal);
 
         // Calculate the leak current (p. 37 eq. 2.5)
-        leakCurrent = leakConductance * leakMaxConductance
+        double leakCurrent = leakConductance * leakMaxConductance
                 * (membranePotential - leakReversal);
 
         // Calculate the net current (p. 37 eq. 2.6)
-        netCurrent = leakCurrent + excitatoryCurrent + inhibitoryCurrent;
+        double netCurrent = leakCurrent + excitatoryCurrent
+                + inhibitoryCurrent;
 
         // Calculate the membrane potential given net current. (p.37 eq. 2.7)
         membranePotential += -potentialTimeConstant * netCurrent;
@@ -331,6 +299,14 @@ public class PointNeuronRule extends NeuronUpdateRule implements
             neuron.setBuffer(membranePotential);
         }
 
+        neuron.setState(EXCITATORY_CONDUCTANCE, excitatoryConductance);
+        neuron.setState(INHIBITORY_CONDUCTANCE, inhibitoryConductance);
+        neuron.setState(MEMBRANE_POTENTIAL, membranePotential);
+        neuron.setState(EXCITATORY_CURRENT, excitatoryCurrent);
+        neuron.setState(INHIBITORY_CURRENT, inhibitoryCurrent);
+        neuron.setState(LEAK_CURRENT, leakCurrent);
+        neuron.setState(NET_CURRENT, netCurrent);
+
         // Display current values of variables for diagnostics.
         // printState(neuron);
     }
@@ -359,10 +335,11 @@ public class PointNeuronRule extends NeuronUpdateRule implements
      * Returns the inhibitory conductance that would set this point neuron's
      * voltage at its threshold potential. See M/R p. 101, equation 3.2
      *
+     * @param neuron the neuron to consider
      * @return the value of that equation
      */
-    public double getInhibitoryThresholdConductance() {
-        double excitatoryTerm = excitatoryConductance
+    public double getInhibitoryThresholdConductance(Neuron neuron) {
+        double excitatoryTerm = neuron.getState(EXCITATORY_CONDUCTANCE)
                 * excitatoryMaxConductance
                 * (excitatoryReversal - thresholdPotential);
         double leakTerm = leakConductance * leakMaxConductance
@@ -372,16 +349,31 @@ public class PointNeuronRule extends NeuronUpdateRule implements
                 / (thresholdPotential - inhibitoryReversal);
     }
 
+    /**
+     * @return the inhibitory threshold conductance of the neuron given this
+     *         rule
+     * @deprecated kept by each neuron; use
+     *             {@link #getInhibitoryThresholdConductance(Neuron)}
+     */
+    @Deprecated
+    public double getInhibitoryThresholdConductance() {
+        return getNeuron() == null ? 0
+                : getInhibitoryThresholdConductance(getNeuron());
+    }
+
     @Override
     public String getToolTipText(final Neuron neuron) {
         return "Activation: " + neuron.getActivation()
                 + "\n\nMembrane Potential: "
-                + SimbrainMath.roundDouble(membranePotential, 2)
-                + "\n\nNet Current: " + SimbrainMath.roundDouble(netCurrent, 2)
+                + SimbrainMath.roundDouble(
+                        neuron.getState(MEMBRANE_POTENTIAL), 2)
+                + "\n\nNet Current: "
+                + SimbrainMath.roundDouble(neuron.getState(NET_CURRENT), 2)
                 + "\n\nExcitatory current:  "
-                + SimbrainMath.roundDouble(excitatoryCurrent, 2)
+                + SimbrainMath.roundDouble(
+                        neuron.getState(EXCITATORY_CURRENT), 2)
                 + "\n \nLeak current: "
-                + SimbrainMath.roundDouble(leakCurrent, 2);
+                + SimbrainMath.roundDouble(neuron.getState(LEAK_CURRENT), 2);
     }
 
     // TODO: Never Used Locally: Schedule for removal?
@@ -409,13 +401,14 @@ public class PointNeuronRule extends NeuronUpdateRule implements
      * Returns net input to this neuron (source activations times weights), from
      * excitatory sources only.
      *
+     * @param neuron the neuron to consider
      * @return net input
      */
-    private double getExcitatoryInputs() {
+    private double getExcitatoryInputs(Neuron neuron) {
 
         double retVal = 0;
-        if (excitatoryInputs.size() > 0) {
-            for (Synapse synapse : excitatoryInputs) {
+        for (Synapse synapse : neuron.getFanIn()) {
+            if (synapse.getStrength() > 0) {
                 Neuron source = synapse.getSource();
                 // Will not work with spiking, or negative activations?
                 retVal += source.getActivation() * synapse.getStrength();
@@ -428,13 +421,14 @@ public class PointNeuronRule extends NeuronUpdateRule implements
      * Returns net input to this neuron (source activations times weights), from
      * inhibitory sources only.
      *
+     * @param neuron the neuron to consider
      * @return net input
      */
-    private double getInhibitoryInputs() {
+    private double getInhibitoryInputs(Neuron neuron) {
 
         double retVal = 0;
-        if (inhibitoryInputs.size() > 0) {
-            for (Synapse synapse : inhibitoryInputs) {
+        for (Synapse synapse : neuron.getFanIn()) {
+            if (synapse.getStrength() <= 0) {
                 Neuron source = synapse.getSource();
                 // Will not work with spiking, or negative activations?
                 retVal += source.getActivation() * synapse.getStrength();
@@ -487,31 +481,77 @@ public class PointNeuronRule extends NeuronUpdateRule implements
     }
 
     /**
-     * @return the excitatoryConductance
+     * @param neuron the neuron to consider
+     * @return the excitatoryConductance of the neuron
      */
-    public double getExcitatoryConductance() {
-        return excitatoryConductance;
+    public double getExcitatoryConductance(Neuron neuron) {
+        return neuron.getState(EXCITATORY_CONDUCTANCE);
     }
 
     /**
+     * @param neuron the neuron to change
      * @param excitatoryConductance the excitatoryConductance to set
      */
+    public void setExcitatoryConductance(Neuron neuron, double excitatoryConductance) {
+        neuron.setState(EXCITATORY_CONDUCTANCE, excitatoryConductance);
+    }
+
+    /**
+     * @return the excitatoryConductance of the neuron given this rule
+     * @deprecated kept by each neuron; use {@link #getExcitatoryConductance(Neuron)}
+     */
+    @Deprecated
+    public double getExcitatoryConductance() {
+        return getNeuron() == null ? 0 : getExcitatoryConductance(getNeuron());
+    }
+
+    /**
+     * @param excitatoryConductance the excitatoryConductance to set on the neuron given this rule
+     * @deprecated kept by each neuron; use
+     *             {@link #setExcitatoryConductance(Neuron, double)}
+     */
+    @Deprecated
     public void setExcitatoryConductance(double excitatoryConductance) {
-        this.excitatoryConductance = excitatoryConductance;
+        if (getNeuron() != null) {
+            setExcitatoryConductance(getNeuron(), excitatoryConductance);
+        }
     }
 
     /**
-     * @return the membranePotential
+     * @param neuron the neuron to consider
+     * @return the membranePotential of the neuron
      */
-    public double getMembranePotential() {
-        return membranePotential;
+    public double getMembranePotential(Neuron neuron) {
+        return neuron.getState(MEMBRANE_POTENTIAL);
     }
 
     /**
+     * @param neuron the neuron to change
      * @param membranePotential the membranePotential to set
      */
+    public void setMembranePotential(Neuron neuron, double membranePotential) {
+        neuron.setState(MEMBRANE_POTENTIAL, membranePotential);
+    }
+
+    /**
+     * @return the membranePotential of the neuron given this rule
+     * @deprecated kept by each neuron; use {@link #getMembranePotential(Neuron)}
+     */
+    @Deprecated
+    public double getMembranePotential() {
+        return getNeuron() == null ? DEFAULT_MEMBRANE_POTENTIAL : getMembranePotential(getNeuron());
+    }
+
+    /**
+     * @param membranePotential the membranePotential to set on the neuron given this rule
+     * @deprecated kept by each neuron; use
+     *             {@link #setMembranePotential(Neuron, double)}
+     */
+    @Deprecated
     public void setMembranePotential(double membranePotential) {
-        this.membranePotential = membranePotential;
+        if (getNeuron() != null) {
+            setMembranePotential(getNeuron(), membranePotential);
+        }
     }
 
     /**
@@ -640,13 +680,6 @@ public class PointNeuronRule extends NeuronUpdateRule implements
         this.refractoryPotential = refractoryPotential;
     }
 
-    /**
-     * @param excitatoryInputs the excitatoryInputs to set
-     */
-    public void setExcitatoryInputs(ArrayList<Synapse> excitatoryInputs) {
-        this.excitatoryInputs = excitatoryInputs;
-    }
-
     /**
      * @return the inhibitoryReversal
      */
@@ -662,17 +695,40 @@ public class PointNeuronRule extends NeuronUpdateRule implements
     }
 
     /**
-     * @return the excitatoryCurrent
+     * @param neuron the neuron to consider
+     * @return the excitatoryCurrent of the neuron
      */
-    public double getExcitatoryCurrent() {
-        return excitatoryCurrent;
+    public double getExcitatoryCurrent(Neuron neuron) {
+        return neuron.getState(EXCITATORY_CURRENT);
     }
 
     /**
+     * @param neuron the neuron to change
      * @param excitatoryCurrent the excitatoryCurrent to set
      */
+    public void setExcitatoryCurrent(Neuron neuron, double excitatoryCurrent) {
+        neuron.setState(EXCITATORY_CURRENT, excitatoryCurrent);
+    }
+
+    /**
+     * @return the excitatoryCurrent of the neuron given this rule
+     * @deprecated kept by each neuron; use {@link #getExcitatoryCurrent(Neuron)}
+     */
+    @Deprecated
+    public double getExcitatoryCurrent() {
+        return getNeuron() == null ? 0 : getExcitatoryCurrent(getNeuron());
+    }
+
+    /**
+     * @param excitatoryCurrent the excitatoryCurrent to set on the neuron given this rule
+     * @deprecated kept by each neuron; use
+     *             {@link #setExcitatoryCurrent(Neuron, double)}
+     */
+    @Deprecated
     public void setExcitatoryCurrent(double excitatoryCurrent) {
-        this.excitatoryCurrent = excitatoryCurrent;
+        if (getNeuron() != null) {
+            setExcitatoryCurrent(getNeuron(), excitatoryCurrent);
+        }
     }
 
     /**
@@ -690,17 +746,40 @@ public class PointNeuronRule extends NeuronUpdateRule implements
     }
 
     /**
-     * @return the inhibitoryConductance
+     * @param neuron the neuron to consider
+     * @return the inhibitoryConductance of the neuron
      */
-    public double getInhibitoryConductance() {
-        return inhibitoryConductance;
+    public double getInhibitoryConductance(Neuron neuron) {
+        return neuron.getState(INHIBITORY_CONDUCTANCE);
     }
 
     /**
+     * @param neuron the neuron to change
      * @param inhibitoryConductance the inhibitoryConductance to set
      */
+    public void setInhibitoryConductance(Neuron neuron, double inhibitoryConductance) {
+        neuron.setState(INHIBITORY_CONDUCTANCE, inhibitoryConductance);
+    }
+
+    /**
+     * @return the inhibitoryConductance of the neuron given this rule
+     * @deprecated kept by each neuron; use {@link #getInhibitoryConductance(Neuron)}
+     */
+    @Deprecated
+    public double getInhibitoryConductance() {
+        return getNeuron() == null ? 0 : getInhibitoryConductance(getNeuron());
+    }
+
+    /**
+     * @param inhibitoryConductance the inhibitoryConductance to set on the neuron given this rule
+     * @deprecated kept by each neuron; use
+     *             {@link #setInhibitoryConductance(Neuron, double)}
+     */
+    @Deprecated
     public void setInhibitoryConductance(double inhibitoryConductance) {
-        this.inhibitoryConductance = inhibitoryConductance;
+        if (getNeuron() != null) {
+            setInhibitoryConductance(getNeuron(), inhibitoryConductance);
+        }
     }
 
     /**
@@ -731,48 +810,6 @@ public class PointNeuronRule extends NeuronUpdateRule implements
         this.bias = bias;
     }
 
-    /**
-     * {@inheritDoc}
-     */
-    public void synapseAdded(NetworkEvent<Synapse> networkEvent) {
-        Synapse synapse = networkEvent.getObject();
-        if (synapse.getTarget().getUpdateRule() == this) {
-            addSynapseToList(synapse);
-        }
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    public void synapseChanged(NetworkEvent<Synapse> networkEvent) {
-        Synapse synapse = networkEvent.getObject();
-        if (synapse.getTarget().getUpdateRule() == this) {
-            addSynapseToList(synapse);
-        }
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    public void synapseRemoved(NetworkEvent<Synapse> networkEvent) {
-        Synapse synapse = networkEvent.getObject();
-        if (synapse.getTarget().getUpdateRule() == this) {
-            if (excitatoryInputs.contains(synapse)) {
-                excitatoryInputs.remove(synapse);
-            }
-            if (inhibitoryInputs.contains(synapse)) {
-                inhibitoryInputs.remove(synapse);
-            }
-        }
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    public void synapseTypeChanged(NetworkEvent<SynapseUpdateRule> networkEvent) {
-        // No implementation
-    }
-
     @Override
     public String getDescription() {
         return "Point Neuron";
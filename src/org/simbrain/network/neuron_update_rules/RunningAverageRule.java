@@ -34,8 +34,8 @@ public class RunningAverageRule extends NeuronUpdateRule {
     /** Rate constant variable. */
     private double rateConstant = .5;
 
-    /** Last activation. */
-    private double val = 0;
+    /** Index of the last average in each neuron's state. */
+    private static final int LAST_VALUE = 0;
 
     /**
      * {@inheritDoc}
@@ -66,11 +66,17 @@ public class RunningAverageRule extends NeuronUpdateRule {
      */
     public void update(Neuron neuron) {
         // "val" on right is activation at last time step
-        val = rateConstant * inputType.getInput(neuron) + (1 - rateConstant)
-            * val;
+        double val = rateConstant * inputType.getInput(neuron)
+            + (1 - rateConstant) * neuron.getState(LAST_VALUE);
+        neuron.setState(LAST_VALUE, val);
         neuron.setBuffer(val);
     }
 
+    @Override
+    public int getStateSize() {
+        return 1;
+    }
+
     /**
      * @return Rate constant.
      */
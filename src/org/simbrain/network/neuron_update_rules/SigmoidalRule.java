@@ -20,6 +20,8 @@ package org.simbrain.network.neuron_update_rules;
 
 import org.simbrain.network.core.Network.TimeType;
 import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.NeuronBatch;
+import org.simbrain.network.core.NeuronUpdateRule;
 import org.simbrain.util.math.SquashingFunction;
 import org.simbrain.util.randomizer.Randomizer;
 
@@ -76,6 +78,30 @@ public class SigmoidalRule extends AbstractSigmoidalRule {
         neuron.setBuffer(val);
     }
 
+    @Override
+    public void update(NeuronBatch batch, int start, int end) {
+        NeuronUpdateRule[] rules = batch.getRules();
+        double[] inputs = batch.getInputs();
+        double[] buffers = batch.getBuffers();
+        for (int i = start; i < end; i++) {
+            SigmoidalRule rule = (SigmoidalRule) rules[i];
+            double val = inputs[i] + rule.bias;
+            if (rule.addNoise) {
+                val += rule.noiseGenerator.getRandom();
+            }
+            buffers[i] = rule.sFunction.valueOf(val, rule.getUpperBound(),
+                    rule.getLowerBound(), rule.getSlope());
+        }
+    }
+
+    /**
+     * Subclasses overriding {@link #update(Neuron)} are updated one at a time.
+     */
+    @Override
+    public boolean hasBatchUpdate() {
+        return getClass() == SigmoidalRule.class;
+    }
+
     @Override
     public void contextualIncrement(Neuron n) {
         double act = n.getActivation();
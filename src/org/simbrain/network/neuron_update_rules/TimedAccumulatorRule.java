@@ -12,20 +12,20 @@ public class TimedAccumulatorRule extends SpikingThresholdRule {
 
     public static final double DEFAULT_KAPPA = 0.9;
     
+    private static final int CURRENT_STATE = 0;
+
+    private static final int EXP_SUM = 1;
+
+    private static final int FAN_IN_SIZE = 2;
+
     private int maxState = 10;
     
-    private int currentState;
-    
     private double baseProb = 0.00001;
     
     private double b = 1.6;
     
     private double kappa = DEFAULT_KAPPA;
     
-    private double expSum = 0;
-    
-    private int fanInSize = 0;
-    
     @Override
     public TimeType getTimeType() {
         return TimeType.DISCRETE;
@@ -33,23 +33,27 @@ public class TimedAccumulatorRule extends SpikingThresholdRule {
 
     @Override
     public void update(Neuron neuron) {
+        int currentState = getCurrentState(neuron);
         if (currentState >= 1) {
             currentState++;
             if (currentState > maxState) {
                 currentState = 0;
             }
+            setCurrentState(neuron, currentState);
             neuron.setBuffer(currentState);
             neuron.setSpkBuffer(false);
             setHasSpiked(false, neuron);
             return;
         }
         if (ThreadLocalRandom.current().nextDouble() < baseProb) {
-            currentState++;
+            setCurrentState(neuron, currentState + 1);
             neuron.setBuffer(1);
             neuron.setSpkBuffer(true);
             setHasSpiked(true, neuron);
             return;
         }
+        int fanInSize = (int) neuron.getState(FAN_IN_SIZE);
+        double expSum = neuron.getState(EXP_SUM);
         for (int i = 0; i < fanInSize; i++) {
             // Skip if pre-synaptic node is off...
             if (neuron.getFanIn().get(i).getSource().getActivation() == 1) {
@@ -58,7 +62,7 @@ public class TimedAccumulatorRule extends SpikingThresholdRule {
                 // then set this to a 1 state from a 0 with that probability.
                 if (ThreadLocalRandom.current().nextDouble() < kappa
                 		* neuron.getFanIn().get(i).getPsr() / expSum) {
-                    currentState++;
+                    setCurrentState(neuron, currentState + 1);
                     neuron.setBuffer(1);
                     neuron.setSpkBuffer(true);
                     setHasSpiked(true, neuron);
@@ -72,24 +76,29 @@ public class TimedAccumulatorRule extends SpikingThresholdRule {
     }
     
     public void init(Neuron neuron) {
-    	fanInSize = neuron.getFanIn().size();
+        neuron.setState(FAN_IN_SIZE, neuron.getFanIn().size());
         // Obtain the exponential sum for the denominator
+        double expSum = neuron.getState(EXP_SUM);
         for (Synapse s : neuron.getFanIn()) {
             double expVal = Math.exp(-s.getStrength() * b);
             expSum += expVal;
             s.setPsr(expVal); // Store the exp val of the weight for later use
         }
+        neuron.setState(EXP_SUM, expSum);
+    }
+
+    @Override
+    public int getStateSize() {
+        return 3;
     }
 
     @Override
     public TimedAccumulatorRule deepCopy() {
         TimedAccumulatorRule tar = new TimedAccumulatorRule();
         tar.setBaseProb(baseProb);
-        tar.setCurrentState(currentState);
         tar.setMaxState(maxState);
         tar.setKappa(kappa);
         tar.setIncrement(getIncrement());
-        tar.setLastSpikeTime(getLastSpikeTime());
         return tar;
     }
 
@@ -106,12 +115,33 @@ public class TimedAccumulatorRule extends SpikingThresholdRule {
         this.maxState = maxState;
     }
 
+    public int getCurrentState(Neuron neuron) {
+        return (int) neuron.getState(CURRENT_STATE);
+    }
+
+    public void setCurrentState(Neuron neuron, int currentState) {
+        neuron.setState(CURRENT_STATE, currentState);
+    }
+
+    /**
+     * @return the current state of the neuron given this rule
+     * @deprecated kept by each neuron; use {@link #getCurrentState(Neuron)}
+     */
+    @Deprecated
     public int getCurrentState() {
-        return currentState;
+        return getNeuron() == null ? 0 : getCurrentState(getNeuron());
     }
 
+    /**
+     * @param currentState the state to set on the neuron given this rule
+     * @deprecated kept by each neuron; use
+     *             {@link #setCurrentState(Neuron, int)}
+     */
+    @Deprecated
     public void setCurrentState(int currentState) {
-        this.currentState = currentState;
+        if (getNeuron() != null) {
+            setCurrentState(getNeuron(), currentState);
+        }
     }
 
     public double getBaseProb() {
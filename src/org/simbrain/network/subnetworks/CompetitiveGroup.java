@@ -70,6 +70,9 @@ public class CompetitiveGroup extends NeuronGroup {
     /** Winner value. */
     private int winner;
 
+    /** Finds the winner. */
+    private transient WinnerSelector selector;
+
     /** Current update method. */
     private UpdateMethod updateMethod = UpdateMethod.RUMM_ZIPSER;
 
@@ -152,19 +155,26 @@ public class CompetitiveGroup extends NeuronGroup {
 
         super.update();
 
-        max = 0;
-        winner = 0;
-
-        // Determine Winner
         for (int i = 0; i < getNeuronList().size(); i++) {
             Neuron n = getNeuronList().get(i);
             if (!n.isClamped()) {
                 n.update();
             }
-            if (n.getActivation() > max) {
-                max = n.getActivation();
-                winner = i;
-            }
+        }
+
+        // Determine Winner: the first neuron with the highest positive
+        // activation, or the first neuron if none is positive
+        if (selector == null) {
+            selector = new WinnerSelector();
+        }
+        double[] activations = selector.evaluate(getNeuronList(),
+                WinnerSelector.ACTIVATION);
+        winner = selector.argMax(activations, getNeuronList().size());
+        if (winner < 0 || !(activations[winner] > 0)) {
+            winner = 0;
+            max = 0;
+        } else {
+            max = activations[winner];
         }
 
         // Update weights on winning neuron
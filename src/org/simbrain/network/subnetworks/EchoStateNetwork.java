@@ -34,6 +34,7 @@ import org.simbrain.network.groups.SynapseGroup;
 import org.simbrain.network.neuron_update_rules.LinearRule;
 import org.simbrain.network.neuron_update_rules.SigmoidalRule;
 import org.simbrain.network.trainers.LMSOffline;
+import org.simbrain.network.trainers.StreamingLeastSquares;
 import org.simbrain.network.trainers.Trainable;
 import org.simbrain.network.trainers.Trainer;
 import org.simbrain.network.trainers.TrainerListener;
@@ -134,6 +135,20 @@ public class EchoStateNetwork extends Subnetwork {
      */
     private double[][] targetData;
 
+    /**
+     * Number of rows of input data per sequence, each of which is harvested
+     * from the reservoir's state when training begins. 0 means the input data
+     * is one sequence.
+     */
+    private int sequenceLength;
+
+    /**
+     * Number of rows at the start of each sequence which are run to let the
+     * reservoir settle but are not harvested. If negative, each sequence is
+     * run once in full before it is harvested.
+     */
+    private int washout = -1;
+
     /**
      * Constructor with size of layers specified.
      *
@@ -214,8 +229,7 @@ public class EchoStateNetwork extends Subnetwork {
         addNeuronGroup(neuronGroup);
         addSynapseGroup(synapseGroup);
         // Scale the reservoir's weights to have the desired spectral radius
-        SimnetUtils.scaleEigenvalue(reservoirLayer.getNeuronList(),
-            reservoirLayer.getNeuronList(), spectralRadius);
+        SimnetUtils.scaleEigenvalue(synapseGroup, spectralRadius);
     }
 
     /**
@@ -361,20 +375,17 @@ public class EchoStateNetwork extends Subnetwork {
             }
         }
 
+        // Harvest the reservoir when the trainer is applied if it can be
+        // done with arrays
+        if (ReservoirHarvester.canHarvest(reservoirLayer.getNeuronList())) {
+            return getHarvestingTrainer(full);
+        }
+
         // Handle non-linearities in the outputs.
         // If output layer neurons are sigmoidal, transform the desired
         // output to the inverse of the sigmoidal, so that when it's put
         // in to the sigmoidal it will produce the desired output.
-        for (Neuron n : outputLayer.getNeuronList()) {
-            if (n.getUpdateRule() instanceof SigmoidalRule) {
-                for (int i = 0; i < targetData.length; i++) {
-                    int col = outputLayer.getNeuronList().indexOf(n);
-                    targetData[i][col] =
-                        ((SigmoidalRule) n.getUpdateRule())
-                            .getInverse(targetData[i][col]);
-                }
-            }
-        }
+        targetData = invertTargets(targetData);
 
         // Make the training set by harvesting reservoir states
         final double[][] harvestedData = harvestData();
@@ -386,7 +397,8 @@ public class EchoStateNetwork extends Subnetwork {
         // System.out.println(Utils.doubleMatrixToString(mainInputData));
         final TrainingSet trainingSet = new TrainingSet();
         trainingSet.setInputData(harvestedData);
-        trainingSet.setTargetData(targetData);
+        trainingSet.setTargetData(ReservoirHarvester.harvestedTargets(
+            targetData, sequenceLength, washout));
 
         // Make Trainable object
         Trainable trainable = new Trainable() {
@@ -422,6 +434,122 @@ public class EchoStateNetwork extends Subnetwork {
 
     }
 
+    /**
+     * Return a trainer which harvests reservoir states with a
+     * {@link ReservoirHarvester} each time it is applied. With the
+     * Wiener-Hopf solution and no added noise the states are streamed into
+     * the solver without building a state matrix.
+     *
+     * @param full the neurons whose states are harvested
+     * @return the trainer
+     */
+    private LMSOffline getHarvestingTrainer(final List<Neuron> full) {
+        final TrainingSet trainingSet = new TrainingSet();
+        final Trainable trainable = new Trainable() {
+
+            @Override
+            public List<Neuron> getInputNeurons() {
+                return full;
+            }
+
+            @Override
+            public List<Neuron> getOutputNeurons() {
+                return getOutputLayer().getNeuronList();
+            }
+
+            @Override
+            public TrainingSet getTrainingSet() {
+                return trainingSet;
+            }
+
+            @Override
+            public void initNetwork() {
+            }
+
+            @Override
+            public Group getNetwork() {
+                return EchoStateNetwork.this;
+            }
+
+        };
+        return new LMSOffline(trainable) {
+            @Override
+            public void apply() throws DataNotInitializedException {
+                if (inputData == null) {
+                    throw new DataNotInitializedException(
+                        "Input data not initalized");
+                }
+                if (targetData == null) {
+                    throw new DataNotInitializedException(
+                        "Target data not initalized");
+                }
+                // Teacher forcing uses the transformed targets, as
+                // harvestData does
+                double[][] targets = invertTargets(copy(targetData));
+                ReservoirHarvester harvester = new ReservoirHarvester(
+                    inputLayer.getNeuronList(),
+                    reservoirLayer.getNeuronList(),
+                    backWeights ? outputLayer.getNeuronList()
+                        : new ArrayList<Neuron>());
+                harvester.setHarvestInputs(directInOutWeights);
+                harvester.setHarvestOutputs(recurrentOutWeights);
+                harvester.setSequenceLength(sequenceLength);
+                harvester.setWashout(washout);
+                harvester.setNoise(noise ? noiseGenerator : null);
+                if (getSolutionType().getCurrentObject()
+                        == SolutionType.WIENER_HOPF && !isNoiseAdded()) {
+                    StreamingLeastSquares correlations =
+                        new StreamingLeastSquares(full.size(), numOutputs);
+                    harvester.harvest(inputData, targets, correlations);
+                    apply(correlations);
+                } else {
+                    // LMSOffline transforms the targets itself
+                    trainingSet.setInputData(harvester.harvest(inputData,
+                        targets));
+                    trainingSet.setTargetData(ReservoirHarvester
+                        .harvestedTargets(targetData, sequenceLength,
+                            washout));
+                    super.apply();
+                }
+            }
+        };
+    }
+
+    /**
+     * If output layer neurons are sigmoidal, transform target values in place
+     * to the inverse of the sigmoidal, so that when they are put in to the
+     * sigmoidal they will produce the desired output. Warning: problems can
+     * occur here if the bounds of the sigmoidal are not set properly.
+     *
+     * @param targets target rows
+     * @return targets
+     */
+    private double[][] invertTargets(final double[][] targets) {
+        List<Neuron> outputs = outputLayer.getNeuronList();
+        for (int col = 0; col < outputs.size(); col++) {
+            NeuronUpdateRule rule = outputs.get(col).getUpdateRule();
+            if (rule instanceof SigmoidalRule) {
+                for (int i = 0; i < targets.length; i++) {
+                    targets[i][col] = ((SigmoidalRule) rule)
+                        .getInverse(targets[i][col]);
+                }
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * @param data some rows
+     * @return a copy of the rows
+     */
+    private static double[][] copy(final double[][] data) {
+        double[][] ret = new double[data.length][];
+        for (int i = 0; i < data.length; i++) {
+            ret[i] = data[i].clone();
+        }
+        return ret;
+    }
+
     /**
      * A general method for harvesting state data for an arbitrary Echo-State
      * Network. This method iterates through each row of input and teacher data
@@ -429,6 +557,10 @@ public class EchoStateNetwork extends Subnetwork {
      * and updates the reservoir. Depending on the ESN's un-frozen connectivity
      * the resulting return matrix will have rows consisting of concatenated
      * input, reservoir, and (teacher-forced) output states in that order.
+     * Each sequence (see {@link #setSequenceLength(int)}) starts from the
+     * reservoir's state when harvesting begins, and its first rows are
+     * discarded according to {@link #setWashout(int)}. Used when the
+     * reservoir cannot be harvested by {@link ReservoirHarvester}.
      *
      * @return a matrix of data to be used for training
      */
@@ -447,75 +579,102 @@ public class EchoStateNetwork extends Subnetwork {
         }
 
         // State matrix
-        double[][] returnMatrix = new double[inputData.length][columnNumber];
-
-        boolean harvest = false;
-
-        // Two full passes over the data, one where states are being harvested
-        // and one where internal dynamics are being allowed to settle.
-        for (int t = 0; t < 2; t++) {
+        double[][] returnMatrix = new double[ReservoirHarvester
+            .harvestedTargets(inputData, sequenceLength, washout).length]
+            [columnNumber];
+        int length = sequenceLength > 0 ? sequenceLength : inputData.length;
+        int skip = Math.max(0, washout);
+        int harvestRow = 0;
+
+        // Every sequence starts from the current state of the reservoir
+        List<Neuron> resNeurons = getReservoirLayer().getNeuronList();
+        double[] initialState = new double[resNeurons.size()];
+        for (int i = 0; i < initialState.length; i++) {
+            initialState[i] = resNeurons.get(i).getActivation();
+        }
 
-            // Iterate through each row of input data
-            for (int row = 0; row < inputData.length; row++) {
+        for (int start = 0; start < inputData.length; start += length) {
+            int end = Math.min(start + length, inputData.length);
+            for (int i = 0; i < initialState.length; i++) {
+                resNeurons.get(i).setActivation(initialState[i]);
+            }
 
-                int col = 0;
+            boolean harvest = washout >= 0;
+
+            // Without a washout, two full passes over the data, one where
+            // internal dynamics are being allowed to settle and one where
+            // states are being harvested.
+            for (int t = harvest ? 1 : 0; t < 2; t++) {
+
+                // Iterate through each row of input data
+                for (int row = start; row < end; row++) {
+
+                    int col = 0;
+                    boolean harvestRowNow = harvest && row - start >= skip;
+
+                    // Clamp input neurons based on input data
+                    int inCol = 0;
+                    for (Neuron neuron : getInputLayer().getNeuronList()) {
+                        double clampValue = inputData[row][inCol++];
+                        neuron.forceSetActivation(clampValue);
+                        if (directInOutWeights && harvestRowNow) {
+                            // Add input states to state matrix if direct in
+                            // to out connections are desired
+                            returnMatrix[harvestRow][col] =
+                                neuron.getActivation();
+                            col++;
+                        }
 
-                // Clamp input neurons based on input data
-                for (Neuron neuron : getInputLayer().getNeuronList()) {
-                    double clampValue = inputData[row][col];
-                    neuron.setActivation(clampValue);
-                    if (directInOutWeights && harvest) {
-                        // Add input states to state matrix if direct in to out
-                        // connections are desired
-                        returnMatrix[row][col] = neuron.getActivation();
-                        col++;
                     }
 
-                }
-
-                if (backWeights) {
-                    int count = 0;
-                    double clampValue = 0.5;
-                    for (Neuron neuron : getOutputLayer().getNeuronList()) {
-                        // Teacher forcing
-                        if (row > 0) {
-                            clampValue = targetData[row - 1][count];
+                    if (backWeights) {
+                        int count = 0;
+                        double clampValue = 0.5;
+                        for (Neuron neuron : getOutputLayer().getNeuronList()) {
+                            // Teacher forcing
+                            if (row > start) {
+                                clampValue = targetData[row - 1][count];
+                            }
+                            neuron.setActivation(clampValue);
+                            count++;
                         }
-                        neuron.setActivation(clampValue);
-                        count++;
                     }
-                }
-
-                // Update the reservoir: handles teacher-forced back-weights
-                for (Neuron n : getReservoirLayer().getNeuronList()) {
-                    n.update();
-                }
-                for (Neuron n : getReservoirLayer().getNeuronList()) {
-                    double val = n.getBuffer();
 
-                    if (noise) {
-                        n.setActivation(val + reservoirNoise());
-                    } else {
-                        n.setActivation(val);
+                    // Update the reservoir: handles teacher-forced
+                    // back-weights
+                    for (Neuron n : resNeurons) {
+                        n.update();
                     }
+                    for (Neuron n : resNeurons) {
+                        double val = n.getBuffer();
 
-                    if (harvest) {
-                        returnMatrix[row][col] = n.getActivation();
-                    }
-                    col++;
-                }
+                        if (noise) {
+                            n.setActivation(val + reservoirNoise());
+                        } else {
+                            n.setActivation(val);
+                        }
 
-                // Add output states to state matrix if there are recurrent
-                // outputs
-                if (recurrentOutWeights && harvest) {
-                    for (int i = 0; i < targetData[0].length; i++) {
-                        // Teacher-forcing
-                        returnMatrix[row][col] = targetData[row][i];
+                        if (harvestRowNow) {
+                            returnMatrix[harvestRow][col] = n.getActivation();
+                        }
                         col++;
                     }
+
+                    // Add output states to state matrix if there are
+                    // recurrent outputs
+                    if (recurrentOutWeights && harvestRowNow) {
+                        for (int i = 0; i < targetData[0].length; i++) {
+                            // Teacher-forcing
+                            returnMatrix[harvestRow][col] = targetData[row][i];
+                            col++;
+                        }
+                    }
+                    if (harvestRowNow) {
+                        harvestRow++;
+                    }
                 }
+                harvest = true;
             }
-            harvest = true;
         }
 
         return returnMatrix;
@@ -629,6 +788,42 @@ public class EchoStateNetwork extends Subnetwork {
         this.targetData = targetData;
     }
 
+    /**
+     * @return the number of rows of input data per sequence, 0 if the input
+     *         data is one sequence
+     */
+    public int getSequenceLength() {
+        return sequenceLength;
+    }
+
+    /**
+     * @param sequenceLength
+     *            the number of rows of input data per sequence, 0 if the
+     *            input data is one sequence
+     */
+    public void setSequenceLength(int sequenceLength) {
+        this.sequenceLength = Math.max(0, sequenceLength);
+    }
+
+    /**
+     * @return the number of rows at the start of each sequence which are not
+     *         harvested, or a negative number if each sequence is run once
+     *         in full before it is harvested
+     */
+    public int getWashout() {
+        return washout;
+    }
+
+    /**
+     * @param washout
+     *            the number of rows at the start of each sequence which are
+     *            not harvested, or a negative number to run each sequence
+     *            once in full before it is harvested
+     */
+    public void setWashout(int washout) {
+        this.washout = washout;
+    }
+
     /**
      * @return the noise
      */
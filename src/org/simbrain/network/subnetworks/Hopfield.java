@@ -18,9 +18,13 @@
  */
 package org.simbrain.network.subnetworks;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.simbrain.network.connections.AllToAll;
 import org.simbrain.network.core.Network;
@@ -29,6 +33,9 @@ import org.simbrain.network.core.Synapse;
 import org.simbrain.network.groups.Group;
 import org.simbrain.network.groups.NeuronGroup;
 import org.simbrain.network.groups.Subnetwork;
+import org.simbrain.network.listeners.GroupAdapter;
+import org.simbrain.network.listeners.NetworkAdapter;
+import org.simbrain.network.listeners.NetworkEvent;
 import org.simbrain.network.neuron_update_rules.BinaryRule;
 import org.simbrain.network.trainers.Trainable;
 import org.simbrain.network.trainers.TrainingSet;
@@ -68,6 +75,42 @@ public class Hopfield extends Subnetwork implements Trainable {
      */
     private final TrainingSet trainingSet = new TrainingSet();
 
+    /** Energy of the current state, if energyValid. */
+    private transient double energy;
+
+    /**
+     * Whether energy is up to date. Asynchronous updates keep it up to date
+     * by adding the change due to each neuron which changes.
+     */
+    private transient boolean energyValid;
+
+    /** Index of each neuron in energyState. */
+    private transient Map<Neuron, Integer> energyIndex;
+
+    /** Activations of the state the energy is for. */
+    private transient double[] energyState;
+
+    /**
+     * External input minus threshold of each neuron when the energy was
+     * computed, by index in energyState.
+     */
+    private transient double[] energyField;
+
+    /** Size of the fan-in of each neuron when the energy was computed. */
+    private transient int[] energyFanIn;
+
+    /** Enabled synapses onto each neuron from outside this network. */
+    private transient Synapse[][] externalSynapses;
+
+    /**
+     * Whether the listeners which reset the energy when weights are edited
+     * are registered. Not saved, so they are registered again after opening.
+     */
+    private transient boolean listening;
+
+    /** Number of neurons whose activation changed in the last update. */
+    private transient int numChanged;
+
     /**
      * Creates a new Hopfield network.
      *
@@ -136,14 +179,236 @@ public class Hopfield extends Subnetwork implements Trainable {
                 }
             }
         }
+        resetEnergy();
         getParentNetwork().fireGroupUpdated(this.getSynapseGroup());
     }
 
     @Override
     public void update() {
+        checkEnergyState();
+        numChanged = 0;
         updateFunc.update(this);
     }
 
+    /**
+     * Returns the energy of the current state, E = -1/2 sum_ij w_ij a_i a_j -
+     * sum_i (I_i - theta_i) a_i, where I_i is the external input to neuron i
+     * (from its input value and from synapses outside this network) and
+     * theta_i its threshold. The energy is only computed from all the
+     * synapses when it is first needed or after the weights or activations
+     * have been changed from outside; asynchronous updates adjust it by the
+     * change due to each neuron which changes, using that neuron's fan-in
+     * only.
+     *
+     * @return the energy
+     */
+    public double getEnergy() {
+        checkEnergyState();
+        if (!energyValid) {
+            computeEnergy();
+        }
+        return energy;
+    }
+
+    /**
+     * Recompute the energy from all the synapses the next time it is needed.
+     * Call after changing weights.
+     */
+    public void resetEnergy() {
+        energyValid = false;
+    }
+
+    /**
+     * @return the number of neurons whose activation changed in the last
+     *         update; zero once the network has converged
+     */
+    public int getNumChanged() {
+        return numChanged;
+    }
+
+    /**
+     * Compute the energy from all the synapses.
+     */
+    private void computeEnergy() {
+        List<Neuron> neurons = getNeuronGroup().getNeuronList();
+        int n = neurons.size();
+        energyIndex = new IdentityHashMap<Neuron, Integer>();
+        energyState = new double[n];
+        energyField = new double[n];
+        energyFanIn = new int[n];
+        externalSynapses = new Synapse[n][];
+        for (int i = 0; i < n; i++) {
+            energyIndex.put(neurons.get(i), i);
+            energyState[i] = neurons.get(i).getActivation();
+        }
+        double sum = 0;
+        List<Synapse> outside = new ArrayList<Synapse>();
+        for (int i = 0; i < n; i++) {
+            Neuron neuron = neurons.get(i);
+            double internal = 0;
+            outside.clear();
+            for (Synapse s : neuron.getFanIn()) {
+                if (!s.isEnabled()) {
+                    continue;
+                }
+                if (energyIndex.containsKey(s.getSource())) {
+                    internal += s.getStrength()
+                            * s.getSource().getActivation();
+                } else {
+                    outside.add(s);
+                }
+            }
+            externalSynapses[i] = outside.toArray(new Synapse[outside.size()]);
+            energyFanIn[i] = neuron.getFanIn().size();
+            energyField[i] = getExternalField(neuron, externalSynapses[i]);
+            sum -= neuron.getActivation() * (internal / 2 + energyField[i]);
+        }
+        energy = sum;
+        energyValid = true;
+    }
+
+    /**
+     * @param neuron a neuron of this network
+     * @param external the enabled synapses onto it from outside this network
+     * @return its input value plus its input from outside this network, minus
+     *         its threshold
+     */
+    private static double getExternalField(final Neuron neuron,
+            final Synapse[] external) {
+        double field = neuron.getInputValue() - getThreshold(neuron);
+        for (Synapse s : external) {
+            field += s.getStrength() * s.getSource().getActivation();
+        }
+        return field;
+    }
+
+    /**
+     * Stop tracking the energy if any activation, input value, input from
+     * outside this network or threshold has been changed since it was
+     * computed or updated.
+     */
+    private void checkEnergyState() {
+        if (!listening) {
+            addEnergyListeners();
+        }
+        if (!energyValid) {
+            return;
+        }
+        List<Neuron> neurons = getNeuronGroup().getNeuronList();
+        if (neurons.size() != energyState.length) {
+            energyValid = false;
+            return;
+        }
+        for (int i = 0; i < neurons.size(); i++) {
+            Neuron neuron = neurons.get(i);
+            if (neuron.getActivation() != energyState[i]
+                    || neuron.getFanIn().size() != energyFanIn[i]
+                    || getExternalField(neuron,
+                            externalSynapses[i]) != energyField[i]) {
+                energyValid = false;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reset the energy whenever the weights of this network are edited
+     * outside of the trainer, for example from the GUI. Only edits followed
+     * by an update event on the synapse group or on the synapses are seen;
+     * otherwise call {@link #resetEnergy()}.
+     */
+    private void addEnergyListeners() {
+        final Network network = getParentNetwork();
+        if (network == null) {
+            return;
+        }
+        listening = true;
+        final NetworkAdapter synapseListener = new NetworkAdapter() {
+            @Override
+            public void updateSynapses() {
+                resetEnergy();
+            }
+
+            @Override
+            public void updateSynapses(Collection<Synapse> synapses) {
+                for (Synapse s : synapses) {
+                    if (s.getParentGroup() == getSynapseGroup()) {
+                        resetEnergy();
+                        return;
+                    }
+                }
+            }
+        };
+        network.addNetworkListener(synapseListener);
+        network.addGroupListener(new GroupAdapter() {
+            @Override
+            public void groupUpdated(Group group) {
+                if (group == getSynapseGroup()) {
+                    resetEnergy();
+                }
+            }
+
+            @Override
+            public void groupParameterChanged(NetworkEvent<Group> e) {
+                if (e.getObject() == getSynapseGroup()) {
+                    resetEnergy();
+                }
+            }
+
+            @Override
+            public void groupRemoved(NetworkEvent<Group> e) {
+                if (e.getObject() == Hopfield.this) {
+                    network.removeNetworkListener(synapseListener);
+                    network.removeGroupListener(this);
+                }
+            }
+        });
+    }
+
+    /**
+     * Record the update of one neuron, adjusting the energy if it changed.
+     * With symmetric weights and no self connections the energy changes by
+     * -(a' - a) (sum_j w_ji a_j + I_i - theta_i).
+     *
+     * @param neuron the neuron
+     * @param oldActivation its activation before the update
+     */
+    private void neuronUpdated(final Neuron neuron, final double oldActivation) {
+        double delta = neuron.getActivation() - oldActivation;
+        if (delta == 0) {
+            return;
+        }
+        numChanged++;
+        if (!energyValid) {
+            return;
+        }
+        Integer i = energyIndex.get(neuron);
+        if (i == null) {
+            energyValid = false;
+            return;
+        }
+        double field = energyField[i];
+        for (Synapse s : neuron.getFanIn()) {
+            if (s.isEnabled() && energyIndex.containsKey(s.getSource())) {
+                field += s.getStrength() * s.getSource().getActivation();
+            }
+        }
+        energy -= delta * field;
+        energyState[i] = neuron.getActivation();
+    }
+
+    /**
+     * @param neuron a neuron
+     * @return the input above which it turns on
+     */
+    private static double getThreshold(final Neuron neuron) {
+        if (neuron.getUpdateRule() instanceof BinaryRule) {
+            BinaryRule rule = (BinaryRule) neuron.getUpdateRule();
+            return rule.getThreshold() - rule.getBias();
+        }
+        return 0;
+    }
+
     /**
      * @return The number of neurons.
      */
@@ -188,6 +453,7 @@ public class Hopfield extends Subnetwork implements Trainable {
                 w.getStrength() + bipolar(src.getActivation())
                     * bipolar(tar.getActivation()));
         }
+        resetEnergy();
         getParentNetwork().fireGroupUpdated(getSynapseGroup());
     }
 
@@ -264,8 +530,10 @@ public class Hopfield extends Subnetwork implements Trainable {
                 Collections.shuffle(neurons);
                 for (int i = 0, n = neurons.size(); i < n; i++) {
                     neuron = neurons.get(i);
+                    double old = neuron.getActivation();
                     neuron.update();
                     neuron.setActivation(neuron.getBuffer());
+                    hop.neuronUpdated(neuron, old);
                 }
             }
 
@@ -294,15 +562,19 @@ public class Hopfield extends Subnetwork implements Trainable {
                         // within based on priority, without having to sort
                         // the list every iteration.
                         if (hop.getNeuronSet().contains(n)) {
+                            double old = n.getActivation();
                             n.update();
                             n.setActivation(n.getBuffer());
+                            hop.neuronUpdated(n, old);
                         }
                     }
                 } else {
                     neurons = hop.getFlatNeuronList();
                     for (Neuron n : neurons) {
+                        double old = n.getActivation();
                         n.update();
                         n.setActivation(n.getBuffer());
+                        hop.neuronUpdated(n, old);
                     }
                 }
 
@@ -327,8 +599,15 @@ public class Hopfield extends Subnetwork implements Trainable {
                 for (Neuron n : neurons) {
                     n.update();
                 }
+                // All neurons change at once, so the energy is recomputed
+                // when next needed
                 for (Neuron n : neurons) {
+                    double old = n.getActivation();
                     n.setActivation(n.getBuffer());
+                    if (n.getActivation() != old) {
+                        hop.numChanged++;
+                        hop.energyValid = false;
+                    }
                 }
             }
 
@@ -18,8 +18,6 @@
  */
 package org.simbrain.network.subnetworks;
 
-import java.util.Comparator;
-
 import org.simbrain.network.core.Network;
 import org.simbrain.network.core.Neuron;
 import org.simbrain.network.groups.NeuronGroup;
@@ -57,6 +55,16 @@ public class KWTA extends NeuronGroup {
      */
     private double inhibitoryConductance;
 
+    /**
+     * Whether to apply the inhibitory conductance between the k-th and
+     * (k+1)-th most excited neurons each update. Off by default, so that the
+     * dynamics of existing networks are unchanged.
+     */
+    private boolean useThresholdInhibition = false;
+
+    /** Finds the k most excited neurons. */
+    private transient WinnerSelector selector;
+
     /**
      * Default constructor.
      *
@@ -73,63 +81,79 @@ public class KWTA extends NeuronGroup {
 
     @Override
     public void update() {
-        sortNeurons();
+        if (useThresholdInhibition) {
+            setCurrentThresholdCurrent();
+        }
         super.update();
     }
 
     /**
-     * See p. 101, equation 3.3. TODO: Unused, use or delete
+     * See p. 101, equation 3.3. The inhibitory conductance is placed between
+     * the threshold conductances of the k-th and (k+1)-th most excited
+     * neurons, which are found by selection rather than by sorting the
+     * neurons.
      */
     private void setCurrentThresholdCurrent() {
 
-        double highest = ((PointNeuronRule) getNeuronList().get(k)
-                .getUpdateRule()).getInhibitoryThresholdConductance();
-        double secondHighest = ((PointNeuronRule) getNeuronList().get(k - 1)
-                .getUpdateRule()).getInhibitoryThresholdConductance();
-
-        inhibitoryConductance = secondHighest + q * (highest - secondHighest);
+        int size = getNeuronList().size();
+        if (size <= k) {
+            return;
+        }
+        for (Neuron neuron : getNeuronList()) {
+            if (!(neuron.getUpdateRule() instanceof PointNeuronRule)) {
+                return;
+            }
+        }
+        if (selector == null) {
+            selector = new WinnerSelector();
+        }
+        double[] thresholds = selector.evaluate(getNeuronList(),
+                new WinnerSelector.Measure() {
+                    @Override
+                    public double value(final Neuron neuron) {
+                        return ((PointNeuronRule) neuron.getUpdateRule())
+                                .getInhibitoryThresholdConductance(neuron);
+                    }
+                });
+        int[] top = selector.topK(thresholds, size, k + 1);
+        if (top.length <= k) {
+            return;
+        }
+        double kth = thresholds[top[k - 1]];
+        double kPlusOneth = thresholds[top[k]];
 
-        // System.out.println("highest " + highest + "  secondHighest "
-        // + secondHighest + " inhibitoryCondctance" + inhibitoryConductance);
+        inhibitoryConductance = kPlusOneth + q * (kth - kPlusOneth);
 
         // Set inhibitory conductances in the layer
         for (Neuron neuron : getNeuronList()) {
             ((PointNeuronRule) neuron.getUpdateRule())
-                    .setInhibitoryConductance(inhibitoryConductance);
+                    .setInhibitoryConductance(neuron, inhibitoryConductance);
         }
     }
 
     /**
-     * Sort neurons by their excitatory conductance. See p. 101.
+     * Returns the initial number of neurons.
+     *
+     * @return the initial number of neurons
      */
-    private void sortNeurons() {
-        // REDO
-        // Collections.sort(this.getNeuronList(), new PointNeuronComparator());
+    public int getK() {
+        return k;
     }
 
     /**
-     * Used to sort PointNeurons by excitatory conductance.
+     * @return true if the k-winner inhibition is applied each update
      */
-    class PointNeuronComparator implements Comparator<Neuron> {
-
-        /**
-         * {@inheritDoc}
-         */
-        public int compare(Neuron neuron1, Neuron neuron2) {
-            return (int) ((PointNeuronRule) neuron1.getUpdateRule())
-                    .getExcitatoryConductance()
-                    - (int) ((PointNeuronRule) neuron1.getUpdateRule())
-                            .getExcitatoryConductance();
-        }
+    public boolean isUseThresholdInhibition() {
+        return useThresholdInhibition;
     }
 
     /**
-     * Returns the initial number of neurons.
-     *
-     * @return the initial number of neurons
+     * @param useThresholdInhibition whether to apply the k-winner inhibition
+     *            each update
      */
-    public int getK() {
-        return k;
+    public void setUseThresholdInhibition(
+            final boolean useThresholdInhibition) {
+        this.useThresholdInhibition = useThresholdInhibition;
     }
 
     /**
@@ -0,0 +1,613 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.subnetworks;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.simbrain.network.core.Network;
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.NeuronBatch;
+import org.simbrain.network.core.NeuronUpdateRule;
+import org.simbrain.network.core.NeuronUpdateRule.InputType;
+import org.simbrain.network.core.Synapse;
+import org.simbrain.network.trainers.StreamingLeastSquares;
+import org.simbrain.util.ParallelTasks;
+import org.simbrain.util.randomizer.Randomizer;
+
+/**
+ * <b>ReservoirHarvester</b> collects the reservoir states of an
+ * {@link EchoStateNetwork} for training. It copies the synapses onto the
+ * reservoir into sparse arrays and runs the input, reservoir and
+ * (teacher-forced) output recurrence on them directly, without updating the
+ * neurons or firing events until the end. Harvested rows are either written
+ * to a state matrix or streamed into a {@link StreamingLeastSquares}, so the
+ * state matrix need never exist.
+ * <p>
+ * The input data can be split into sequences of equal length, each of which
+ * starts from the state of the network when harvesting began. Sequences are
+ * harvested in parallel.
+ */
+public class ReservoirHarvester {
+
+    /** Number of rows a sequence buffers before streaming them. */
+    private static final int CHUNK_SIZE = 64;
+
+    /** Input neurons. */
+    private final Neuron[] inputs;
+
+    /** Reservoir neurons. */
+    private final Neuron[] reservoir;
+
+    /** Teacher-forced output neurons, empty if there are no back weights. */
+    private final Neuron[] outputs;
+
+    /** Update rule of each reservoir neuron. */
+    private final NeuronUpdateRule[] rules;
+
+    /** Input not from the harvested neurons, per reservoir neuron. */
+    private final double[] offset;
+
+    /** Input neuron index of each synapse from the inputs, per target. */
+    private final int[][] inSources;
+
+    /** Strength of each synapse from the inputs, per target. */
+    private final double[][] inWeights;
+
+    /** Reservoir neuron index of each recurrent synapse, per target. */
+    private final int[][] resSources;
+
+    /** Strength of each recurrent synapse, per target. */
+    private final double[][] resWeights;
+
+    /** Output neuron index of each back synapse, per target. */
+    private final int[][] outSources;
+
+    /** Strength of each back synapse, per target. */
+    private final double[][] outWeights;
+
+    /** Whether harvested rows start with the input states. */
+    private boolean harvestInputs;
+
+    /** Whether harvested rows end with the (teacher-forced) output states. */
+    private boolean harvestOutputs;
+
+    /**
+     * Number of rows at the start of each sequence which are run but not
+     * harvested; if negative each sequence is run once in full first.
+     */
+    private int washout = -1;
+
+    /** Number of rows per sequence; 0 for a single sequence. */
+    private int sequenceLength;
+
+    /** Noise added to reservoir activations, or null for none. */
+    private Randomizer noise;
+
+    /** Number of threads sequences are harvested on. */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /** Time step of the network. */
+    private final double timeStep;
+
+    /** Time of the network. */
+    private final double time;
+
+    /**
+     * Copy the synapses onto the reservoir. Synapses from neurons other than
+     * the input, reservoir and teacher-forced output neurons are taken to
+     * carry constant input at their current strength and activation.
+     *
+     * @param inputList input neurons
+     * @param reservoirList reservoir neurons
+     * @param outputList output neurons which are teacher-forced, empty if
+     *            there are no back weights
+     */
+    public ReservoirHarvester(final List<Neuron> inputList,
+            final List<Neuron> reservoirList, final List<Neuron> outputList) {
+        inputs = inputList.toArray(new Neuron[inputList.size()]);
+        reservoir = reservoirList.toArray(new Neuron[reservoirList.size()]);
+        outputs = outputList.toArray(new Neuron[outputList.size()]);
+        int n = reservoir.length;
+        rules = new NeuronUpdateRule[n];
+        offset = new double[n];
+        inSources = new int[n][];
+        inWeights = new double[n][];
+        resSources = new int[n][];
+        resWeights = new double[n][];
+        outSources = new int[n][];
+        outWeights = new double[n][];
+        Map<Neuron, Integer> inIndex = indexOf(inputs);
+        Map<Neuron, Integer> resIndex = indexOf(reservoir);
+        Map<Neuron, Integer> outIndex = indexOf(outputs);
+        List<Synapse> in = new ArrayList<Synapse>();
+        List<Synapse> res = new ArrayList<Synapse>();
+        List<Synapse> out = new ArrayList<Synapse>();
+        for (int j = 0; j < n; j++) {
+            Neuron target = reservoir[j];
+            rules[j] = target.getUpdateRule();
+            offset[j] = target.getInputValue();
+            in.clear();
+            res.clear();
+            out.clear();
+            for (Synapse s : target.getFanIn()) {
+                if (!s.isEnabled()) {
+                    continue;
+                }
+                Neuron source = s.getSource();
+                if (inIndex.containsKey(source)) {
+                    in.add(s);
+                } else if (resIndex.containsKey(source)) {
+                    res.add(s);
+                } else if (outIndex.containsKey(source)) {
+                    out.add(s);
+                } else {
+                    offset[j] += s.getStrength() * source.getActivation();
+                }
+            }
+            inSources[j] = sourcesOf(in, inIndex);
+            inWeights[j] = strengthsOf(in);
+            resSources[j] = sourcesOf(res, resIndex);
+            resWeights[j] = strengthsOf(res);
+            outSources[j] = sourcesOf(out, outIndex);
+            outWeights[j] = strengthsOf(out);
+        }
+        Network network = reservoir[0].getNetwork();
+        timeStep = network.getTimeStep();
+        time = network.getTime();
+    }
+
+    /**
+     * Whether a reservoir can be harvested with arrays: its neurons must
+     * share a rule class with a batch form which takes weighted input, none
+     * may be clamped, and no synapse onto them may be delayed.
+     *
+     * @param reservoirList reservoir neurons
+     * @return true if {@link ReservoirHarvester} can harvest the reservoir
+     */
+    public static boolean canHarvest(final List<Neuron> reservoirList) {
+        if (reservoirList.isEmpty()) {
+            return false;
+        }
+        Class<?> ruleClass = reservoirList.get(0).getUpdateRule().getClass();
+        for (Neuron neuron : reservoirList) {
+            NeuronUpdateRule rule = neuron.getUpdateRule();
+            if (rule.getClass() != ruleClass || !rule.hasBatchUpdate()
+                    || rule.isSpikingNeuron() || rule.usesSeparatedInput()
+                    || rule.getInputType() != InputType.WEIGHTED
+                    || neuron.isClamped()) {
+                return false;
+            }
+            for (Synapse s : neuron.getFanIn()) {
+                if (s.getDelay() != 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Harvest states into a matrix.
+     *
+     * @param inputData input rows
+     * @param targetData target rows, used for teacher forcing
+     * @return one row of states per harvested row of input
+     */
+    public double[][] harvest(final double[][] inputData,
+            final double[][] targetData) {
+        double[][] states = new double[countHarvested(inputData.length)][];
+        run(inputData, targetData, states, null);
+        return states;
+    }
+
+    /**
+     * Harvest states and stream them, with the matching target rows, into a
+     * least squares accumulator.
+     *
+     * @param inputData input rows
+     * @param targetData target rows, used for teacher forcing and streamed
+     *            with the states
+     * @param correlations the accumulator to add rows to
+     */
+    public void harvest(final double[][] inputData,
+            final double[][] targetData,
+            final StreamingLeastSquares correlations) {
+        run(inputData, targetData, null, correlations);
+    }
+
+    /**
+     * Return the target rows matching the rows harvested from a sequence of
+     * input rows.
+     *
+     * @param targetData target rows, one per input row
+     * @param sequenceLength number of rows per sequence, 0 for one sequence
+     * @param washout number of rows at the start of each sequence which are
+     *            not harvested, or negative for none
+     * @return copies of the rows of targetData which are harvested
+     */
+    public static double[][] harvestedTargets(final double[][] targetData,
+            final int sequenceLength, final int washout) {
+        int length = sequenceLength > 0 ? sequenceLength : Math.max(1,
+                targetData.length);
+        int skip = Math.max(0, washout);
+        List<double[]> ret = new ArrayList<double[]>();
+        for (int start = 0; start < targetData.length; start += length) {
+            int end = Math.min(start + length, targetData.length);
+            for (int row = start + skip; row < end; row++) {
+                ret.add(targetData[row].clone());
+            }
+        }
+        return ret.toArray(new double[ret.size()][]);
+    }
+
+    /**
+     * @return the number of columns of each harvested row
+     */
+    public int getNumColumns() {
+        return (harvestInputs ? inputs.length : 0) + reservoir.length
+                + (harvestOutputs ? outputs.length : 0);
+    }
+
+    /**
+     * @param rows number of input rows
+     * @return number of rows harvested from them
+     */
+    private int countHarvested(final int rows) {
+        int length = sequenceLength(rows);
+        int skip = Math.max(0, washout);
+        int count = 0;
+        for (int start = 0; start < rows; start += length) {
+            count += Math.max(0, Math.min(length, rows - start) - skip);
+        }
+        return count;
+    }
+
+    /**
+     * @param rows number of input rows
+     * @return the length of each sequence
+     */
+    private int sequenceLength(final int rows) {
+        return sequenceLength > 0 ? sequenceLength : Math.max(1, rows);
+    }
+
+    /**
+     * Harvest every sequence and leave the network in the final state of the
+     * last one.
+     *
+     * @param inputData input rows
+     * @param targetData target rows
+     * @param states matrix to write rows to, or null
+     * @param correlations accumulator to stream rows to, or null
+     */
+    private void run(final double[][] inputData, final double[][] targetData,
+            final double[][] states,
+            final StreamingLeastSquares correlations) {
+        int rows = inputData.length;
+        int length = sequenceLength(rows);
+        int skip = Math.max(0, washout);
+        double[] initial = new double[reservoir.length];
+        for (int j = 0; j < reservoir.length; j++) {
+            initial[j] = reservoir[j].getActivation();
+        }
+        List<Sequence> sequences = new ArrayList<Sequence>();
+        int harvested = 0;
+        for (int start = 0; start < rows; start += length) {
+            int end = Math.min(start + length, rows);
+            sequences.add(new Sequence(inputData, targetData, start, end,
+                    initial, states, harvested, correlations));
+            harvested += Math.max(0, end - start - skip);
+        }
+        ParallelTasks.invokeAll(sequences, parallelism,
+                "Error harvesting reservoir.");
+        if (!sequences.isEmpty()) {
+            sequences.get(sequences.size() - 1).writeState();
+        }
+    }
+
+    /**
+     * Harvests one sequence.
+     */
+    private class Sequence implements Callable<Void> {
+
+        /** Input rows. */
+        private final double[][] inputData;
+
+        /** Target rows. */
+        private final double[][] targetData;
+
+        /** First row (inclusive). */
+        private final int start;
+
+        /** Last row (exclusive). */
+        private final int end;
+
+        /** Matrix to write rows to, or null. */
+        private final double[][] states;
+
+        /** Row of states the first harvested row goes to. */
+        private final int firstState;
+
+        /** Accumulator to stream rows to, or null. */
+        private final StreamingLeastSquares correlations;
+
+        /** Input activations. */
+        private final double[] x;
+
+        /** Output activations. */
+        private final double[] y;
+
+        /** Batch over the reservoir; its activations are the state. */
+        private final NeuronBatch batch;
+
+        /** Buffered state rows. */
+        private final double[][] stateChunk;
+
+        /** Buffered target rows. */
+        private final double[][] targetChunk;
+
+        /** Number of buffered rows. */
+        private int buffered;
+
+        /**
+         * @param inputData input rows
+         * @param targetData target rows
+         * @param start first row (inclusive)
+         * @param end last row (exclusive)
+         * @param initial initial reservoir activations
+         * @param states matrix to write rows to, or null
+         * @param firstState row of states for the first harvested row
+         * @param correlations accumulator to stream rows to, or null
+         */
+        Sequence(final double[][] inputData, final double[][] targetData,
+                final int start, final int end, final double[] initial,
+                final double[][] states, final int firstState,
+                final StreamingLeastSquares correlations) {
+            this.inputData = inputData;
+            this.targetData = targetData;
+            this.start = start;
+            this.end = end;
+            this.states = states;
+            this.firstState = firstState;
+            this.correlations = correlations;
+            int n = reservoir.length;
+            x = new double[inputs.length];
+            y = new double[outputs.length];
+            batch = new NeuronBatch(reservoir, rules, initial.clone(),
+                    new double[n], new double[n]);
+            batch.setTime(timeStep, time);
+            if (correlations != null) {
+                stateChunk = new double[CHUNK_SIZE][getNumColumns()];
+                targetChunk = new double[CHUNK_SIZE][];
+            } else {
+                stateChunk = null;
+                targetChunk = null;
+            }
+        }
+
+        @Override
+        public Void call() {
+            if (washout < 0) {
+                for (int row = start; row < end; row++) {
+                    step(row);
+                }
+            }
+            int skip = Math.max(0, washout);
+            int k = firstState;
+            for (int row = start; row < end; row++) {
+                step(row);
+                if (row - start < skip) {
+                    continue;
+                }
+                if (states != null) {
+                    states[k] = new double[getNumColumns()];
+                    collect(row, states[k++]);
+                } else {
+                    collect(row, stateChunk[buffered]);
+                    targetChunk[buffered++] = targetData[row];
+                    if (buffered == CHUNK_SIZE) {
+                        stream();
+                    }
+                }
+            }
+            if (correlations != null) {
+                stream();
+            }
+            return null;
+        }
+
+        /**
+         * Run one row: clamp the inputs and the teacher-forced outputs, then
+         * update the reservoir synchronously.
+         *
+         * @param row the row
+         */
+        private void step(final int row) {
+            System.arraycopy(inputData[row], 0, x, 0, x.length);
+            for (int i = 0; i < y.length; i++) {
+                y[i] = row > start ? targetData[row - 1][i] : 0.5;
+            }
+            double[] act = batch.getActivations();
+            double[] z = batch.getInputs();
+            for (int j = 0; j < z.length; j++) {
+                double sum = offset[j];
+                int[] src = inSources[j];
+                double[] w = inWeights[j];
+                for (int k = 0; k < src.length; k++) {
+                    sum += w[k] * x[src[k]];
+                }
+                src = resSources[j];
+                w = resWeights[j];
+                for (int k = 0; k < src.length; k++) {
+                    sum += w[k] * act[src[k]];
+                }
+                src = outSources[j];
+                w = outWeights[j];
+                for (int k = 0; k < src.length; k++) {
+                    sum += w[k] * y[src[k]];
+                }
+                z[j] = sum;
+            }
+            rules[0].update(batch, 0, z.length);
+            double[] buf = batch.getBuffers();
+            if (noise != null) {
+                for (int j = 0; j < act.length; j++) {
+                    act[j] = buf[j] + noise.getRandom();
+                }
+            } else {
+                System.arraycopy(buf, 0, act, 0, act.length);
+            }
+        }
+
+        /**
+         * Copy the current state into a harvested row.
+         *
+         * @param row the row of data
+         * @param state the harvested row
+         */
+        private void collect(final int row, final double[] state) {
+            int col = 0;
+            if (harvestInputs) {
+                System.arraycopy(x, 0, state, col, x.length);
+                col += x.length;
+            }
+            double[] act = batch.getActivations();
+            System.arraycopy(act, 0, state, col, act.length);
+            col += act.length;
+            if (harvestOutputs) {
+                System.arraycopy(targetData[row], 0, state, col,
+                        targetData[row].length);
+            }
+        }
+
+        /**
+         * Add the buffered rows to the accumulator.
+         */
+        private void stream() {
+            synchronized (correlations) {
+                for (int k = 0; k < buffered; k++) {
+                    correlations.addRow(stateChunk[k], targetChunk[k]);
+                }
+            }
+            buffered = 0;
+        }
+
+        /**
+         * Set the neurons to the state at the end of the sequence.
+         */
+        void writeState() {
+            for (int i = 0; i < inputs.length; i++) {
+                inputs[i].forceSetActivation(x[i]);
+            }
+            for (int i = 0; i < outputs.length; i++) {
+                outputs[i].setActivation(y[i]);
+            }
+            double[] act = batch.getActivations();
+            for (int j = 0; j < reservoir.length; j++) {
+                reservoir[j].setActivation(act[j]);
+            }
+        }
+    }
+
+    /**
+     * @param neurons some neurons
+     * @return the index of each neuron
+     */
+    private static Map<Neuron, Integer> indexOf(final Neuron[] neurons) {
+        Map<Neuron, Integer> ret = new IdentityHashMap<Neuron, Integer>();
+        for (int i = 0; i < neurons.length; i++) {
+            ret.put(neurons[i], i);
+        }
+        return ret;
+    }
+
+    /**
+     * @param synapses some synapses
+     * @param index index of each source neuron
+     * @return the source index of each synapse
+     */
+    private static int[] sourcesOf(final List<Synapse> synapses,
+            final Map<Neuron, Integer> index) {
+        int[] ret = new int[synapses.size()];
+        for (int k = 0; k < ret.length; k++) {
+            ret[k] = index.get(synapses.get(k).getSource());
+        }
+        return ret;
+    }
+
+    /**
+     * @param synapses some synapses
+     * @return the strength of each synapse
+     */
+    private static double[] strengthsOf(final List<Synapse> synapses) {
+        double[] ret = new double[synapses.size()];
+        for (int k = 0; k < ret.length; k++) {
+            ret[k] = synapses.get(k).getStrength();
+        }
+        return ret;
+    }
+
+    /**
+     * @param harvestInputs whether harvested rows start with the inputs
+     */
+    public void setHarvestInputs(final boolean harvestInputs) {
+        this.harvestInputs = harvestInputs;
+    }
+
+    /**
+     * @param harvestOutputs whether harvested rows end with the
+     *            (teacher-forced) outputs
+     */
+    public void setHarvestOutputs(final boolean harvestOutputs) {
+        this.harvestOutputs = harvestOutputs;
+    }
+
+    /**
+     * @param washout number of rows at the start of each sequence which are
+     *            run but not harvested; if negative each sequence is run once
+     *            in full before it is harvested
+     */
+    public void setWashout(final int washout) {
+        this.washout = washout;
+    }
+
+    /**
+     * @param sequenceLength number of rows per sequence, 0 for one sequence
+     */
+    public void setSequenceLength(final int sequenceLength) {
+        this.sequenceLength = Math.max(0, sequenceLength);
+    }
+
+    /**
+     * @param noise noise added to reservoir activations, or null for none
+     */
+    public void setNoise(final Randomizer noise) {
+        this.noise = noise;
+    }
+
+    /**
+     * @param parallelism the number of threads to harvest sequences on
+     */
+    public void setParallelism(final int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+}
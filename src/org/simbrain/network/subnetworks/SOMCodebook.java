@@ -0,0 +1,451 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.subnetworks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.Synapse;
+import org.simbrain.network.trainers.TrainingSet;
+import org.simbrain.util.ParallelTasks;
+import org.simbrain.util.SimbrainConstants.Polarity;
+
+/**
+ * <b>SOMCodebook</b> holds the weight vectors of an {@link SOMGroup} in one
+ * flat float array, one row of input weights per SOM neuron, so that the
+ * best matching unit of an input can be found with a tight loop over the
+ * array instead of over each neuron's synapses. It trains either online, one
+ * input at a time as {@link SOMGroup#update()} does, or with batch-SOM
+ * epochs, in which every unit moves to the mean of the inputs whose best
+ * matching unit is in its neighborhood.
+ * <p>
+ * Synapses are read when the codebook is built and written back by
+ * {@link #writeWeights()}, which only touches the synapses of units which
+ * changed. Synapse bounds, polarity and frozen synapses are respected as by
+ * {@link Synapse#setStrength(double)}.
+ */
+public class SOMCodebook {
+
+    /** Smallest codebook for which one best matching unit search is split. */
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    /** The SOM neurons. */
+    private final Neuron[] units;
+
+    /** The input neurons. */
+    private final Neuron[] inputs;
+
+    /** Number of inputs. */
+    private final int dims;
+
+    /** Weights, [unit * dims + input]. */
+    private final float[] codebook;
+
+    /** Synapse of each weight. */
+    private final Synapse[] synapses;
+
+    /** Lowest value of each weight. */
+    private final float[] lower;
+
+    /** Highest value of each weight. */
+    private final float[] upper;
+
+    /** Polarity of each weight's source: 1 excitatory, -1 inhibitory. */
+    private final byte[] sign;
+
+    /** Whether each weight's synapse is frozen. */
+    private final boolean[] frozen;
+
+    /** Horizontal position of each unit. */
+    private final double[] x;
+
+    /** Vertical position of each unit. */
+    private final double[] y;
+
+    /** Current input of an online update. */
+    private final float[] input;
+
+    /** Units changed since the weights were last written. */
+    private final boolean[] dirty;
+
+    /** Number of threads. */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Copy the weights of a SOM. Every SOM neuron must have exactly one
+     * synapse from each input neuron (see {@link #canUse(List, List)}).
+     *
+     * @param inputList the input neurons, in the order of the columns of
+     *            input data
+     * @param unitList the SOM neurons
+     */
+    public SOMCodebook(final List<Neuron> inputList,
+            final List<Neuron> unitList) {
+        units = unitList.toArray(new Neuron[unitList.size()]);
+        inputs = inputList.toArray(new Neuron[inputList.size()]);
+        dims = inputs.length;
+        int size = units.length * dims;
+        codebook = new float[size];
+        synapses = new Synapse[size];
+        lower = new float[size];
+        upper = new float[size];
+        sign = new byte[size];
+        frozen = new boolean[size];
+        x = new double[units.length];
+        y = new double[units.length];
+        dirty = new boolean[units.length];
+        input = new float[dims];
+        Map<Neuron, Integer> inputIndex = indexOf(inputs);
+        for (int u = 0; u < units.length; u++) {
+            x[u] = units[u].getX();
+            y[u] = units[u].getY();
+            for (Synapse s : units[u].getFanIn()) {
+                int k = u * dims + inputIndex.get(s.getSource());
+                synapses[k] = s;
+                codebook[k] = (float) s.getStrength();
+                frozen[k] = s.isFrozen();
+                lower[k] = (float) s.getLowerBound();
+                upper[k] = (float) s.getUpperBound();
+                Polarity polarity = s.getSource().getPolarity();
+                if (polarity == Polarity.EXCITATORY) {
+                    sign[k] = 1;
+                } else if (polarity == Polarity.INHIBITORY) {
+                    sign[k] = -1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether a SOM can be trained with a codebook: every SOM neuron must
+     * have exactly one synapse from each input neuron and no others.
+     *
+     * @param inputList the input neurons
+     * @param unitList the SOM neurons
+     * @return true if a codebook can be built
+     */
+    public static boolean canUse(final List<Neuron> inputList,
+            final List<Neuron> unitList) {
+        if (inputList.isEmpty() || unitList.isEmpty()) {
+            return false;
+        }
+        Map<Neuron, Integer> inputIndex = indexOf(inputList
+                .toArray(new Neuron[inputList.size()]));
+        boolean[] seen = new boolean[inputList.size()];
+        for (Neuron unit : unitList) {
+            if (unit.getFanIn().size() != seen.length) {
+                return false;
+            }
+            Arrays.fill(seen, false);
+            for (Synapse s : unit.getFanIn()) {
+                Integer i = inputIndex.get(s.getSource());
+                if (i == null || seen[i]) {
+                    return false;
+                }
+                seen[i] = true;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the unit whose weights are closest to an input.
+     *
+     * @param vector the input, one entry per input neuron
+     * @return the index of the unit; the first of equally close units
+     */
+    public int findWinner(final float[] vector) {
+        if (parallelism < 2 || codebook.length < PARALLEL_THRESHOLD) {
+            return findWinner(vector, 0, units.length)[0];
+        }
+        List<Callable<int[]>> tasks = new ArrayList<Callable<int[]>>();
+        int bands = Math.min(parallelism, units.length);
+        for (int b = 0; b < bands; b++) {
+            final int start = units.length * b / bands;
+            final int end = units.length * (b + 1) / bands;
+            tasks.add(new Callable<int[]>() {
+                @Override
+                public int[] call() {
+                    return findWinner(vector, start, end);
+                }
+            });
+        }
+        int winner = -1;
+        float best = Float.POSITIVE_INFINITY;
+        for (int[] result : ParallelTasks.invokeAll(tasks, parallelism,
+                "Error training SOM.")) {
+            float d = Float.intBitsToFloat(result[1]);
+            if (result[0] >= 0 && (winner < 0 || d < best)) {
+                winner = result[0];
+                best = d;
+            }
+        }
+        return winner;
+    }
+
+    /**
+     * Find the closest unit in a range.
+     *
+     * @param vector the input
+     * @param start first unit (inclusive)
+     * @param end last unit (exclusive)
+     * @return the unit's index and the bits of its squared distance
+     */
+    private int[] findWinner(final float[] vector, final int start,
+            final int end) {
+        int winner = -1;
+        float best = Float.POSITIVE_INFINITY;
+        for (int u = start; u < end; u++) {
+            int base = u * dims;
+            float d = 0;
+            for (int i = 0; i < dims; i++) {
+                float diff = codebook[base + i] - vector[i];
+                d += diff * diff;
+            }
+            if (d < best) {
+                best = d;
+                winner = u;
+            }
+        }
+        return new int[] {winner, Float.floatToIntBits(best)};
+    }
+
+    /**
+     * Online update: move the weights of every unit within the neighborhood
+     * of the input's best matching unit towards the input.
+     *
+     * @param row the input, one entry per input neuron
+     * @param alpha the learning rate
+     * @param neighborhoodSize the radius of the neighborhood
+     * @return the index of the best matching unit
+     */
+    public int update(final double[] row, final double alpha,
+            final double neighborhoodSize) {
+        toFloat(row, input);
+        int winner = findWinner(input);
+        if (winner < 0) {
+            return winner;
+        }
+        float a = (float) alpha;
+        for (int u = 0; u < units.length; u++) {
+            if (distance(u, winner) > neighborhoodSize) {
+                continue;
+            }
+            int base = u * dims;
+            for (int i = 0; i < dims; i++) {
+                int k = base + i;
+                if (!frozen[k]) {
+                    codebook[k] = clip(k, codebook[k] + a
+                            * (input[i] - codebook[k]));
+                }
+            }
+            dirty[u] = true;
+        }
+        return winner;
+    }
+
+    /**
+     * Run one batch-SOM epoch: find the best matching unit of every row in
+     * parallel, then set each unit's weights to the mean of the rows whose
+     * best matching unit is within its neighborhood. Units with no such rows
+     * are unchanged. Rows are read one at a time, so data in a file is not
+     * loaded onto the heap.
+     *
+     * @param data the input rows
+     * @param neighborhoodSize the radius of the neighborhood
+     * @return the best matching unit of each row
+     */
+    public int[] batchEpoch(final TrainingSet data,
+            final double neighborhoodSize) {
+        int numRows = data.getNumRows();
+        final int[] winners = new int[numRows];
+        int bands = Math.max(1, Math.min(parallelism, numRows / 64));
+        List<Callable<double[]>> tasks = new ArrayList<Callable<double[]>>();
+        for (int b = 0; b < bands; b++) {
+            final int start = numRows * b / bands;
+            final int end = numRows * (b + 1) / bands;
+            tasks.add(new Callable<double[]>() {
+                @Override
+                public double[] call() {
+                    // Sum of the rows won by each unit, then the count
+                    double[] sums = new double[codebook.length
+                            + units.length];
+                    float[] vector = new float[dims];
+                    double[] values = new double[dims];
+                    for (int row = start; row < end; row++) {
+                        data.readInputRow(row, values);
+                        toFloat(values, vector);
+                        int u = findWinner(vector, 0, units.length)[0];
+                        winners[row] = u;
+                        if (u < 0) {
+                            continue;
+                        }
+                        int base = u * dims;
+                        for (int i = 0; i < dims; i++) {
+                            sums[base + i] += values[i];
+                        }
+                        sums[codebook.length + u]++;
+                    }
+                    return sums;
+                }
+            });
+        }
+        List<double[]> results = ParallelTasks.invokeAll(tasks, parallelism,
+                "Error training SOM.");
+        double[] sums = results.get(0);
+        for (int r = 1; r < results.size(); r++) {
+            double[] partial = results.get(r);
+            for (int k = 0; k < sums.length; k++) {
+                sums[k] += partial[k];
+            }
+        }
+        double[] mean = new double[dims];
+        for (int u = 0; u < units.length; u++) {
+            Arrays.fill(mean, 0);
+            double count = 0;
+            for (int c = 0; c < units.length; c++) {
+                double n = sums[codebook.length + c];
+                if (n == 0 || distance(u, c) > neighborhoodSize) {
+                    continue;
+                }
+                int base = c * dims;
+                for (int i = 0; i < dims; i++) {
+                    mean[i] += sums[base + i];
+                }
+                count += n;
+            }
+            if (count == 0) {
+                continue;
+            }
+            int base = u * dims;
+            for (int i = 0; i < dims; i++) {
+                int k = base + i;
+                if (!frozen[k]) {
+                    codebook[k] = clip(k, (float) (mean[i] / count));
+                }
+            }
+            dirty[u] = true;
+        }
+        return winners;
+    }
+
+    /**
+     * Write the weights of units which changed back to their synapses.
+     */
+    public void writeWeights() {
+        for (int u = 0; u < units.length; u++) {
+            if (!dirty[u]) {
+                continue;
+            }
+            int base = u * dims;
+            for (int i = 0; i < dims; i++) {
+                Synapse s = synapses[base + i];
+                if (!s.isFrozen()) {
+                    s.forceSetStrength(codebook[base + i]);
+                }
+            }
+            dirty[u] = false;
+        }
+    }
+
+    /**
+     * @param u a unit
+     * @param v a unit
+     * @return the distance between the units' positions
+     */
+    private double distance(final int u, final int v) {
+        double dx = x[v] - x[u];
+        double dy = y[v] - y[u];
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * @param k index of a weight
+     * @param value a new value for it
+     * @return the value clipped to the source's polarity, then to the
+     *         weight's bounds
+     */
+    private float clip(final int k, final float value) {
+        float val = value;
+        if ((sign[k] > 0 && val < 0) || (sign[k] < 0 && val > 0)) {
+            val = 0;
+        }
+        if (val > upper[k]) {
+            return upper[k];
+        } else if (val < lower[k]) {
+            return lower[k];
+        }
+        return val;
+    }
+
+    /**
+     * @param in a vector
+     * @param out the vector to copy it to as floats
+     */
+    private static void toFloat(final double[] in, final float[] out) {
+        for (int i = 0; i < out.length; i++) {
+            out[i] = (float) in[i];
+        }
+    }
+
+    /**
+     * @param neurons some neurons
+     * @return the index of each neuron
+     */
+    private static Map<Neuron, Integer> indexOf(final Neuron[] neurons) {
+        Map<Neuron, Integer> ret = new IdentityHashMap<Neuron, Integer>();
+        for (int i = 0; i < neurons.length; i++) {
+            ret.put(neurons[i], i);
+        }
+        return ret;
+    }
+
+    /**
+     * @return the number of SOM neurons
+     */
+    public int getNumUnits() {
+        return units.length;
+    }
+
+    /**
+     * @return the number of inputs
+     */
+    public int getNumInputs() {
+        return dims;
+    }
+
+    /**
+     * @return the number of threads
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param parallelism the number of threads
+     */
+    public void setParallelism(final int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+}
@@ -89,6 +89,9 @@ public class SOMGroup extends NeuronGroup {
     /** The amount that the neighborhood decrements. */
     private double neighborhoodDecayAmount = DEFAULT_NEIGHBORHOOD_DECAY_AMOUNT;
 
+    /** Finds the winner. */
+    private transient WinnerSelector selector;
+
     /**
      * Default layout for neuron groups. Used to set layout defaults in SOM
      * Creation dialog. Overrides superclass DEFAULT_LAYOUT.
@@ -232,7 +235,13 @@ public class SOMGroup extends NeuronGroup {
             }
         }
 
-        // Update alpha and neighborhood size
+        decay();
+    }
+
+    /**
+     * Update alpha and neighborhood size, as is done after each update.
+     */
+    public void decay() {
         alpha = (alpha - alphaDecayRate * alpha);
         if (neighborhoodSize - neighborhoodDecayAmount > 0) {
             neighborhoodSize -= neighborhoodDecayAmount;
@@ -247,16 +256,22 @@ public class SOMGroup extends NeuronGroup {
      * @return winner
      */
     private Neuron calculateWinner() {
-        Neuron winner = null;
-        for (int i = 0; i < getNeuronList().size(); i++) {
-            Neuron n = getNeuronList().get(i);
-            distance = findDistance(n);
-            if (distance < winDistance) {
-                winDistance = distance;
-                winner = n;
-            }
+        if (selector == null) {
+            selector = new WinnerSelector();
+        }
+        double[] distances = selector.evaluate(getNeuronList(),
+                new WinnerSelector.Measure() {
+                    @Override
+                    public double value(final Neuron neuron) {
+                        return findDistance(neuron);
+                    }
+                });
+        int index = selector.argMin(distances, getNeuronList().size());
+        if (index < 0 || !(distances[index] < winDistance)) {
+            return null;
         }
-        return winner;
+        winDistance = distances[index];
+        return getNeuronList().get(index);
     }
 
     /**
@@ -0,0 +1,500 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.subnetworks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+import org.simbrain.network.core.Neuron;
+import org.simbrain.util.ParallelTasks;
+
+/**
+ * <b>WinnerSelector</b> selects the winners of a competition among neurons:
+ * the neuron with the largest (or smallest) value, or the k neurons with the
+ * largest values. Values are first gathered from the neurons into a primitive
+ * array, once per neuron, and winners are then found with a single scan or,
+ * for k winners, by quickselect in linear expected time rather than by
+ * sorting. Large groups are split into bands which are evaluated and scanned
+ * in parallel.
+ * <p>
+ * Ties are broken by a {@link TieBreak} policy. NaN values never win.
+ */
+public class WinnerSelector {
+
+    /** Smallest amount of work (values plus synapses) split into bands. */
+    private static final int PARALLEL_THRESHOLD = 1 << 15;
+
+    /** Smallest band worth its own task. */
+    private static final int MIN_BAND = 1024;
+
+    /**
+     * How ties between equal values are broken.
+     */
+    public enum TieBreak {
+
+        /** The neuron earliest in the list wins. */
+        FIRST {
+            @Override
+            public String toString() {
+                return "First";
+            }
+        },
+
+        /** Each of the tied neurons is equally likely to win. */
+        RANDOM {
+            @Override
+            public String toString() {
+                return "Random";
+            }
+        }
+    }
+
+    /**
+     * A value computed for each neuron. Values of different neurons may be
+     * computed on different threads at the same time.
+     */
+    public interface Measure {
+
+        /**
+         * @param neuron a neuron
+         * @return its value
+         */
+        double value(Neuron neuron);
+    }
+
+    /** Measures each neuron's weighted input. */
+    public static final Measure WEIGHTED_INPUT = new Measure() {
+        @Override
+        public double value(final Neuron neuron) {
+            return neuron.getWeightedInputs();
+        }
+    };
+
+    /** Measures each neuron's activation. */
+    public static final Measure ACTIVATION = new Measure() {
+        @Override
+        public double value(final Neuron neuron) {
+            return neuron.getActivation();
+        }
+    };
+
+    /** Tie-breaking policy. */
+    private TieBreak tieBreak = TieBreak.FIRST;
+
+    /** Number of threads. */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /** Source of random tie breaks. */
+    private final Random random = new Random();
+
+    /** Values of the last evaluated neurons. */
+    private double[] values = new double[0];
+
+    /** Order of neurons among equal values, for k winners. */
+    private int[] tieOrder;
+
+    /** Values being selected from, during k-winner selection. */
+    private double[] selecting;
+
+    /**
+     * Compute a value for each neuron, in parallel for large groups.
+     *
+     * @param neurons the neurons
+     * @param measure the value to compute
+     * @return the values, in the order of the neurons; the array is reused by
+     *         the next call and may be longer than the list
+     */
+    public double[] evaluate(final List<Neuron> neurons,
+            final Measure measure) {
+        final int n = neurons.size();
+        if (values.length < n) {
+            values = new double[n];
+        }
+        final double[] ret = values;
+        int bands = numBands(n, work(neurons, measure));
+        if (bands < 2) {
+            for (int i = 0; i < n; i++) {
+                ret[i] = measure.value(neurons.get(i));
+            }
+            return ret;
+        }
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int b = 0; b < bands; b++) {
+            final int start = n * b / bands;
+            final int end = n * (b + 1) / bands;
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int i = start; i < end; i++) {
+                        ret[i] = measure.value(neurons.get(i));
+                    }
+                    return null;
+                }
+            });
+        }
+        invokeAll(tasks);
+        return ret;
+    }
+
+    /**
+     * Find the index of the largest value.
+     *
+     * @param vals the values
+     * @param n number of values to consider, from the start of the array
+     * @return the index of the largest value, or -1 if there are no values
+     *         other than NaN
+     */
+    public int argMax(final double[] vals, final int n) {
+        return extreme(vals, n, 1);
+    }
+
+    /**
+     * Find the index of the smallest value.
+     *
+     * @param vals the values
+     * @param n number of values to consider, from the start of the array
+     * @return the index of the smallest value, or -1 if there are no values
+     *         other than NaN
+     */
+    public int argMin(final double[] vals, final int n) {
+        return extreme(vals, n, -1);
+    }
+
+    /**
+     * Find the index of the largest value times a sign.
+     *
+     * @param vals the values
+     * @param n number of values
+     * @param sign 1 for the largest, -1 for the smallest
+     * @return the index, or -1
+     */
+    private int extreme(final double[] vals, final int n, final int sign) {
+        int bands = numBands(n, n);
+        if (bands < 2) {
+            return scan(vals, 0, n, sign, random)[0];
+        }
+        List<Callable<int[]>> tasks = new ArrayList<Callable<int[]>>();
+        for (int b = 0; b < bands; b++) {
+            final int start = n * b / bands;
+            final int end = n * (b + 1) / bands;
+            final Random bandRandom = new Random(random.nextLong());
+            tasks.add(new Callable<int[]>() {
+                @Override
+                public int[] call() {
+                    return scan(vals, start, end, sign, bandRandom);
+                }
+            });
+        }
+        // Merge bands in order; a band's ties are weighted by their number
+        int winner = -1;
+        int ties = 0;
+        for (int[] result : invokeAll(tasks)) {
+            if (result[0] < 0) {
+                continue;
+            }
+            double v = sign * vals[result[0]];
+            double best = winner < 0 ? 0 : sign * vals[winner];
+            if (winner < 0 || v > best) {
+                winner = result[0];
+                ties = result[1];
+            } else if (v == best) {
+                ties += result[1];
+                if (tieBreak == TieBreak.RANDOM
+                        && random.nextInt(ties) < result[1]) {
+                    winner = result[0];
+                }
+            }
+        }
+        return winner;
+    }
+
+    /**
+     * Scan a range for the largest value times a sign.
+     *
+     * @param vals the values
+     * @param start first index (inclusive)
+     * @param end last index (exclusive)
+     * @param sign 1 for the largest, -1 for the smallest
+     * @param rand source of random tie breaks
+     * @return the index, or -1, and the number of values tied with it
+     */
+    private int[] scan(final double[] vals, final int start, final int end,
+            final int sign, final Random rand) {
+        boolean randomTies = tieBreak == TieBreak.RANDOM;
+        int winner = -1;
+        int ties = 0;
+        double best = Double.NaN;
+        for (int i = start; i < end; i++) {
+            double v = sign * vals[i];
+            if (v > best || (winner < 0 && v == v)) {
+                best = v;
+                winner = i;
+                ties = 1;
+            } else if (v == best) {
+                ties++;
+                // Reservoir sampling: each tied index wins with 1 / ties
+                if (randomTies && rand.nextInt(ties) == 0) {
+                    winner = i;
+                }
+            }
+        }
+        return new int[] {winner, ties};
+    }
+
+    /**
+     * Find the k largest values by quickselect, in linear expected time.
+     *
+     * @param vals the values
+     * @param n number of values to consider, from the start of the array
+     * @param k number of winners
+     * @return the indices of the k largest values, largest first; fewer if
+     *         there are fewer than k values, and NaN values rank last
+     */
+    public int[] topK(final double[] vals, final int n, final int k) {
+        int count = Math.min(Math.max(k, 0), n);
+        selecting = vals;
+        makeTieOrder(n);
+        try {
+            final int[] idx = new int[n];
+            for (int i = 0; i < n; i++) {
+                idx[i] = i;
+            }
+            int bands = numBands(n, n);
+            // Each band selects its own k winners, then the winners of the
+            // bands are selected from
+            if (bands > 1 && (long) count * bands * 4 < n) {
+                final int kk = count;
+                List<Callable<Integer>> tasks =
+                        new ArrayList<Callable<Integer>>();
+                final int[] starts = new int[bands + 1];
+                for (int b = 0; b <= bands; b++) {
+                    starts[b] = n * b / bands;
+                }
+                for (int b = 0; b < bands; b++) {
+                    final int start = starts[b];
+                    final int end = starts[b + 1];
+                    tasks.add(new Callable<Integer>() {
+                        @Override
+                        public Integer call() {
+                            int m = Math.min(kk, end - start);
+                            select(idx, start, end - 1, start + m);
+                            return m;
+                        }
+                    });
+                }
+                List<Integer> sizes = invokeAll(tasks);
+                int size = 0;
+                for (int b = 0; b < bands; b++) {
+                    System.arraycopy(idx, starts[b], idx, size, sizes.get(b));
+                    size += sizes.get(b);
+                }
+                select(idx, 0, size - 1, count);
+            } else {
+                select(idx, 0, n - 1, count);
+            }
+            Integer[] top = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                top[i] = idx[i];
+            }
+            Arrays.sort(top, new Comparator<Integer>() {
+                @Override
+                public int compare(final Integer a, final Integer b) {
+                    if (a.intValue() == b.intValue()) {
+                        return 0;
+                    }
+                    return before(a, b) ? -1 : 1;
+                }
+            });
+            int[] ret = new int[count];
+            for (int i = 0; i < count; i++) {
+                ret[i] = top[i];
+            }
+            return ret;
+        } finally {
+            selecting = null;
+        }
+    }
+
+    /**
+     * Set the order in which equal values rank.
+     *
+     * @param n number of values
+     */
+    private void makeTieOrder(final int n) {
+        if (tieOrder == null || tieOrder.length < n) {
+            tieOrder = new int[n];
+        }
+        for (int i = 0; i < n; i++) {
+            tieOrder[i] = i;
+        }
+        if (tieBreak == TieBreak.RANDOM) {
+            for (int i = n - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int tmp = tieOrder[i];
+                tieOrder[i] = tieOrder[j];
+                tieOrder[j] = tmp;
+            }
+        }
+    }
+
+    /**
+     * Rearrange a range of indices so that the best m come first.
+     *
+     * @param idx the indices
+     * @param lo first position of the range (inclusive)
+     * @param hi last position of the range (inclusive)
+     * @param m position before which the best indices must be
+     */
+    private void select(final int[] idx, final int lo, final int hi,
+            final int m) {
+        int left = lo;
+        int right = hi;
+        while (left < right) {
+            // Median of three pivot, moved to the right
+            int mid = (left + right) >>> 1;
+            if (before(idx[mid], idx[left])) {
+                swap(idx, mid, left);
+            }
+            if (before(idx[right], idx[left])) {
+                swap(idx, right, left);
+            }
+            if (before(idx[mid], idx[right])) {
+                swap(idx, mid, right);
+            }
+            int pivot = idx[right];
+            int store = left;
+            for (int i = left; i < right; i++) {
+                if (before(idx[i], pivot)) {
+                    swap(idx, i, store++);
+                }
+            }
+            swap(idx, store, right);
+            if (store == m || store == m - 1) {
+                return;
+            } else if (store < m) {
+                left = store + 1;
+            } else {
+                right = store - 1;
+            }
+        }
+    }
+
+    /**
+     * Whether one value ranks before another. Equal values rank by the tie
+     * order, so that no two values rank equally.
+     *
+     * @param a index of a value
+     * @param b index of a value
+     * @return true if a ranks before b
+     */
+    private boolean before(final int a, final int b) {
+        double va = selecting[a];
+        double vb = selecting[b];
+        if (va > vb) {
+            return true;
+        } else if (va < vb) {
+            return false;
+        } else if (va == vb || (va != va && vb != vb)) {
+            return tieOrder[a] < tieOrder[b];
+        }
+        // One of the two is NaN, which ranks last
+        return vb != vb;
+    }
+
+    /**
+     * @param idx an array
+     * @param i a position
+     * @param j a position
+     */
+    private static void swap(final int[] idx, final int i, final int j) {
+        int tmp = idx[i];
+        idx[i] = idx[j];
+        idx[j] = tmp;
+    }
+
+    /**
+     * @param neurons some neurons
+     * @param measure the value computed for them
+     * @return an estimate of the work of computing the values
+     */
+    private static long work(final List<Neuron> neurons,
+            final Measure measure) {
+        long ret = neurons.size();
+        if (measure == WEIGHTED_INPUT) {
+            for (Neuron neuron : neurons) {
+                ret += neuron.getFanIn().size();
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @param n number of values
+     * @param work the amount of work
+     * @return the number of bands to split the values into
+     */
+    private int numBands(final int n, final long work) {
+        if (parallelism < 2 || work < PARALLEL_THRESHOLD) {
+            return 1;
+        }
+        return Math.max(1, Math.min(parallelism, n / MIN_BAND));
+    }
+
+    /**
+     * @param tasks tasks to run in parallel
+     * @param <T> result type
+     * @return their results, in order
+     */
+    private <T> List<T> invokeAll(final List<Callable<T>> tasks) {
+        return ParallelTasks.invokeAll(tasks, parallelism,
+                "Error selecting winners.");
+    }
+
+    /**
+     * @return the tie-breaking policy
+     */
+    public TieBreak getTieBreak() {
+        return tieBreak;
+    }
+
+    /**
+     * @param tieBreak the tie-breaking policy
+     */
+    public void setTieBreak(final TieBreak tieBreak) {
+        this.tieBreak = tieBreak;
+    }
+
+    /**
+     * @return the number of threads
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param parallelism the number of threads
+     */
+    public void setParallelism(final int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+}
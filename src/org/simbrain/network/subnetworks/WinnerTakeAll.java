@@ -52,6 +52,9 @@ public class WinnerTakeAll extends NeuronGroup {
     /** Probability of setting the winner randomly, when useRandom is true. */
     private double randomProb = .1;
 
+    /** Finds the winner. */
+    private transient WinnerSelector selector;
+
     /**
      * Copy constructor.
      *
@@ -133,28 +136,31 @@ public class WinnerTakeAll extends NeuronGroup {
      * @return winning node's index
      */
     private int getWinningIndex() {
-        int winnerIndex = 0;
-        double max = Double.NEGATIVE_INFINITY;
-        double lastVal = getNeuronList().get(0).getWeightedInputs();
+        int size = getNeuronList().size();
+        double[] inputs = getSelector().evaluate(getNeuronList(),
+                WinnerSelector.WEIGHTED_INPUT);
         boolean tie = true;
-        for (int i = 0; i < getNeuronList().size(); i++) {
-            Neuron n = getNeuronList().get(i);
-            double val = n.getWeightedInputs();
-            if (val != lastVal) {
+        for (int i = 1; i < size && tie; i++) {
+            if (inputs[i] != inputs[0]) {
                 tie = false;
             }
-            lastVal = val;
-            if (val > max) {
-                winnerIndex = i;
-                max = n.getWeightedInputs();
-            }
         }
         // Break ties randomly
         // (TODO: Add a field so use can decide if they want this)
         if (tie) {
-            winnerIndex = getRandomWinnerIndex();
+            return getRandomWinnerIndex();
+        }
+        return Math.max(0, getSelector().argMax(inputs, size));
+    }
+
+    /**
+     * @return the selector used to find the winner
+     */
+    private WinnerSelector getSelector() {
+        if (selector == null) {
+            selector = new WinnerSelector();
         }
-        return winnerIndex;
+        return selector;
     }
 
     /**
@@ -12,7 +12,7 @@
  */
 package org.simbrain.network.synapse_update_rules;
 
-import org.simbrain.network.core.SpikingNeuronUpdateRule;
+import org.simbrain.network.core.Neuron;
 import org.simbrain.network.core.Synapse;
 import org.simbrain.util.math.ProbDistribution;
 
@@ -74,6 +74,14 @@ public class LogSTDPRule extends STDPRule {
      */
     private double noiseVar = 0.6;
 
+    /**
+     * Log-STDP also changes inhibitory synapses between spikes.
+     */
+    @Override
+    public boolean isSpikeTriggered() {
+        return false;
+    }
+
     /**
      * Updates the synapse's strength using Log-STDP.
      */
@@ -86,10 +94,8 @@ public class LogSTDPRule extends STDPRule {
         if (!sourceSpiking || !targetSpiking) {
             return; // STDP is non-sensical if one of the units doesn't spike...
         }
-        SpikingNeuronUpdateRule src = (SpikingNeuronUpdateRule) synapse
-                .getSource().getUpdateRule();
-        SpikingNeuronUpdateRule tar = (SpikingNeuronUpdateRule) synapse
-                .getTarget().getUpdateRule();
+        Neuron src = synapse.getSource();
+        Neuron tar = synapse.getTarget();
         double delta_t, delta_w;
         final double timeStep = synapse.getNetwork().getTimeStep();
 //        final double delay = synapse.getDelay() * timeStep;
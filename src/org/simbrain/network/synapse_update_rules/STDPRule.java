@@ -18,12 +18,9 @@
  */
 package org.simbrain.network.synapse_update_rules;
 
-import java.util.concurrent.ThreadLocalRandom;
-
-import org.simbrain.network.core.SpikingNeuronUpdateRule;
+import org.apache.log4j.Logger;
 import org.simbrain.network.core.Synapse;
 import org.simbrain.network.core.SynapseUpdateRule;
-import org.simbrain.network.neuron_update_rules.IntegrateAndFireRule;
 
 /**
  * <b>STDPSynapse</b> models spike time dependent plasticity.
@@ -37,6 +34,12 @@ import org.simbrain.network.neuron_update_rules.IntegrateAndFireRule;
  */
 public class STDPRule extends SynapseUpdateRule {
 
+    /** The static logger for this class. */
+    private static final Logger LOGGER = Logger.getLogger(STDPRule.class);
+
+    /** Whether the warning about non-spiking neurons has been logged. */
+    private static volatile boolean warned;
+
     /** Default tau plus. */
     public static final double TAU_PLUS_DEFAULT = 30;
 
@@ -99,33 +102,87 @@ public class STDPRule extends SynapseUpdateRule {
     @Override
     public void update(Synapse synapse) {
         if (synapse.getSource().isSpike() || synapse.getTarget().isSpike()) {
-            try {
-                final double str = synapse.getStrength();
-                final double delta_t = ((((SpikingNeuronUpdateRule) synapse
-                        .getSource().getUpdateRule()).getLastSpikeTime())
-                        - ((SpikingNeuronUpdateRule) synapse
-                        .getTarget().getUpdateRule()).getLastSpikeTime())
-                        * (hebbian ? 1 : -1);   // Reverse time window for
-                                                // anti-hebbian
-                if (delta_t < 0) {
-                    delta_w = W_plus * Math.exp(delta_t / tau_plus)
-                            * learningRate;
-                } else if (delta_t > 0) {
-                    delta_w = -W_minus * Math.exp(-delta_t / tau_minus)
-                            * learningRate;
-                }
-                if(Math.signum(str) == -1) {
-                    synapse.setStrength(str - delta_w);
-                } else {
-                    synapse.setStrength(str + delta_w);
-                }
-            } catch (ClassCastException cce) {
-                cce.printStackTrace();
-                System.out.println("Don't use non-spiking neurons with STDP!");
+            if (!hasSpikingNeurons(synapse)) {
+                warnNonSpiking();
+                return;
+            }
+            final double delta_t = getDeltaT(synapse);
+            if (delta_t < 0) {
+                applyWindow(synapse, delta_t, Math.exp(delta_t / tau_plus));
+            } else if (delta_t > 0) {
+                applyWindow(synapse, delta_t, Math.exp(-delta_t / tau_minus));
+            } else {
+                applyWindow(synapse, delta_t, 0);
             }
         }
     }
 
+    /**
+     * Only spiking neurons have spike times to compare.
+     *
+     * @param synapse the synapse to check
+     * @return true if both neurons of the synapse are spiking neurons
+     */
+    static boolean hasSpikingNeurons(final Synapse synapse) {
+        return synapse.getSource().getUpdateRule().isSpikingNeuron()
+                && synapse.getTarget().getUpdateRule().isSpikingNeuron();
+    }
+
+    /**
+     * Log, the first time only, that STDP synapses between non-spiking
+     * neurons are left unchanged.
+     */
+    static void warnNonSpiking() {
+        if (!warned) {
+            warned = true;
+            LOGGER.warn("Don't use non-spiking neurons with STDP!"
+                    + " Synapses to or from them are not changed.");
+        }
+    }
+
+    /**
+     * @param synapse the synapse
+     * @return the time of the last source spike minus that of the last target
+     *         spike, reversed for anti-hebbian learning
+     */
+    double getDeltaT(final Synapse synapse) {
+        // Reverse time window for anti-hebbian
+        return (synapse.getSource().getLastSpikeTime()
+                - synapse.getTarget().getLastSpikeTime()) * (hebbian ? 1 : -1);
+    }
+
+    /**
+     * Change the strength of a synapse by the STDP window.
+     *
+     * @param synapse the synapse to change
+     * @param delta_t see {@link #getDeltaT(Synapse)}
+     * @param window exp(delta_t / tau_plus) for negative delta_t,
+     *            exp(-delta_t / tau_minus) for positive delta_t, unused
+     *            otherwise
+     */
+    void applyWindow(final Synapse synapse, final double delta_t,
+            final double window) {
+        final double str = synapse.getStrength();
+        if (delta_t < 0) {
+            delta_w = W_plus * window * learningRate;
+        } else if (delta_t > 0) {
+            delta_w = -W_minus * window * learningRate;
+        }
+        if (Math.signum(str) == -1) {
+            synapse.setStrength(str - delta_w);
+        } else {
+            synapse.setStrength(str + delta_w);
+        }
+    }
+
+    /**
+     * STDP only changes a synapse when its source or target spikes.
+     */
+    @Override
+    public boolean isSpikeTriggered() {
+        return true;
+    }
+
     /**
      * @return the tau_plus
      */
@@ -0,0 +1,287 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.synapse_update_rules;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.Synapse;
+import org.simbrain.network.core.SynapseUpdateRule;
+import org.simbrain.network.groups.SynapseGroup;
+
+/**
+ * <b>SpikeTriggeredPlasticity</b> updates the synapses of a synapse group
+ * whose learning rules are all spike-triggered (see
+ * {@link SynapseUpdateRule#isSpikeTriggered()}). Rather than calling every
+ * synapse's rule on every step, it visits only the fan-in of target neurons
+ * and the fan-out of source neurons which spiked, so the cost of learning is
+ * proportional to the number of spikes rather than the number of synapses.
+ * <p>
+ * For {@link STDPRule} the exponential window is kept as a trace per neuron
+ * and shared by all of that neuron's synapses to neurons which spiked in the
+ * same step, instead of being computed for each synapse.
+ */
+public class SpikeTriggeredPlasticity {
+
+    /** The group to update. */
+    private final SynapseGroup group;
+
+    /** Source neurons of the group. */
+    private final Neuron[] sources;
+
+    /** Target neurons of the group. */
+    private final Neuron[] targets;
+
+    /** The synapses of the group from each source, by source index. */
+    private final Synapse[][] fanOut;
+
+    /** Target index of each synapse in {@link #fanOut}. */
+    private final int[][] fanOutTargets;
+
+    /** The synapses of the group onto each target, by target index. */
+    private final Synapse[][] fanIn;
+
+    /** Source index of each synapse in {@link #fanIn}. */
+    private final int[][] fanInSources;
+
+    /** Traces of the source neurons. */
+    private final Traces sourceTraces;
+
+    /** Traces of the target neurons. */
+    private final Traces targetTraces;
+
+    /** Whether each source neuron is a spiking neuron, by source index. */
+    private final boolean[] sourceSpiking;
+
+    /** Whether each target neuron is a spiking neuron, by target index. */
+    private final boolean[] targetSpiking;
+
+    /** Number of synapses when this was built. */
+    private final int size;
+
+    /**
+     * Per-neuron values of the STDP window. In one step every synapse between
+     * a neuron and neurons which spiked has the same spike time difference,
+     * so the window is computed once per neuron and time constant.
+     */
+    private static class Traces {
+
+        /** The window of each neuron. */
+        private final double[] value;
+
+        /** The -|delta_t| each value was computed for. */
+        private final double[] negDeltaT;
+
+        /** The time constant each value was computed for. */
+        private final double[] tau;
+
+        /**
+         * @param n number of neurons
+         */
+        Traces(final int n) {
+            value = new double[n];
+            negDeltaT = new double[n];
+            tau = new double[n];
+            Arrays.fill(negDeltaT, Double.NaN);
+        }
+
+        /**
+         * Return the window of a neuron, computing it unless it was last
+         * computed for the same arguments.
+         *
+         * @param i neuron index
+         * @param dt -|delta_t| of the synapse being updated
+         * @param timeConstant tau_plus or tau_minus of the rule
+         * @return exp(dt / timeConstant)
+         */
+        double get(final int i, final double dt, final double timeConstant) {
+            if (negDeltaT[i] != dt || tau[i] != timeConstant) {
+                value[i] = Math.exp(dt / timeConstant);
+                negDeltaT[i] = dt;
+                tau[i] = timeConstant;
+            }
+            return value[i];
+        }
+    }
+
+    /**
+     * Construct the scheduler, indexing the synapses of the group by source
+     * and target. Which neurons are spiking neurons is checked here, once;
+     * STDP synapses to or from other neurons are never changed.
+     *
+     * @param group the group to update
+     */
+    public SpikeTriggeredPlasticity(final SynapseGroup group) {
+        this.group = group;
+        List<Neuron> srcList = group.getSourceNeurons();
+        List<Neuron> tarList = group.getTargetNeurons();
+        sources = srcList.toArray(new Neuron[srcList.size()]);
+        targets = tarList.toArray(new Neuron[tarList.size()]);
+        Map<Neuron, Integer> srcIndex = indexOf(sources);
+        Map<Neuron, Integer> tarIndex = indexOf(targets);
+
+        List<List<Synapse>> out = new ArrayList<List<Synapse>>();
+        for (int i = 0; i < sources.length; i++) {
+            out.add(new ArrayList<Synapse>());
+        }
+        List<List<Synapse>> in = new ArrayList<List<Synapse>>();
+        for (int j = 0; j < targets.length; j++) {
+            in.add(new ArrayList<Synapse>());
+        }
+        for (Synapse s : group.getAllSynapses()) {
+            out.get(srcIndex.get(s.getSource())).add(s);
+            in.get(tarIndex.get(s.getTarget())).add(s);
+        }
+        fanOut = new Synapse[sources.length][];
+        fanOutTargets = new int[sources.length][];
+        for (int i = 0; i < sources.length; i++) {
+            fanOut[i] = out.get(i).toArray(new Synapse[out.get(i).size()]);
+            fanOutTargets[i] = new int[fanOut[i].length];
+            for (int k = 0; k < fanOut[i].length; k++) {
+                fanOutTargets[i][k] = tarIndex.get(fanOut[i][k].getTarget());
+            }
+        }
+        fanIn = new Synapse[targets.length][];
+        fanInSources = new int[targets.length][];
+        for (int j = 0; j < targets.length; j++) {
+            fanIn[j] = in.get(j).toArray(new Synapse[in.get(j).size()]);
+            fanInSources[j] = new int[fanIn[j].length];
+            for (int k = 0; k < fanIn[j].length; k++) {
+                fanInSources[j][k] = srcIndex.get(fanIn[j][k].getSource());
+            }
+        }
+        sourceTraces = new Traces(sources.length);
+        targetTraces = new Traces(targets.length);
+        sourceSpiking = isSpiking(sources);
+        targetSpiking = isSpiking(targets);
+        size = group.size();
+        for (Synapse s : group.getAllSynapses()) {
+            if (s.getLearningRule().getClass() == STDPRule.class
+                    && !STDPRule.hasSpikingNeurons(s)) {
+                STDPRule.warnNonSpiking();
+                break;
+            }
+        }
+    }
+
+    /**
+     * @param neurons some neurons
+     * @return whether each neuron has a spiking update rule
+     */
+    private static boolean[] isSpiking(final Neuron[] neurons) {
+        boolean[] ret = new boolean[neurons.length];
+        for (int i = 0; i < neurons.length; i++) {
+            ret[i] = neurons[i].getUpdateRule().isSpikingNeuron();
+        }
+        return ret;
+    }
+
+    /**
+     * @param neurons some neurons
+     * @return the index of each neuron
+     */
+    private static Map<Neuron, Integer> indexOf(final Neuron[] neurons) {
+        Map<Neuron, Integer> ret = new IdentityHashMap<Neuron, Integer>();
+        for (int i = 0; i < neurons.length; i++) {
+            ret.put(neurons[i], i);
+        }
+        return ret;
+    }
+
+    /**
+     * @return true if the group has gained or lost synapses or neurons since
+     *         this was built
+     */
+    public boolean isStale() {
+        return group.size() != size
+                || group.getSourceNeurons().size() != sources.length
+                || group.getTargetNeurons().size() != targets.length;
+    }
+
+    /**
+     * Update the synapses of every neuron which spiked. A synapse whose
+     * source and target both spiked is updated once.
+     */
+    public void update() {
+        for (int j = 0; j < targets.length; j++) {
+            if (!targets[j].isSpike()) {
+                continue;
+            }
+            Synapse[] syns = fanIn[j];
+            int[] srcs = fanInSources[j];
+            for (int k = 0; k < syns.length; k++) {
+                update(syns[k], sourceTraces, srcs[k],
+                        targetSpiking[j] && sourceSpiking[srcs[k]]);
+            }
+        }
+        for (int i = 0; i < sources.length; i++) {
+            if (!sources[i].isSpike()) {
+                continue;
+            }
+            Synapse[] syns = fanOut[i];
+            int[] tars = fanOutTargets[i];
+            for (int k = 0; k < syns.length; k++) {
+                if (targets[tars[k]].isSpike()) {
+                    continue; // Already updated as part of the fan-in
+                }
+                update(syns[k], targetTraces, tars[k],
+                        sourceSpiking[i] && targetSpiking[tars[k]]);
+            }
+        }
+    }
+
+    /**
+     * Update one synapse of a neuron which spiked.
+     *
+     * @param synapse the synapse
+     * @param partnerTraces traces of the neurons at the other end of the
+     *            synapse
+     * @param partner index of the neuron at the other end of the synapse
+     * @param spiking whether both neurons of the synapse are spiking neurons
+     */
+    private void update(final Synapse synapse, final Traces partnerTraces,
+            final int partner, final boolean spiking) {
+        if (synapse.isFrozen()) {
+            return;
+        }
+        SynapseUpdateRule rule = synapse.getLearningRule();
+        if (rule.getClass() != STDPRule.class) {
+            rule.update(synapse);
+            return;
+        }
+        if (!spiking) {
+            return;
+        }
+        STDPRule stdp = (STDPRule) rule;
+        double deltaT = stdp.getDeltaT(synapse);
+        if (deltaT < 0) {
+            stdp.applyWindow(synapse, deltaT,
+                    partnerTraces.get(partner, deltaT, stdp.tau_plus));
+        } else if (deltaT > 0) {
+            stdp.applyWindow(synapse, deltaT,
+                    partnerTraces.get(partner, -deltaT, stdp.tau_minus));
+        } else {
+            stdp.applyWindow(synapse, deltaT, 0);
+        }
+    }
+}
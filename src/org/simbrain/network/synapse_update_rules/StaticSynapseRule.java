@@ -34,6 +34,15 @@ public class StaticSynapseRule extends SynapseUpdateRule {
         // TODO Auto-generated method stub
     }
 
+    /**
+     * Static synapses never change, so they need no update between spikes
+     * either.
+     */
+    @Override
+    public boolean isSpikeTriggered() {
+        return true;
+    }
+
     @Override
     public SynapseUpdateRule deepCopy() {
         StaticSynapseRule cs = new StaticSynapseRule();
@@ -31,6 +31,12 @@ import org.simbrain.network.subnetworks.BPTTNetwork;
  * Trainer for backprop through time Networks. As a test use the "Walker"
  * tables.
  *
+ * By default the network is trained with truncated backpropagation through
+ * time on arrays by {@link RecurrentBackprop}, propagating error back
+ * through the output fed to the input over each whole sequence of
+ * {@link BPTTNetwork#getStepsPerSequences()} rows. Weights change once per
+ * batch of sequences, by the gradient averaged over its steps.
+ *
  * @author jyoshimi
  */
 public class BPTTTrainer extends IterableTrainer {
@@ -62,6 +68,21 @@ public class BPTTTrainer extends IterableTrainer {
     /** For storing bias deltas. */
     private HashMap<Neuron, Double> biasDeltaMap;
 
+    /** Whether to train on arrays when the network allows it. */
+    private boolean useMatrices = true;
+
+    /**
+     * Number of steps error is propagated back through time; 0 for whole
+     * sequences.
+     */
+    private int truncation = 0;
+
+    /** Number of sequences trained on in parallel per weight update. */
+    private int sequencesPerBatch = 1;
+
+    /** Array representation of the network, when training on arrays. */
+    private RecurrentBackprop recurrent;
+
     /**
      * Construct the SRN trainer.
      *
@@ -91,13 +112,25 @@ public class BPTTTrainer extends IterableTrainer {
             return;
         }
 
+        if (useMatrices
+                && RecurrentBackprop.canTrain(bptt.getInputNeurons(), bptt
+                        .getHiddenLayer().getNeuronList(), null, bptt
+                        .getOutputNeurons())) {
+            applyArrays(numRows);
+            return;
+        }
+        recurrent = null;
+
+        double[] inputRow = new double[network.getTrainingSet()
+                .getNumInputColumns()];
+        double[] targetRow = new double[network.getOutputNeurons().size()];
         for (int row = 0; row < numRows; row++) {
             if (firstPatternInSet()) {
                 // System.out.println("First in set:" + iteration);
                 // For new patterns begin with a regular forward propagation
                 bptt.initNetwork();
-                bptt.getInputLayer().setActivations(
-                        network.getTrainingSet().getInputData()[row]);
+                network.getTrainingSet().readInputRow(row, inputRow);
+                bptt.getInputLayer().setActivations(inputRow);
                 // bptt.getInputLayer().printActivations();
                 bptt.getHiddenLayer().update();
                 bptt.getOutputLayer().update();
@@ -110,7 +143,8 @@ public class BPTTTrainer extends IterableTrainer {
             }
 
             // Set weight and bias deltas by backpropagating error
-            backpropagateStoreError(network, row);
+            network.getTrainingSet().readTargetRow(row, targetRow);
+            backpropagateStoreError(network, targetRow);
 
             // Update weights
             if (lastPatternInSet()) {
@@ -142,6 +176,29 @@ public class BPTTTrainer extends IterableTrainer {
 
     }
 
+    /**
+     * One pass through the training data on arrays.
+     *
+     * @param numRows number of rows to train on
+     */
+    private void applyArrays(int numRows) {
+        bptt.initNetwork();
+        if (recurrent == null || recurrent.isStale()) {
+            recurrent = new RecurrentBackprop(bptt.getInputNeurons(), bptt
+                    .getHiddenLayer().getNeuronList(), null,
+                    bptt.getOutputNeurons(), true);
+        } else {
+            recurrent.readWeights(); // Pick up edits made since last epoch
+        }
+        mse = recurrent.train(network.getTrainingSet(), numRows,
+                bptt.getStepsPerSequences(), truncation, sequencesPerBatch,
+                learningRate, momentum);
+        recurrent.writeWeights();
+        setIteration(getIteration() + numRows);
+        mse = mse / (numRows * network.getOutputNeurons().size());
+        fireErrorUpdated();
+    }
+
     /**
      * True if this is the iteration that begans a training series.
      *
@@ -164,14 +221,15 @@ public class BPTTTrainer extends IterableTrainer {
     /**
      * Compute error contribution for all nodes using backprop algorithm.
      *
-     * @param row
-     *            current row of training data
+     * @param targetRow
+     *            target columns of the current row
      */
-    private void backpropagateStoreError(Trainable network, int row) {
+    private void backpropagateStoreError(Trainable network,
+            double[] targetRow) {
 
         int i = 0;
         for (Neuron outputNeuron : bptt.getOutputNeurons()) {
-            double targetValue = network.getTrainingSet().getTargetData()[row][i++];
+            double targetValue = targetRow[i++];
             double outputError = targetValue - outputNeuron.getActivation();
             storeErrorAndDeltas(outputNeuron, outputError);
             mse += Math.pow(outputError, 2);
@@ -249,6 +307,7 @@ public class BPTTTrainer extends IterableTrainer {
 
     @Override
     public void randomize() {
+        recurrent = null;
         randomize(bptt.getHiddenLayer().getNeuronList());
         randomize(bptt.getOutputLayer().getNeuronList());
         revalidateSynapseGroups();
@@ -298,4 +357,48 @@ public class BPTTTrainer extends IterableTrainer {
         this.momentum = momentum;
     }
 
+    /**
+     * @return whether to train on arrays when possible
+     */
+    public boolean isUseMatrices() {
+        return useMatrices;
+    }
+
+    /**
+     * @param useMatrices whether to train on arrays when possible
+     */
+    public void setUseMatrices(boolean useMatrices) {
+        this.useMatrices = useMatrices;
+    }
+
+    /**
+     * @return the number of steps error is propagated back through time
+     */
+    public int getTruncation() {
+        return truncation;
+    }
+
+    /**
+     * @param truncation the number of steps error is propagated back through
+     *            time, 0 for whole sequences
+     */
+    public void setTruncation(int truncation) {
+        this.truncation = Math.max(0, truncation);
+    }
+
+    /**
+     * @return the number of sequences per weight update
+     */
+    public int getSequencesPerBatch() {
+        return sequencesPerBatch;
+    }
+
+    /**
+     * @param sequencesPerBatch the number of sequences trained on in
+     *            parallel per weight update
+     */
+    public void setSequencesPerBatch(int sequencesPerBatch) {
+        this.sequencesPerBatch = Math.max(1, sequencesPerBatch);
+    }
+
 }
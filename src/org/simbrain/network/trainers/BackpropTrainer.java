@@ -20,6 +20,7 @@ package org.simbrain.network.trainers;
 
 import java.util.HashMap;
 import java.util.List;
+import java.util.Random;
 
 import org.simbrain.network.core.Network;
 import org.simbrain.network.core.Neuron;
@@ -36,7 +37,7 @@ import org.simbrain.network.neuron_update_rules.interfaces.DifferentiableUpdateR
 public class BackpropTrainer extends IterableTrainer {
 
     /** Current error. */
-    private double mse;
+    protected double mse;
 
     /** Default learning rate. */
     private static final double DEFAULT_LEARNING_RATE = .25;
@@ -62,6 +63,34 @@ public class BackpropTrainer extends IterableTrainer {
     /** Internal representation of network. */
     private List<List<Neuron>> layers;
 
+    /**
+     * Whether to train on weight matrices when the network allows it. See
+     * {@link MinibatchBackprop}.
+     */
+    private boolean useMatrices = true;
+
+    /** Number of rows per weight update when training on matrices. */
+    private int batchSize = 1;
+
+    /**
+     * Whether to train on the rows in a different random order each epoch,
+     * when training on matrices.
+     */
+    private boolean shuffle;
+
+    /** Source of the shuffled orders. */
+    private final Random random = new Random();
+
+    /**
+     * Whether to copy the weight matrices to the synapses after every epoch.
+     * If false they are only copied by {@link #writeWeights()}, and changes
+     * made to the synapses in the meantime are ignored.
+     */
+    private boolean writeWeightsEachEpoch = true;
+
+    /** Matrix representation of the network, when training on matrices. */
+    private MinibatchBackprop matrices;
+
     /**
      * Construct the backprop trainer.
      *
@@ -96,21 +125,27 @@ public class BackpropTrainer extends IterableTrainer {
         }
 
         network.initNetwork();
+        if (useMatrices && MinibatchBackprop.canTrain(layers)) {
+            applyMatrices(numRows);
+            return;
+        }
+        double[] inputRow = new double[numInputs];
+        double[] targetRow = new double[network.getOutputNeurons().size()];
         for (int row = 0; row < numRows; row++) {
 
             // Set activations on input layer
+            network.getTrainingSet().readInputRow(row, inputRow);
             for (int i = 0; i < numInputs; i++) {
-                network.getInputNeurons()
-                        .get(i)
-                        .forceSetActivation(
-                                network.getTrainingSet().getInputData()[row][i]);
+                network.getInputNeurons().get(i)
+                        .forceSetActivation(inputRow[i]);
             }
 
             // Update network
             updateNetwork();
 
             // Set weight and bias deltas by backpropagating error
-            backpropagateError(network, row);
+            network.getTrainingSet().readTargetRow(row, targetRow);
+            backpropagateError(network, targetRow);
 
             // Update weights
             for (Synapse synapse : weightDeltaMap.keySet()) {
@@ -137,13 +172,47 @@ public class BackpropTrainer extends IterableTrainer {
         fireErrorUpdated();
     }
 
+    /**
+     * One pass through the training data on weight matrices.
+     *
+     * @param numRows number of rows to train on
+     */
+    private void applyMatrices(int numRows) {
+        if (matrices == null || matrices.isStale(layers)) {
+            writeWeights();
+            matrices = new MinibatchBackprop(layers);
+        } else if (writeWeightsEachEpoch) {
+            matrices.readWeights(); // Pick up edits made since last epoch
+        }
+        mse = matrices.train(network.getTrainingSet(),
+                network.getInputNeurons(), network.getOutputNeurons(),
+                numRows, batchSize, shuffle ? random : null, learningRate,
+                momentum);
+        if (writeWeightsEachEpoch) {
+            matrices.writeWeights();
+        }
+        mse = mse / (numRows * network.getOutputNeurons().size());
+        incrementIteration();
+        fireErrorUpdated();
+    }
+
+    /**
+     * Copy the weights being trained on matrices to the synapses. Only needed
+     * when weights are not written after each epoch.
+     */
+    public void writeWeights() {
+        if (matrices != null) {
+            matrices.writeWeights();
+        }
+    }
+
     /**
      * Compute error contribution for all nodes using backprop algorithm.
      *
-     * @param row
-     *            current row of training data
+     * @param targetRow
+     *            targets of the current row of training data
      */
-    private void backpropagateError(Trainable network, int row) {
+    private void backpropagateError(Trainable network, double[] targetRow) {
         int numOutputs = network.getOutputNeurons().size();
 
         // Iterate through layers from the output to the input layer.
@@ -156,8 +225,7 @@ public class BackpropTrainer extends IterableTrainer {
             if (i == layers.size() - 1) {
                 for (int j = 0; j < numOutputs; j++) {
                     Neuron outputNeuron = network.getOutputNeurons().get(j);
-                    double targetValue = network.getTrainingSet()
-                            .getTargetData()[row][j];
+                    double targetValue = targetRow[j];
                     double outputError = targetValue
                             - outputNeuron.getActivation();
                     storeErrorAndDeltas(outputNeuron, outputError);
@@ -228,6 +296,7 @@ public class BackpropTrainer extends IterableTrainer {
      * Randomize the network.
      */
     public void randomize() {
+        matrices = null;
         for (List<Neuron> layer : layers) {
             // Don't update input layer
             if (layers.indexOf(layer) > 0) {
@@ -399,6 +468,69 @@ public class BackpropTrainer extends IterableTrainer {
     //
     // }
 
+    /**
+     * @return whether to train on weight matrices when possible
+     */
+    public boolean isUseMatrices() {
+        return useMatrices;
+    }
+
+    /**
+     * @param useMatrices whether to train on weight matrices when possible
+     */
+    public void setUseMatrices(boolean useMatrices) {
+        if (!useMatrices) {
+            writeWeights();
+            matrices = null;
+        }
+        this.useMatrices = useMatrices;
+    }
+
+    /**
+     * @return the number of rows per weight update
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize the number of rows per weight update, when training
+     *            on matrices
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * @return whether rows are shuffled each epoch, when training on matrices
+     */
+    public boolean isShuffle() {
+        return shuffle;
+    }
+
+    /**
+     * @param shuffle whether to train on the rows in a different random order
+     *            each epoch, when training on matrices
+     */
+    public void setShuffle(boolean shuffle) {
+        this.shuffle = shuffle;
+    }
+
+    /**
+     * @return whether weights are copied to the synapses after every epoch
+     */
+    public boolean isWriteWeightsEachEpoch() {
+        return writeWeightsEachEpoch;
+    }
+
+    /**
+     * @param writeWeightsEachEpoch whether to copy weights to the synapses
+     *            after every epoch
+     */
+    public void setWriteWeightsEachEpoch(boolean writeWeightsEachEpoch) {
+        this.writeWeightsEachEpoch = writeWeightsEachEpoch;
+    }
+
     /**
      * @return the momentum
      */
@@ -55,13 +55,15 @@ public class CompetitiveTrainer extends Trainer {
     @Override
     public void apply() throws DataNotInitializedException {
 
-        if (network.getTrainingSet().getInputData() == null) {
+        TrainingSet data = network.getTrainingSet();
+        if (!data.hasInputData()) {
             throw new DataNotInitializedException("Input data not initalized");
         }
 
-        int numRows = network.getTrainingSet().getInputData().length;
+        int numRows = data.getNumRows();
+        double[] inputs = new double[data.getNumInputColumns()];
         for (int row = 0; row < numRows; row++) {
-            double[] inputs = network.getTrainingSet().getInputData()[row];
+            data.readInputRow(row, inputs);
             network.getInputLayer().forceSetActivations(inputs);
             network.getCompetitive().update(); // Call a function here to be overriden in subclasses?
         }
@@ -18,25 +18,86 @@
  */
 package org.simbrain.network.trainers;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
 import org.simbrain.network.core.Neuron;
 import org.simbrain.network.core.Synapse;
 import org.simbrain.network.subnetworks.Hopfield;
-import org.simbrain.util.SimbrainConstants.Polarity;
-import org.simbrain.util.math.SimbrainMath;
+import org.simbrain.util.ParallelTasks;
+
+import Jama.Matrix;
 
 /**
- * Trainer for a Hopfield network.
+ * Trainer for a Hopfield network. The weight matrix is computed from all the
+ * patterns at once in a flat array, in bands of rows computed in parallel,
+ * and then written to the synapses.
  *
- * TODO: Add better Hopfield training! See
- * https://www.doc.ic.ac.uk/project/2012/163/g1216318/web/Refinements.html
+ * See https://www.doc.ic.ac.uk/project/2012/163/g1216318/web/Refinements.html
+ * for the Storkey and pseudo-inverse rules.
  *
  * @author Jeff Yoshimi
  */
 public class HopfieldTrainer extends Trainer {
 
+    /** Smallest number of multiply-adds worth running in parallel. */
+    private static final long PARALLEL_THRESHOLD = 1 << 20;
+
     /** Reference to network being trained. */
     private final Hopfield hopfield;
 
+    /** The learning rule. */
+    private LearningRule learningRule = LearningRule.HEBBIAN;
+
+    /** Number of threads. */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /** Whether the current training is large enough to run in parallel. */
+    private boolean parallel;
+
+    /**
+     * Rules for computing the weights from the patterns.
+     */
+    public enum LearningRule {
+
+        /**
+         * Sum of the outer products of the patterns (in bipolar form), with
+         * no self connections.
+         */
+        HEBBIAN {
+            @Override
+            public String toString() {
+                return "Hebbian";
+            }
+        },
+
+        /**
+         * Storkey's rule, which adds patterns one at a time with a correction
+         * for the local fields of the patterns already stored, and stores
+         * more patterns than the Hebbian rule.
+         */
+        STORKEY {
+            @Override
+            public String toString() {
+                return "Storkey";
+            }
+        },
+
+        /**
+         * Projection onto the span of the patterns (X' (X X')^-1 X), which
+         * makes every linearly independent pattern a fixed point.
+         */
+        PSEUDO_INVERSE {
+            @Override
+            public String toString() {
+                return "Pseudo-inverse";
+            }
+        }
+    }
+
     /**
      * Construct the Hopfield trainer.
      *
@@ -50,32 +111,44 @@ public class HopfieldTrainer extends Trainer {
     @Override
     public void apply() throws DataNotInitializedException {
 
-        if (getTrainableNetwork().getTrainingSet().getInputData() == null) {
+        if (!getTrainableNetwork().getTrainingSet().hasInputData()) {
             throw new DataNotInitializedException("Input data not initalized");
         }
 
-        hopfield.getSynapseGroup().setStrength(0, Polarity.BOTH);
-        int numRows = hopfield.getTrainingSet().getInputData().length;
-        int numInputs = hopfield.getInputNeurons().size();
-        float normConstant = 1 / (float) numRows;
-
-        double[] vals = new double[numInputs * numInputs - numInputs];
-        for (int row = 0; row < numRows; row++) {
-            double[] pattern = hopfield.getTrainingSet().getInputData()[row];
-            Neuron[] neurons = hopfield.getSynapseGroup().getSourceNeurons()
-                .toArray(new Neuron[pattern.length]);
-            for (int i = 0; i < pattern.length; i++) {
-                for (int j = 0; j < pattern.length; j++) {
-                    if (i != j) {
-                        Synapse s = neurons[i].getFanOut().get(neurons[j]);
-                        s.setStrength(s.getStrength()
-                                + Hopfield.bipolar(pattern[i])
-                                * Hopfield.bipolar(pattern[j]));
-                    }
-                }
+        List<Neuron> neurons = hopfield.getSynapseGroup().getSourceNeurons();
+        TrainingSet data = hopfield.getTrainingSet();
+        int n = neurons.size();
+        double[][] patterns = new double[data.getNumRows()][n];
+        double[] pattern = new double[data.getNumInputColumns()];
+        for (int row = 0; row < patterns.length; row++) {
+            data.readInputRow(row, pattern);
+            for (int i = 0; i < n; i++) {
+                patterns[row][i] = Hopfield.bipolar(i < pattern.length
+                        ? pattern[i] : 0);
+            }
+        }
+
+        long work = (long) n * n * Math.max(1, patterns.length);
+        parallel = parallelism > 1 && work >= PARALLEL_THRESHOLD;
+        double[] weights;
+        try {
+            weights = getWeights(patterns, n);
+        } finally {
+            parallel = false;
+        }
+
+        Map<Neuron, Integer> index = new IdentityHashMap<Neuron, Integer>();
+        for (int i = 0; i < n; i++) {
+            index.put(neurons.get(i), i);
+        }
+        for (Synapse s : hopfield.getSynapseGroup().getAllSynapses()) {
+            Integer i = index.get(s.getSource());
+            Integer j = index.get(s.getTarget());
+            if (i != null && j != null) {
+                s.setStrength(weights[i * n + j]);
             }
         }
-        vals = SimbrainMath.multVector(vals, normConstant);
+        hopfield.resetEnergy();
 
         // Make sure excitatory/inhibitory are in proper lists
         revalidateSynapseGroups();
@@ -84,4 +157,240 @@ public class HopfieldTrainer extends Trainer {
         hopfield.getParentNetwork().fireGroupUpdated(hopfield);
     }
 
+    /**
+     * Compute the weights with the current learning rule.
+     *
+     * @param patterns the patterns, in bipolar form
+     * @param n number of neurons
+     * @return the weights, [source * n + target]; symmetric, with a zero
+     *         diagonal
+     */
+    private double[] getWeights(final double[][] patterns, final int n) {
+        final double[] w = new double[n * n];
+        if (learningRule == LearningRule.HEBBIAN) {
+            hebbian(patterns, n, w);
+        } else if (learningRule == LearningRule.STORKEY) {
+            for (double[] pattern : patterns) {
+                storkey(pattern, n, w);
+            }
+        } else {
+            pseudoInverse(patterns, n, w);
+        }
+        return w;
+    }
+
+    /**
+     * Add the outer products of the patterns to the lower triangle of the
+     * weights, then mirror it.
+     *
+     * @param patterns the patterns
+     * @param n number of neurons
+     * @param w the weights
+     */
+    private void hebbian(final double[][] patterns, final int n,
+            final double[] w) {
+        // Row i of the triangle has i entries, so bands of equal work end at
+        // n * sqrt(b / bands)
+        forEachBand(n, true, new Band() {
+            @Override
+            public void run(final int start, final int end) {
+                for (double[] x : patterns) {
+                    for (int i = start; i < end; i++) {
+                        double xi = x[i];
+                        int base = i * n;
+                        for (int j = 0; j < i; j++) {
+                            w[base + j] += xi * x[j];
+                        }
+                    }
+                }
+            }
+        });
+        mirror(n, w);
+    }
+
+    /**
+     * Add a pattern with Storkey's rule: w_ij += (x_i x_j - x_i h_ji - h_ij
+     * x_j) / n, where h_ij is the local field of i excluding i and j.
+     *
+     * @param x the pattern
+     * @param n number of neurons
+     * @param w the weights
+     */
+    private void storkey(final double[] x, final int n, final double[] w) {
+        final double[] h = new double[n];
+        forEachBand(n, false, new Band() {
+            @Override
+            public void run(final int start, final int end) {
+                for (int i = start; i < end; i++) {
+                    int base = i * n;
+                    double sum = 0;
+                    for (int k = 0; k < n; k++) {
+                        sum += w[base + k] * x[k];
+                    }
+                    h[i] = sum;
+                }
+            }
+        });
+        // The weights are symmetric, so w_ji is read as w_ij, which has not
+        // been updated yet by this row
+        forEachBand(n, false, new Band() {
+            @Override
+            public void run(final int start, final int end) {
+                for (int i = start; i < end; i++) {
+                    int base = i * n;
+                    double xi = x[i];
+                    for (int j = 0; j < n; j++) {
+                        if (i == j) {
+                            continue;
+                        }
+                        double wij = w[base + j];
+                        double hij = h[i] - wij * x[j];
+                        double hji = h[j] - wij * xi;
+                        w[base + j] = wij + (xi * x[j] - xi * hji - hij * x[j])
+                                / n;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Set the weights to the projection X' (X X')^-1 X, with a zero diagonal.
+     *
+     * @param x the patterns, one per row
+     * @param n number of neurons
+     * @param w the weights
+     */
+    private void pseudoInverse(final double[][] x, final int n,
+            final double[] w) {
+        int p = x.length;
+        if (p == 0) {
+            return;
+        }
+        Matrix patterns = new Matrix(x, p, n);
+        Matrix overlaps = patterns.times(patterns.transpose());
+        if (overlaps.rank() < p) {
+            throw new InvalidDataException("Patterns are not linearly "
+                    + "independent; the pseudo-inverse rule cannot be used.");
+        }
+        final double[][] y = overlaps.inverse().times(patterns).getArray();
+        forEachBand(n, false, new Band() {
+            @Override
+            public void run(final int start, final int end) {
+                for (int i = start; i < end; i++) {
+                    int base = i * n;
+                    for (int a = 0; a < x.length; a++) {
+                        double xai = x[a][i];
+                        if (xai == 0) {
+                            continue;
+                        }
+                        double[] ya = y[a];
+                        for (int j = 0; j < n; j++) {
+                            w[base + j] += xai * ya[j];
+                        }
+                    }
+                    w[base + i] = 0;
+                }
+            }
+        });
+    }
+
+    /**
+     * Copy the lower triangle of the weights to the upper triangle.
+     *
+     * @param n number of neurons
+     * @param w the weights
+     */
+    private static void mirror(final int n, final double[] w) {
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < i; j++) {
+                w[j * n + i] = w[i * n + j];
+            }
+        }
+    }
+
+    /**
+     * Operation on a band of rows of the weights.
+     */
+    private interface Band {
+
+        /**
+         * @param start first row (inclusive)
+         * @param end last row (exclusive)
+         */
+        void run(int start, int end);
+    }
+
+    /**
+     * Run an operation on every band of rows, in parallel if the training is
+     * large enough.
+     *
+     * @param n number of rows
+     * @param triangular whether the work per row grows with the row, so that
+     *            later bands are made narrower
+     * @param band the operation
+     */
+    private void forEachBand(final int n, final boolean triangular,
+            final Band band) {
+        if (!parallel) {
+            band.run(0, n);
+            return;
+        }
+        int bands = Math.min(parallelism, n);
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        int start = 0;
+        for (int b = 1; b <= bands; b++) {
+            int end;
+            if (b == bands) {
+                end = n;
+            } else if (triangular) {
+                end = (int) Math.round(n * Math.sqrt((double) b / bands));
+            } else {
+                end = n * b / bands;
+            }
+            if (end > start) {
+                final int from = start;
+                final int to = end;
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        band.run(from, to);
+                        return null;
+                    }
+                });
+                start = end;
+            }
+        }
+        ParallelTasks.invokeAll(tasks, parallelism,
+                "Error training Hopfield network.");
+    }
+
+    /**
+     * @return the learning rule
+     */
+    public LearningRule getLearningRule() {
+        return learningRule;
+    }
+
+    /**
+     * @param learningRule the learning rule
+     */
+    public void setLearningRule(final LearningRule learningRule) {
+        this.learningRule = learningRule;
+    }
+
+    /**
+     * @return the number of threads
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param parallelism the number of threads
+     */
+    public void setParallelism(final int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
 }
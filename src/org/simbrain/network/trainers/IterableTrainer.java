@@ -121,10 +121,10 @@ public abstract class IterableTrainer extends Trainer {
      */
     public void iterate() throws DataNotInitializedException {
 
-        if (getTrainableNetwork().getTrainingSet().getInputData() == null) {
+        if (!getTrainableNetwork().getTrainingSet().hasInputData()) {
             throw new DataNotInitializedException("Input data not initalized");
         }
-        if (getTrainableNetwork().getTrainingSet().getTargetData() == null) {
+        if (!getTrainableNetwork().getTrainingSet().hasTargetData()) {
             throw new DataNotInitializedException("Target data not initalized");
         }
 
@@ -243,12 +243,12 @@ public abstract class IterableTrainer extends Trainer {
      * @return least number of rows
      */
     protected int getMinimumNumRows(Trainable network) {
-        if ((network.getTrainingSet().getInputData() == null)
-                || (network.getTrainingSet() == null)) {
+        if ((network.getTrainingSet() == null)
+                || !network.getTrainingSet().hasInputData()) {
             return 0;
         }
-        int inputRows = network.getTrainingSet().getInputData().length;
-        int targetRows = network.getTrainingSet().getTargetData().length;
+        int inputRows = network.getTrainingSet().getNumRows();
+        int targetRows = network.getTrainingSet().getNumTargetRows();
         if (inputRows < targetRows) {
             return inputRows;
         } else {
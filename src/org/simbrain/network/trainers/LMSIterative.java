@@ -58,19 +58,21 @@ public class LMSIterative extends IterableTrainer {
         rmsError = 0;
 
         // Set local variables
-        int numRows = network.getTrainingSet().getInputData().length;
+        int numRows = network.getTrainingSet().getNumRows();
         int numInputs = network.getInputNeurons().size();
         int numOutputs = network.getOutputNeurons().size();
+        double[] inputRow = new double[numInputs];
+        double[] targetRow = new double[numOutputs];
 
         // Run through training data
         for (int row = 0; row < numRows; row++) {
 
             // Set input layer values
+            network.getTrainingSet().readInputRow(row, inputRow);
+            network.getTrainingSet().readTargetRow(row, targetRow);
             for (int i = 0; i < numInputs; i++) {
-                network.getInputNeurons()
-                        .get(i)
-                        .forceSetActivation(
-                                network.getTrainingSet().getInputData()[row][i]);
+                network.getInputNeurons().get(i)
+                        .forceSetActivation(inputRow[i]);
             }
 
             // Update output node
@@ -81,7 +83,7 @@ public class LMSIterative extends IterableTrainer {
 
                 // Get target neuron and compute error
                 Neuron outputNeuron = network.getOutputNeurons().get(i);
-                double targetValue = network.getTrainingSet().getTargetData()[row][i];
+                double targetValue = targetRow[i];
                 double error = targetValue - outputNeuron.getActivation();
                 rmsError += (error * error); // TODO: Validate rmse
 
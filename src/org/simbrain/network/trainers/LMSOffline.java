@@ -27,10 +27,6 @@ package org.simbrain.network.trainers;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 
-import org.ojalgo.access.Access2D.Builder;
-import org.ojalgo.matrix.BasicMatrix;
-import org.ojalgo.matrix.BasicMatrix.Factory;
-import org.ojalgo.matrix.PrimitiveMatrix;
 import org.simbrain.network.core.Neuron;
 import org.simbrain.network.groups.Subnetwork;
 import org.simbrain.network.groups.SynapseGroup;
@@ -114,57 +110,81 @@ public class LMSOffline extends Trainer {
     @Override
     public void apply() throws DataNotInitializedException {
 
-        if (getTrainableNetwork().getTrainingSet().getInputData() == null) {
+        if (!getTrainableNetwork().getTrainingSet().hasInputData()) {
             throw new DataNotInitializedException(
                 "Input data not initalized");
         }
-        if (getTrainableNetwork().getTrainingSet().getTargetData() == null) {
+        if (!getTrainableNetwork().getTrainingSet().hasTargetData()) {
             throw new DataNotInitializedException(
                 "Target data not initalized");
         }
 
         fireTrainingBegin();
 
+        if (solutionType == SolutionType.WIENER_HOPF) {
+            // Rows are streamed, and the target and noise adjustments below
+            // are made to each row as it is read
+            weinerHopfSolution(network, true);
+        } else if (solutionType == SolutionType.MOORE_PENROSE) {
+            // The adjustments are made to a copy of each row, leaving the
+            // training set unchanged
+            moorePenroseSolution(network, true);
+        } else {
+            throw new IllegalArgumentException("Solution type must be "
+                + "'MoorePenrose' or 'WeinerHopf'.");
+        }
+
+        revalidateSynapseSets();
+        fireTrainingEnd();
+        revalidateSynapseGroups();
+
+    }
+
+    /**
+     * Adjust one row of training data: targets of sigmoidal output neurons
+     * are inverted through the sigmoid and noise is added to the inputs if
+     * requested.
+     *
+     * @param inputRow the input row, to add noise to
+     * @param targetRow the target row, to invert for sigmoidal outputs
+     */
+    private void adjustRow(double[] inputRow, double[] targetRow) {
         int index = 0;
         for (Neuron n : network.getOutputNeurons()) {
-
-            // If output nodes are sigmoidal, alter the effective target data
-            // such that the desired value will result when it is put through
-            // the sigmoidal. Warning: problems can occur here if the bounds of
-            // the sigmoidal are not set properly.
-            if (n.getUpdateRule() instanceof SigmoidalRule) {
-                for (int i = 0; i < network.getTrainingSet()
-                    .getTargetData().length; i++) {
-                    network.getTrainingSet().getTargetData()[i][index] =
-                        ((SigmoidalRule) n.getUpdateRule())
-                            .getInverse(network.getTrainingSet()
-                                .getTargetData()[i][index]);
-                }
+            if (index < targetRow.length
+                && n.getUpdateRule() instanceof SigmoidalRule) {
+                targetRow[index] = ((SigmoidalRule) n.getUpdateRule())
+                    .getInverse(targetRow[index]);
             }
             index++;
         }
-
-        // Add noise to the input state matrix.
         if (noiseAdded) {
-            double[][] stateMat = network.getTrainingSet().getInputData();
-            for (int i = 0, n = stateMat.length; i < n; i++) {
-                for (int j = 0, m = stateMat[i].length; j < m; j++) {
-                    network.getTrainingSet().getInputData()[i][j] =
-                        stateMat[i][j] + noiseGen.getRandom();
-                }
+            for (int j = 0; j < inputRow.length; j++) {
+                inputRow[j] += noiseGen.getRandom();
             }
         }
+    }
 
-        if (solutionType == SolutionType.WIENER_HOPF) {
-            weinerHopfSolution(network);
-        } else if (solutionType == SolutionType.MOORE_PENROSE) {
-            moorePenroseSolution(network);
-        } else {
-            throw new IllegalArgumentException("Solution type must be "
-                + "'MoorePenrose' or 'WeinerHopf'.");
-        }
+    /**
+     * Train with the Wiener-Hopf solution from correlations the caller has
+     * accumulated, instead of from the training set. Target values should
+     * already be transformed for the output neurons' update rules, and any
+     * noise already added to the states.
+     *
+     * @param correlations the states and targets, one row per state
+     */
+    public void apply(StreamingLeastSquares correlations) {
+        fireTrainingBegin();
+        weinerHopfSolution(network, correlations);
+        revalidateSynapseSets();
+        fireTrainingEnd();
+        revalidateSynapseGroups();
+    }
 
-        // Make sure excitatory/inhibitory are in proper lists
+    /**
+     * Make sure excitatory/inhibitory synapses are in proper lists.
+     */
+    private void revalidateSynapseSets() {
         if (getTrainableNetwork().getNetwork() instanceof Subnetwork) {
             SynapseGroup group = ((Subnetwork) getTrainableNetwork()
                     .getNetwork()).getSynapseGroup();
@@ -177,116 +197,138 @@ public class LMSOffline extends Trainer {
                         .revalidateSynapseSets();
             }
         }
-
-        fireTrainingEnd();
-        revalidateSynapseGroups();
-
     }
 
     /**
-     * Implements the Wiener-Hopf solution to LMS linear regression.
+     * Implements the Wiener-Hopf solution to LMS linear regression. The rows
+     * of the training set are read one at a time with
+     * {@link TrainingSet#readInputRow(int, double[])} and
+     * {@link TrainingSet#readTargetRow(int, double[])} and streamed into the
+     * correlation matrices, so the state and target matrices are never held
+     * in memory, even for training sets backed by a data file.
      * TODO: Fix progress updates to reflect actual training times &#38; %s
      * @param network the trainable network being trained
      */
     public void weinerHopfSolution(Trainable network) {
+        weinerHopfSolution(network, false);
+    }
+
+    /**
+     * Implements the Wiener-Hopf solution, streaming the rows of the training
+     * set.
+     *
+     * @param network the trainable network being trained
+     * @param adjust whether to make the adjustments of
+     *            {@link #adjustRow(double[], double[])} to each row as it
+     *            is read
+     */
+    private void weinerHopfSolution(Trainable network, boolean adjust) {
         long start = System.nanoTime();
-        double[][] inputMatrix = network.getTrainingSet().getInputData();
-        double[][] trainingMatrix = network.getTrainingSet()
-            .getTargetData();
+        TrainingSet data = network.getTrainingSet();
+        int numRows = Math.min(data.getNumRows(), data.getNumTargetRows());
+        double[] inputRow = new double[data.getNumInputColumns()];
+        double[] targetRow = new double[data.getNumTargetColumns()];
         try {
-
-            Factory<?> mf = PrimitiveMatrix.FACTORY;
-
-            Builder<?> tmpBuilder = mf.getBuilder(inputMatrix.length,
-                inputMatrix[0].length);
-            for (int i = 0; i < tmpBuilder.countRows(); i++) {
-                for (int j = 0; j < tmpBuilder.countColumns(); j++) {
-                    tmpBuilder.set(i, j, inputMatrix[i][j]);
+            fireProgressUpdate("Correlating State Matrix (R = S'S) and "
+                + "Cross-Correlating States with Teacher data (P = S'D)...",
+                0);
+            StreamingLeastSquares correlations = new StreamingLeastSquares(
+                inputRow.length, targetRow.length);
+            for (int i = 0; i < numRows; i++) {
+                data.readInputRow(i, inputRow);
+                data.readTargetRow(i, targetRow);
+                if (adjust) {
+                    adjustRow(inputRow, targetRow);
                 }
-            }
-
-            BasicMatrix stateMat = (BasicMatrix) tmpBuilder.build();
-
-            tmpBuilder = mf.getBuilder(trainingMatrix.length,
-                trainingMatrix[0].length);
-            for (int i = 0; i < tmpBuilder.countRows(); i++) {
-                for (int j = 0; j < tmpBuilder.countColumns(); j++) {
-                    tmpBuilder.set(i, j, trainingMatrix[i][j]);
-                    if (Double.isInfinite(trainingMatrix[i][j])
-                        || Double.isNaN(trainingMatrix[i][j])) {
+                for (int j = 0; j < targetRow.length; j++) {
+                    if (Double.isInfinite(targetRow[j])
+                        || Double.isNaN(targetRow[j])) {
                         throw new NumberFormatException("Invalid target"
                             + " values.");
                     }
                 }
+                correlations.addRow(inputRow, targetRow);
             }
+            weinerHopfSolution(network, correlations);
+        } catch (RuntimeException e) {
+            showSingularMessage();
+        }
 
-            BasicMatrix teachMat = (BasicMatrix) tmpBuilder.build();
-
-            fireProgressUpdate("Correlating State Matrix (R = S'S)...", 0);
-            teachMat = stateMat.transpose().multiplyRight(teachMat);
-
-            fireProgressUpdate(
-                "Cross-Correlating States with Teacher data (P = S'D)...",
-                15);
-            stateMat = stateMat.transpose().multiplyRight(stateMat);
-
-            fireProgressUpdate("Computing Inverse Correlation Matrix...", 30);
-
-            if (ridgeRegression) {
-                tmpBuilder = mf.getBuilder((int) stateMat.countRows(),
-                    (int) stateMat.countColumns());
-                for (int i = 0, n = (int) stateMat.countColumns(); i < n; i++) {
-                    tmpBuilder.set(i, i, alpha * alpha);
-                }
-                BasicMatrix scaleMat = (BasicMatrix) tmpBuilder.build();
-                stateMat = stateMat.add(scaleMat);
-            }
+        long end = System.nanoTime();
+        System.out.println("Time: " + (end - start) / Math.pow(10, 9));
+    }
 
-            stateMat = stateMat.invert();
-
-            fireProgressUpdate("Computing Weights...", 80);
-            tmpBuilder =
-                stateMat.multiplyRight(teachMat).copyToBuilder();
-            BasicMatrix finalMat = (BasicMatrix) tmpBuilder.build();
-            double[][] wOut = new double[(int) tmpBuilder.countRows()]
-                [(int) tmpBuilder.countColumns()];
-            for (int i = 0, n = (int) tmpBuilder.countRows(); i < n; i++) {
-                for (int j = 0, m = (int) tmpBuilder.countColumns(); j < m; j++)
-                {
-                    wOut[i][j] = finalMat.doubleValue(i, j);
-                }
-            }
+    /**
+     * Implements the Wiener-Hopf solution from correlations which have
+     * already been accumulated, for example while harvesting states from a
+     * network, and sets the weights from the input to the output neurons of
+     * the network. Target values should already be transformed for the
+     * output neurons' update rules.
+     *
+     * @param network the trainable network being trained
+     * @param correlations the states and targets, one row per state
+     */
+    public void weinerHopfSolution(Trainable network,
+        StreamingLeastSquares correlations) {
+        try {
+            fireProgressUpdate("Solving (R + a^2 I) W = P by Cholesky "
+                + "Decomposition...", 30);
+            double[][] wOut = correlations.solve(ridgeRegression ? alpha
+                * alpha : 0);
             fireProgressUpdate("Setting Weights...", 95);
             SimnetUtils.setWeights(network.getInputNeurons(),
                 network.getOutputNeurons(), wOut);
             fireProgressUpdate("Done!", 100);
-
-            // TODO: What error does JAMA actually throw for singular Matrices?
-        } catch (RuntimeException e) {
-            JOptionPane.showMessageDialog(new JFrame(), ""
-                + "State Correlation Matrix is Singular."
-                + "\nCheck that target values are in range of output units."
-                + "\nOtherwise, input matrix is rank-deficient.",
-                "Training Failed", JOptionPane.ERROR_MESSAGE);
-            fireProgressUpdate("Training Failed", 0);
+        } catch (IllegalStateException e) {
+            showSingularMessage();
         }
+    }
 
-        trainingMatrix = null;
-        inputMatrix = null;
-
-        long end = System.nanoTime();
-        System.out.println("Time: " + (end - start) / Math.pow(10, 9));
+    /**
+     * Report that the state correlation matrix could not be solved.
+     */
+    private void showSingularMessage() {
+        JOptionPane.showMessageDialog(new JFrame(), ""
+            + "State Correlation Matrix is Singular."
+            + "\nCheck that target values are in range of output units."
+            + "\nOtherwise, input matrix is rank-deficient.",
+            "Training Failed", JOptionPane.ERROR_MESSAGE);
+        fireProgressUpdate("Training Failed", 0);
     }
 
     /**
-     * Moore penrose.
+     * Moore penrose. The pseudoinverse needs the whole state matrix, so the
+     * rows are read into a copy of the training data.
      * @param network the trainable network being trained
      */
     public void moorePenroseSolution(Trainable network) {
-        Matrix inputMatrix =
-            new Matrix(network.getTrainingSet().getInputData());
-        Matrix trainingMatrix =
-            new Matrix(network.getTrainingSet().getTargetData());
+        moorePenroseSolution(network, false);
+    }
+
+    /**
+     * Implements the Moore-Penrose solution.
+     *
+     * @param network the trainable network being trained
+     * @param adjust whether to make the adjustments of
+     *            {@link #adjustRow(double[], double[])} to each row as it
+     *            is read
+     */
+    private void moorePenroseSolution(Trainable network, boolean adjust) {
+        TrainingSet data = network.getTrainingSet();
+        int numRows = Math.min(data.getNumRows(), data.getNumTargetRows());
+        double[][] inputData = new double[numRows][data
+            .getNumInputColumns()];
+        double[][] targetData = new double[numRows][data
+            .getNumTargetColumns()];
+        for (int i = 0; i < numRows; i++) {
+            data.readInputRow(i, inputData[i]);
+            data.readTargetRow(i, targetData[i]);
+            if (adjust) {
+                adjustRow(inputData[i], targetData[i]);
+            }
+        }
+        Matrix inputMatrix = new Matrix(inputData);
+        Matrix trainingMatrix = new Matrix(targetData);
 
         fireProgressUpdate("Computing Moore-Penrose Pseudoinverse...", 0);
         // Computes Moore-Penrose Pseudoinverse
@@ -0,0 +1,528 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.trainers;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.ojalgo.matrix.store.PrimitiveDenseStore;
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.NeuronBatch;
+import org.simbrain.network.core.NeuronUpdateRule;
+import org.simbrain.network.core.NeuronUpdateRule.InputType;
+import org.simbrain.network.core.Synapse;
+import org.simbrain.network.neuron_update_rules.interfaces.BiasedUpdateRule;
+import org.simbrain.network.neuron_update_rules.interfaces.DifferentiableUpdateRule;
+
+/**
+ * <b>MinibatchBackprop</b> trains the layers of a feed-forward network with
+ * backpropagation on dense weight matrices. The weights between consecutive
+ * layers are copied out of the synapses into one matrix per layer, forward
+ * and backward passes are run a minibatch of rows at a time as matrix
+ * products (which ojalgo spreads over the available processors for large
+ * matrices), and the weights are copied back to the synapses by
+ * {@link #writeWeights()}.
+ * <p>
+ * Each minibatch changes a weight by the learning rate times the error
+ * gradient averaged over the rows of the batch, plus the momentum times its
+ * previous change, and changes a bias by the learning rate times the
+ * averaged error signal, so that a batch size of 1 gives the row by row
+ * updates of {@link BackpropTrainer}. Synapse bounds, polarity and frozen
+ * synapses are respected as by {@link Synapse#setStrength(double)}. Biases
+ * are kept in the neurons' update rules.
+ * <p>
+ * Only networks for which {@link #canTrain(List)} is true can be trained:
+ * every layer after the first must have update rules of one class which are
+ * biased, differentiable, use weighted input and can update in batches, and
+ * the only synapses onto a layer must come from the layer before it.
+ */
+public class MinibatchBackprop {
+
+    /** The layers, input layer first. */
+    private final Neuron[][] layers;
+
+    /** The update rule of each neuron of each layer. */
+    private final NeuronUpdateRule[][] rules;
+
+    /**
+     * The synapse from each neuron of the layer before to each neuron of
+     * each layer, in the same positions as {@link #weights}; null where the
+     * two neurons are not connected.
+     */
+    private final Synapse[][][] synapses;
+
+    /** Number of synapses when this was built. */
+    private final int numSynapses;
+
+    /**
+     * Weights onto each layer after the first; rows are neurons of the layer
+     * before, columns neurons of the layer. Entry 0 is unused.
+     */
+    private final PrimitiveDenseStore[] weights;
+
+    /** Transposes of {@link #weights}, refreshed before each backward pass. */
+    private final PrimitiveDenseStore[] weightsT;
+
+    /** Last change of each weight, for momentum. */
+    private final PrimitiveDenseStore[] weightDeltas;
+
+    /** Error gradient of each weight for the current batch. */
+    private final PrimitiveDenseStore[] gradients;
+
+    /** Batch used to compute activations with each layer's rules. */
+    private final NeuronBatch[] neuronBatches;
+
+    /** Matrices for full minibatches. */
+    private Buffers full;
+
+    /** Matrices for the last, smaller, minibatch of an epoch. */
+    private Buffers tail;
+
+    /**
+     * Matrices with one row per row of a minibatch.
+     */
+    private class Buffers {
+
+        /** Number of rows. */
+        private final int rows;
+
+        /** Activations of each layer. */
+        private final PrimitiveDenseStore[] activations;
+
+        /** Transposes of {@link #activations}. */
+        private final PrimitiveDenseStore[] activationsT;
+
+        /** Weighted inputs of each layer. */
+        private final PrimitiveDenseStore[] inputs;
+
+        /** Error signals of each layer. */
+        private final PrimitiveDenseStore[] errors;
+
+        /**
+         * @param rows number of rows
+         */
+        Buffers(final int rows) {
+            this.rows = rows;
+            int n = layers.length;
+            activations = new PrimitiveDenseStore[n];
+            activationsT = new PrimitiveDenseStore[n];
+            inputs = new PrimitiveDenseStore[n];
+            errors = new PrimitiveDenseStore[n];
+            for (int l = 0; l < n; l++) {
+                int size = layers[l].length;
+                activations[l] = zero(rows, size);
+                activationsT[l] = zero(size, rows);
+                inputs[l] = zero(rows, size);
+                errors[l] = zero(rows, size);
+            }
+        }
+    }
+
+    /**
+     * Copy the weights and biases of a feed-forward network out of its
+     * synapses. See {@link #canTrain(List)}.
+     *
+     * @param layerList the layers, input layer first
+     */
+    public MinibatchBackprop(final List<List<Neuron>> layerList) {
+        if (!canTrain(layerList)) {
+            throw new IllegalArgumentException(
+                    "Layers can't be trained with matrices");
+        }
+        int n = layerList.size();
+        layers = new Neuron[n][];
+        rules = new NeuronUpdateRule[n][];
+        for (int l = 0; l < n; l++) {
+            List<Neuron> layer = layerList.get(l);
+            layers[l] = layer.toArray(new Neuron[layer.size()]);
+            rules[l] = new NeuronUpdateRule[layers[l].length];
+            for (int j = 0; j < layers[l].length; j++) {
+                rules[l][j] = layers[l][j].getUpdateRule();
+            }
+        }
+        synapses = new Synapse[n][][];
+        weights = new PrimitiveDenseStore[n];
+        weightsT = new PrimitiveDenseStore[n];
+        weightDeltas = new PrimitiveDenseStore[n];
+        gradients = new PrimitiveDenseStore[n];
+        neuronBatches = new NeuronBatch[n];
+        int count = 0;
+        for (int l = 1; l < n; l++) {
+            Neuron[] prev = layers[l - 1];
+            Neuron[] layer = layers[l];
+            Map<Neuron, Integer> prevIndex =
+                    new IdentityHashMap<Neuron, Integer>();
+            for (int i = 0; i < prev.length; i++) {
+                prevIndex.put(prev[i], i);
+            }
+            synapses[l] = new Synapse[prev.length][layer.length];
+            for (int j = 0; j < layer.length; j++) {
+                for (Synapse s : layer[j].getFanIn()) {
+                    synapses[l][prevIndex.get(s.getSource())][j] = s;
+                    count++;
+                }
+            }
+            weights[l] = zero(prev.length, layer.length);
+            weightsT[l] = zero(layer.length, prev.length);
+            weightDeltas[l] = zero(prev.length, layer.length);
+            gradients[l] = zero(prev.length, layer.length);
+            neuronBatches[l] = new NeuronBatch(layer, rules[l],
+                    new double[layer.length], new double[layer.length],
+                    new double[layer.length]);
+        }
+        numSynapses = count;
+        readWeights();
+    }
+
+    /**
+     * Returns true if the layers form a feed-forward network this class can
+     * train.
+     *
+     * @param layerList the layers, input layer first
+     * @return true if the layers can be trained with matrices
+     */
+    public static boolean canTrain(final List<List<Neuron>> layerList) {
+        if (layerList.size() < 2) {
+            return false;
+        }
+        for (int l = 1; l < layerList.size(); l++) {
+            Set<Neuron> prev = Collections.newSetFromMap(
+                    new IdentityHashMap<Neuron, Boolean>());
+            prev.addAll(layerList.get(l - 1));
+            List<Neuron> layer = layerList.get(l);
+            if (layer.isEmpty()) {
+                return false;
+            }
+            Class<?> ruleClass = layer.get(0).getUpdateRule().getClass();
+            for (Neuron neuron : layer) {
+                NeuronUpdateRule rule = neuron.getUpdateRule();
+                if (rule.getClass() != ruleClass || !rule.hasBatchUpdate()
+                        || rule.usesSeparatedInput()
+                        || rule.getInputType() != InputType.WEIGHTED
+                        || !(rule instanceof BiasedUpdateRule)
+                        || !(rule instanceof DifferentiableUpdateRule)
+                        || neuron.isClamped()) {
+                    return false;
+                }
+                for (Synapse s : neuron.getFanIn()) {
+                    if (!prev.contains(s.getSource())) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param layerList the layers, input layer first
+     * @return true if the layers are not the ones this was built for, or
+     *         their update rules or synapses have changed since
+     */
+    public boolean isStale(final List<List<Neuron>> layerList) {
+        if (layerList.size() != layers.length) {
+            return true;
+        }
+        int count = 0;
+        for (int l = 0; l < layers.length; l++) {
+            List<Neuron> layer = layerList.get(l);
+            if (layer.size() != layers[l].length) {
+                return true;
+            }
+            for (int j = 0; j < layers[l].length; j++) {
+                Neuron neuron = layer.get(j);
+                if (neuron != layers[l][j]
+                        || neuron.getUpdateRule() != rules[l][j]) {
+                    return true;
+                }
+                if (l > 0) {
+                    count += neuron.getFanIn().size();
+                }
+            }
+        }
+        return count != numSynapses;
+    }
+
+    /**
+     * Copy the strengths of the synapses into the weight matrices.
+     */
+    public void readWeights() {
+        for (int l = 1; l < layers.length; l++) {
+            Synapse[][] syns = synapses[l];
+            for (int i = 0; i < syns.length; i++) {
+                for (int j = 0; j < syns[i].length; j++) {
+                    Synapse s = syns[i][j];
+                    weights[l].set(i, j, s == null ? 0 : s.getStrength());
+                }
+            }
+        }
+    }
+
+    /**
+     * Copy the weight matrices back to the strengths of the synapses.
+     */
+    public void writeWeights() {
+        for (int l = 1; l < layers.length; l++) {
+            Synapse[][] syns = synapses[l];
+            for (int i = 0; i < syns.length; i++) {
+                for (int j = 0; j < syns[i].length; j++) {
+                    Synapse s = syns[i][j];
+                    if (s != null && !s.isFrozen()) {
+                        s.forceSetStrength(weights[l].doubleValue(i, j));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Train on one pass through the data. Rows are read a batch at a time,
+     * so the data can be in a {@link TrainingDataFile} larger than memory.
+     *
+     * @param data the training data; input column k is the input to the k-th
+     *            input neuron and target column k the target of the k-th
+     *            output neuron
+     * @param inputNeurons the input neurons, in the order of the input columns
+     * @param outputNeurons the output neurons, in the order of the target
+     *            columns
+     * @param numRows number of rows to train on
+     * @param batchSize number of rows per weight update
+     * @param random source of a shuffled row order, or null to train on the
+     *            rows in order
+     * @param learningRate the learning rate
+     * @param momentum the momentum
+     * @return the sum over rows and outputs of the squared error
+     */
+    public double train(final TrainingSet data,
+            final List<Neuron> inputNeurons, final List<Neuron> outputNeurons,
+            final int numRows, final int batchSize, final Random random,
+            final double learningRate, final double momentum) {
+        int[] inputColumns = columnsOf(layers[0], inputNeurons);
+        int[] targetColumns = columnsOf(layers[layers.length - 1],
+                outputNeurons);
+        double sse = 0;
+        MinibatchIterator batches = data.minibatches(numRows, batchSize,
+                random);
+        try {
+            while (batches.hasNext()) {
+                MinibatchIterator.Batch batch = batches.next();
+                Buffers b = buffers(batch.getSize());
+                PrimitiveDenseStore in = b.activations[0];
+                for (int r = 0; r < b.rows; r++) {
+                    double[] row = batch.getInputs()[r];
+                    for (int j = 0; j < inputColumns.length; j++) {
+                        in.set(r, j, inputColumns[j] < 0 ? 0
+                                : row[inputColumns[j]]);
+                    }
+                }
+                forward(b);
+                sse += backward(b, batch.getTargets(), targetColumns);
+                updateWeights(b, learningRate, momentum);
+                if (!batches.hasNext()) {
+                    showLastRow(b);
+                }
+            }
+        } finally {
+            batches.close();
+        }
+        return sse;
+    }
+
+    /**
+     * Compute the weighted inputs and activations of each layer.
+     *
+     * @param b matrices of the batch
+     */
+    private void forward(final Buffers b) {
+        for (int l = 1; l < layers.length; l++) {
+            PrimitiveDenseStore z = b.inputs[l];
+            PrimitiveDenseStore a = b.activations[l];
+            z.fillByMultiplying(b.activations[l - 1], weights[l]);
+            NeuronBatch batch = neuronBatches[l];
+            double[] inputs = batch.getInputs();
+            double[] buffers = batch.getBuffers();
+            int size = layers[l].length;
+            for (int r = 0; r < b.rows; r++) {
+                for (int j = 0; j < size; j++) {
+                    inputs[j] = z.doubleValue(r, j);
+                }
+                rules[l][0].update(batch, 0, size);
+                for (int j = 0; j < size; j++) {
+                    a.set(r, j, buffers[j]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Compute the error signal of each layer, output layer first.
+     *
+     * @param b matrices of the batch
+     * @param targetData target rows of the batch
+     * @param targetColumns target column of each output neuron
+     * @return the sum of squared errors of the batch
+     */
+    private double backward(final Buffers b, final double[][] targetData,
+            final int[] targetColumns) {
+        int last = layers.length - 1;
+        double sse = 0;
+        for (int l = last; l > 0; l--) {
+            PrimitiveDenseStore z = b.inputs[l];
+            PrimitiveDenseStore e = b.errors[l];
+            if (l == last) {
+                PrimitiveDenseStore a = b.activations[l];
+                for (int r = 0; r < b.rows; r++) {
+                    double[] row = targetData[r];
+                    for (int j = 0; j < targetColumns.length; j++) {
+                        double error = targetColumns[j] < 0 ? 0
+                                : row[targetColumns[j]] - a.doubleValue(r, j);
+                        sse += error * error;
+                        e.set(r, j, error);
+                    }
+                }
+            } else {
+                weightsT[l + 1].fillTransposed(weights[l + 1]);
+                e.fillByMultiplying(b.errors[l + 1], weightsT[l + 1]);
+            }
+            NeuronUpdateRule[] layerRules = rules[l];
+            for (int r = 0; r < b.rows; r++) {
+                for (int j = 0; j < layerRules.length; j++) {
+                    double derivative = ((DifferentiableUpdateRule)
+                            layerRules[j]).getDerivative(z.doubleValue(r, j));
+                    e.set(r, j, e.doubleValue(r, j) * derivative);
+                }
+            }
+        }
+        return sse;
+    }
+
+    /**
+     * Change the weights and biases by the error signals of the batch.
+     *
+     * @param b matrices of the batch
+     * @param learningRate the learning rate
+     * @param momentum the momentum
+     */
+    private void updateWeights(final Buffers b, final double learningRate,
+            final double momentum) {
+        double rate = learningRate / b.rows;
+        for (int l = 1; l < layers.length; l++) {
+            b.activationsT[l - 1].fillTransposed(b.activations[l - 1]);
+            PrimitiveDenseStore g = gradients[l];
+            g.fillByMultiplying(b.activationsT[l - 1], b.errors[l]);
+            PrimitiveDenseStore w = weights[l];
+            PrimitiveDenseStore dw = weightDeltas[l];
+            Synapse[][] syns = synapses[l];
+            for (int i = 0; i < syns.length; i++) {
+                for (int j = 0; j < syns[i].length; j++) {
+                    Synapse s = syns[i][j];
+                    if (s == null) {
+                        continue;
+                    }
+                    double delta = rate * g.doubleValue(i, j) + momentum
+                            * dw.doubleValue(i, j);
+                    dw.set(i, j, delta);
+                    if (!s.isFrozen()) {
+                        w.set(i, j, clip(s, w.doubleValue(i, j) + delta));
+                    }
+                }
+            }
+            PrimitiveDenseStore e = b.errors[l];
+            NeuronUpdateRule[] layerRules = rules[l];
+            for (int j = 0; j < layerRules.length; j++) {
+                double sum = 0;
+                for (int r = 0; r < b.rows; r++) {
+                    sum += e.doubleValue(r, j);
+                }
+                BiasedUpdateRule rule = (BiasedUpdateRule) layerRules[j];
+                rule.setBias(rule.getBias() + rate * sum);
+            }
+        }
+    }
+
+    /**
+     * Set the activations of the neurons to those of the last row of a batch,
+     * as if the row had been run through the network.
+     *
+     * @param b matrices of the batch
+     */
+    private void showLastRow(final Buffers b) {
+        for (int l = 0; l < layers.length; l++) {
+            for (int j = 0; j < layers[l].length; j++) {
+                layers[l][j].forceSetActivation(b.activations[l].doubleValue(
+                        b.rows - 1, j));
+            }
+        }
+    }
+
+    /**
+     * Clip a new strength the way {@link Synapse#setStrength(double)} does.
+     *
+     * @param s the synapse
+     * @param wt the new strength
+     * @return the clipped strength
+     */
+    private static double clip(final Synapse s, final double wt) {
+        return s.clip(s.getSource().getPolarity().clip(wt));
+    }
+
+    /**
+     * @param rows number of rows of a batch
+     * @return matrices for a batch of that many rows
+     */
+    private Buffers buffers(final int rows) {
+        if (full == null || full.rows == rows) {
+            if (full == null) {
+                full = new Buffers(rows);
+            }
+            return full;
+        }
+        if (tail == null || tail.rows != rows) {
+            tail = new Buffers(rows);
+        }
+        return tail;
+    }
+
+    /**
+     * @param rows number of rows
+     * @param cols number of columns
+     * @return a matrix of zeros
+     */
+    private static PrimitiveDenseStore zero(final int rows, final int cols) {
+        return PrimitiveDenseStore.FACTORY.makeZero(rows, cols);
+    }
+
+    /**
+     * @param layer neurons of a layer
+     * @param columns neurons in the order of the data columns
+     * @return the data column of each neuron of the layer, -1 for none
+     */
+    private static int[] columnsOf(final Neuron[] layer,
+            final List<Neuron> columns) {
+        int[] ret = new int[layer.length];
+        for (int j = 0; j < layer.length; j++) {
+            ret[j] = columns.indexOf(layer[j]);
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.trainers;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * <b>MinibatchIterator</b> iterates through the rows of a {@link TrainingSet}
+ * in minibatches, in order or shuffled. Batches can be read ahead on a
+ * background thread, so that reading rows from a {@link TrainingDataFile}
+ * overlaps with training on the previous batch.
+ * <p>
+ * Call {@link #close()} when stopping before the last batch, to stop the
+ * background thread.
+ */
+public class MinibatchIterator implements Iterator<MinibatchIterator.Batch> {
+
+    /** Number of batches read ahead. */
+    private static final int PREFETCH = 2;
+
+    /**
+     * Rows of a minibatch.
+     */
+    public static class Batch {
+
+        /** Number of rows. */
+        private final int size;
+
+        /** Index of each row in the training set. */
+        private final int[] rows;
+
+        /** Input columns of each row. */
+        private final double[][] inputs;
+
+        /** Target columns of each row. */
+        private final double[][] targets;
+
+        /** Error from reading the batch, or null. */
+        private final RuntimeException error;
+
+        /**
+         * @param rows index of each row
+         * @param inputs input columns of each row
+         * @param targets target columns of each row
+         * @param error error from reading the batch, or null
+         */
+        Batch(final int[] rows, final double[][] inputs,
+                final double[][] targets, final RuntimeException error) {
+            this.size = rows.length;
+            this.rows = rows;
+            this.inputs = inputs;
+            this.targets = targets;
+            this.error = error;
+        }
+
+        /**
+         * @return the number of rows
+         */
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * @return the index of each row in the training set
+         */
+        public int[] getRows() {
+            return rows;
+        }
+
+        /**
+         * @return the input columns of each row
+         */
+        public double[][] getInputs() {
+            return inputs;
+        }
+
+        /**
+         * @return the target columns of each row
+         */
+        public double[][] getTargets() {
+            return targets;
+        }
+    }
+
+    /** Marks the end of the batches in the queue. */
+    private static final Batch END = new Batch(new int[0], null, null, null);
+
+    /** The data. */
+    private final TrainingSet data;
+
+    /** Row order. */
+    private final int[] order;
+
+    /** Number of rows per batch. */
+    private final int batchSize;
+
+    /** Batches read ahead, or null if batches are read when needed. */
+    private final BlockingQueue<Batch> queue;
+
+    /** Thread reading ahead, or null. */
+    private final Thread reader;
+
+    /** First row of the next batch to read. */
+    private int next;
+
+    /** The next batch, if it has been taken from the queue. */
+    private Batch peeked;
+
+    /**
+     * Iterate through rows of a training set.
+     *
+     * @param data the training set
+     * @param numRows number of rows to use, from the first
+     * @param batchSize number of rows per batch; the last batch may be smaller
+     * @param random source of the shuffled order, or null to keep rows in
+     *            order. Each shuffled batch holds a random set of rows, in
+     *            the order of the training set
+     * @param prefetch whether to read batches ahead on a background thread
+     */
+    public MinibatchIterator(final TrainingSet data, final int numRows,
+            final int batchSize, final Random random, final boolean prefetch) {
+        this.data = data;
+        this.batchSize = Math.max(1, batchSize);
+        order = new int[Math.max(0, numRows)];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        if (random != null) {
+            for (int i = order.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int tmp = order[i];
+                order[i] = order[j];
+                order[j] = tmp;
+            }
+        }
+        if (prefetch && order.length > this.batchSize) {
+            queue = new ArrayBlockingQueue<Batch>(PREFETCH);
+            reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (next < order.length) {
+                            queue.put(read());
+                        }
+                        queue.put(END);
+                    } catch (InterruptedException e) {
+                        // Closed
+                    }
+                }
+            }, "Minibatch reader");
+            reader.setDaemon(true);
+            reader.start();
+        } else {
+            queue = null;
+            reader = null;
+        }
+    }
+
+    /**
+     * Read the next batch.
+     *
+     * @return the batch
+     */
+    private Batch read() {
+        int size = Math.min(batchSize, order.length - next);
+        int[] rows = Arrays.copyOfRange(order, next, next + size);
+        next += size;
+        // Reading in file order touches each page once
+        Arrays.sort(rows);
+        double[][] inputs = new double[size][data.getNumInputColumns()];
+        double[][] targets = new double[size][data.getNumTargetColumns()];
+        try {
+            for (int r = 0; r < size; r++) {
+                data.readInputRow(rows[r], inputs[r]);
+                data.readTargetRow(rows[r], targets[r]);
+            }
+        } catch (RuntimeException e) {
+            return new Batch(rows, inputs, targets, e);
+        }
+        return new Batch(rows, inputs, targets, null);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (queue == null) {
+            return next < order.length;
+        }
+        if (peeked == null) {
+            try {
+                peeked = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                return false;
+            }
+        }
+        return peeked != END;
+    }
+
+    @Override
+    public Batch next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Batch ret;
+        if (queue == null) {
+            ret = read();
+        } else {
+            ret = peeked;
+            peeked = null;
+        }
+        if (ret.error != null) {
+            close();
+            throw ret.error;
+        }
+        return ret;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Stop reading ahead. Further batches are not returned.
+     */
+    public void close() {
+        if (reader != null) {
+            reader.interrupt();
+            queue.clear();
+            peeked = END;
+        }
+        next = order.length;
+    }
+}
@@ -0,0 +1,845 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.trainers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.NeuronBatch;
+import org.simbrain.network.core.NeuronUpdateRule;
+import org.simbrain.network.core.NeuronUpdateRule.InputType;
+import org.simbrain.network.core.Synapse;
+import org.simbrain.network.neuron_update_rules.interfaces.BiasedUpdateRule;
+import org.simbrain.network.neuron_update_rules.interfaces.DifferentiableUpdateRule;
+import org.simbrain.util.ParallelTasks;
+
+/**
+ * <b>RecurrentBackprop</b> trains a three layer recurrent network with
+ * truncated backpropagation through time on primitive arrays. The network
+ * recurs either through a context layer holding the previous hidden
+ * activations (an Elman network, see
+ * {@link org.simbrain.network.subnetworks.SimpleRecurrentNetwork}) or by
+ * feeding the previous output back as the next input (see
+ * {@link org.simbrain.network.subnetworks.BPTTNetwork}).
+ * <p>
+ * The training data is cut into sequences of consecutive rows, each started
+ * from the initial state of the network, and each sequence into windows of
+ * a given number of steps. Error is propagated back through time only
+ * within a window, while the state carries over from one window to the
+ * next. A minibatch of sequences is run window by window, its sequences in
+ * parallel, and after each window the weights change by the learning rate
+ * times the error gradient averaged over the steps of the window, plus the
+ * momentum times their previous change. With one sequence per batch and
+ * windows of one step, an Elman network is trained row by row as
+ * {@link SRNTrainer} always has.
+ */
+public class RecurrentBackprop {
+
+    /** Input neurons. */
+    private final Neuron[] input;
+
+    /** Hidden neurons. */
+    private final Neuron[] hidden;
+
+    /** Context neurons, one per hidden neuron; null without a context. */
+    private final Neuron[] context;
+
+    /** Output neurons. */
+    private final Neuron[] output;
+
+    /** Whether each output is the next step's input. */
+    private final boolean outputFeedback;
+
+    /** Update rules of the hidden neurons. */
+    private final NeuronUpdateRule[] hiddenRules;
+
+    /** Update rules of the output neurons. */
+    private final NeuronUpdateRule[] outputRules;
+
+    /** Input to hidden weights, [input * hidden count + hidden]. */
+    private final double[] wIn;
+
+    /** Context to hidden weights, [context * hidden count + hidden]. */
+    private final double[] wContext;
+
+    /** Hidden to output weights, [hidden * output count + output]. */
+    private final double[] wOut;
+
+    /** Last change of each input weight, for momentum. */
+    private final double[] dIn;
+
+    /** Last change of each context weight, for momentum. */
+    private final double[] dContext;
+
+    /** Last change of each output weight, for momentum. */
+    private final double[] dOut;
+
+    /** The synapse of each input weight; null where not connected. */
+    private final Synapse[] sIn;
+
+    /** The synapse of each context weight; null where not connected. */
+    private final Synapse[] sContext;
+
+    /** The synapse of each output weight; null where not connected. */
+    private final Synapse[] sOut;
+
+    /** Number of synapses when this was built. */
+    private final int numSynapses;
+
+    /** Number of threads to run the sequences of a batch on. */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /** One worker per sequence of a batch. */
+    private final List<Worker> workers = new ArrayList<Worker>();
+
+    /**
+     * Copy the weights of a recurrent network out of its synapses. See
+     * {@link #canTrain(List, List, List, List)}.
+     *
+     * @param inputList input neurons
+     * @param hiddenList hidden neurons
+     * @param contextList context neurons, null if the network has none
+     * @param outputList output neurons
+     * @param outputFeedback whether each output is the next step's input
+     */
+    public RecurrentBackprop(final List<Neuron> inputList,
+            final List<Neuron> hiddenList, final List<Neuron> contextList,
+            final List<Neuron> outputList, final boolean outputFeedback) {
+        if (!canTrain(inputList, hiddenList, contextList, outputList)) {
+            throw new IllegalArgumentException(
+                    "Network can't be trained with arrays");
+        }
+        input = toArray(inputList);
+        hidden = toArray(hiddenList);
+        context = contextList == null ? null : toArray(contextList);
+        output = toArray(outputList);
+        this.outputFeedback = outputFeedback
+                && input.length == output.length;
+        hiddenRules = rulesOf(hidden);
+        outputRules = rulesOf(output);
+        int nIn = input.length;
+        int nHid = hidden.length;
+        int nOut = output.length;
+        wIn = new double[nIn * nHid];
+        dIn = new double[nIn * nHid];
+        sIn = new Synapse[nIn * nHid];
+        int nCon = context == null ? 0 : nHid;
+        wContext = new double[nCon * nHid];
+        dContext = new double[nCon * nHid];
+        sContext = new Synapse[nCon * nHid];
+        wOut = new double[nHid * nOut];
+        dOut = new double[nHid * nOut];
+        sOut = new Synapse[nHid * nOut];
+        Map<Neuron, Integer> inIndex = indexOf(input);
+        Map<Neuron, Integer> conIndex = context == null ? null
+                : indexOf(context);
+        Map<Neuron, Integer> hidIndex = indexOf(hidden);
+        int count = 0;
+        for (int j = 0; j < nHid; j++) {
+            for (Synapse s : hidden[j].getFanIn()) {
+                Integer i = inIndex.get(s.getSource());
+                if (i != null) {
+                    sIn[i * nHid + j] = s;
+                } else {
+                    sContext[conIndex.get(s.getSource()) * nHid + j] = s;
+                }
+                count++;
+            }
+        }
+        for (int j = 0; j < nOut; j++) {
+            for (Synapse s : output[j].getFanIn()) {
+                sOut[hidIndex.get(s.getSource()) * nOut + j] = s;
+                count++;
+            }
+        }
+        numSynapses = count;
+        readWeights();
+    }
+
+    /**
+     * Returns true if the neurons form a recurrent network this class can
+     * train: the hidden and output layers must each have update rules of one
+     * class which are biased, differentiable, use weighted input and can
+     * update in batches; the hidden neurons may only receive synapses from
+     * the input and context neurons, and the output neurons only from the
+     * hidden neurons.
+     *
+     * @param inputList input neurons
+     * @param hiddenList hidden neurons
+     * @param contextList context neurons, null if the network has none
+     * @param outputList output neurons
+     * @return true if the network can be trained with arrays
+     */
+    public static boolean canTrain(final List<Neuron> inputList,
+            final List<Neuron> hiddenList, final List<Neuron> contextList,
+            final List<Neuron> outputList) {
+        if (inputList.isEmpty() || hiddenList.isEmpty()
+                || outputList.isEmpty()) {
+            return false;
+        }
+        if (contextList != null && contextList.size() != hiddenList.size()) {
+            return false;
+        }
+        Map<Neuron, Integer> hiddenSources = indexOf(toArray(inputList));
+        if (contextList != null) {
+            hiddenSources.putAll(indexOf(toArray(contextList)));
+        }
+        return isTrainableLayer(hiddenList, hiddenSources)
+                && isTrainableLayer(outputList,
+                        indexOf(toArray(hiddenList)));
+    }
+
+    /**
+     * @param layer a layer
+     * @param sources the only neurons allowed to send synapses to the layer
+     * @return true if the layer can be trained with arrays
+     */
+    private static boolean isTrainableLayer(final List<Neuron> layer,
+            final Map<Neuron, Integer> sources) {
+        Class<?> ruleClass = layer.get(0).getUpdateRule().getClass();
+        for (Neuron neuron : layer) {
+            NeuronUpdateRule rule = neuron.getUpdateRule();
+            if (rule.getClass() != ruleClass || !rule.hasBatchUpdate()
+                    || rule.usesSeparatedInput()
+                    || rule.getInputType() != InputType.WEIGHTED
+                    || !(rule instanceof BiasedUpdateRule)
+                    || !(rule instanceof DifferentiableUpdateRule)
+                    || neuron.isClamped()) {
+                return false;
+            }
+            for (Synapse s : neuron.getFanIn()) {
+                if (!sources.containsKey(s.getSource())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the update rules or synapses of the network have
+     *         changed since this was built
+     */
+    public boolean isStale() {
+        int count = 0;
+        for (int j = 0; j < hidden.length; j++) {
+            if (hidden[j].getUpdateRule() != hiddenRules[j]) {
+                return true;
+            }
+            count += hidden[j].getFanIn().size();
+        }
+        for (int j = 0; j < output.length; j++) {
+            if (output[j].getUpdateRule() != outputRules[j]) {
+                return true;
+            }
+            count += output[j].getFanIn().size();
+        }
+        return count != numSynapses;
+    }
+
+    /**
+     * Copy the strengths of the synapses into the weight arrays.
+     */
+    public void readWeights() {
+        read(sIn, wIn);
+        read(sContext, wContext);
+        read(sOut, wOut);
+    }
+
+    /**
+     * Copy the weight arrays back to the strengths of the synapses.
+     */
+    public void writeWeights() {
+        write(wIn, sIn);
+        write(wContext, sContext);
+        write(wOut, sOut);
+    }
+
+    /**
+     * Train on one pass through the data.
+     *
+     * @param data the training data; input column k is the input to the k-th
+     *            input neuron and target column k the target of the k-th
+     *            output neuron. Rows are read as they are needed, so the data
+     *            can be in a {@link TrainingDataFile} larger than memory
+     * @param numRows number of rows to train on
+     * @param sequenceLength number of rows per sequence; 0 or less to train
+     *            on all rows as one sequence
+     * @param truncation number of steps to propagate error back through; 0
+     *            or less for whole sequences
+     * @param batchSize number of sequences per batch
+     * @param learningRate the learning rate
+     * @param momentum the momentum
+     * @return the sum over rows and outputs of the squared error
+     */
+    public double train(final TrainingSet data, final int numRows,
+            final int sequenceLength, final int truncation,
+            final int batchSize, final double learningRate,
+            final double momentum) {
+        int seqLength = sequenceLength > 0 ? Math.min(sequenceLength,
+                numRows) : numRows;
+        int window = truncation > 0 ? Math.min(truncation, seqLength)
+                : seqLength;
+        int numSequences = (numRows + seqLength - 1) / seqLength;
+        int batch = Math.max(1, Math.min(batchSize, numSequences));
+        double[] initialHidden = new double[hidden.length];
+        for (int j = 0; j < hidden.length; j++) {
+            initialHidden[j] = hidden[j].getActivation();
+        }
+        for (int i = 0; i < batch; i++) {
+            if (i == workers.size() || workers.get(i).window != window) {
+                Worker w = new Worker(window);
+                if (i == workers.size()) {
+                    workers.add(w);
+                } else {
+                    workers.set(i, w);
+                }
+            }
+            workers.get(i).data(data);
+        }
+        double sse = 0;
+        Worker last = null;
+        for (int first = 0; first < numSequences; first += batch) {
+            List<Worker> running = new ArrayList<Worker>();
+            for (int q = first; q < Math.min(first + batch, numSequences);
+                    q++) {
+                Worker w = workers.get(q - first);
+                int start = q * seqLength;
+                w.startSequence(start, Math.min(seqLength, numRows - start),
+                        initialHidden);
+                running.add(w);
+            }
+            for (int step = 0; step < seqLength; step += window) {
+                int steps = 0;
+                for (Worker w : running) {
+                    w.steps = Math.max(0, Math.min(window, w.length - step));
+                    steps += w.steps;
+                }
+                if (steps == 0) {
+                    break;
+                }
+                runWindow(running);
+                for (Worker w : running) {
+                    sse += w.sse;
+                    if (w.steps > 0) {
+                        last = w;
+                    }
+                }
+                updateWeights(running, learningRate / steps, momentum);
+            }
+        }
+        if (last != null) {
+            last.showLastStep();
+        }
+        return sse;
+    }
+
+    /**
+     * Run one window of each sequence, in parallel if there are several.
+     *
+     * @param running the workers of the sequences
+     */
+    private void runWindow(final List<Worker> running) {
+        ParallelTasks.invokeAll(running, parallelism,
+                "Error in parallel training.");
+    }
+
+    /**
+     * Change the weights and biases by the gradients of a window, summed
+     * over the workers in order.
+     *
+     * @param running the workers of the window
+     * @param rate the learning rate divided by the number of steps
+     * @param momentum the momentum
+     */
+    private void updateWeights(final List<Worker> running, final double rate,
+            final double momentum) {
+        Worker first = running.get(0);
+        for (int k = 1; k < running.size(); k++) {
+            Worker w = running.get(k);
+            add(first.gIn, w.gIn);
+            add(first.gContext, w.gContext);
+            add(first.gOut, w.gOut);
+            add(first.gHidden, w.gHidden);
+            add(first.gOutput, w.gOutput);
+        }
+        update(wIn, dIn, sIn, first.gIn, rate, momentum);
+        update(wContext, dContext, sContext, first.gContext, rate, momentum);
+        update(wOut, dOut, sOut, first.gOut, rate, momentum);
+        updateBiases(hiddenRules, first.gHidden, rate);
+        updateBiases(outputRules, first.gOutput, rate);
+    }
+
+    /**
+     * Runs the windows of one sequence, and holds its state between them.
+     */
+    private class Worker implements Callable<Void> {
+
+        /** Maximum number of steps per window. */
+        private final int window;
+
+        /** Input of each step of the window. */
+        private final double[][] x;
+
+        /** Context of each step of the window. */
+        private final double[][] c;
+
+        /** Weighted input to the hidden layer at each step. */
+        private final double[][] zh;
+
+        /** Hidden activations at each step. */
+        private final double[][] h;
+
+        /** Weighted input to the output layer at each step. */
+        private final double[][] zo;
+
+        /** Output activations at each step. */
+        private final double[][] y;
+
+        /** Targets at each step. */
+        private final double[][] t;
+
+        /** Hidden activations before the window. */
+        private final double[] hPrev;
+
+        /** Output activations before the window. */
+        private final double[] yPrev;
+
+        /** Error signal of the hidden layer at the step after. */
+        private final double[] dh;
+
+        /** Error on the hidden layer. */
+        private final double[] eh;
+
+        /** Error signal of the output layer. */
+        private final double[] dOutput;
+
+        /** Error on the input at the step after. */
+        private final double[] ex;
+
+        /** Gradient of the input weights. */
+        private final double[] gIn;
+
+        /** Gradient of the context weights. */
+        private final double[] gContext;
+
+        /** Gradient of the output weights. */
+        private final double[] gOut;
+
+        /** Gradient of the hidden biases. */
+        private final double[] gHidden;
+
+        /** Gradient of the output biases. */
+        private final double[] gOutput;
+
+        /** Batch to compute hidden activations with their rules. */
+        private final NeuronBatch hiddenBatch;
+
+        /** Batch to compute output activations with their rules. */
+        private final NeuronBatch outputBatch;
+
+        /** The training data. */
+        private TrainingSet data;
+
+        /** First row of the window. */
+        private int row;
+
+        /** Rows of the sequence left from the start of the window. */
+        private int length;
+
+        /** Steps of the sequence run before the window. */
+        private int done;
+
+        /** Number of steps of the current window. */
+        private int steps;
+
+        /** Sum of squared errors of the current window. */
+        private double sse;
+
+        /**
+         * @param window maximum number of steps per window
+         */
+        Worker(final int window) {
+            this.window = window;
+            int nIn = input.length;
+            int nHid = hidden.length;
+            int nOut = output.length;
+            x = new double[window][nIn];
+            c = new double[window][context == null ? 0 : nHid];
+            zh = new double[window][nHid];
+            h = new double[window][nHid];
+            zo = new double[window][nOut];
+            y = new double[window][nOut];
+            t = new double[window][nOut];
+            hPrev = new double[nHid];
+            yPrev = new double[nOut];
+            dh = new double[nHid];
+            eh = new double[nHid];
+            dOutput = new double[nOut];
+            ex = new double[nIn];
+            gIn = new double[wIn.length];
+            gContext = new double[wContext.length];
+            gOut = new double[wOut.length];
+            gHidden = new double[nHid];
+            gOutput = new double[nOut];
+            hiddenBatch = new NeuronBatch(hidden, hiddenRules,
+                    new double[nHid], new double[nHid], new double[nHid]);
+            outputBatch = new NeuronBatch(output, outputRules,
+                    new double[nOut], new double[nOut], new double[nOut]);
+        }
+
+        /**
+         * @param trainingData the training data
+         */
+        void data(final TrainingSet trainingData) {
+            this.data = trainingData;
+        }
+
+        /**
+         * Start a sequence from the initial state of the network.
+         *
+         * @param start first row of the sequence
+         * @param rows number of rows of the sequence
+         * @param initialHidden initial hidden activations
+         */
+        void startSequence(final int start, final int rows,
+                final double[] initialHidden) {
+            row = start;
+            length = rows;
+            done = 0;
+            System.arraycopy(initialHidden, 0, hPrev, 0, hPrev.length);
+            Arrays.fill(yPrev, 0);
+        }
+
+        @Override
+        public Void call() {
+            sse = 0;
+            Arrays.fill(gIn, 0);
+            Arrays.fill(gContext, 0);
+            Arrays.fill(gOut, 0);
+            Arrays.fill(gHidden, 0);
+            Arrays.fill(gOutput, 0);
+            for (int k = 0; k < steps; k++) {
+                forward(k);
+            }
+            for (int k = steps - 1; k >= 0; k--) {
+                backward(k);
+            }
+            row += steps;
+            done += steps;
+            return null;
+        }
+
+        /**
+         * Run one step forward.
+         *
+         * @param k step of the window
+         */
+        private void forward(final int k) {
+            int nHid = hidden.length;
+            int nOut = output.length;
+            if (outputFeedback && done + k > 0) {
+                System.arraycopy(yPrev, 0, x[k], 0, yPrev.length);
+            } else {
+                data.readInputRow(row + k, x[k]);
+            }
+            double[] z = zh[k];
+            Arrays.fill(z, 0);
+            accumulate(x[k], wIn, z);
+            if (context != null) {
+                System.arraycopy(hPrev, 0, c[k], 0, nHid);
+                accumulate(c[k], wContext, z);
+            }
+            activate(hiddenBatch, z, h[k]);
+            Arrays.fill(zo[k], 0);
+            accumulate(h[k], wOut, zo[k]);
+            activate(outputBatch, zo[k], y[k]);
+            data.readTargetRow(row + k, t[k]);
+            double[] target = t[k];
+            for (int j = 0; j < nOut; j++) {
+                double error = target[j] - y[k][j];
+                sse += error * error;
+            }
+            System.arraycopy(h[k], 0, hPrev, 0, nHid);
+            System.arraycopy(y[k], 0, yPrev, 0, nOut);
+        }
+
+        /**
+         * Propagate the error of one step back, adding to the gradients.
+         * Error from later steps of the window arrives through {@link #dh}
+         * and {@link #ex}.
+         *
+         * @param k step of the window
+         */
+        private void backward(final int k) {
+            int nIn = input.length;
+            int nHid = hidden.length;
+            int nOut = output.length;
+            boolean later = k + 1 < steps;
+            double[] target = t[k];
+            for (int j = 0; j < nOut; j++) {
+                double error = target[j] - y[k][j];
+                if (outputFeedback && later) {
+                    error += ex[j];
+                }
+                dOutput[j] = error
+                        * ((DifferentiableUpdateRule) outputRules[j])
+                                .getDerivative(zo[k][j]);
+                gOutput[j] += dOutput[j];
+            }
+            for (int i = 0; i < nHid; i++) {
+                double hi = h[k][i];
+                double error = 0;
+                int base = i * nOut;
+                for (int j = 0; j < nOut; j++) {
+                    gOut[base + j] += hi * dOutput[j];
+                    error += wOut[base + j] * dOutput[j];
+                }
+                if (context != null && later) {
+                    base = i * nHid;
+                    for (int j = 0; j < nHid; j++) {
+                        error += wContext[base + j] * dh[j];
+                    }
+                }
+                eh[i] = error;
+            }
+            for (int j = 0; j < nHid; j++) {
+                dh[j] = eh[j] * ((DifferentiableUpdateRule) hiddenRules[j])
+                        .getDerivative(zh[k][j]);
+                gHidden[j] += dh[j];
+            }
+            addOuter(x[k], dh, gIn);
+            if (context != null) {
+                addOuter(c[k], dh, gContext);
+            }
+            if (outputFeedback) {
+                for (int i = 0; i < nIn; i++) {
+                    double error = 0;
+                    int base = i * nHid;
+                    for (int j = 0; j < nHid; j++) {
+                        error += wIn[base + j] * dh[j];
+                    }
+                    ex[i] = error;
+                }
+            }
+        }
+
+        /**
+         * Set the activations of the neurons to those of the last step run.
+         */
+        void showLastStep() {
+            int k = steps - 1;
+            for (int i = 0; i < input.length; i++) {
+                input[i].forceSetActivation(x[k][i]);
+            }
+            if (context != null) {
+                for (int i = 0; i < context.length; i++) {
+                    context[i].forceSetActivation(c[k][i]);
+                }
+            }
+            for (int j = 0; j < hidden.length; j++) {
+                hidden[j].forceSetActivation(h[k][j]);
+            }
+            for (int j = 0; j < output.length; j++) {
+                output[j].forceSetActivation(y[k][j]);
+            }
+        }
+    }
+
+    /**
+     * Add the product of a row vector and a weight matrix to a vector.
+     *
+     * @param v the row vector
+     * @param w the matrix, [row * columns + column]
+     * @param out the vector to add to, one entry per column
+     */
+    private static void accumulate(final double[] v, final double[] w,
+            final double[] out) {
+        int n = out.length;
+        for (int i = 0; i < v.length; i++) {
+            double vi = v[i];
+            if (vi == 0) {
+                continue;
+            }
+            int base = i * n;
+            for (int j = 0; j < n; j++) {
+                out[j] += vi * w[base + j];
+            }
+        }
+    }
+
+    /**
+     * Add the outer product of two vectors to a matrix.
+     *
+     * @param u the row factor
+     * @param v the column factor
+     * @param out the matrix, [row * columns + column]
+     */
+    private static void addOuter(final double[] u, final double[] v,
+            final double[] out) {
+        int n = v.length;
+        for (int i = 0; i < u.length; i++) {
+            double ui = u[i];
+            if (ui == 0) {
+                continue;
+            }
+            int base = i * n;
+            for (int j = 0; j < n; j++) {
+                out[base + j] += ui * v[j];
+            }
+        }
+    }
+
+    /**
+     * Compute activations from weighted inputs with a layer's rules.
+     *
+     * @param batch batch over the layer
+     * @param z weighted inputs
+     * @param out activations
+     */
+    private static void activate(final NeuronBatch batch, final double[] z,
+            final double[] out) {
+        System.arraycopy(z, 0, batch.getInputs(), 0, z.length);
+        batch.getRules()[0].update(batch, 0, z.length);
+        System.arraycopy(batch.getBuffers(), 0, out, 0, z.length);
+    }
+
+    /**
+     * @param sum array to add to
+     * @param v array to add
+     */
+    private static void add(final double[] sum, final double[] v) {
+        for (int i = 0; i < sum.length; i++) {
+            sum[i] += v[i];
+        }
+    }
+
+    /**
+     * Change weights by a gradient, the way {@link BackpropTrainer} does.
+     *
+     * @param w the weights
+     * @param d last change of each weight
+     * @param syns the synapse of each weight
+     * @param g the gradient
+     * @param rate learning rate divided by the number of steps
+     * @param momentum the momentum
+     */
+    private static void update(final double[] w, final double[] d,
+            final Synapse[] syns, final double[] g, final double rate,
+            final double momentum) {
+        for (int k = 0; k < w.length; k++) {
+            Synapse s = syns[k];
+            if (s == null) {
+                continue;
+            }
+            double delta = rate * g[k] + momentum * d[k];
+            d[k] = delta;
+            if (!s.isFrozen()) {
+                w[k] = s.clip(s.getSource().getPolarity().clip(w[k] + delta));
+            }
+        }
+    }
+
+    /**
+     * @param rules the rules of a layer
+     * @param g the gradient of their biases
+     * @param rate learning rate divided by the number of steps
+     */
+    private static void updateBiases(final NeuronUpdateRule[] rules,
+            final double[] g, final double rate) {
+        for (int j = 0; j < rules.length; j++) {
+            BiasedUpdateRule rule = (BiasedUpdateRule) rules[j];
+            rule.setBias(rule.getBias() + rate * g[j]);
+        }
+    }
+
+    /**
+     * @param syns synapses
+     * @param w array to copy their strengths to
+     */
+    private static void read(final Synapse[] syns, final double[] w) {
+        for (int k = 0; k < w.length; k++) {
+            w[k] = syns[k] == null ? 0 : syns[k].getStrength();
+        }
+    }
+
+    /**
+     * @param w weights
+     * @param syns synapses to copy them to
+     */
+    private static void write(final double[] w, final Synapse[] syns) {
+        for (int k = 0; k < w.length; k++) {
+            if (syns[k] != null && !syns[k].isFrozen()) {
+                syns[k].forceSetStrength(w[k]);
+            }
+        }
+    }
+
+    /**
+     * @param list some neurons
+     * @return the neurons as an array
+     */
+    private static Neuron[] toArray(final List<Neuron> list) {
+        return list.toArray(new Neuron[list.size()]);
+    }
+
+    /**
+     * @param neurons some neurons
+     * @return their update rules
+     */
+    private static NeuronUpdateRule[] rulesOf(final Neuron[] neurons) {
+        NeuronUpdateRule[] ret = new NeuronUpdateRule[neurons.length];
+        for (int i = 0; i < neurons.length; i++) {
+            ret[i] = neurons[i].getUpdateRule();
+        }
+        return ret;
+    }
+
+    /**
+     * @param neurons some neurons
+     * @return the index of each neuron
+     */
+    private static Map<Neuron, Integer> indexOf(final Neuron[] neurons) {
+        Map<Neuron, Integer> ret = new IdentityHashMap<Neuron, Integer>();
+        for (int i = 0; i < neurons.length; i++) {
+            ret.put(neurons[i], i);
+        }
+        return ret;
+    }
+
+    /**
+     * @return the number of threads sequences of a batch are run on
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param parallelism the number of threads to run the sequences of a
+     *            batch on
+     */
+    public void setParallelism(final int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+}
@@ -18,6 +18,11 @@
  */
 package org.simbrain.network.trainers;
 
+import java.util.List;
+
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.subnetworks.SOMCodebook;
+import org.simbrain.network.subnetworks.SOMGroup;
 import org.simbrain.network.subnetworks.SOMNetwork;
 
 /**
@@ -40,6 +45,9 @@ public class SOMTrainer extends Trainer {
     /** Iteration number. An epoch. */
     private int iteration = 0;
 
+    /** Whether each epoch is a batch-SOM epoch rather than online updates. */
+    private boolean batch;
+
     /**
      * Construct the UnsupervisedNeuronGroupTrainer trainer.
      *
@@ -55,15 +63,25 @@ public class SOMTrainer extends Trainer {
     @Override
     public void apply() throws DataNotInitializedException {
 
-        if (network.getTrainingSet().getInputData() == null) {
+        TrainingSet data = network.getTrainingSet();
+        if (!data.hasInputData()) {
             throw new DataNotInitializedException("Input data not initalized");
         }
 
-        int numRows = network.getTrainingSet().getInputData().length;
-        for (int row = 0; row < numRows; row++) {
-            double[] inputs = network.getTrainingSet().getInputData()[row];
-            network.getInputLayer().forceSetActivations(inputs);
-            network.getSom().update(); // Call a function here to be overriden in subclasses?
+        List<Neuron> inputList = network.getInputLayer().getNeuronList();
+        SOMGroup som = network.getSom();
+        if (data.getNumRows() > 0
+                && data.getNumInputColumns() == inputList.size()
+                && SOMCodebook.canUse(inputList, som.getNeuronList())) {
+            applyCodebook(data);
+        } else {
+            int numRows = data.getNumRows();
+            double[] inputs = new double[data.getNumInputColumns()];
+            for (int row = 0; row < numRows; row++) {
+                data.readInputRow(row, inputs);
+                network.getInputLayer().forceSetActivations(inputs);
+                network.getSom().update(); // Call a function here to be overriden in subclasses?
+            }
         }
         incrementIteration();
 
@@ -72,6 +90,65 @@ public class SOMTrainer extends Trainer {
 
     }
 
+    /**
+     * Train on a copy of the SOM's weights, in one flat array, and write
+     * them back when done. Online training gives the same result as updating
+     * the SOM group once per row, up to float rounding.
+     *
+     * @param data the input rows
+     */
+    private void applyCodebook(final TrainingSet data) {
+        SOMGroup som = network.getSom();
+        SOMCodebook codebook = new SOMCodebook(network.getInputLayer()
+                .getNeuronList(), som.getNeuronList());
+        int winner;
+        if (batch) {
+            int[] winners = codebook.batchEpoch(data,
+                    som.getNeighborhoodSize());
+            winner = winners[winners.length - 1];
+            som.decay();
+        } else {
+            winner = -1;
+            double[] row = new double[data.getNumInputColumns()];
+            for (int i = 0, n = data.getNumRows(); i < n; i++) {
+                data.readInputRow(i, row);
+                winner = codebook.update(row, som.getAlpha(),
+                        som.getNeighborhoodSize());
+                som.decay();
+            }
+        }
+        codebook.writeWeights();
+
+        // Leave the network as the last row of an online update would
+        double[] last = new double[data.getNumInputColumns()];
+        data.readInputRow(data.getNumRows() - 1, last);
+        network.getInputLayer().forceSetActivations(last);
+        List<Neuron> units = som.getNeuronList();
+        for (int i = 0; i < units.size(); i++) {
+            units.get(i).setActivation(i == winner ? 1 : 0);
+        }
+    }
+
+    /**
+     * @return whether each epoch is a batch-SOM epoch
+     */
+    public boolean isBatch() {
+        return batch;
+    }
+
+    /**
+     * Set whether each epoch is a batch-SOM epoch, which sets each SOM
+     * neuron's weights to the mean of the rows whose winner is within its
+     * neighborhood, instead of moving the weights towards one row at a time.
+     * The learning rate is not used, and the learning rate and neighborhood
+     * size decay once per epoch rather than once per row.
+     *
+     * @param batch true for batch-SOM epochs
+     */
+    public void setBatch(final boolean batch) {
+        this.batch = batch;
+    }
+
     /**
      * @return boolean updated completed.
      */
@@ -27,6 +27,11 @@ import org.simbrain.network.subnetworks.SimpleRecurrentNetwork;
  * Example: 5_binary_orth.csv &#62; 5_binary_orth_offset.csv. Manually set inputs to
  * test. 0 error is possible with defaults.
  *
+ * When training on matrices the network is trained with truncated
+ * backpropagation through time by {@link RecurrentBackprop}. By default the
+ * whole training set is one sequence and error is not propagated back past
+ * the context layer, which trains row by row like the object based path.
+ *
  * @author jyoshimi
  */
 public class SRNTrainer extends BackpropTrainer {
@@ -34,6 +39,21 @@ public class SRNTrainer extends BackpropTrainer {
     /** Reference to srn being trained. */
     private final SimpleRecurrentNetwork srn;
 
+    /**
+     * Number of rows per sequence; each sequence starts from the initial
+     * context. 0 to treat the whole training set as one sequence.
+     */
+    private int sequenceLength = 0;
+
+    /** Number of steps error is propagated back through time. */
+    private int truncation = 1;
+
+    /** Number of sequences trained on in parallel per weight update. */
+    private int sequencesPerBatch = 1;
+
+    /** Array representation of the network, when training on matrices. */
+    private RecurrentBackprop recurrent;
+
     /**
      * Construct the SRN trainer.
      *
@@ -44,8 +64,55 @@ public class SRNTrainer extends BackpropTrainer {
         this.srn = srn;
     }
 
+    @Override
+    public void apply() {
+        if (!isUseMatrices()
+                || !RecurrentBackprop.canTrain(srn.getInputNeurons(), srn
+                        .getHiddenLayer().getNeuronList(), srn
+                        .getContextLayer().getNeuronList(), srn
+                        .getOutputNeurons())) {
+            if (recurrent != null) {
+                recurrent.writeWeights(); // Keep weights not yet written
+                recurrent = null;
+            }
+            super.apply();
+            return;
+        }
+        int numRows = getMinimumNumRows(network);
+        if ((numRows == 0) || (srn.getInputNeurons().size() == 0)) {
+            return;
+        }
+        srn.initNetwork();
+        if (recurrent == null || recurrent.isStale()) {
+            writeWeights();
+            recurrent = new RecurrentBackprop(srn.getInputNeurons(), srn
+                    .getHiddenLayer().getNeuronList(), srn.getContextLayer()
+                    .getNeuronList(), srn.getOutputNeurons(), false);
+        } else if (isWriteWeightsEachEpoch()) {
+            recurrent.readWeights(); // Pick up edits made since last epoch
+        }
+        mse = recurrent.train(network.getTrainingSet(), numRows,
+                sequenceLength, truncation, sequencesPerBatch,
+                getLearningRate(), getMomentum());
+        if (isWriteWeightsEachEpoch()) {
+            recurrent.writeWeights();
+        }
+        mse = mse / (numRows * network.getOutputNeurons().size());
+        incrementIteration();
+        fireErrorUpdated();
+    }
+
+    @Override
+    public void writeWeights() {
+        super.writeWeights();
+        if (recurrent != null) {
+            recurrent.writeWeights();
+        }
+    }
+
     @Override
     public void randomize() {
+        recurrent = null;
         randomize(srn.getHiddenLayer().getNeuronList());
         randomize(srn.getOutputNeurons());
     }
@@ -55,4 +122,49 @@ public class SRNTrainer extends BackpropTrainer {
         srn.update();
     }
 
+    /**
+     * @return the number of rows per sequence, 0 for one sequence
+     */
+    public int getSequenceLength() {
+        return sequenceLength;
+    }
+
+    /**
+     * @param sequenceLength the number of rows per sequence, 0 to treat the
+     *            training set as one sequence
+     */
+    public void setSequenceLength(int sequenceLength) {
+        this.sequenceLength = Math.max(0, sequenceLength);
+    }
+
+    /**
+     * @return the number of steps error is propagated back through time
+     */
+    public int getTruncation() {
+        return truncation;
+    }
+
+    /**
+     * @param truncation the number of steps error is propagated back through
+     *            time, 0 for whole sequences
+     */
+    public void setTruncation(int truncation) {
+        this.truncation = Math.max(0, truncation);
+    }
+
+    /**
+     * @return the number of sequences per weight update
+     */
+    public int getSequencesPerBatch() {
+        return sequencesPerBatch;
+    }
+
+    /**
+     * @param sequencesPerBatch the number of sequences trained on in
+     *            parallel per weight update
+     */
+    public void setSequencesPerBatch(int sequencesPerBatch) {
+        this.sequencesPerBatch = Math.max(1, sequencesPerBatch);
+    }
+
 }
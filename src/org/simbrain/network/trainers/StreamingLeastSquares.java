@@ -0,0 +1,343 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.trainers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.simbrain.util.ParallelTasks;
+
+/**
+ * <b>StreamingLeastSquares</b> computes the least squares (Wiener-Hopf)
+ * solution W of S W = T one row of S and T at a time, without keeping the
+ * rows. It accumulates the correlation matrix R = S'S and the
+ * cross-correlation P = S'T as rows are added, and solves (R + ridge I) W = P
+ * by Cholesky decomposition. Memory is proportional to the square of the
+ * number of state columns, however many rows are added.
+ * <p>
+ * Rows are buffered in chunks; each full chunk is added to R and P as a
+ * rank-k update split into bands of rows of R which are computed in
+ * parallel.
+ */
+public class StreamingLeastSquares {
+
+    /** Default number of rows buffered before they are added to R and P. */
+    private static final int DEFAULT_CHUNK_SIZE = 256;
+
+    /** Smallest number of multiply-adds per chunk worth running in parallel. */
+    private static final long PARALLEL_THRESHOLD = 1 << 20;
+
+    /** Number of state columns. */
+    private final int numStates;
+
+    /** Number of target columns. */
+    private final int numTargets;
+
+    /** Lower triangle of S'S, [row * numStates + column]. */
+    private final double[] correlation;
+
+    /** S'T, [state * numTargets + target]. */
+    private final double[] crossCorrelation;
+
+    /** Buffered state rows, [row * numStates + column]. */
+    private final double[] stateChunk;
+
+    /** Buffered target rows, [row * numTargets + column]. */
+    private final double[] targetChunk;
+
+    /** Maximum number of buffered rows. */
+    private final int chunkSize;
+
+    /** Number of buffered rows. */
+    private int buffered;
+
+    /** Number of rows added. */
+    private long numRows;
+
+    /** Number of threads chunks are added on. */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Construct an empty accumulator.
+     *
+     * @param numStates number of columns of each state row
+     * @param numTargets number of columns of each target row
+     */
+    public StreamingLeastSquares(final int numStates, final int numTargets) {
+        this(numStates, numTargets, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Construct an empty accumulator.
+     *
+     * @param numStates number of columns of each state row
+     * @param numTargets number of columns of each target row
+     * @param chunkSize number of rows buffered before they are added
+     */
+    public StreamingLeastSquares(final int numStates, final int numTargets,
+            final int chunkSize) {
+        this.numStates = numStates;
+        this.numTargets = numTargets;
+        this.chunkSize = Math.max(1, chunkSize);
+        correlation = new double[numStates * numStates];
+        crossCorrelation = new double[numStates * numTargets];
+        stateChunk = new double[this.chunkSize * numStates];
+        targetChunk = new double[this.chunkSize * numTargets];
+    }
+
+    /**
+     * Add a row. The arrays are copied, so they can be reused by the caller.
+     *
+     * @param state the state row
+     * @param target the target row
+     */
+    public void addRow(final double[] state, final double[] target) {
+        if (state.length != numStates || target.length != numTargets) {
+            throw new IllegalArgumentException("Row has " + state.length
+                    + " states and " + target.length + " targets; expected "
+                    + numStates + " and " + numTargets);
+        }
+        System.arraycopy(state, 0, stateChunk, buffered * numStates,
+                numStates);
+        System.arraycopy(target, 0, targetChunk, buffered * numTargets,
+                numTargets);
+        buffered++;
+        numRows++;
+        if (buffered == chunkSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Add rows.
+     *
+     * @param states state rows
+     * @param targets target rows, one per state row
+     */
+    public void addRows(final double[][] states, final double[][] targets) {
+        for (int i = 0; i < states.length; i++) {
+            addRow(states[i], targets[i]);
+        }
+    }
+
+    /**
+     * Add the buffered rows to the correlation matrices.
+     */
+    public void flush() {
+        if (buffered == 0) {
+            return;
+        }
+        long work = (long) buffered * numStates * (numStates + numTargets)
+                / 2;
+        int bands = work < PARALLEL_THRESHOLD ? 1 : Math.min(parallelism,
+                numStates);
+        if (bands < 2) {
+            new Band(0, numStates).call();
+        } else {
+            // Row i of the triangle has i + 1 entries, so bands of equal work
+            // end at n * sqrt(b / bands)
+            List<Band> tasks = new ArrayList<Band>();
+            int start = 0;
+            for (int b = 1; b <= bands; b++) {
+                int end = b == bands ? numStates : (int) Math.round(numStates
+                        * Math.sqrt((double) b / bands));
+                if (end > start) {
+                    tasks.add(new Band(start, end));
+                    start = end;
+                }
+            }
+            ParallelTasks.invokeAll(tasks, parallelism,
+                    "Error in parallel correlation.");
+        }
+        buffered = 0;
+    }
+
+    /**
+     * Adds the buffered rows to a band of rows of the correlation matrices.
+     */
+    private class Band implements Callable<Void> {
+
+        /** First row of the band (inclusive). */
+        private final int start;
+
+        /** Last row of the band (exclusive). */
+        private final int end;
+
+        /**
+         * @param start first row (inclusive)
+         * @param end last row (exclusive)
+         */
+        Band(final int start, final int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public Void call() {
+            int n = numStates;
+            int m = numTargets;
+            for (int k = 0; k < buffered; k++) {
+                int sBase = k * n;
+                int tBase = k * m;
+                for (int i = start; i < end; i++) {
+                    double si = stateChunk[sBase + i];
+                    if (si == 0) {
+                        continue;
+                    }
+                    int rBase = i * n;
+                    for (int j = 0; j <= i; j++) {
+                        correlation[rBase + j] += si * stateChunk[sBase + j];
+                    }
+                    int pBase = i * m;
+                    for (int t = 0; t < m; t++) {
+                        crossCorrelation[pBase + t] += si
+                                * targetChunk[tBase + t];
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Solve (S'S + ridge I) W = S'T for the rows added so far. Rows can still
+     * be added afterwards.
+     *
+     * @param ridge the ridge regression term added to the diagonal, 0 for
+     *            none
+     * @return W, one row per state column and one column per target column
+     * @throws IllegalStateException if S'S + ridge I is not positive definite,
+     *             e.g. if the state columns are linearly dependent and ridge
+     *             is 0
+     */
+    public double[][] solve(final double ridge) {
+        flush();
+        int n = numStates;
+        int m = numTargets;
+        // Cholesky-Banachiewicz: S'S + ridge I = L L', row by row
+        double[] l = new double[n * n];
+        for (int i = 0; i < n; i++) {
+            int iBase = i * n;
+            for (int j = 0; j <= i; j++) {
+                int jBase = j * n;
+                double sum = correlation[iBase + j];
+                for (int k = 0; k < j; k++) {
+                    sum -= l[iBase + k] * l[jBase + k];
+                }
+                if (i == j) {
+                    sum += ridge;
+                    if (!(sum > 0)) {
+                        throw new IllegalStateException(
+                                "Correlation matrix is not positive definite");
+                    }
+                    l[iBase + i] = Math.sqrt(sum);
+                } else {
+                    l[iBase + j] = sum / l[jBase + j];
+                }
+            }
+        }
+        // Forward substitution: L Y = S'T
+        double[][] w = new double[n][m];
+        for (int i = 0; i < n; i++) {
+            double[] wi = w[i];
+            System.arraycopy(crossCorrelation, i * m, wi, 0, m);
+            int iBase = i * n;
+            for (int j = 0; j < i; j++) {
+                double lij = l[iBase + j];
+                if (lij == 0) {
+                    continue;
+                }
+                double[] wj = w[j];
+                for (int t = 0; t < m; t++) {
+                    wi[t] -= lij * wj[t];
+                }
+            }
+            double d = l[iBase + i];
+            for (int t = 0; t < m; t++) {
+                wi[t] /= d;
+            }
+        }
+        // Back substitution: L' W = Y
+        for (int i = n - 1; i >= 0; i--) {
+            double[] wi = w[i];
+            for (int j = i + 1; j < n; j++) {
+                double lji = l[j * n + i];
+                if (lji == 0) {
+                    continue;
+                }
+                double[] wj = w[j];
+                for (int t = 0; t < m; t++) {
+                    wi[t] -= lji * wj[t];
+                }
+            }
+            double d = l[i * n + i];
+            for (int t = 0; t < m; t++) {
+                wi[t] /= d;
+            }
+        }
+        return w;
+    }
+
+    /**
+     * Forget all rows added so far.
+     */
+    public void clear() {
+        Arrays.fill(correlation, 0);
+        Arrays.fill(crossCorrelation, 0);
+        buffered = 0;
+        numRows = 0;
+    }
+
+    /**
+     * @return the number of rows added
+     */
+    public long getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * @return the number of columns of each state row
+     */
+    public int getNumStates() {
+        return numStates;
+    }
+
+    /**
+     * @return the number of columns of each target row
+     */
+    public int getNumTargets() {
+        return numTargets;
+    }
+
+    /**
+     * @return the number of threads chunks are added on
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param parallelism the number of threads to add chunks on
+     */
+    public void setParallelism(final int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+}
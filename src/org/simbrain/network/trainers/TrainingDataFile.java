@@ -0,0 +1,309 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.trainers;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import com.Ostermiller.util.CSVParser;
+
+/**
+ * <b>TrainingDataFile</b> is training data stored in a binary file and read
+ * through memory maps, so that only the pages in use need to be in memory and
+ * the data can be larger than the heap (or than RAM). Rows can be read from
+ * any number of threads at once.
+ * <p>
+ * The file is a 32 byte header (the magic number, the format version, the
+ * number of rows as a long, the number of input columns and the number of
+ * target columns, then padding) followed by the rows, each its input columns
+ * then its target columns, as little-endian doubles. Files are made from csv
+ * files once by {@link #convert(File, File, File)}.
+ */
+public class TrainingDataFile {
+
+    /** First int of every file, "SBTD". */
+    private static final int MAGIC = 0x53425444;
+
+    /** Version of the format. */
+    private static final int VERSION = 1;
+
+    /** Bytes before the first row. */
+    private static final int HEADER_SIZE = 32;
+
+    /** Largest number of bytes mapped at once. */
+    private static final long MAX_SEGMENT_SIZE = 1L << 30;
+
+    /** The file. */
+    private final File file;
+
+    /** Number of rows. */
+    private final int numRows;
+
+    /** Number of input columns. */
+    private final int numInputs;
+
+    /** Number of target columns. */
+    private final int numTargets;
+
+    /** Number of rows per mapped segment. */
+    private final int rowsPerSegment;
+
+    /** Mapped segments of rows. */
+    private final DoubleBuffer[] segments;
+
+    /**
+     * Open a training data file.
+     *
+     * @param file the file, written by {@link #convert(File, File, File)}
+     * @throws IOException if the file cannot be read or is not a training
+     *             data file
+     */
+    public TrainingDataFile(final File file) throws IOException {
+        this.file = file;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(
+                    ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    throw new IOException(file + " is not a training data "
+                            + "file");
+                }
+            }
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException(file + " is not a training data file");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported training data file "
+                        + "version " + version);
+            }
+            long rows = header.getLong();
+            numInputs = header.getInt();
+            numTargets = header.getInt();
+            int rowSize = (numInputs + numTargets) * 8;
+            if (rows > Integer.MAX_VALUE || numInputs < 0 || numTargets < 0
+                    || HEADER_SIZE + rows * rowSize > channel.size()) {
+                throw new IOException(file + " is truncated or corrupt");
+            }
+            numRows = (int) rows;
+            rowsPerSegment = (int) Math.max(1, MAX_SEGMENT_SIZE
+                    / Math.max(1, rowSize));
+            int numSegments = (numRows + rowsPerSegment - 1) / rowsPerSegment;
+            segments = new DoubleBuffer[numSegments];
+            for (int s = 0; s < numSegments; s++) {
+                long first = (long) s * rowsPerSegment;
+                long count = Math.min(rowsPerSegment, numRows - first);
+                segments[s] = channel
+                        .map(MapMode.READ_ONLY, HEADER_SIZE + first * rowSize,
+                                count * rowSize)
+                        .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            }
+        } finally {
+            // The maps stay valid after the channel is closed
+            raf.close();
+        }
+    }
+
+    /**
+     * Convert csv files to a training data file, one row at a time, so that
+     * the data never has to fit in memory.
+     *
+     * @param inputCsv the input data
+     * @param targetCsv the target data, with as many rows as the input data,
+     *            or null for none
+     * @param out the file to write
+     * @return the written file, opened
+     * @throws IOException if a file cannot be read or written, or the csv
+     *             files are not numeric or do not match
+     */
+    public static TrainingDataFile convert(final File inputCsv,
+            final File targetCsv, final File out) throws IOException {
+        FileInputStream inputStream = new FileInputStream(inputCsv);
+        FileInputStream targetStream = targetCsv == null ? null
+                : new FileInputStream(targetCsv);
+        RandomAccessFile raf = new RandomAccessFile(out, "rw");
+        try {
+            // # is a comment delimeter, as in Utils.getStringMatrix
+            CSVParser inputs = new CSVParser(inputStream, "", "", "#");
+            CSVParser targets = targetStream == null ? null : new CSVParser(
+                    targetStream, "", "", "#");
+            raf.setLength(0);
+            FileChannel channel = raf.getChannel();
+            channel.position(HEADER_SIZE);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(
+                    ByteOrder.LITTLE_ENDIAN);
+            int numInputs = -1;
+            int numTargets = 0;
+            long rows = 0;
+            String[] inputLine;
+            while ((inputLine = inputs.getLine()) != null) {
+                String[] targetLine = targets == null ? new String[0]
+                        : targets.getLine();
+                if (targetLine == null) {
+                    throw new IOException(targetCsv + " has fewer rows than "
+                            + inputCsv);
+                }
+                if (numInputs < 0) {
+                    numInputs = inputLine.length;
+                    numTargets = targetLine.length;
+                } else if (inputLine.length != numInputs
+                        || targetLine.length != numTargets) {
+                    throw new IOException("Row " + (rows + 1)
+                            + " has a different number of columns");
+                }
+                buffer = put(inputLine, buffer, channel);
+                buffer = put(targetLine, buffer, channel);
+                rows++;
+            }
+            if (targets != null && targets.getLine() != null) {
+                throw new IOException(targetCsv + " has more rows than "
+                        + inputCsv);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(
+                    ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putLong(rows)
+                    .putInt(Math.max(0, numInputs)).putInt(numTargets);
+            header.rewind();
+            channel.position(0);
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        } finally {
+            raf.close();
+            inputStream.close();
+            if (targetStream != null) {
+                targetStream.close();
+            }
+        }
+        return new TrainingDataFile(out);
+    }
+
+    /**
+     * Write the values of a csv line to a buffer, writing the buffer to the
+     * channel when it is full.
+     *
+     * @param values the values
+     * @param buffer the buffer
+     * @param channel the channel
+     * @return the buffer
+     * @throws IOException if a value is not a number or cannot be written
+     */
+    private static ByteBuffer put(final String[] values,
+            final ByteBuffer buffer, final FileChannel channel)
+            throws IOException {
+        for (String value : values) {
+            if (buffer.remaining() < 8) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                buffer.clear();
+            }
+            try {
+                buffer.putDouble(Double.parseDouble(value.trim()));
+            } catch (NumberFormatException e) {
+                throw new IOException("Not a number: " + value, e);
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Copy the input columns of a row.
+     *
+     * @param row the row
+     * @param out the array to copy to; as many columns as fit are copied
+     */
+    public void readInputRow(final int row, final double[] out) {
+        read(row, 0, out, Math.min(out.length, numInputs));
+    }
+
+    /**
+     * Copy the target columns of a row.
+     *
+     * @param row the row
+     * @param out the array to copy to; as many columns as fit are copied
+     */
+    public void readTargetRow(final int row, final double[] out) {
+        read(row, numInputs, out, Math.min(out.length, numTargets));
+    }
+
+    /**
+     * Copy values of a row.
+     *
+     * @param row the row
+     * @param column first column, counting inputs then targets
+     * @param out the array to copy to
+     * @param count number of values
+     */
+    private void read(final int row, final int column, final double[] out,
+            final int count) {
+        if (row < 0 || row >= numRows) {
+            throw new IndexOutOfBoundsException("Row " + row + " of "
+                    + numRows);
+        }
+        // A duplicate has its own position, so threads do not interfere
+        DoubleBuffer segment = segments[row / rowsPerSegment].duplicate();
+        segment.position((row % rowsPerSegment) * (numInputs + numTargets)
+                + column);
+        segment.get(out, 0, count);
+    }
+
+    /**
+     * @return the file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of rows
+     */
+    public int getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * @return the number of input columns
+     */
+    public int getNumInputs() {
+        return numInputs;
+    }
+
+    /**
+     * @return the number of target columns
+     */
+    public int getNumTargets() {
+        return numTargets;
+    }
+}
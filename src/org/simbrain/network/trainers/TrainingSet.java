@@ -18,10 +18,13 @@
  */
 package org.simbrain.network.trainers;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import org.simbrain.util.Utils;
 import org.simbrain.util.math.NumericMatrix;
@@ -30,6 +33,11 @@ import org.simbrain.util.math.NumericMatrix;
  * Represents input data, target data, a way of iterating through it, a
  * validation subset, etc. Not all of these features will be used by every class
  * that uses this.
+ * <p>
+ * The data is either held in arrays or read from a {@link TrainingDataFile}
+ * (see {@link #setDataFile(File)}), for data too large for the heap. Trainers
+ * which read the data a row at a time ({@link #readInputRow(int, double[])},
+ * {@link #minibatches(int, int, Random)}) work with either.
  *
  * @author Jeff Yoshimi
  *
@@ -49,6 +57,18 @@ public class TrainingSet {
     /** Percentage of data to use for validation. */
     private double percentValidation = .25;
 
+    /** File the data is read from, or null if it is in the arrays. */
+    private File dataFile;
+
+    /** The opened data file. */
+    private transient TrainingDataFile openDataFile;
+
+    /** Input data read from the data file by {@link #getInputData()}. */
+    private transient double[][] loadedInputData;
+
+    /** Target data read from the data file by {@link #getTargetData()}. */
+    private transient double[][] loadedTargetData;
+
     /**
      * Construct training set object.
      */
@@ -100,6 +120,7 @@ public class TrainingSet {
      * @param inputData the data to set.
      */
     public void setInputData(double[][] inputData) {
+        clearDataFile();
         this.inputData = inputData;
     }
 
@@ -109,23 +130,203 @@ public class TrainingSet {
      * @param targetData the data to set
      */
     public void setTargetData(double[][] targetData) {
+        clearDataFile();
         this.targetData = targetData;
     }
 
     /**
+     * Returns the input data. Data in a file is read into memory the first
+     * time; trainers which can should read rows with
+     * {@link #readInputRow(int, double[])} instead.
+     *
      * @return the inputData
      */
     public double[][] getInputData() {
+        if (dataFile != null) {
+            if (loadedInputData == null) {
+                TrainingDataFile file = getDataFile();
+                loadedInputData = new double[file.getNumRows()][file
+                        .getNumInputs()];
+                for (int row = 0; row < loadedInputData.length; row++) {
+                    file.readInputRow(row, loadedInputData[row]);
+                }
+            }
+            return loadedInputData;
+        }
         return inputData;
     }
 
     /**
+     * Returns the target data. Data in a file is read into memory the first
+     * time; trainers which can should read rows with
+     * {@link #readTargetRow(int, double[])} instead.
+     *
      * @return the targetData
      */
     public double[][] getTargetData() {
+        if (dataFile != null) {
+            if (loadedTargetData == null) {
+                TrainingDataFile file = getDataFile();
+                loadedTargetData = new double[file.getNumRows()][file
+                        .getNumTargets()];
+                for (int row = 0; row < loadedTargetData.length; row++) {
+                    file.readTargetRow(row, loadedTargetData[row]);
+                }
+            }
+            return loadedTargetData;
+        }
         return targetData;
     }
 
+    /**
+     * Read the data from a training data file instead of from arrays. The
+     * file is memory mapped, so it can be larger than the heap. Setting input
+     * or target data afterwards goes back to arrays.
+     *
+     * @param file a file written by
+     *            {@link TrainingDataFile#convert(File, File, File)}
+     * @throws IOException if the file cannot be opened
+     */
+    public void setDataFile(final File file) throws IOException {
+        openDataFile = new TrainingDataFile(file);
+        dataFile = file;
+        inputData = null;
+        targetData = null;
+        loadedInputData = null;
+        loadedTargetData = null;
+    }
+
+    /**
+     * @return the data file the data is read from, opened, or null if the
+     *         data is in arrays
+     */
+    public TrainingDataFile getDataFile() {
+        if (dataFile != null && openDataFile == null) {
+            try {
+                openDataFile = new TrainingDataFile(dataFile);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not open training "
+                        + "data file " + dataFile, e);
+            }
+        }
+        return openDataFile;
+    }
+
+    /**
+     * Stop reading from a data file.
+     */
+    private void clearDataFile() {
+        if (dataFile != null) {
+            dataFile = null;
+            openDataFile = null;
+            loadedInputData = null;
+            loadedTargetData = null;
+        }
+    }
+
+    /**
+     * @return true if there is input data
+     */
+    public boolean hasInputData() {
+        return dataFile != null || inputData != null;
+    }
+
+    /**
+     * @return true if there is target data
+     */
+    public boolean hasTargetData() {
+        return dataFile != null || targetData != null;
+    }
+
+    /**
+     * @return the number of rows of input data
+     */
+    public int getNumRows() {
+        if (dataFile != null) {
+            return getDataFile().getNumRows();
+        }
+        return inputData == null ? 0 : inputData.length;
+    }
+
+    /**
+     * @return the number of rows of target data
+     */
+    public int getNumTargetRows() {
+        if (dataFile != null) {
+            return getDataFile().getNumRows();
+        }
+        return targetData == null ? 0 : targetData.length;
+    }
+
+    /**
+     * @return the number of input columns
+     */
+    public int getNumInputColumns() {
+        if (dataFile != null) {
+            return getDataFile().getNumInputs();
+        }
+        return inputData == null || inputData.length == 0 ? 0
+                : inputData[0].length;
+    }
+
+    /**
+     * @return the number of target columns
+     */
+    public int getNumTargetColumns() {
+        if (dataFile != null) {
+            return getDataFile().getNumTargets();
+        }
+        return targetData == null || targetData.length == 0 ? 0
+                : targetData[0].length;
+    }
+
+    /**
+     * Copy the input columns of a row. Can be called from several threads at
+     * once.
+     *
+     * @param row the row
+     * @param out the array to copy to; as many columns as fit are copied
+     */
+    public void readInputRow(final int row, final double[] out) {
+        if (dataFile != null) {
+            getDataFile().readInputRow(row, out);
+        } else if (inputData != null) {
+            System.arraycopy(inputData[row], 0, out, 0,
+                    Math.min(out.length, inputData[row].length));
+        }
+    }
+
+    /**
+     * Copy the target columns of a row. Can be called from several threads at
+     * once.
+     *
+     * @param row the row
+     * @param out the array to copy to; as many columns as fit are copied
+     */
+    public void readTargetRow(final int row, final double[] out) {
+        if (dataFile != null) {
+            getDataFile().readTargetRow(row, out);
+        } else if (targetData != null) {
+            System.arraycopy(targetData[row], 0, out, 0,
+                    Math.min(out.length, targetData[row].length));
+        }
+    }
+
+    /**
+     * Iterate through the rows in minibatches. Rows in a data file are read
+     * ahead on a background thread.
+     *
+     * @param numRows number of rows to use, from the first
+     * @param batchSize number of rows per batch
+     * @param random source of a shuffled order, or null to keep rows in order
+     * @return the batches
+     */
+    public MinibatchIterator minibatches(final int numRows,
+            final int batchSize, final Random random) {
+        return new MinibatchIterator(this, numRows, batchSize, random,
+                dataFile != null);
+    }
+
     /**
      * Wrap input data in a DataMatrix Object.
      *
@@ -0,0 +1,248 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.update_actions;
+
+import java.util.List;
+
+import org.simbrain.network.core.Network;
+import org.simbrain.network.core.NetworkUpdateAction;
+import org.simbrain.network.core.Synapse;
+import org.simbrain.network.groups.Group;
+import org.simbrain.network.groups.NeuronGroup;
+import org.simbrain.network.update_actions.compiled.CompiledNetwork;
+
+/**
+ * Buffered update of loose neurons and synapses and of top-level plain neuron
+ * and synapse groups, run over a {@link CompiledNetwork}: a primitive array
+ * image of the network which is rebuilt whenever its structure changes.
+ * <p>
+ * Items that are already updated by another action in the update manager (a
+ * {@link BufferedUpdate} or {@link PriorityUpdate} for loose items, an
+ * {@link UpdateGroup} for a group) are left to that action, so this action can
+ * be added alongside the defaults without anything being updated twice. To
+ * hand everything over to the compiled update, remove those actions.
+ * <p>
+ * Results are written back to the neuron objects every step when anything
+ * needs them: GUI events are being fired, a workspace coupling reads from the
+ * network, some neuron has no compiled form, synapses are learning, or a group
+ * is recording. Otherwise they are written back every
+ * {@link #getSyncInterval()} steps.
+ */
+public class CompiledUpdate implements NetworkUpdateAction {
+
+    /** Short description of this action. */
+    public static final String DESCRIPTION = "Compiled Buffered Update";
+
+    /** Long description of this action. */
+    public static final String LONG_DESCRIPTION = "Buffered update of loose items and plain groups over"
+                + " primitive arrays";
+
+    /** Reference to network to update. */
+    private final Network network;
+
+    /** The current compiled image, or null if none has been built yet. */
+    private transient CompiledNetwork compiled;
+
+    /** Set when the network structure changed and must be recompiled. */
+    private transient volatile boolean invalid;
+
+    /** Set when synapse strengths changed outside of learning. */
+    private transient volatile boolean weightsChanged;
+
+    /** The items updated by this action. */
+    private transient UpdateScope scope;
+
+    /**
+     * Listeners on the network, or null once the action has been removed
+     * from the update manager.
+     */
+    private transient volatile UpdateScope.StructureListeners listeners;
+
+    /** Write back to neuron objects every this many steps, when not forced. */
+    private int syncInterval = 1;
+
+    /** Steps since the last write back. */
+    private int stepsSinceSync;
+
+    /**
+     * A static factory method that creates a compiled update for a network
+     * and registers it to recompile when the network changes. It stops
+     * listening when it is removed from the update manager, and listens again
+     * if it is invoked after that.
+     *
+     * @param network the network to update
+     * @return the compiled update action
+     */
+    public static CompiledUpdate createCompiledUpdate(final Network network) {
+        CompiledUpdate cu = new CompiledUpdate(network);
+        cu.listen();
+        return cu;
+    }
+
+    /**
+     * Listen to the network until this action is removed from the update
+     * manager, and recompile on the next update. On removal the compiled
+     * activations are written back.
+     */
+    private void listen() {
+        invalid = true;
+        listeners = new UpdateScope.StructureListeners(network, this,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        invalidate();
+                    }
+                }, new Runnable() {
+                    @Override
+                    public void run() {
+                        weightsChanged = true;
+                    }
+                }, new Runnable() {
+                    @Override
+                    public void run() {
+                        listeners = null;
+                        sync();
+                    }
+                });
+    }
+
+    /**
+     * @param network the network to update
+     */
+    private CompiledUpdate(final Network network) {
+        this.network = network;
+    }
+
+    @Override
+    public void invoke() {
+        if (listeners == null) {
+            listen();
+        }
+        CompiledNetwork current = compiled;
+        if (current == null || invalid) {
+            current = compile();
+        } else if (weightsChanged) {
+            weightsChanged = false;
+            current.refreshWeights();
+        }
+        List<NeuronGroup> inputGroups = scope.inputGroups;
+        for (int i = 0, n = inputGroups.size(); i < n; i++) {
+            inputGroups.get(i).update();
+        }
+        List<NeuronGroup> outputGroups = scope.outputGroups;
+        boolean mustSync = network.isFireUpdates()
+                || network.isReadByCouplings() || current.hasFallback()
+                || current.hasPlasticSynapses() || !outputGroups.isEmpty()
+                || ++stepsSinceSync >= syncInterval;
+        current.update(mustSync);
+        if (mustSync) {
+            stepsSinceSync = 0;
+        }
+        List<Synapse> plasticSynapses = scope.plasticSynapses;
+        for (int i = 0, n = plasticSynapses.size(); i < n; i++) {
+            plasticSynapses.get(i).update();
+        }
+        for (int i = 0, n = outputGroups.size(); i < n; i++) {
+            outputGroups.get(i).writeActsToFile();
+        }
+    }
+
+    /**
+     * Rebuild the compiled image from the current state of the network.
+     *
+     * @return the new compiled image
+     */
+    private CompiledNetwork compile() {
+        invalid = false;
+        weightsChanged = false;
+        if (compiled != null) {
+            compiled.push();
+        }
+        scope = new UpdateScope(network);
+        compiled = new CompiledNetwork(scope.neurons);
+        stepsSinceSync = 0;
+        return compiled;
+    }
+
+    /**
+     * Whether the given group is updated by this action when no other action
+     * in the update manager updates it.
+     *
+     * @param group the group to check
+     * @return true if this action will update the group
+     */
+    public static boolean canUpdate(final Group group) {
+        return UpdateScope.contains(group);
+    }
+
+    /**
+     * Discard the compiled image so that it is rebuilt on the next update.
+     */
+    public void invalidate() {
+        invalid = true;
+    }
+
+    /**
+     * Re-read synapse strengths on the next update. Call after changing the
+     * strengths of static synapses without firing an event (e.g. from a
+     * script).
+     */
+    public void refreshWeights() {
+        weightsChanged = true;
+    }
+
+    /**
+     * Write any activations held only in the compiled arrays back to the
+     * neuron objects.
+     */
+    public void sync() {
+        CompiledNetwork current = compiled;
+        if (current != null) {
+            current.push();
+        }
+        stepsSinceSync = 0;
+    }
+
+    /**
+     * @return how many steps may pass between write backs to the neuron
+     *         objects when nothing forces one
+     */
+    public int getSyncInterval() {
+        return syncInterval;
+    }
+
+    /**
+     * @param syncInterval how many steps may pass between write backs to the
+     *            neuron objects when nothing forces one
+     */
+    public void setSyncInterval(int syncInterval) {
+        this.syncInterval = Math.max(1, syncInterval);
+    }
+
+    @Override
+    public String getDescription() {
+        return DESCRIPTION;
+    }
+
+    @Override
+    public String getLongDescription() {
+        return LONG_DESCRIPTION;
+    }
+
+}
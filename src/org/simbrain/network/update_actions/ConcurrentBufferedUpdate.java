@@ -38,6 +38,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.simbrain.network.connections.Sparse;
 import org.simbrain.network.core.Network;
 import org.simbrain.network.core.NetworkUpdateAction;
+import org.simbrain.network.core.NetworkUpdateManager.UpdateManagerListener;
 import org.simbrain.network.core.Neuron;
 import org.simbrain.network.core.NeuronUpdateRule;
 import org.simbrain.network.core.Synapse;
@@ -95,6 +96,13 @@ import org.simbrain.util.randomizer.Randomizer;
 public class ConcurrentBufferedUpdate implements NetworkUpdateAction,
         NeuronListener, GroupListener {
 
+    /** Short description of this action. */
+    public static final String DESCRIPTION = "Parallel Buffered Update";
+
+    /** Long description of this action. */
+    public static final String LONG_DESCRIPTION =
+            "Parallel Buffered Update (All Neurons)";
+
     /**
      * The initial capacity of the set containing this class's private neuron
      * list, which is synchronized to the underlying network.
@@ -157,7 +165,7 @@ public class ConcurrentBufferedUpdate implements NetworkUpdateAction,
                     }
                 }
             } catch (InterruptedException e) {
-                e.printStackTrace();
+                // Interrupted by shutdown(); let the thread end.
             }
         }
     });
@@ -197,6 +205,23 @@ public class ConcurrentBufferedUpdate implements NetworkUpdateAction,
         }
         System.out.println("Num neurons in task set: " + cbu.taskSet.size());
         cbu.collectorThread.start();
+        final ConcurrentBufferedUpdate action = cbu;
+        network.getUpdateManager().addListener(new UpdateManagerListener() {
+            @Override
+            public void actionAdded(NetworkUpdateAction added) {
+            }
+
+            @Override
+            public void actionRemoved(NetworkUpdateAction removed) {
+                if (removed == action) {
+                    action.shutdown();
+                }
+            }
+
+            @Override
+            public void actionOrderChanged() {
+            }
+        });
         return cbu;
     }
 
@@ -266,14 +291,26 @@ public class ConcurrentBufferedUpdate implements NetworkUpdateAction,
         }
     }
 
+    /**
+     * Stop the worker and collector threads and stop listening to the
+     * network. Called when the action is removed from the update manager; the
+     * action cannot be invoked afterwards.
+     */
+    public void shutdown() {
+        network.removeGroupListener(this);
+        network.removeNeuronListener(this);
+        executors.shutdown();
+        collectorThread.interrupt();
+    }
+
     @Override
     public String getDescription() {
-        return "Parallel Buffered Update";
+        return DESCRIPTION;
     }
 
     @Override
     public String getLongDescription() {
-        return "Parallel Buffered Update (All Neurons)";
+        return LONG_DESCRIPTION;
     }
 
     @Override
@@ -0,0 +1,446 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.update_actions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.simbrain.network.core.Network;
+import org.simbrain.network.core.NetworkUpdateAction;
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.NeuronUpdateRule.InputType;
+import org.simbrain.network.core.Synapse;
+import org.simbrain.network.synapse_update_rules.spikeresponders.ConvolvedJumpAndDecay;
+import org.simbrain.network.synapse_update_rules.spikeresponders.JumpAndDecay;
+import org.simbrain.network.synapse_update_rules.spikeresponders.SpikeResponder;
+
+/**
+ * Buffered update of loose items and top-level plain groups in which the
+ * post-synaptic responses of spiking connections are propagated only when a
+ * source neuron spikes, rather than recomputed for every synapse on every
+ * step.
+ * <p>
+ * A neuron is driven by events when it takes synaptic input and every synapse
+ * of its fan-in is enabled, undelayed, and uses a {@link JumpAndDecay} or
+ * {@link ConvolvedJumpAndDecay} responder with a zero baseline. Between spikes
+ * the responses of such synapses decay exponentially with the time constant of
+ * their responder, so the total response of all afferents sharing a time
+ * constant and sign (a "channel") decays as one value. Each step decays every
+ * channel once and then, for each source which spiked, applies the jump of
+ * each outgoing synapse to its target's channel. The cost of a step is thus
+ * proportional to the number of neurons plus spikes times fan-out instead of
+ * to the number of synapses. The response of an individual synapse is only
+ * brought up to date when its source spikes or {@link #sync()} is called.
+ * <p>
+ * Other neurons are updated as in {@link BufferedUpdate}. As with
+ * {@link CompiledUpdate}, items updated by another action in the update
+ * manager are left to that action.
+ */
+public class EventDrivenUpdate implements NetworkUpdateAction {
+
+    /** Short description of this action. */
+    public static final String DESCRIPTION = "Event-Driven Spiking Update";
+
+    /** Long description of this action. */
+    public static final String LONG_DESCRIPTION = "Buffered update of loose items and plain groups which"
+            + " propagates spikes only when they occur";
+
+    /** Reference to network to update. */
+    private final Network network;
+
+    /** Set when the network structure changed and must be rebuilt. */
+    private transient volatile boolean invalid = true;
+
+    /**
+     * Listeners on the network, or null once the action has been removed
+     * from the update manager.
+     */
+    private transient volatile UpdateScope.StructureListeners listeners;
+
+    /** The items updated by this action. */
+    private transient UpdateScope scope;
+
+    /** Neurons to update. */
+    private transient Neuron[] neurons;
+
+    /** Learning synapses to update. */
+    private transient Synapse[] plastic;
+
+    /** Event-driven neurons. */
+    private transient Neuron[] targets;
+
+    /** Responses delivered to each event-driven neuron. */
+    private transient double[][] delivered;
+
+    /** Time constant of each channel. */
+    private transient double[] chanTau;
+
+    /** Decay factor of each channel over one time step. */
+    private transient double[] chanDecay;
+
+    /** Total response of the afferents in each channel. */
+    private transient double[] chanValue;
+
+    /** Event-driven neuron each channel belongs to. */
+    private transient int[] chanTarget;
+
+    /** Whether each channel holds excitatory (non-negative) synapses. */
+    private transient boolean[] chanExcitatory;
+
+    /** Neurons with at least one event-driven outgoing synapse. */
+    private transient Neuron[] sources;
+
+    /** Start of each source's outgoing synapses, plus the end. */
+    private transient int[] outPtr;
+
+    /** Event-driven synapses, grouped by source. */
+    private transient Synapse[] slotSynapse;
+
+    /** Channel each event-driven synapse feeds. */
+    private transient int[] slotChan;
+
+    /** Response of each event-driven synapse at the end of its last step. */
+    private transient double[] slotPsr;
+
+    /** Step at which each event-driven synapse's response was computed. */
+    private transient int[] slotStep;
+
+    /** Steps since the structures were built. */
+    private transient int step;
+
+    /** Time step the decay factors were computed for. */
+    private transient double timeStep;
+
+    /**
+     * A static factory method that creates an event-driven update for a
+     * network and registers it to rebuild when the network changes.
+     *
+     * @param network the network to update
+     * @return the event-driven update action
+     */
+    public static EventDrivenUpdate createEventDrivenUpdate(
+            final Network network) {
+        EventDrivenUpdate edu = new EventDrivenUpdate(network);
+        edu.listen();
+        return edu;
+    }
+
+    /**
+     * Listen to the network until this action is removed from the update
+     * manager, and rebuild on the next update. On removal the neurons get
+     * their synaptic input back.
+     */
+    private void listen() {
+        invalid = true;
+        listeners = new UpdateScope.StructureListeners(network, this,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        invalidate();
+                    }
+                }, null, new Runnable() {
+                    @Override
+                    public void run() {
+                        listeners = null;
+                        release();
+                    }
+                });
+    }
+
+    /**
+     * @param network the network to update
+     */
+    private EventDrivenUpdate(final Network network) {
+        this.network = network;
+    }
+
+    @Override
+    public void invoke() {
+        if (listeners == null) {
+            listen();
+        }
+        if (invalid) {
+            build();
+        }
+        if (network.getTimeStep() != timeStep) {
+            sync();
+            timeStep = network.getTimeStep();
+            for (int c = 0; c < chanTau.length; c++) {
+                chanDecay[c] = 1 - timeStep / chanTau[c];
+            }
+        }
+        step++;
+        propagate();
+        for (int i = 0, n = scope.inputGroups.size(); i < n; i++) {
+            scope.inputGroups.get(i).update();
+        }
+        for (int i = 0, n = scope.compressedGroups.size(); i < n; i++) {
+            scope.compressedGroups.get(i).deliverCompressedInput();
+        }
+        for (Neuron neuron : neurons) {
+            neuron.update();
+        }
+        for (Neuron neuron : neurons) {
+            neuron.setToBufferVals();
+        }
+        for (Synapse synapse : plastic) {
+            synapse.update();
+        }
+        for (int i = 0, n = scope.outputGroups.size(); i < n; i++) {
+            scope.outputGroups.get(i).writeActsToFile();
+        }
+    }
+
+    /**
+     * Decay every channel, apply the spikes of the last step, and deliver the
+     * channel totals to their neurons.
+     */
+    private void propagate() {
+        for (int c = 0; c < chanValue.length; c++) {
+            chanValue[c] *= chanDecay[c];
+        }
+        for (int i = 0; i < sources.length; i++) {
+            if (!sources[i].isSpike()) {
+                continue;
+            }
+            for (int p = outPtr[i], end = outPtr[i + 1]; p < end; p++) {
+                int c = slotChan[p];
+                double k = chanDecay[c];
+                double old = decayed(p, step - 1);
+                Synapse s = slotSynapse[p];
+                SpikeResponder sr = s.getSpikeResponder();
+                double psr;
+                if (sr instanceof ConvolvedJumpAndDecay) {
+                    psr = old + ((ConvolvedJumpAndDecay) sr).getJumpHeight()
+                            * s.getStrength();
+                } else {
+                    psr = ((JumpAndDecay) sr).getJumpHeight()
+                            * s.getStrength();
+                }
+                chanValue[c] += psr - old * k;
+                slotPsr[p] = psr;
+                slotStep[p] = step;
+            }
+        }
+        for (double[] d : delivered) {
+            d[0] = 0;
+            d[1] = 0;
+        }
+        for (int c = 0; c < chanValue.length; c++) {
+            delivered[chanTarget[c]][chanExcitatory[c] ? 0 : 1] +=
+                    chanValue[c];
+        }
+    }
+
+    /**
+     * @param p an event-driven synapse
+     * @param atStep a step no earlier than its last computed response
+     * @return the response of the synapse at the end of the given step
+     */
+    private double decayed(final int p, final int atStep) {
+        int elapsed = atStep - slotStep[p];
+        if (elapsed == 0) {
+            return slotPsr[p];
+        }
+        return slotPsr[p] * Math.pow(chanDecay[slotChan[p]], elapsed);
+    }
+
+    /**
+     * Work out which neurons can be driven by events, and build the channels
+     * and the outgoing synapse lists of their sources.
+     */
+    private void build() {
+        invalid = false;
+        release();
+        scope = new UpdateScope(network);
+        neurons = scope.neurons.toArray(new Neuron[scope.neurons.size()]);
+        plastic = scope.plasticSynapses
+                .toArray(new Synapse[scope.plasticSynapses.size()]);
+        timeStep = network.getTimeStep();
+        step = 0;
+
+        List<Neuron> targetList = new ArrayList<Neuron>();
+        List<Double> tauList = new ArrayList<Double>();
+        List<Integer> chanTargetList = new ArrayList<Integer>();
+        List<Boolean> chanExList = new ArrayList<Boolean>();
+        List<Double> chanInitList = new ArrayList<Double>();
+        Map<Neuron, List<Synapse>> fanOuts =
+                new LinkedHashMap<Neuron, List<Synapse>>();
+        Map<Synapse, Integer> synChan = new HashMap<Synapse, Integer>();
+        for (Neuron neuron : neurons) {
+            if (!isEventDriven(neuron)) {
+                continue;
+            }
+            int t = targetList.size();
+            targetList.add(neuron);
+            double[] d = new double[4];
+            Map<String, Integer> channels = new HashMap<String, Integer>();
+            for (Synapse s : neuron.getFanIn()) {
+                double tau = getTimeConstant(s.getSpikeResponder());
+                boolean ex = s.getStrength() >= 0;
+                String key = tau + (ex ? "+" : "-");
+                Integer c = channels.get(key);
+                if (c == null) {
+                    c = tauList.size();
+                    channels.put(key, c);
+                    tauList.add(tau);
+                    chanTargetList.add(t);
+                    chanExList.add(ex);
+                    chanInitList.add(0.0);
+                }
+                chanInitList.set(c, chanInitList.get(c) + s.getPsr());
+                d[ex ? 2 : 3]++;
+                synChan.put(s, c);
+                List<Synapse> out = fanOuts.get(s.getSource());
+                if (out == null) {
+                    out = new ArrayList<Synapse>();
+                    fanOuts.put(s.getSource(), out);
+                }
+                out.add(s);
+            }
+            neuron.setDeliveredResponses(d);
+        }
+
+        targets = targetList.toArray(new Neuron[targetList.size()]);
+        delivered = new double[targets.length][];
+        for (int t = 0; t < targets.length; t++) {
+            delivered[t] = targets[t].getDeliveredResponses();
+        }
+        int numChans = tauList.size();
+        chanTau = new double[numChans];
+        chanDecay = new double[numChans];
+        chanValue = new double[numChans];
+        chanTarget = new int[numChans];
+        chanExcitatory = new boolean[numChans];
+        for (int c = 0; c < numChans; c++) {
+            chanTau[c] = tauList.get(c);
+            chanDecay[c] = 1 - timeStep / chanTau[c];
+            chanValue[c] = chanInitList.get(c);
+            chanTarget[c] = chanTargetList.get(c);
+            chanExcitatory[c] = chanExList.get(c);
+        }
+
+        sources = fanOuts.keySet().toArray(new Neuron[fanOuts.size()]);
+        outPtr = new int[sources.length + 1];
+        slotSynapse = new Synapse[synChan.size()];
+        slotChan = new int[slotSynapse.length];
+        slotPsr = new double[slotSynapse.length];
+        slotStep = new int[slotSynapse.length];
+        int p = 0;
+        for (int i = 0; i < sources.length; i++) {
+            for (Synapse s : fanOuts.get(sources[i])) {
+                slotSynapse[p] = s;
+                slotChan[p] = synChan.get(s);
+                slotPsr[p] = s.getPsr();
+                p++;
+            }
+            outPtr[i + 1] = p;
+        }
+    }
+
+    /**
+     * @param neuron the neuron to check
+     * @return true if the synaptic input of the neuron can be computed from
+     *         events
+     */
+    private static boolean isEventDriven(final Neuron neuron) {
+        if (neuron.getUpdateRule().getInputType() != InputType.SYNAPTIC
+                || neuron.getFanIn().isEmpty()) {
+            return false;
+        }
+        for (Synapse s : neuron.getFanIn()) {
+            if (!s.isEnabled() || s.getDelay() != 0
+                    || getTimeConstant(s.getSpikeResponder()) <= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param sr a spike responder
+     * @return the time constant of the responder if it decays exponentially
+     *         to a zero baseline between spikes, otherwise -1
+     */
+    private static double getTimeConstant(final SpikeResponder sr) {
+        if (sr == null) {
+            return -1;
+        }
+        if (sr.getClass() == JumpAndDecay.class) {
+            JumpAndDecay jad = (JumpAndDecay) sr;
+            return jad.getBaseLine() == 0 ? jad.getTimeConstant() : -1;
+        } else if (sr.getClass() == ConvolvedJumpAndDecay.class) {
+            ConvolvedJumpAndDecay jad = (ConvolvedJumpAndDecay) sr;
+            return jad.getBaseLine() == 0 ? jad.getTimeConstant() : -1;
+        }
+        return -1;
+    }
+
+    /**
+     * Write the current response of every event-driven synapse back to its
+     * synapse object.
+     */
+    public void sync() {
+        if (slotSynapse == null) {
+            return;
+        }
+        for (int p = 0; p < slotSynapse.length; p++) {
+            slotPsr[p] = decayed(p, step);
+            slotStep[p] = step;
+            slotSynapse[p].setPsr(slotPsr[p]);
+        }
+    }
+
+    /**
+     * Write back synapse responses and hand the computation of synaptic input
+     * back to the event-driven neurons' fan-in. Called before rebuilding and
+     * when this action is removed from the update manager.
+     */
+    private void release() {
+        sync();
+        if (targets != null) {
+            for (Neuron neuron : targets) {
+                neuron.setDeliveredResponses(null);
+            }
+        }
+        targets = null;
+        slotSynapse = null;
+    }
+
+    /**
+     * Rebuild on the next update.
+     */
+    public void invalidate() {
+        invalid = true;
+    }
+
+    @Override
+    public String getDescription() {
+        return DESCRIPTION;
+    }
+
+    @Override
+    public String getLongDescription() {
+        return LONG_DESCRIPTION;
+    }
+
+}
@@ -0,0 +1,425 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.update_actions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.simbrain.network.core.Network;
+import org.simbrain.network.core.NetworkUpdateAction;
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.NeuronUpdateRule;
+import org.simbrain.network.core.SpikingNeuronUpdateRule;
+import org.simbrain.network.core.Synapse;
+import org.simbrain.network.neuron_update_rules.TimedAccumulatorRule;
+import org.simbrain.network.neuron_update_rules.activity_generators.RandomNeuronRule;
+import org.simbrain.network.neuron_update_rules.activity_generators.StochasticRule;
+import org.simbrain.network.neuron_update_rules.interfaces.NoisyUpdateRule;
+
+/**
+ * Parallel buffered update of loose neurons and synapses and of top-level
+ * plain neuron and synapse groups, run on a work-stealing
+ * {@link ForkJoinPool}.
+ * <p>
+ * Neurons are split into contiguous chunks of roughly equal estimated cost
+ * (fan-in size plus a per-rule cost), several chunks per core, so that a core
+ * which finishes early takes work from the others instead of idling while
+ * one chunk of high fan-in neurons is still being processed. Each step runs in
+ * three stages: every neuron computes its buffer, every neuron is set to its
+ * buffer, then learning synapses are updated. The invoking thread waits for
+ * each stage on a single {@link Phaser}; pool threads never block.
+ * <p>
+ * Update rules keep the dynamic state of each neuron in the neuron, so neurons
+ * sharing one rule (see
+ * {@link org.simbrain.network.groups.NeuronGroup#shareNeuronType(NeuronUpdateRule)})
+ * are chunked like any others. Neurons whose rules draw random numbers are not
+ * put in chunks but are updated in order by the invoking thread, while the
+ * chunks run, so that a seeded run draws its numbers in the same order.
+ * <p>
+ * As with {@link CompiledUpdate}, items that are already updated by another
+ * action in the update manager are left to that action. The chunks are
+ * rebuilt whenever the structure of the network changes.
+ */
+public class ForkJoinUpdate implements NetworkUpdateAction {
+
+    /** Short description of this action. */
+    public static final String DESCRIPTION = "Work-Stealing Parallel Update";
+
+    /** Long description of this action. */
+    public static final String LONG_DESCRIPTION = "Parallel buffered update of loose items and plain groups on a"
+            + " fork/join pool";
+
+    /** Chunks to create per worker thread, so that work can be stolen. */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /** Estimated cost of updating a non-spiking neuron, in synapses. */
+    private static final int RULE_COST = 4;
+
+    /** Estimated cost of updating a spiking neuron, in synapses. */
+    private static final int SPIKING_RULE_COST = 16;
+
+    /** Stage in which neurons compute their buffers. */
+    private static final int COMPUTE = 0;
+
+    /** Stage in which neurons are set to their buffers. */
+    private static final int SWAP = 1;
+
+    /** Stage in which learning synapses are updated. */
+    private static final int LEARN = 2;
+
+    /** Reference to network to update. */
+    private final Network network;
+
+    /** Number of worker threads. */
+    private final int parallelism;
+
+    /** The pool, created on first use. */
+    private transient ForkJoinPool pool;
+
+    /** Signals the end of each stage to the invoking thread. */
+    private transient Phaser phaser;
+
+    /** First error thrown by a chunk during the current stage. */
+    private transient AtomicReference<Throwable> error;
+
+    /** Set when the network structure changed and chunks must be rebuilt. */
+    private transient volatile boolean invalid = true;
+
+    /**
+     * Listeners on the network, or null once the action has been removed
+     * from the update manager.
+     */
+    private transient volatile UpdateScope.StructureListeners listeners;
+
+    /** Neurons to update, in chunk order. */
+    private transient Neuron[] neurons;
+
+    /** Start of each neuron chunk in {@link #neurons}, plus the end. */
+    private transient int[] neuronBounds;
+
+    /** Neurons to update in order on the invoking thread. */
+    private transient Neuron[] sequential;
+
+    /** Learning synapses to update. */
+    private transient Synapse[] synapses;
+
+    /** Start of each synapse chunk in {@link #synapses}, plus the end. */
+    private transient int[] synapseBounds;
+
+    /** The items updated by this action. */
+    private transient UpdateScope scope;
+
+    /**
+     * A static factory method that creates a fork/join update for a network
+     * and registers it to rebuild its chunks when the network changes.
+     *
+     * @param network the network to update
+     * @return the fork/join update action
+     */
+    public static ForkJoinUpdate createForkJoinUpdate(final Network network) {
+        return createForkJoinUpdate(network,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * A static factory method that creates a fork/join update for a network
+     * using a given number of threads.
+     *
+     * @param network the network to update
+     * @param parallelism the number of worker threads
+     * @return the fork/join update action
+     */
+    public static ForkJoinUpdate createForkJoinUpdate(final Network network,
+            final int parallelism) {
+        ForkJoinUpdate fju = new ForkJoinUpdate(network, parallelism);
+        fju.listen();
+        return fju;
+    }
+
+    /**
+     * Listen to the network until this action is removed from the update
+     * manager, and rebuild the chunks on the next update. On removal the
+     * pool is shut down.
+     */
+    private void listen() {
+        invalid = true;
+        listeners = new UpdateScope.StructureListeners(network, this,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        invalidate();
+                    }
+                }, null, new Runnable() {
+                    @Override
+                    public void run() {
+                        listeners = null;
+                        shutdown();
+                    }
+                });
+    }
+
+    /**
+     * @param network the network to update
+     * @param parallelism the number of worker threads
+     */
+    private ForkJoinUpdate(final Network network, final int parallelism) {
+        this.network = network;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    @Override
+    public void invoke() {
+        if (listeners == null) {
+            listen();
+        }
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism);
+            phaser = new Phaser(1);
+            error = new AtomicReference<Throwable>();
+        }
+        if (invalid) {
+            partition();
+        }
+        for (int i = 0, n = scope.inputGroups.size(); i < n; i++) {
+            scope.inputGroups.get(i).update();
+        }
+        for (int i = 0, n = scope.compressedGroups.size(); i < n; i++) {
+            scope.compressedGroups.get(i).deliverCompressedInput();
+        }
+        runStage(COMPUTE, neuronBounds.length - 1);
+        runStage(SWAP, neuronBounds.length - 1);
+        runStage(LEARN, synapseBounds.length - 1);
+        for (int i = 0, n = scope.outputGroups.size(); i < n; i++) {
+            scope.outputGroups.get(i).writeActsToFile();
+        }
+    }
+
+    /**
+     * Run one stage over every chunk on the pool and wait for it to finish.
+     *
+     * @param stage the stage to run
+     * @param numChunks the number of chunks in the stage
+     */
+    private void runStage(final int stage, final int numChunks) {
+        phaser.bulkRegister(numChunks);
+        for (int c = 0; c < numChunks; c++) {
+            pool.execute(new Chunk(stage, c));
+        }
+        if (stage != LEARN) {
+            try {
+                for (Neuron neuron : sequential) {
+                    if (stage == COMPUTE) {
+                        neuron.update();
+                    } else {
+                        neuron.setToBufferVals();
+                    }
+                }
+            } catch (Throwable t) {
+                error.compareAndSet(null, t);
+            }
+        }
+        phaser.arriveAndAwaitAdvance();
+        Throwable t = error.getAndSet(null);
+        if (t != null) {
+            throw new RuntimeException("Error in parallel update.", t);
+        }
+    }
+
+    /**
+     * One stage of the update applied to one chunk. Arrives at the phaser when
+     * done, whether or not it succeeded.
+     */
+    private class Chunk implements Runnable {
+
+        /** The stage to run. */
+        private final int stage;
+
+        /** The chunk to run it on. */
+        private final int chunk;
+
+        /**
+         * @param stage the stage to run
+         * @param chunk the chunk to run it on
+         */
+        Chunk(final int stage, final int chunk) {
+            this.stage = stage;
+            this.chunk = chunk;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (stage == LEARN) {
+                    for (int i = synapseBounds[chunk],
+                            end = synapseBounds[chunk + 1]; i < end; i++) {
+                        synapses[i].update();
+                    }
+                } else {
+                    boolean compute = stage == COMPUTE;
+                    for (int i = neuronBounds[chunk],
+                            end = neuronBounds[chunk + 1]; i < end; i++) {
+                        if (compute) {
+                            neurons[i].update();
+                        } else {
+                            neurons[i].setToBufferVals();
+                        }
+                    }
+                }
+            } catch (Throwable t) {
+                error.compareAndSet(null, t);
+            } finally {
+                phaser.arriveAndDeregister();
+            }
+        }
+    }
+
+    /**
+     * Collect the items to update and split them into chunks of roughly equal
+     * estimated cost.
+     */
+    private void partition() {
+        invalid = false;
+        scope = new UpdateScope(network);
+        List<Neuron> neuronList = scope.neurons;
+        List<Synapse> synapseList = scope.plasticSynapses;
+        int maxChunks = parallelism * CHUNKS_PER_THREAD;
+        List<Neuron> parallel = new ArrayList<Neuron>(neuronList.size());
+        List<Neuron> inOrder = new ArrayList<Neuron>();
+        for (Neuron neuron : neuronList) {
+            if (isStochastic(neuron.getUpdateRule())) {
+                inOrder.add(neuron);
+            } else {
+                parallel.add(neuron);
+            }
+        }
+        sequential = inOrder.toArray(new Neuron[inOrder.size()]);
+        neurons = parallel.toArray(new Neuron[parallel.size()]);
+        long[] costs = new long[neurons.length];
+        for (int i = 0; i < neurons.length; i++) {
+            costs[i] = estimateCost(neurons[i]);
+        }
+        neuronBounds = split(costs, maxChunks);
+        synapses = synapseList.toArray(new Synapse[synapseList.size()]);
+        int numSynChunks = Math.min(maxChunks, synapses.length);
+        synapseBounds = new int[numSynChunks + 1];
+        for (int c = 1; c <= numSynChunks; c++) {
+            synapseBounds[c] = (int) ((long) synapses.length * c
+                    / numSynChunks);
+        }
+    }
+
+    /**
+     * Split a sequence of items into about maxChunks contiguous chunks of
+     * similar total cost. An item costlier than a whole chunk gets a chunk of
+     * its own.
+     *
+     * @param costs the cost of each item
+     * @param maxChunks the number of chunks to aim for
+     * @return the start of each chunk followed by the number of items
+     */
+    static int[] split(final long[] costs, final int maxChunks) {
+        long total = 0;
+        for (long cost : costs) {
+            total += cost;
+        }
+        int numChunks = Math.min(maxChunks, costs.length);
+        List<Integer> bounds = new ArrayList<Integer>(numChunks + 1);
+        bounds.add(0);
+        long target = numChunks == 0 ? 0 : (total + numChunks - 1) / numChunks;
+        long acc = 0;
+        for (int i = 0; i < costs.length; i++) {
+            if (acc > 0 && acc + costs[i] > target) {
+                bounds.add(i);
+                acc = 0;
+            }
+            acc += costs[i];
+        }
+        if (costs.length > 0) {
+            bounds.add(costs.length);
+        }
+        int[] ret = new int[bounds.size()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = bounds.get(i);
+        }
+        return ret;
+    }
+
+    /**
+     * @param rule the rule to check
+     * @return true if updating with the rule draws random numbers
+     */
+    private static boolean isStochastic(final NeuronUpdateRule rule) {
+        if (rule instanceof RandomNeuronRule || rule instanceof StochasticRule
+                || rule instanceof TimedAccumulatorRule) {
+            return true;
+        }
+        return rule instanceof NoisyUpdateRule
+                && ((NoisyUpdateRule) rule).getAddNoise();
+    }
+
+    /**
+     * @param neuron the neuron to check
+     * @return the estimated cost of one update of the neuron, in units of one
+     *         incoming synapse
+     */
+    private static long estimateCost(final Neuron neuron) {
+        int ruleCost = neuron.getUpdateRule() instanceof SpikingNeuronUpdateRule
+                ? SPIKING_RULE_COST : RULE_COST;
+        return ruleCost + neuron.getFanIn().size();
+    }
+
+    /**
+     * Rebuild the chunks on the next update.
+     */
+    public void invalidate() {
+        invalid = true;
+    }
+
+    /**
+     * Stop the worker threads. Called when the action is removed from the
+     * update manager. The pool is recreated if the action is invoked again.
+     */
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    /**
+     * @return the number of worker threads
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    @Override
+    public String getDescription() {
+        return DESCRIPTION;
+    }
+
+    @Override
+    public String getLongDescription() {
+        return LONG_DESCRIPTION;
+    }
+
+}
@@ -0,0 +1,280 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.update_actions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.simbrain.network.core.Network;
+import org.simbrain.network.core.NetworkUpdateAction;
+import org.simbrain.network.core.NetworkUpdateManager.UpdateManagerListener;
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.NeuronUpdateRule;
+import org.simbrain.network.core.Synapse;
+import org.simbrain.network.core.SynapseUpdateRule;
+import org.simbrain.network.groups.Group;
+import org.simbrain.network.groups.NeuronGroup;
+import org.simbrain.network.groups.SynapseGroup;
+import org.simbrain.network.listeners.GroupAdapter;
+import org.simbrain.network.listeners.NetworkEvent;
+import org.simbrain.network.listeners.NeuronAdapter;
+import org.simbrain.network.listeners.SynapseAdapter;
+import org.simbrain.network.synapse_update_rules.StaticSynapseRule;
+
+/**
+ * The items updated by an action which handles loose neurons and synapses and
+ * top-level plain neuron and synapse groups, leaving alone anything updated by
+ * another action in the update manager (a {@link BufferedUpdate} or
+ * {@link PriorityUpdate} for loose items, an {@link UpdateGroup} for a group).
+ * A snapshot taken when the action (re)builds its internal structures.
+ */
+final class UpdateScope {
+
+    /** Neurons to update, loose neurons first and then group by group. */
+    final List<Neuron> neurons = new ArrayList<Neuron>();
+
+    /** Synapses with learning rules that can change them. */
+    final List<Synapse> plasticSynapses = new ArrayList<Synapse>();
+
+    /** Neuron groups that update themselves (input mode) before each step. */
+    final List<NeuronGroup> inputGroups = new ArrayList<NeuronGroup>();
+
+    /** Updated neuron groups that record their activations. */
+    final List<NeuronGroup> outputGroups = new ArrayList<NeuronGroup>();
+
+    /** Compressed synapse groups projecting to updated neuron groups. */
+    final List<SynapseGroup> compressedGroups = new ArrayList<SynapseGroup>();
+
+    /**
+     * Collect the items of the network not updated by other actions.
+     *
+     * @param network the network to collect from
+     */
+    UpdateScope(final Network network) {
+        List<Group> handledElsewhere = new ArrayList<Group>();
+        boolean looseHandledElsewhere = false;
+        for (NetworkUpdateAction action : network.getUpdateManager()
+                .getActionList()) {
+            if (action instanceof UpdateGroup) {
+                handledElsewhere.add(((UpdateGroup) action).getGroup());
+            } else if (action instanceof BufferedUpdate
+                    || action instanceof PriorityUpdate) {
+                looseHandledElsewhere = true;
+            }
+        }
+        if (!looseHandledElsewhere) {
+            neurons.addAll(network.getNeuronList());
+            for (Synapse s : network.getSynapseList()) {
+                if (isPlastic(s)) {
+                    plasticSynapses.add(s);
+                }
+            }
+        }
+        for (Group group : network.getGroupList()) {
+            if (handledElsewhere.contains(group)) {
+                continue;
+            }
+            if (group.getClass() == NeuronGroup.class) {
+                NeuronGroup ng = (NeuronGroup) group;
+                if (ng.isInputMode()) {
+                    inputGroups.add(ng);
+                    continue;
+                }
+                neurons.addAll(ng.getNeuronList());
+                if (ng.isRecording()) {
+                    outputGroups.add(ng);
+                }
+                for (SynapseGroup sg : ng.getIncomingSgs()) {
+                    if (sg.isCompressed()) {
+                        compressedGroups.add(sg);
+                    }
+                }
+            } else if (group.getClass() == SynapseGroup.class
+                    && !((SynapseGroup) group).isCompressed()) {
+                for (Synapse s : ((SynapseGroup) group).getAllSynapses()) {
+                    if (isPlastic(s)) {
+                        plasticSynapses.add(s);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Static and frozen synapses never change during an update, so they are
+     * not scheduled.
+     *
+     * @param s the synapse to check
+     * @return true if the synapse has a learning rule that can change it
+     */
+    static boolean isPlastic(final Synapse s) {
+        return !s.isFrozen()
+                && !(s.getLearningRule() instanceof StaticSynapseRule);
+    }
+
+    /**
+     * Whether the given group can be updated by an action using a scope, when
+     * no other action in the update manager updates it.
+     *
+     * @param group the group to check
+     * @return true if the group would be part of the scope
+     */
+    static boolean contains(final Group group) {
+        return group.isTopLevelGroup()
+                && (group.getClass() == NeuronGroup.class
+                || group.getClass() == SynapseGroup.class);
+    }
+
+    /**
+     * Listeners which run callbacks whenever the structure of the network, or
+     * the set of update actions, changes in a way that can change the scope of
+     * an action. When that action is removed from the update manager they
+     * remove themselves, so the network no longer holds on to the action.
+     */
+    static final class StructureListeners {
+
+        /** The network listened to. */
+        private final Network network;
+
+        /** Listens for neurons added, removed or changing type. */
+        private final NeuronAdapter neuronListener;
+
+        /** Listens for synapses added, removed, changing type or changed. */
+        private final SynapseAdapter synapseListener;
+
+        /** Listens for groups added, removed or changed. */
+        private final GroupAdapter groupListener;
+
+        /** Listens for update actions added or removed. */
+        private final UpdateManagerListener managerListener;
+
+        /**
+         * Register the listeners.
+         *
+         * @param network the network to listen to
+         * @param action the action whose scope is watched
+         * @param onChange called on every change that can change the scope
+         * @param onSynapseChanged called when a synapse changes, or null
+         * @param onRemoved called after the listeners are removed, when the
+         *            action is removed from the update manager
+         */
+        StructureListeners(final Network network,
+                final NetworkUpdateAction action, final Runnable onChange,
+                final Runnable onSynapseChanged, final Runnable onRemoved) {
+            this.network = network;
+            neuronListener = new NeuronAdapter() {
+                @Override
+                public void neuronAdded(NetworkEvent<Neuron> e) {
+                    onChange.run();
+                }
+
+                @Override
+                public void neuronRemoved(NetworkEvent<Neuron> e) {
+                    onChange.run();
+                }
+
+                @Override
+                public void neuronTypeChanged(
+                        NetworkEvent<NeuronUpdateRule> e) {
+                    onChange.run();
+                }
+            };
+            synapseListener = new SynapseAdapter() {
+                @Override
+                public void synapseAdded(NetworkEvent<Synapse> e) {
+                    onChange.run();
+                }
+
+                @Override
+                public void synapseRemoved(NetworkEvent<Synapse> e) {
+                    onChange.run();
+                }
+
+                @Override
+                public void synapseTypeChanged(
+                        NetworkEvent<SynapseUpdateRule> e) {
+                    onChange.run();
+                }
+
+                @Override
+                public void synapseChanged(NetworkEvent<Synapse> e) {
+                    if (onSynapseChanged != null) {
+                        onSynapseChanged.run();
+                    }
+                }
+            };
+            groupListener = new GroupAdapter() {
+                @Override
+                public void groupAdded(NetworkEvent<Group> e) {
+                    onChange.run();
+                }
+
+                @Override
+                public void groupRemoved(NetworkEvent<Group> e) {
+                    onChange.run();
+                }
+
+                @Override
+                public void groupChanged(NetworkEvent<Group> e, String desc) {
+                    onChange.run();
+                }
+
+                @Override
+                public void groupParameterChanged(NetworkEvent<Group> e) {
+                    onChange.run();
+                }
+            };
+            managerListener = new UpdateManagerListener() {
+                @Override
+                public void actionAdded(NetworkUpdateAction added) {
+                    onChange.run();
+                }
+
+                @Override
+                public void actionRemoved(NetworkUpdateAction removed) {
+                    if (removed == action) {
+                        remove();
+                        onRemoved.run();
+                    } else {
+                        onChange.run();
+                    }
+                }
+
+                @Override
+                public void actionOrderChanged() {
+                }
+            };
+            network.addNeuronListener(neuronListener);
+            network.addSynapseListener(synapseListener);
+            network.addGroupListener(groupListener);
+            network.getUpdateManager().addListener(managerListener);
+        }
+
+        /**
+         * Stop listening to the network.
+         */
+        void remove() {
+            network.removeNeuronListener(neuronListener);
+            network.removeSynapseListener(synapseListener);
+            network.removeGroupListener(groupListener);
+            network.getUpdateManager().removeListener(managerListener);
+        }
+    }
+
+}
@@ -0,0 +1,429 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.update_actions.compiled;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.NeuronBatch;
+import org.simbrain.network.core.NeuronUpdateRule;
+import org.simbrain.network.core.Synapse;
+import org.simbrain.network.groups.NeuronGroup;
+import org.simbrain.network.groups.SynapseGroup;
+import org.simbrain.network.synapse_update_rules.StaticSynapseRule;
+import org.simbrain.util.math.SparseMatrix;
+
+/**
+ * A structure-of-arrays image of a set of neurons and the synapses that feed
+ * them. Activations, buffers and external inputs are held in primitive
+ * arrays, and the fan-in of every neuron is stored in compressed row form
+ * (one contiguous run of source indices and weights per target), so that a
+ * buffered update walks flat arrays rather than neuron and synapse objects.
+ * <p>
+ * Neurons with non-spiking, weighted-input update rules that have a batch
+ * form (see {@link NeuronUpdateRule#update(NeuronBatch, int, int)}) are
+ * updated entirely from the arrays, one call per run of neurons sharing a rule
+ * class. All other neurons (spiking neurons, generators, neurons with delayed
+ * synapses, ...) fall back to {@link Neuron#update()}, which requires the
+ * neuron objects to be kept in sync every step.
+ * <p>
+ * Sources outside the compiled set (for example neurons in a subnetwork) are
+ * appended after the compiled neurons in the activation array and are read
+ * from their neuron objects at the start of every step.
+ * <p>
+ * Compressed synapse groups (see {@link SynapseGroup#compress()}) projecting
+ * to compiled neuron groups are applied directly from their sparse matrices.
+ */
+public class CompiledNetwork {
+
+    /** The compiled neurons, in update order. */
+    private final Neuron[] neurons;
+
+    /** Update rules of the compiled neurons, parallel to {@link #neurons}. */
+    private final NeuronUpdateRule[] rules;
+
+    /** Neurons outside the compiled set which feed compiled neurons. */
+    private final Neuron[] externals;
+
+    /** Activations of compiled neurons followed by external sources. */
+    private final double[] activations;
+
+    /** Buffered activations of compiled neurons. */
+    private final double[] buffers;
+
+    /** External inputs, and after accumulation, net inputs. */
+    private final double[] netInputs;
+
+    /** Row pointers into {@link #fanInSrc}; length is neuron count + 1. */
+    private final int[] fanInPtr;
+
+    /** Index into {@link #activations} of each afferent synapse's source. */
+    private final int[] fanInSrc;
+
+    /** Strength of each afferent synapse (zero when disabled). */
+    private final double[] weights;
+
+    /** Synapses backing {@link #weights}, used to refresh strengths. */
+    private final Synapse[] synapses;
+
+    /** Positions in {@link #weights} whose synapses can learn. */
+    private final int[] plastic;
+
+    /** Start indices of runs of neurons sharing a rule class. */
+    private final int[] segmentStart;
+
+    /** Whether each run is updated from the arrays, or through objects. */
+    private final boolean[] segmentBatched;
+
+    /** View of the arrays passed to the batch update of each rule. */
+    private final NeuronBatch batch;
+
+    /** Compressed synapse groups projecting to compiled neurons. */
+    private final SparseMatrix[] compressed;
+
+    /** Activation index of each row (source) of each compressed group. */
+    private final int[][] compressedSrc;
+
+    /** Compiled index of each column (target) of each compressed group. */
+    private final int[][] compressedTar;
+
+    /** Input from compressed groups to each compiled neuron. */
+    private final double[] compressedIn;
+
+    /** True if any compiled neuron is updated through its object. */
+    private final boolean hasFallback;
+
+    /** True while the neuron objects hold the same values as the arrays. */
+    private boolean inSync = true;
+
+    /**
+     * Compile the provided neurons.
+     *
+     * @param toCompile the neurons to compile, in update order
+     */
+    public CompiledNetwork(final List<Neuron> toCompile) {
+        int n = toCompile.size();
+        neurons = toCompile.toArray(new Neuron[n]);
+        rules = new NeuronUpdateRule[n];
+        Map<Neuron, Integer> index = new HashMap<Neuron, Integer>(
+                (int) (n / 0.75) + 1);
+        for (int i = 0; i < n; i++) {
+            index.put(neurons[i], i);
+            rules[i] = neurons[i].getUpdateRule();
+        }
+
+        // Count fan-in and find external sources
+        List<Neuron> externalList = new ArrayList<Neuron>();
+        Set<NeuronGroup> groups = new LinkedHashSet<NeuronGroup>();
+        int numSyns = 0;
+        for (Neuron neuron : neurons) {
+            for (Synapse s : neuron.getFanIn()) {
+                if (!index.containsKey(s.getSource())) {
+                    index.put(s.getSource(), n + externalList.size());
+                    externalList.add(s.getSource());
+                }
+                numSyns++;
+            }
+            if (neuron.getParentGroup() instanceof NeuronGroup) {
+                groups.add((NeuronGroup) neuron.getParentGroup());
+            }
+        }
+        List<SynapseGroup> compressedGroups = new ArrayList<SynapseGroup>();
+        for (NeuronGroup ng : groups) {
+            for (SynapseGroup sg : ng.getIncomingSgs()) {
+                if (sg.isCompressed()) {
+                    compressedGroups.add(sg);
+                    for (Neuron src : sg.getSourceNeurons()) {
+                        if (!index.containsKey(src)) {
+                            index.put(src, n + externalList.size());
+                            externalList.add(src);
+                        }
+                    }
+                }
+            }
+        }
+        compressed = new SparseMatrix[compressedGroups.size()];
+        compressedSrc = new int[compressed.length][];
+        compressedTar = new int[compressed.length][];
+        for (int g = 0; g < compressed.length; g++) {
+            SynapseGroup sg = compressedGroups.get(g);
+            compressed[g] = sg.getCompressedWeights();
+            compressedSrc[g] = indicesOf(sg.getSourceNeurons(), index);
+            compressedTar[g] = indicesOf(sg.getTargetNeurons(), index);
+        }
+        compressedIn = new double[compressed.length > 0 ? n : 0];
+        externals = externalList.toArray(new Neuron[externalList.size()]);
+        activations = new double[n + externals.length];
+        buffers = new double[n];
+        netInputs = new double[n];
+
+        // Lay out the fan-in of each neuron contiguously
+        fanInPtr = new int[n + 1];
+        fanInSrc = new int[numSyns];
+        weights = new double[numSyns];
+        synapses = new Synapse[numSyns];
+        List<Integer> plasticList = new ArrayList<Integer>();
+        boolean[] batched = new boolean[n];
+        boolean fallback = false;
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            fanInPtr[i] = k;
+            boolean delayed = false;
+            for (Synapse s : neurons[i].getFanIn()) {
+                fanInSrc[k] = index.get(s.getSource());
+                synapses[k] = s;
+                weights[k] = s.isEnabled() ? s.getStrength() : 0;
+                if (!s.isFrozen()
+                        && !(s.getLearningRule() instanceof StaticSynapseRule)) {
+                    plasticList.add(k);
+                }
+                delayed |= s.getDelay() != 0;
+                k++;
+            }
+            batched[i] = !delayed && isBatchable(rules[i]);
+            fallback |= !batched[i];
+        }
+        fanInPtr[n] = k;
+        hasFallback = fallback;
+        plastic = new int[plasticList.size()];
+        for (int i = 0; i < plastic.length; i++) {
+            plastic[i] = plasticList.get(i);
+        }
+
+        // Group consecutive neurons sharing a rule class into segments
+        List<Integer> starts = new ArrayList<Integer>();
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || batched[i] != batched[i - 1]
+                    || rules[i].getClass() != rules[i - 1].getClass()) {
+                starts.add(i);
+            }
+        }
+        segmentStart = new int[starts.size() + 1];
+        segmentBatched = new boolean[starts.size()];
+        for (int i = 0; i < segmentBatched.length; i++) {
+            segmentStart[i] = starts.get(i);
+            segmentBatched[i] = batched[segmentStart[i]];
+        }
+        segmentStart[segmentBatched.length] = n;
+        batch = new NeuronBatch(neurons, rules, activations, netInputs,
+                buffers);
+        pull();
+    }
+
+    /**
+     * Spiking rules and rules using separated or synaptic input need the
+     * neuron objects, so only plain weighted-input rules are batched.
+     *
+     * @param rule the rule to check
+     * @return true if neurons with this rule can be updated from the arrays
+     */
+    private static boolean isBatchable(final NeuronUpdateRule rule) {
+        return rule.hasBatchUpdate() && !rule.isSpikingNeuron()
+                && !rule.usesSeparatedInput()
+                && rule.getInputType() == NeuronUpdateRule.InputType.WEIGHTED;
+    }
+
+    /**
+     * @param list neurons to look up
+     * @param index map from neurons to activation indices
+     * @return the activation index of each neuron
+     */
+    private static int[] indicesOf(final List<Neuron> list,
+            final Map<Neuron, Integer> index) {
+        int[] ret = new int[list.size()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = index.get(list.get(i));
+        }
+        return ret;
+    }
+
+    /**
+     * Perform one buffered update. If <code>writeBack</code> is false and no
+     * neuron needs to be updated through its object, new activations stay in
+     * the arrays only and the neuron objects go stale until {@link #push()}
+     * is called.
+     *
+     * @param writeBack whether to copy results back to the neuron objects
+     */
+    public void update(final boolean writeBack) {
+        final int n = neurons.length;
+        if (inSync) {
+            for (int i = 0; i < n; i++) {
+                activations[i] = neurons[i].getActivation();
+            }
+        }
+        for (int i = 0; i < externals.length; i++) {
+            activations[n + i] = externals[i].getActivation();
+        }
+        for (int i = 0; i < plastic.length; i++) {
+            Synapse s = synapses[plastic[i]];
+            weights[plastic[i]] = s.isEnabled() ? s.getStrength() : 0;
+        }
+
+        // Accumulate net inputs
+        for (int i = 0; i < n; i++) {
+            double wtdSum = neurons[i].getInputValue();
+            for (int k = fanInPtr[i], end = fanInPtr[i + 1]; k < end; k++) {
+                wtdSum += weights[k] * activations[fanInSrc[k]];
+            }
+            netInputs[i] = wtdSum;
+        }
+        if (compressed.length > 0) {
+            Arrays.fill(compressedIn, 0);
+            for (int g = 0; g < compressed.length; g++) {
+                applyCompressed(g);
+            }
+            for (int i = 0; i < n; i++) {
+                netInputs[i] += compressedIn[i];
+            }
+        }
+
+        // Compute buffers
+        for (int seg = 0; seg < segmentBatched.length; seg++) {
+            int start = segmentStart[seg];
+            int end = segmentStart[seg + 1];
+            if (segmentBatched[seg]) {
+                rules[start].update(batch, start, end);
+            } else {
+                for (int i = start; i < end; i++) {
+                    if (compressedIn.length > 0) {
+                        neurons[i].setInputValue(neurons[i].getInputValue()
+                                + compressedIn[i]);
+                    }
+                    neurons[i].update();
+                }
+            }
+        }
+
+        // Swap buffers into activations
+        boolean push = writeBack || hasFallback;
+        for (int seg = 0; seg < segmentBatched.length; seg++) {
+            boolean compiled = segmentBatched[seg];
+            for (int i = segmentStart[seg], end = segmentStart[seg + 1];
+                    i < end; i++) {
+                if (neurons[i].isClamped()) {
+                    continue;
+                }
+                if (compiled) {
+                    activations[i] = buffers[i];
+                    if (push) {
+                        neurons[i].setActivation(buffers[i]);
+                    }
+                } else {
+                    neurons[i].setToBufferVals();
+                    activations[i] = neurons[i].getActivation();
+                }
+            }
+        }
+        inSync = push;
+    }
+
+    /**
+     * Accumulate the input from one compressed synapse group into
+     * {@link #compressedIn}, walking the columns (targets) of its matrix.
+     *
+     * @param g index of the compressed group
+     */
+    private void applyCompressed(final int g) {
+        SparseMatrix m = compressed[g];
+        int[] colPtr = m.getColPtr();
+        int[] rowInds = m.getRowIndices();
+        int[] colToValue = m.getColToValue();
+        double[] vals = m.getValues();
+        int[] src = compressedSrc[g];
+        int[] tar = compressedTar[g];
+        for (int j = 0; j < tar.length; j++) {
+            double sum = 0;
+            for (int p = colPtr[j], end = colPtr[j + 1]; p < end; p++) {
+                sum += vals[colToValue[p]] * activations[src[rowInds[p]]];
+            }
+            compressedIn[tar[j]] += sum;
+        }
+    }
+
+    /**
+     * Copy array activations back into the neuron objects.
+     */
+    public void push() {
+        if (inSync) {
+            return;
+        }
+        for (int i = 0; i < neurons.length; i++) {
+            neurons[i].setActivation(activations[i]);
+        }
+        inSync = true;
+    }
+
+    /**
+     * Re-read activations and all synapse strengths from the network objects.
+     */
+    public void pull() {
+        for (int i = 0; i < neurons.length; i++) {
+            activations[i] = neurons[i].getActivation();
+        }
+        refreshWeights();
+        inSync = true;
+    }
+
+    /**
+     * Re-read all synapse strengths from the synapse objects. Needed after
+     * the strength or enabled state of a static synapse is changed.
+     */
+    public void refreshWeights() {
+        for (int k = 0; k < synapses.length; k++) {
+            weights[k] = synapses[k].isEnabled() ? synapses[k].getStrength()
+                    : 0;
+        }
+    }
+
+    /**
+     * @return true if some compiled neurons are updated through their objects
+     */
+    public boolean hasFallback() {
+        return hasFallback;
+    }
+
+    /**
+     * @return true if some compiled synapses have learning rules
+     */
+    public boolean hasPlasticSynapses() {
+        return plastic.length > 0;
+    }
+
+    /**
+     * @return the number of compiled neurons
+     */
+    public int getNeuronCount() {
+        return neurons.length;
+    }
+
+    /**
+     * @return the number of compiled synapses
+     */
+    public int getSynapseCount() {
+        return synapses.length;
+    }
+
+}
@@ -0,0 +1,640 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.simbrain.network.connections.Sparse;
+import org.simbrain.network.core.Network;
+import org.simbrain.network.core.NetworkUpdateAction;
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.NeuronUpdateRule;
+import org.simbrain.network.core.Synapse;
+import org.simbrain.network.core.SynapseUpdateRule;
+import org.simbrain.network.groups.NeuronGroup;
+import org.simbrain.network.groups.SynapseGroup;
+import org.simbrain.network.neuron_update_rules.AdExIFRule;
+import org.simbrain.network.neuron_update_rules.HodgkinHuxleyRule;
+import org.simbrain.network.neuron_update_rules.IzhikevichRule;
+import org.simbrain.network.neuron_update_rules.LinearRule;
+import org.simbrain.network.neuron_update_rules.SigmoidalRule;
+import org.simbrain.network.synapse_update_rules.HebbianRule;
+import org.simbrain.network.synapse_update_rules.STDPRule;
+import org.simbrain.network.update_actions.BufferedUpdate;
+import org.simbrain.network.update_actions.CompiledUpdate;
+import org.simbrain.network.update_actions.ConcurrentBufferedUpdate;
+import org.simbrain.network.update_actions.EventDrivenUpdate;
+import org.simbrain.network.update_actions.ForkJoinUpdate;
+import org.simbrain.network.update_actions.PriorityUpdate;
+import org.simbrain.network.update_actions.UpdateGroup;
+import org.simbrain.util.SimbrainConstants.Polarity;
+
+/**
+ * <b>NetworkBenchmark</b> measures the throughput of {@link Network#update()}
+ * over every combination of neuron update rule, connection density, group
+ * size, network update action and learning rule given on the command line.
+ * Each benchmark is a recurrent neuron group with a sparse synapse group onto
+ * itself, or for the update actions which only update loose neurons (Buffered
+ * and Priority) the same network built from loose neurons and synapses. Like
+ * a JMH benchmark it is warmed up for a fixed time and then measured over
+ * several fixed-time iterations, reporting updates per second (mean and
+ * standard deviation over the iterations) and the bytes allocated per update
+ * and per second by all threads.
+ * <p>
+ * All benchmarks run in one JVM, so compare results from the same command
+ * line. Results can be written to a CSV file with -csv and compared against
+ * an earlier CSV with -baseline, which adds the change in updates per second
+ * to the report. Run with no arguments for the default (quick) suite, or e.g.
+ *
+ * <pre>
+ * NetworkBenchmark -rules Linear,Izhikevich -sizes 1000,50000
+ *     -densities 0.01,0.2 -actions Buffered,ForkJoin -learning None,STDP
+ *     -warmup 2 -iterations 5 -time 1 -csv results.csv
+ * </pre>
+ *
+ * Combinations with more synapses than -maxsynapses are skipped.
+ */
+public class NetworkBenchmark {
+
+    /** The neuron update rules that can be benchmarked. */
+    private static final List<String> RULES = Arrays.asList("Linear",
+            "Sigmoidal", "Izhikevich", "AdEx", "HH");
+
+    /** The network update actions that can be benchmarked. */
+    private static final List<String> ACTIONS = Arrays.asList("Buffered",
+            "Priority", "Concurrent", "GroupByGroup", "Compiled", "ForkJoin",
+            "EventDriven");
+
+    /** The learning rules that can be benchmarked. */
+    private static final List<String> LEARNING = Arrays.asList("None",
+            "STDP", "Hebbian");
+
+    /** Header of the CSV output. */
+    private static final String CSV_HEADER = "rule,size,density,action,"
+            + "learning,synapses,updatesPerSec,stdDev,bytesPerUpdate";
+
+    /** Seed for initial activations, so runs start from the same state. */
+    private static final long SEED = 42;
+
+    /** Rules to benchmark. */
+    private List<String> rules = Arrays.asList("Linear", "Sigmoidal",
+            "Izhikevich", "AdEx", "HH");
+
+    /** Group sizes to benchmark. */
+    private List<Integer> sizes = Arrays.asList(100, 1000);
+
+    /** Connection densities to benchmark. */
+    private List<Double> densities = Arrays.asList(0.01, 0.1);
+
+    /** Update actions to benchmark. */
+    private List<String> actions = Arrays.asList("Buffered", "Priority",
+            "Concurrent", "GroupByGroup");
+
+    /** Learning rules to benchmark. */
+    private List<String> learning = Arrays.asList("None");
+
+    /** Warm-up time in seconds. */
+    private double warmup = 1;
+
+    /** Number of measurement iterations. */
+    private int iterations = 3;
+
+    /** Length of each measurement iteration in seconds. */
+    private double iterationTime = 1;
+
+    /** Combinations with more synapses than this are skipped. */
+    private long maxSynapses = 20000000;
+
+    /** Measures allocation by thread, or null if not supported. */
+    private final com.sun.management.ThreadMXBean threadBean;
+
+    /**
+     * Construct a benchmark with the default suite.
+     */
+    public NetworkBenchmark() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean)
+                        .isThreadAllocatedMemorySupported()) {
+            threadBean = (com.sun.management.ThreadMXBean) bean;
+            threadBean.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            threadBean = null;
+        }
+    }
+
+    /**
+     * The result of one benchmark.
+     */
+    public static class Result {
+
+        /** Description of the benchmark, as the first CSV columns. */
+        private final String key;
+
+        /** Number of synapses in the network. */
+        private final int synapses;
+
+        /** Mean updates per second over the iterations. */
+        private final double updatesPerSec;
+
+        /** Standard deviation of updates per second. */
+        private final double stdDev;
+
+        /** Bytes allocated per update, or -1 if not measured. */
+        private final double bytesPerUpdate;
+
+        /**
+         * Construct a result.
+         *
+         * @param key description of the benchmark
+         * @param synapses number of synapses
+         * @param updatesPerSec mean updates per second
+         * @param stdDev standard deviation of updates per second
+         * @param bytesPerUpdate bytes allocated per update
+         */
+        Result(final String key, final int synapses,
+                final double updatesPerSec, final double stdDev,
+                final double bytesPerUpdate) {
+            this.key = key;
+            this.synapses = synapses;
+            this.updatesPerSec = updatesPerSec;
+            this.stdDev = stdDev;
+            this.bytesPerUpdate = bytesPerUpdate;
+        }
+
+        /**
+         * @return description of the benchmark
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return mean updates per second
+         */
+        public double getUpdatesPerSec() {
+            return updatesPerSec;
+        }
+
+        /**
+         * @return standard deviation of updates per second
+         */
+        public double getStdDev() {
+            return stdDev;
+        }
+
+        /**
+         * @return bytes allocated per update, or -1 if not measured
+         */
+        public double getBytesPerUpdate() {
+            return bytesPerUpdate;
+        }
+
+        /**
+         * @return the result as a CSV line
+         */
+        public String toCsv() {
+            return key + "," + synapses + "," + updatesPerSec + "," + stdDev
+                    + "," + bytesPerUpdate;
+        }
+    }
+
+    /**
+     * Run every combination of the configured parameters, printing each
+     * result as it completes.
+     *
+     * @param baseline earlier results by key, to compare with; may be empty
+     * @return the results
+     */
+    public List<Result> runAll(final Map<String, Double> baseline) {
+        List<Result> results = new ArrayList<Result>();
+        System.out.println(String.format("%-10s %6s %7s %-12s %-8s %10s"
+                + " %12s %10s %12s %10s %8s", "Rule", "Size", "Density",
+                "Action", "Learning", "Synapses", "Updates/s", "StdDev",
+                "Bytes/upd", "MB/s", "vs base"));
+        for (String rule : rules) {
+            for (int size : sizes) {
+                for (double density : densities) {
+                    if ((long) (density * size * size) > maxSynapses) {
+                        continue;
+                    }
+                    for (String action : actions) {
+                        for (String learningRule : learning) {
+                            Result result = run(rule, size, density, action,
+                                    learningRule);
+                            results.add(result);
+                            print(result, rule, size, density, action,
+                                    learningRule, baseline.get(result.key));
+                        }
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Print one result.
+     *
+     * @param result the result
+     * @param rule the neuron rule
+     * @param size the group size
+     * @param density the connection density
+     * @param action the update action
+     * @param learningRule the learning rule
+     * @param base updates per second in the baseline, or null
+     */
+    private void print(final Result result, final String rule,
+            final int size, final double density, final String action,
+            final String learningRule, final Double base) {
+        String change = base == null ? "" : String.format("%+.1f%%",
+                100 * (result.updatesPerSec / base - 1));
+        String bytes = result.bytesPerUpdate < 0 ? "n/a" : String.format(
+                "%.0f", result.bytesPerUpdate);
+        String rate = result.bytesPerUpdate < 0 ? "n/a" : String.format(
+                "%.1f", result.bytesPerUpdate * result.updatesPerSec
+                        / (1024 * 1024));
+        System.out.println(String.format("%-10s %6d %7.3f %-12s %-8s %10d"
+                + " %12.1f %10.1f %12s %10s %8s", rule, size, density,
+                action, learningRule, result.synapses, result.updatesPerSec,
+                result.stdDev, bytes, rate, change));
+    }
+
+    /**
+     * Build and measure one benchmark.
+     *
+     * @param rule the neuron rule
+     * @param size the group size
+     * @param density the connection density
+     * @param action the update action
+     * @param learningRule the learning rule
+     * @return the result
+     */
+    public Result run(final String rule, final int size,
+            final double density, final String action,
+            final String learningRule) {
+        Network net = new Network();
+        net.setFireUpdates(false);
+        NeuronUpdateRule prototype = createRule(rule);
+        SynapseUpdateRule learning = createLearningRule(learningRule);
+        Random random = new Random(SEED);
+        List<NetworkUpdateAction> added;
+        int synapses;
+        if (action.equals("Buffered") || action.equals("Priority")) {
+            // These actions only update loose neurons and synapses
+            List<Neuron> neurons = new ArrayList<Neuron>(size);
+            for (int i = 0; i < size; i++) {
+                Neuron neuron = new Neuron(net, prototype.deepCopy());
+                prepare(neuron, random);
+                net.addNeuron(neuron);
+                neurons.add(neuron);
+            }
+            List<Synapse> syns = Sparse.connectSparse(neurons, neurons,
+                    density, false, false, true);
+            for (Synapse synapse : syns) {
+                if (learning != null) {
+                    synapse.setLearningRule(learning.deepCopy());
+                }
+                net.addSynapse(synapse);
+            }
+            synapses = syns.size();
+            added = new ArrayList<NetworkUpdateAction>();
+            if (action.equals("Buffered")) {
+                added.add(new BufferedUpdate(net));
+            } else {
+                added.add(new PriorityUpdate(net));
+            }
+        } else {
+            NeuronGroup ng = new NeuronGroup(net, size);
+            ng.setNeuronType(prototype);
+            for (Neuron neuron : ng.getNeuronList()) {
+                prepare(neuron, random);
+            }
+            SynapseGroup sg = SynapseGroup.createSynapseGroup(ng, ng,
+                    new Sparse(density, false, false));
+            if (learning != null) {
+                sg.setLearningRule(learning, Polarity.BOTH);
+            }
+            net.addGroup(ng);
+            net.addGroup(sg);
+            synapses = sg.size();
+            added = createActions(net, ng, sg, action);
+        }
+        net.getUpdateManager().clear();
+        for (NetworkUpdateAction nua : added) {
+            net.getUpdateManager().addAction(nua);
+        }
+
+        long end = System.nanoTime() + (long) (warmup * 1e9);
+        while (System.nanoTime() < end) {
+            net.update();
+        }
+
+        double[] rates = new double[iterations];
+        long totalUpdates = 0;
+        long allocated = allocatedBytes();
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            end = start + (long) (iterationTime * 1e9);
+            long updates = 0;
+            long now;
+            do {
+                net.update();
+                updates++;
+                now = System.nanoTime();
+            } while (now < end);
+            rates[i] = updates / ((now - start) / 1e9);
+            totalUpdates += updates;
+        }
+        double bytesPerUpdate = -1;
+        if (allocated >= 0) {
+            bytesPerUpdate = (allocatedBytes() - allocated)
+                    / (double) totalUpdates;
+        }
+
+        for (NetworkUpdateAction nua : added) {
+            if (nua instanceof ForkJoinUpdate) {
+                ((ForkJoinUpdate) nua).shutdown();
+            } else if (nua instanceof ConcurrentBufferedUpdate) {
+                ((ConcurrentBufferedUpdate) nua).shutdown();
+            }
+        }
+
+        double mean = 0;
+        for (double r : rates) {
+            mean += r;
+        }
+        mean /= rates.length;
+        double var = 0;
+        for (double r : rates) {
+            var += (r - mean) * (r - mean);
+        }
+        double stdDev = rates.length > 1 ? Math.sqrt(var / (rates.length - 1))
+                : 0;
+        String key = rule + "," + size + "," + density + "," + action + ","
+                + learningRule;
+        return new Result(key, synapses, mean, stdDev, bytesPerUpdate);
+    }
+
+    /**
+     * @return total bytes allocated by all live threads, or -1 if not
+     *         supported
+     */
+    private long allocatedBytes() {
+        if (threadBean == null) {
+            return -1;
+        }
+        long total = 0;
+        for (long bytes : threadBean.getThreadAllocatedBytes(threadBean
+                .getAllThreadIds())) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Create a neuron rule by name.
+     *
+     * @param name the name, one of {@link #RULES}
+     * @return the rule
+     */
+    private static NeuronUpdateRule createRule(final String name) {
+        if (name.equals("Linear")) {
+            return new LinearRule();
+        } else if (name.equals("Sigmoidal")) {
+            return new SigmoidalRule();
+        } else if (name.equals("Izhikevich")) {
+            return new IzhikevichRule();
+        } else if (name.equals("AdEx")) {
+            return new AdExIFRule();
+        } else if (name.equals("HH")) {
+            return new HodgkinHuxleyRule();
+        }
+        throw new IllegalArgumentException("Unknown rule " + name);
+    }
+
+    /**
+     * Create a learning rule by name.
+     *
+     * @param name the name, one of {@link #LEARNING}
+     * @return the rule, or null for no learning
+     */
+    private static SynapseUpdateRule createLearningRule(final String name) {
+        if (name.equals("STDP")) {
+            STDPRule stdp = new STDPRule();
+            stdp.setLearningRate(0.0001);
+            return stdp;
+        } else if (name.equals("Hebbian")) {
+            HebbianRule hebb = new HebbianRule();
+            hebb.setLearningRate(0.0001);
+            return hebb;
+        }
+        return null;
+    }
+
+    /**
+     * Set a random initial activation, and give spiking neurons a background
+     * current or initial state so that the network is active.
+     *
+     * @param neuron the neuron
+     * @param random source of initial activations
+     */
+    private static void prepare(final Neuron neuron, final Random random) {
+        neuron.forceSetActivation(random.nextDouble());
+        NeuronUpdateRule rule = neuron.getUpdateRule();
+        if (rule instanceof IzhikevichRule) {
+            ((IzhikevichRule) rule).setiBg(10);
+        } else if (rule instanceof AdExIFRule) {
+            ((AdExIFRule) rule).setI_bg(1000);
+        } else if (rule instanceof HodgkinHuxleyRule) {
+            ((HodgkinHuxleyRule) rule).init(neuron);
+        }
+    }
+
+    /**
+     * Create the update actions for a benchmark of groups.
+     *
+     * @param net the network
+     * @param ng the neuron group
+     * @param sg the synapse group
+     * @param name the name, one of {@link #ACTIONS} other than those for
+     *            loose neurons
+     * @return the actions, in order
+     */
+    private static List<NetworkUpdateAction> createActions(final Network net,
+            final NeuronGroup ng, final SynapseGroup sg, final String name) {
+        List<NetworkUpdateAction> ret = new ArrayList<NetworkUpdateAction>();
+        if (name.equals("Concurrent")) {
+            ret.add(ConcurrentBufferedUpdate
+                    .createConcurrentBufferedUpdate(net));
+        } else if (name.equals("GroupByGroup")) {
+            ret.add(new UpdateGroup(sg));
+            ret.add(new UpdateGroup(ng));
+        } else if (name.equals("Compiled")) {
+            ret.add(CompiledUpdate.createCompiledUpdate(net));
+        } else if (name.equals("ForkJoin")) {
+            ret.add(ForkJoinUpdate.createForkJoinUpdate(net));
+        } else if (name.equals("EventDriven")) {
+            ret.add(EventDrivenUpdate.createEventDrivenUpdate(net));
+        } else {
+            throw new IllegalArgumentException("Unknown action " + name);
+        }
+        return ret;
+    }
+
+    /**
+     * Write results to a CSV file.
+     *
+     * @param results the results
+     * @param file the file
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeCsv(final List<Result> results, final File file)
+            throws IOException {
+        PrintWriter out = new PrintWriter(new FileWriter(file));
+        try {
+            out.println(CSV_HEADER);
+            for (Result result : results) {
+                out.println(result.toCsv());
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Read the updates per second of each benchmark from a CSV file written
+     * by {@link #writeCsv(List, File)}.
+     *
+     * @param file the file
+     * @return updates per second by benchmark key
+     * @throws IOException if the file cannot be read
+     */
+    public static Map<String, Double> readBaseline(final File file)
+            throws IOException {
+        Map<String, Double> ret = new HashMap<String, Double>();
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            String line = in.readLine(); // Header
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split(",");
+                if (fields.length < 7) {
+                    continue;
+                }
+                String key = fields[0] + "," + fields[1] + "," + fields[2]
+                        + "," + fields[3] + "," + fields[4];
+                ret.put(key, Double.parseDouble(fields[6]));
+            }
+        } finally {
+            in.close();
+        }
+        return ret;
+    }
+
+    /**
+     * Split a comma separated list, checking each entry is allowed.
+     *
+     * @param value the list
+     * @param allowed the allowed entries
+     * @return the entries
+     */
+    private static List<String> parseNames(final String value,
+            final List<String> allowed) {
+        List<String> ret = Arrays.asList(value.split(","));
+        for (String name : ret) {
+            if (!allowed.contains(name)) {
+                throw new IllegalArgumentException(name + " is not one of "
+                        + allowed);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Run the benchmarks given on the command line. See the class
+     * documentation.
+     *
+     * @param args the command line arguments
+     * @throws IOException if a CSV file cannot be read or written
+     */
+    public static void main(final String[] args) throws IOException {
+        NetworkBenchmark benchmark = new NetworkBenchmark();
+        File csv = null;
+        Map<String, Double> baseline = new HashMap<String, Double>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String arg = args[i];
+            String value = args[i + 1];
+            if (arg.equals("-rules")) {
+                benchmark.rules = parseNames(value, RULES);
+            } else if (arg.equals("-actions")) {
+                benchmark.actions = parseNames(value, ACTIONS);
+            } else if (arg.equals("-learning")) {
+                benchmark.learning = parseNames(value, LEARNING);
+            } else if (arg.equals("-sizes")) {
+                benchmark.sizes = new ArrayList<Integer>();
+                for (String size : value.split(",")) {
+                    benchmark.sizes.add(Integer.parseInt(size));
+                }
+            } else if (arg.equals("-densities")) {
+                benchmark.densities = new ArrayList<Double>();
+                for (String density : value.split(",")) {
+                    benchmark.densities.add(Double.parseDouble(density));
+                }
+            } else if (arg.equals("-warmup")) {
+                benchmark.warmup = Double.parseDouble(value);
+            } else if (arg.equals("-iterations")) {
+                benchmark.iterations = Integer.parseInt(value);
+            } else if (arg.equals("-time")) {
+                benchmark.iterationTime = Double.parseDouble(value);
+            } else if (arg.equals("-maxsynapses")) {
+                benchmark.maxSynapses = Long.parseLong(value);
+            } else if (arg.equals("-csv")) {
+                csv = new File(value);
+            } else if (arg.equals("-baseline")) {
+                baseline = readBaseline(new File(value));
+            } else {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        System.out.println(System.getProperty("java.vm.name") + " "
+                + System.getProperty("java.version") + ", "
+                + Runtime.getRuntime().availableProcessors() + " processors");
+        List<Result> results = benchmark.runAll(baseline);
+        if (csv != null) {
+            writeCsv(results, csv);
+        }
+        // Some update actions keep threads running
+        System.exit(0);
+    }
+}
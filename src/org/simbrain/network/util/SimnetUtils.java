@@ -15,9 +15,12 @@ package org.simbrain.network.util;
 
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.ojalgo.access.Access2D.Builder;
@@ -28,6 +31,9 @@ import org.ojalgo.scalar.ComplexNumber;
 import org.simbrain.network.core.Network;
 import org.simbrain.network.core.Neuron;
 import org.simbrain.network.core.Synapse;
+import org.simbrain.network.groups.SynapseGroup;
+import org.simbrain.util.math.SparseMatrix;
+import org.simbrain.util.math.SpectralRadiusEstimator;
 
 /**
  * <b>SimnetUtils</b> provides utility classes relating to Simbrain networks.
@@ -179,6 +185,52 @@ public class SimnetUtils {
     }
 
     /**
+     * Returns the weights connecting two lists of neurons as a sparse matrix
+     * with the same layout as {@link #getWeights(List, List)}: rows are
+     * source neurons and columns target neurons. Only existing synapses are
+     * visited, so this is proportional to the number of synapses rather than
+     * the product of the list sizes.
+     *
+     * @param src source neurons
+     * @param tar target neurons
+     * @return sparse weight matrix
+     */
+    public static SparseMatrix getSparseWeights(List<Neuron> src,
+            List<Neuron> tar) {
+        Map<Neuron, Integer> tarIndex = new IdentityHashMap<Neuron, Integer>();
+        for (int j = 0; j < tar.size(); j++) {
+            tarIndex.put(tar.get(j), j);
+        }
+        int count = 0;
+        for (Neuron source : src) {
+            count += source.getFanOut().size();
+        }
+        int[] rows = new int[count];
+        int[] cols = new int[count];
+        double[] vals = new double[count];
+        int k = 0;
+        for (int i = 0; i < src.size(); i++) {
+            for (Synapse s : src.get(i).getFanOut().values()) {
+                Integer j = tarIndex.get(s.getTarget());
+                if (j != null) {
+                    rows[k] = i;
+                    cols[k] = j;
+                    vals[k++] = s.getStrength();
+                }
+            }
+        }
+        return new SparseMatrix(src.size(), tar.size(),
+                Arrays.copyOf(rows, k), Arrays.copyOf(cols, k),
+                Arrays.copyOf(vals, k));
+    }
+
+    /**
+     * Scale the weights connecting a list of neurons to itself (or to another
+     * list of the same size) so that the weight matrix has a given spectral
+     * radius. The spectral radius is estimated with
+     * {@link SpectralRadiusEstimator} on the sparse weights, so large
+     * reservoirs need not be copied into a dense matrix.
+     *
      * @param src list of source neurons
      * @param tar list of target neurons
      * @param desiredEigen : the new max eig or spectral radius for the weight
@@ -186,8 +238,49 @@ public class SimnetUtils {
      */
     public static void scaleEigenvalue(List<Neuron> src, List<Neuron> tar,
             double desiredEigen) {
-        double maxEigen = findMaxEig(getWeights(src, tar));
-        scaleWeights(src, tar, desiredEigen / maxEigen);
+        if (src.size() != tar.size()) {
+            double maxEigen = findMaxEig(getWeights(src, tar));
+            scaleWeights(src, tar, desiredEigen / maxEigen);
+            return;
+        }
+        double radius = new SpectralRadiusEstimator()
+                .estimate(getSparseWeights(src, tar));
+        if (radius == 0) {
+            return;
+        }
+        double scalar = desiredEigen / radius;
+        Set<Neuron> targets = Collections.newSetFromMap(
+                new IdentityHashMap<Neuron, Boolean>());
+        targets.addAll(tar);
+        for (Neuron source : src) {
+            for (Synapse s : source.getFanOut().values()) {
+                if (targets.contains(s.getTarget())) {
+                    s.forceSetStrength(s.getStrength() * scalar);
+                }
+            }
+        }
+    }
+
+    /**
+     * Scale the weights of a synapse group, which must connect a neuron group
+     * to one of the same size, so that its weight matrix has a given spectral
+     * radius. Works on compressed groups as well.
+     *
+     * @param group the synapse group
+     * @param desiredEigen the new spectral radius for the weight matrix
+     */
+    public static void scaleEigenvalue(SynapseGroup group,
+            double desiredEigen) {
+        if (!group.isCompressed()) {
+            scaleEigenvalue(group.getSourceNeurons(),
+                    group.getTargetNeurons(), desiredEigen);
+            return;
+        }
+        SparseMatrix weights = group.getCompressedWeights();
+        double radius = new SpectralRadiusEstimator().estimate(weights);
+        if (radius != 0) {
+            weights.scale(desiredEigen / radius);
+        }
     }
 
     /**
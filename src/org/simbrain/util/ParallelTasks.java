@@ -0,0 +1,126 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * <b>ParallelTasks</b> runs batches of tasks on one fork/join pool shared by
+ * all of Simbrain, so that classes which split their work into bands do not
+ * each create, size and shut down a pool of their own. The pool has a thread
+ * per processor; its threads are daemons and it is never shut down.
+ */
+public final class ParallelTasks {
+
+    /**
+     * Holds the shared pool, which is created when first used.
+     */
+    private static class PoolHolder {
+
+        /** The shared pool. */
+        static final ForkJoinPool POOL = new ForkJoinPool(Runtime
+                .getRuntime().availableProcessors());
+    }
+
+    /**
+     * Not instantiable.
+     */
+    private ParallelTasks() {
+    }
+
+    /**
+     * @return the number of threads of the shared pool
+     */
+    public static int getPoolSize() {
+        return PoolHolder.POOL.getParallelism();
+    }
+
+    /**
+     * Run tasks and wait until all of them are done. When there are more
+     * tasks than maxThreads they are dealt out to maxThreads workers, each of
+     * which runs its tasks one after the other, so no more than maxThreads
+     * run at once. With one worker the tasks run on the calling thread.
+     *
+     * @param <T> the result type of the tasks
+     * @param tasks the tasks to run
+     * @param maxThreads the most tasks to run at once
+     * @param error message of the exception thrown if a task fails
+     * @return the result of each task, in the order of the tasks
+     * @throws RuntimeException with the failure as its cause if a task
+     *             throws, or if the calling thread is interrupted while
+     *             waiting, in which case its interrupt status is set again
+     */
+    public static <T> List<T> invokeAll(
+            final List<? extends Callable<T>> tasks, final int maxThreads,
+            final String error) {
+        final int n = tasks.size();
+        final int workers = Math.max(1, Math.min(maxThreads, n));
+        final Object[] results = new Object[n];
+        if (workers == 1) {
+            for (int i = 0; i < n; i++) {
+                try {
+                    results[i] = tasks.get(i).call();
+                } catch (Exception e) {
+                    throw new RuntimeException(error, e);
+                }
+            }
+            return asList(results);
+        }
+        List<Callable<Void>> dealt = new ArrayList<Callable<Void>>(workers);
+        for (int w = 0; w < workers; w++) {
+            final int first = w;
+            dealt.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    for (int i = first; i < n; i += workers) {
+                        results[i] = tasks.get(i).call();
+                    }
+                    return null;
+                }
+            });
+        }
+        try {
+            for (Future<Void> f : PoolHolder.POOL.invokeAll(dealt)) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(error, e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(error, e.getCause());
+        }
+        return asList(results);
+    }
+
+    /**
+     * @param <T> the element type
+     * @param results the results of the tasks
+     * @return the results as a list
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> asList(final Object[] results) {
+        return (List<T>) Arrays.asList(results);
+    }
+}
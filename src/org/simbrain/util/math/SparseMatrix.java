@@ -0,0 +1,328 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.util.math;
+
+import java.util.Arrays;
+
+/**
+ * <b>SparseMatrix</b> is a fixed-structure sparse matrix of doubles, stored in
+ * compressed sparse row (CSR) form with a secondary compressed sparse column
+ * (CSC) index into the same value array. Rows are typically source neurons and
+ * columns target neurons, so a row walk visits the fan-out of a source and a
+ * column walk visits the fan-in of a target.
+ * <p>
+ * The set of non-zero entries is fixed at construction; values of existing
+ * entries can be changed but entries cannot be added or removed.
+ */
+public class SparseMatrix {
+
+    /** Number of rows. */
+    private final int numRows;
+
+    /** Number of columns. */
+    private final int numCols;
+
+    /** Start of each row in {@link #colIndices}; length numRows + 1. */
+    private final int[] rowPtr;
+
+    /** Column index of each entry, sorted within each row. */
+    private final int[] colIndices;
+
+    /** Value of each entry, in row order. */
+    private final double[] values;
+
+    /** Start of each column in {@link #rowIndices}; length numCols + 1. */
+    private final int[] colPtr;
+
+    /** Row index of each entry, in column order. */
+    private final int[] rowIndices;
+
+    /** Position in {@link #values} of each entry, in column order. */
+    private final int[] colToValue;
+
+    /**
+     * Construct a sparse matrix from triples. The triples need not be sorted.
+     *
+     * @param numRows number of rows
+     * @param numCols number of columns
+     * @param rows row index of each entry
+     * @param cols column index of each entry
+     * @param vals value of each entry
+     */
+    public SparseMatrix(final int numRows, final int numCols,
+            final int[] rows, final int[] cols, final double[] vals) {
+        if (rows.length != cols.length || rows.length != vals.length) {
+            throw new IllegalArgumentException("Row, column and value arrays"
+                    + " must have the same length.");
+        }
+        this.numRows = numRows;
+        this.numCols = numCols;
+        int nnz = vals.length;
+        rowPtr = new int[numRows + 1];
+        colPtr = new int[numCols + 1];
+        for (int k = 0; k < nnz; k++) {
+            if (rows[k] < 0 || rows[k] >= numRows || cols[k] < 0
+                    || cols[k] >= numCols) {
+                throw new IndexOutOfBoundsException("Entry (" + rows[k] + ", "
+                        + cols[k] + ") lies outside a " + numRows + "x"
+                        + numCols + " matrix.");
+            }
+            rowPtr[rows[k] + 1]++;
+            colPtr[cols[k] + 1]++;
+        }
+        for (int i = 0; i < numRows; i++) {
+            rowPtr[i + 1] += rowPtr[i];
+        }
+        for (int j = 0; j < numCols; j++) {
+            colPtr[j + 1] += colPtr[j];
+        }
+
+        // Bucket entries by row, then sort each row by column
+        int[] order = new int[nnz];
+        int[] fill = Arrays.copyOf(rowPtr, numRows);
+        for (int k = 0; k < nnz; k++) {
+            order[fill[rows[k]]++] = k;
+        }
+        colIndices = new int[nnz];
+        values = new double[nnz];
+        long[] keys = new long[0];
+        for (int i = 0; i < numRows; i++) {
+            int start = rowPtr[i];
+            int len = rowPtr[i + 1] - start;
+            if (keys.length < len) {
+                keys = new long[len];
+            }
+            for (int m = 0; m < len; m++) {
+                keys[m] = ((long) cols[order[start + m]] << 32) | m;
+            }
+            Arrays.sort(keys, 0, len);
+            for (int m = 0; m < len; m++) {
+                int k = order[start + (int) (keys[m] & 0xFFFFFFFFL)];
+                colIndices[start + m] = cols[k];
+                values[start + m] = vals[k];
+                if (m > 0 && colIndices[start + m] == colIndices[start + m
+                        - 1]) {
+                    throw new IllegalArgumentException("Duplicate entry ("
+                            + i + ", " + cols[k] + ").");
+                }
+            }
+        }
+
+        // Build the column index; rows come out sorted within each column
+        rowIndices = new int[nnz];
+        colToValue = new int[nnz];
+        fill = Arrays.copyOf(colPtr, numCols);
+        for (int i = 0; i < numRows; i++) {
+            for (int k = rowPtr[i]; k < rowPtr[i + 1]; k++) {
+                int pos = fill[colIndices[k]]++;
+                rowIndices[pos] = i;
+                colToValue[pos] = k;
+            }
+        }
+    }
+
+    /**
+     * Returns the value at (row, col), or 0 if there is no entry there.
+     *
+     * @param row the row
+     * @param col the column
+     * @return the value
+     */
+    public double get(final int row, final int col) {
+        int k = indexOf(row, col);
+        return k < 0 ? 0 : values[k];
+    }
+
+    /**
+     * Set the value of an existing entry.
+     *
+     * @param row the row
+     * @param col the column
+     * @param val the new value
+     * @throws IllegalArgumentException if there is no entry at (row, col)
+     */
+    public void set(final int row, final int col, final double val) {
+        int k = indexOf(row, col);
+        if (k < 0) {
+            throw new IllegalArgumentException("No entry at (" + row + ", "
+                    + col + ").");
+        }
+        values[k] = val;
+    }
+
+    /**
+     * Position of the entry at (row, col) in the value array.
+     *
+     * @param row the row
+     * @param col the column
+     * @return the position, or a negative number if there is no entry
+     */
+    public int indexOf(final int row, final int col) {
+        int k = Arrays.binarySearch(colIndices, rowPtr[row], rowPtr[row + 1],
+                col);
+        return k < 0 ? -1 : k;
+    }
+
+    /**
+     * Accumulate the product of the transpose of this matrix with a row
+     * vector: out[j] += sum_i in[i] * m[i][j]. Used to compute the weighted
+     * input to every target from the activations of the sources. Walks the
+     * column index so each output is written once.
+     *
+     * @param in a vector with one entry per row
+     * @param out a vector with one entry per column, added to
+     */
+    public void transposeMultiplyAdd(final double[] in, final double[] out) {
+        for (int j = 0; j < numCols; j++) {
+            double sum = 0;
+            for (int p = colPtr[j], end = colPtr[j + 1]; p < end; p++) {
+                sum += in[rowIndices[p]] * values[colToValue[p]];
+            }
+            out[j] += sum;
+        }
+    }
+
+    /**
+     * Accumulate the product of this matrix with a column vector: out[i] +=
+     * sum_j m[i][j] * in[j].
+     *
+     * @param in a vector with one entry per column
+     * @param out a vector with one entry per row, added to
+     */
+    public void multiplyAdd(final double[] in, final double[] out) {
+        for (int i = 0; i < numRows; i++) {
+            double sum = 0;
+            for (int k = rowPtr[i], end = rowPtr[i + 1]; k < end; k++) {
+                sum += values[k] * in[colIndices[k]];
+            }
+            out[i] += sum;
+        }
+    }
+
+    /**
+     * Compute a band of rows of the product of this matrix with a column
+     * vector: out[i] = sum_j m[i][j] * in[j] for startRow <= i < endRow.
+     * Bands write disjoint parts of out, so they can be computed in parallel.
+     *
+     * @param in a vector with one entry per column
+     * @param out a vector with one entry per row
+     * @param startRow first row (inclusive)
+     * @param endRow last row (exclusive)
+     */
+    public void multiply(final double[] in, final double[] out,
+            final int startRow, final int endRow) {
+        for (int i = startRow; i < endRow; i++) {
+            double sum = 0;
+            for (int k = rowPtr[i], end = rowPtr[i + 1]; k < end; k++) {
+                sum += values[k] * in[colIndices[k]];
+            }
+            out[i] = sum;
+        }
+    }
+
+    /**
+     * Multiply every entry by a scalar.
+     *
+     * @param scalar the scalar
+     */
+    public void scale(final double scalar) {
+        for (int k = 0; k < values.length; k++) {
+            values[k] *= scalar;
+        }
+    }
+
+    /**
+     * @return a dense copy of this matrix. Only appropriate for small
+     *         matrices.
+     */
+    public double[][] toDense() {
+        double[][] ret = new double[numRows][numCols];
+        for (int i = 0; i < numRows; i++) {
+            for (int k = rowPtr[i]; k < rowPtr[i + 1]; k++) {
+                ret[i][colIndices[k]] = values[k];
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return number of stored entries
+     */
+    public int getNnz() {
+        return values.length;
+    }
+
+    /**
+     * @return number of rows
+     */
+    public int getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * @return number of columns
+     */
+    public int getNumCols() {
+        return numCols;
+    }
+
+    /**
+     * @return the row pointer array (not a copy)
+     */
+    public int[] getRowPtr() {
+        return rowPtr;
+    }
+
+    /**
+     * @return the column index of every entry in row order (not a copy)
+     */
+    public int[] getColIndices() {
+        return colIndices;
+    }
+
+    /**
+     * @return the value of every entry in row order (not a copy)
+     */
+    public double[] getValues() {
+        return values;
+    }
+
+    /**
+     * @return the column pointer array (not a copy)
+     */
+    public int[] getColPtr() {
+        return colPtr;
+    }
+
+    /**
+     * @return the row index of every entry in column order (not a copy)
+     */
+    public int[] getRowIndices() {
+        return rowIndices;
+    }
+
+    /**
+     * @return the position in {@link #getValues()} of every entry in column
+     *         order (not a copy)
+     */
+    public int[] getColToValue() {
+        return colToValue;
+    }
+
+}
@@ -0,0 +1,379 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.util.math;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+import org.simbrain.util.ParallelTasks;
+
+import Jama.EigenvalueDecomposition;
+import Jama.Matrix;
+
+/**
+ * <b>SpectralRadiusEstimator</b> estimates the spectral radius (largest
+ * eigenvalue modulus) of a square {@link SparseMatrix} with the Arnoldi
+ * method, using only matrix-vector products. The Krylov basis grows until the
+ * largest Ritz value modulus changes by less than the tolerance (relative)
+ * between checks, or the basis reaches its maximum dimension. Memory is the
+ * matrix plus one vector per basis dimension, instead of a dense copy of the
+ * matrix, and the work per step is proportional to the number of entries.
+ * <p>
+ * Products and orthogonalization are split into bands of rows computed in
+ * parallel.
+ */
+public class SpectralRadiusEstimator {
+
+    /** Number of Arnoldi steps between convergence checks. */
+    private static final int CHECK_INTERVAL = 5;
+
+    /** Smallest matrix worth splitting into parallel bands. */
+    private static final int PARALLEL_THRESHOLD = 4096;
+
+    /** Relative change of the estimate between checks at which to stop. */
+    private double tolerance = 1E-4;
+
+    /** Maximum dimension of the Krylov basis. */
+    private int maxDimension = 150;
+
+    /** Number of threads. */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /** Seed for the starting vector, so that estimates are repeatable. */
+    private long seed = 1;
+
+    /** The matrix being estimated. */
+    private SparseMatrix matrix;
+
+    /** First row of each band; one more entry than there are bands. */
+    private int[] bands;
+
+    /** Krylov basis. */
+    private double[][] basis;
+
+    /** Vector being orthogonalized against the basis. */
+    private double[] w;
+
+    /** Per-band partial sums. */
+    private double[][] partials;
+
+    /**
+     * Operation on a band of rows.
+     */
+    private interface BandOperation {
+
+        /**
+         * @param band the band's index
+         * @param start first row (inclusive)
+         * @param end last row (exclusive)
+         */
+        void run(int band, int start, int end);
+    }
+
+    /**
+     * Estimate the spectral radius of a square matrix.
+     *
+     * @param m the matrix
+     * @return the largest modulus of its eigenvalues
+     */
+    public double estimate(final SparseMatrix m) {
+        if (m.getNumRows() != m.getNumCols()) {
+            throw new IllegalArgumentException("Matrix must be square.");
+        }
+        int n = m.getNumRows();
+        if (n == 0 || m.getNnz() == 0) {
+            return 0;
+        }
+        matrix = m;
+        int dim = Math.min(maxDimension, n);
+        int numBands = n < PARALLEL_THRESHOLD ? 1 : parallelism;
+        makeBands(numBands);
+        try {
+            return arnoldi(dim);
+        } finally {
+            matrix = null;
+            basis = null;
+            w = null;
+            partials = null;
+        }
+    }
+
+    /**
+     * Run the Arnoldi iteration.
+     *
+     * @param dim maximum dimension of the basis
+     * @return the estimate
+     */
+    private double arnoldi(final int dim) {
+        int n = matrix.getNumRows();
+        basis = new double[dim][];
+        w = new double[n];
+        partials = new double[bands.length - 1][dim];
+        double[][] hessenberg = new double[dim + 1][dim];
+
+        Random random = new Random(seed);
+        double[] v = new double[n];
+        for (int i = 0; i < n; i++) {
+            v[i] = random.nextDouble() - 0.5;
+        }
+        scale(v, 1 / Math.sqrt(dot(v, v)));
+        basis[0] = v;
+
+        double estimate = 0;
+        for (int k = 0; k < dim; k++) {
+            final double[] vk = basis[k];
+            forEachBand(new BandOperation() {
+                @Override
+                public void run(final int band, final int start,
+                        final int end) {
+                    matrix.multiply(vk, w, start, end);
+                }
+            });
+            double norm = Math.sqrt(dot(w, w));
+            // Classical Gram-Schmidt, twice for stability
+            for (int pass = 0; pass < 2; pass++) {
+                double[] h = project(k + 1);
+                subtract(h, k + 1);
+                for (int j = 0; j <= k; j++) {
+                    hessenberg[j][k] += h[j];
+                }
+            }
+            double beta = Math.sqrt(dot(w, w));
+            hessenberg[k + 1][k] = beta;
+            // The basis spans an invariant subspace: the Ritz values are
+            // eigenvalues
+            boolean invariant = beta <= 1E-10 * norm;
+            if (invariant || k + 1 == dim || (k + 1) % CHECK_INTERVAL == 0) {
+                double next = largestRitzValue(hessenberg, k + 1);
+                if (invariant || k + 1 == dim
+                        || Math.abs(next - estimate) <= tolerance * next) {
+                    return next;
+                }
+                estimate = next;
+            }
+            double[] next = new double[n];
+            System.arraycopy(w, 0, next, 0, n);
+            scale(next, 1 / beta);
+            basis[k + 1] = next;
+        }
+        return estimate;
+    }
+
+    /**
+     * @param count number of basis vectors
+     * @return the dot product of w with each of the first count basis
+     *         vectors
+     */
+    private double[] project(final int count) {
+        forEachBand(new BandOperation() {
+            @Override
+            public void run(final int band, final int start, final int end) {
+                double[] partial = partials[band];
+                for (int j = 0; j < count; j++) {
+                    double[] vj = basis[j];
+                    double sum = 0;
+                    for (int i = start; i < end; i++) {
+                        sum += vj[i] * w[i];
+                    }
+                    partial[j] = sum;
+                }
+            }
+        });
+        double[] h = new double[count];
+        for (double[] partial : partials) {
+            for (int j = 0; j < count; j++) {
+                h[j] += partial[j];
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Subtract a combination of the first basis vectors from w.
+     *
+     * @param h coefficient of each basis vector
+     * @param count number of basis vectors
+     */
+    private void subtract(final double[] h, final int count) {
+        forEachBand(new BandOperation() {
+            @Override
+            public void run(final int band, final int start, final int end) {
+                for (int j = 0; j < count; j++) {
+                    double[] vj = basis[j];
+                    double hj = h[j];
+                    for (int i = start; i < end; i++) {
+                        w[i] -= hj * vj[i];
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * @param hessenberg the Hessenberg matrix of the Arnoldi iteration
+     * @param size the size of its leading block to use
+     * @return the largest modulus of the eigenvalues of the leading block
+     */
+    private static double largestRitzValue(final double[][] hessenberg,
+            final int size) {
+        Matrix h = new Matrix(size, size);
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                h.set(i, j, hessenberg[i][j]);
+            }
+        }
+        EigenvalueDecomposition eig = h.eig();
+        double[] re = eig.getRealEigenvalues();
+        double[] im = eig.getImagEigenvalues();
+        double max = 0;
+        for (int i = 0; i < size; i++) {
+            max = Math.max(max, Math.hypot(re[i], im[i]));
+        }
+        return max;
+    }
+
+    /**
+     * Split the rows into bands with about the same number of entries.
+     *
+     * @param numBands number of bands
+     */
+    private void makeBands(final int numBands) {
+        int n = matrix.getNumRows();
+        int[] rowPtr = matrix.getRowPtr();
+        long total = (long) matrix.getNnz() + n;
+        List<Integer> starts = new ArrayList<Integer>();
+        starts.add(0);
+        for (int b = 1, i = 0; b < numBands; b++) {
+            long goal = total * b / numBands;
+            while (i < n && (long) rowPtr[i] + i < goal) {
+                i++;
+            }
+            if (i > starts.get(starts.size() - 1) && i < n) {
+                starts.add(i);
+            }
+        }
+        starts.add(n);
+        bands = new int[starts.size()];
+        for (int b = 0; b < bands.length; b++) {
+            bands[b] = starts.get(b);
+        }
+    }
+
+    /**
+     * Run an operation on every band, in parallel if there are several.
+     *
+     * @param op the operation
+     */
+    private void forEachBand(final BandOperation op) {
+        if (bands.length <= 2) {
+            op.run(0, 0, matrix.getNumRows());
+            return;
+        }
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int b = 0; b < bands.length - 1; b++) {
+            final int band = b;
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    op.run(band, bands[band], bands[band + 1]);
+                    return null;
+                }
+            });
+        }
+        ParallelTasks.invokeAll(tasks, parallelism,
+                "Error estimating spectral radius.");
+    }
+
+    /**
+     * @param a a vector
+     * @param b a vector
+     * @return their dot product
+     */
+    private static double dot(final double[] a, final double[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * @param v a vector, scaled in place
+     * @param s the scalar
+     */
+    private static void scale(final double[] v, final double s) {
+        for (int i = 0; i < v.length; i++) {
+            v[i] *= s;
+        }
+    }
+
+    /**
+     * @return the relative change of the estimate between checks at which
+     *         the iteration stops
+     */
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * @param tolerance the relative change of the estimate between checks at
+     *            which the iteration stops
+     */
+    public void setTolerance(final double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * @return the maximum dimension of the Krylov basis
+     */
+    public int getMaxDimension() {
+        return maxDimension;
+    }
+
+    /**
+     * @param maxDimension the maximum dimension of the Krylov basis, which
+     *            bounds both the iterations and the memory used
+     */
+    public void setMaxDimension(final int maxDimension) {
+        this.maxDimension = Math.max(1, maxDimension);
+    }
+
+    /**
+     * @return the number of threads
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param parallelism the number of threads
+     */
+    public void setParallelism(final int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * @param seed seed for the random starting vector
+     */
+    public void setSeed(final long seed) {
+        this.seed = seed;
+    }
+}
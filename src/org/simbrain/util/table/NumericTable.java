@@ -24,6 +24,7 @@ import java.util.Random;
 
 import org.simbrain.util.Utils;
 import org.simbrain.util.table.SimbrainJTable.CellIndex;
+import org.simbrain.workspace.CopiesArray;
 
 /**
  * Default implementation of a table of numerical data. The table is mutable,
@@ -122,6 +123,7 @@ public class NumericTable extends MutableTable<Double> implements
      *
      * @param data the values to use in setting the current row
      */
+    @CopiesArray
     public void setVectorCurrentRow(double[] data) {
         int i = getCurrentRow();
         for (int j = 0; j < data.length; j++) {
@@ -138,7 +140,22 @@ public class NumericTable extends MutableTable<Double> implements
      * @return the values of the current row
      */
     public double[] getVectorCurrentRow() {
-        double[] retVec = new double[this.getColumnCount()];
+        return getVectorCurrentRow(null);
+    }
+
+    /**
+     * Write the current row of doubles into an array, so that callers polling
+     * every update (e.g. couplings) can reuse one array.
+     *
+     * @param buffer the array to write into if it has the right length, or
+     *            null
+     * @return buffer, or a new array if it did not have the right length
+     */
+    public double[] getVectorCurrentRow(double[] buffer) {
+        double[] retVec = buffer;
+        if (retVec == null || retVec.length != this.getColumnCount()) {
+            retVec = new double[this.getColumnCount()];
+        }
         int currRow = getCurrentRow();
         for (int i = 0; i < this.getLogicalColumnCount(); i++) {
             retVec[i] = this.getLogicalValueAt(currRow, i);
@@ -28,6 +28,7 @@ import java.util.Map;
 import org.simbrain.workspace.updater.UpdateAction;
 import org.simbrain.workspace.updater.UpdateActionCustom;
 import org.simbrain.workspace.updater.UpdateAllBuffered;
+import org.simbrain.workspace.updater.UpdateAllScheduled;
 import org.simbrain.workspace.updater.UpdateComponent;
 import org.simbrain.workspace.updater.UpdateCoupling;
 import org.simbrain.workspace.updater.WorkspaceUpdater;
@@ -211,6 +212,20 @@ class ArchiveContents {
             } catch (Exception e) {
                 e.printStackTrace();
             }
+        } else if (archivedAction.getUpdateAction() instanceof UpdateAllScheduled) {
+            try {
+                boolean pipelined = ((UpdateAllScheduled) archivedAction
+                        .getUpdateAction()).isPipelined();
+                retAction = archivedAction
+                        .getUpdateAction()
+                        .getClass()
+                        .getConstructor(
+                                new Class[] { WorkspaceUpdater.class,
+                                        boolean.class })
+                        .newInstance(workspace.getUpdater(), pipelined);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
         } else if (archivedAction.getUpdateAction() instanceof UpdateActionCustom) {
             try {
                 String script = ((UpdateActionCustom) archivedAction
@@ -647,6 +662,13 @@ class ArchiveContents {
         xstream.omitField(UpdateActionCustom.class, "theAction");
         xstream.omitField(UpdateActionCustom.class, "updater");
         xstream.omitField(UpdateAllBuffered.class, "updater");
+        xstream.omitField(UpdateAllScheduled.class, "updater");
+        xstream.omitField(UpdateAllScheduled.class, "scheduledGroups");
+        xstream.omitField(UpdateAllScheduled.class, "scheduledComponents");
+        xstream.omitField(UpdateAllScheduled.class, "waves");
+        xstream.omitField(UpdateAllScheduled.class, "waveGroups");
+        xstream.omitField(UpdateAllScheduled.class, "lastUpdates");
+        xstream.omitField(UpdateAllScheduled.class, "lastStep");
 
         xstream.alias("Workspace", ArchiveContents.class);
         xstream.alias("Component", ArchivedComponent.class);
@@ -679,4 +701,4 @@ class ArchiveContents {
         return archivedActions;
     }
 
-}
\ No newline at end of file
+}
\ No newline at end of file
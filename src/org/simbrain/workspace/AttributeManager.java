@@ -17,8 +17,14 @@
  */
 package org.simbrain.workspace;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * The main usage of this class by API users is to create potential attributes
@@ -50,6 +56,9 @@ public class AttributeManager {
     /** Reference to parent component. */
     private WorkspaceComponent parentComponent;
 
+    /** Handles of the methods compiled so far, shared by all attributes. */
+    private static final ConcurrentMap<Method, MethodHandle> HANDLES = new ConcurrentHashMap<Method, MethodHandle>();
+
     /**
      * @param parentComponent
      */
@@ -59,7 +68,11 @@ public class AttributeManager {
 
     /**
      * Create a producer based on an argument. This version of the method does
-     * the real work; others forward to it.
+     * the real work; others forward to it. The getter is compiled once to a
+     * method handle with the auxiliary arguments bound; getters
+     * returning <code>double</code> make a {@link DoubleProducer}, and getters
+     * returning <code>double[]</code> with a filling variant (see
+     * {@link VectorProducer}) make a vector producer.
      *
      * @param parentObject base object
      * @param methodName name of method
@@ -74,102 +87,42 @@ public class AttributeManager {
             final Class<?>[] argumentDataTypes, final Object[] argumentValues,
             final String description) {
 
-        Producer<?> producer = new Producer() {
-
-            private Method theMethod;
-
-            // Static initializer
-            {
-                try {
-                    if (argumentDataTypes == null) {
-                        theMethod = parentObject.getClass().getMethod(
-                                methodName);
-                    } else {
-                        theMethod = parentObject.getClass().getMethod(
-                                methodName, argumentDataTypes);
-                    }
-                } catch (SecurityException e1) {
-                    e1.printStackTrace();
-                } catch (NoSuchMethodException e1) {
-                    System.err.println("Could not find method " + methodName
-                            + " with return type of "
-                            + dataType.getCanonicalName());
-                    e1.printStackTrace();
-                }
-
-            }
-
-            /**
-             * {@inheritDoc}
-             */
-            public Object getValue() {
-                try {
-                    return theMethod.invoke(parentObject, argumentValues);
-                } catch (IllegalArgumentException e) {
-                    // TODO Auto-generated catch block
-                    e.printStackTrace();
-                } catch (IllegalAccessException e) {
-                    // TODO Auto-generated catch block
-                    e.printStackTrace();
-                } catch (InvocationTargetException e) {
-                    // TODO Auto-generated catch block
-                    e.printStackTrace();
-                }
-                return null;
-            }
-
-            /**
-             * {@inheritDoc}
-             */
-            public WorkspaceComponent getParentComponent() {
-                return parentComponent;
-            }
-
-            /**
-             * {@inheritDoc}
-             */
-            public Object getBaseObject() {
-                return parentObject;
-            }
-
-            /**
-             * {@inheritDoc}
-             */
-            public String getMethodName() {
-                return methodName;
-            }
-
-            /**
-             * {@inheritDoc}
-             */
-            public Class<?> getDataType() {
-                return dataType;
-            }
-
-            /**
-             * {@inheritDoc}
-             */
-            public Class<?>[] getArgumentDataTypes() {
-                return argumentDataTypes;
+        Method theMethod = null;
+        try {
+            if (argumentDataTypes == null) {
+                theMethod = parentObject.getClass().getMethod(methodName);
+            } else {
+                theMethod = parentObject.getClass().getMethod(methodName,
+                        argumentDataTypes);
             }
-
-            /**
-             * {@inheritDoc}
-             */
-            public Object[] getArgumentValues() {
-                return argumentValues;
-            }
-
-            /**
-             * {@inheritDoc}
-             */
-            public String getDescription() {
-                return description;
-            }
-
-        };
-        return producer;
-
+        } catch (SecurityException e1) {
+            e1.printStackTrace();
+        } catch (NoSuchMethodException e1) {
+            System.err.println("Could not find method " + methodName
+                    + " with return type of " + dataType.getCanonicalName());
+            e1.printStackTrace();
+        }
+
+        if ((theMethod != null) && (theMethod.getReturnType() == double.class)) {
+            return new CompiledDoubleProducer(parentObject, methodName,
+                    dataType, argumentDataTypes, argumentValues, description,
+                    compile(theMethod, argumentValues, 0,
+                            MethodType.methodType(double.class)));
+        }
+        Method fillMethod = findFillMethod(theMethod, parentObject,
+                argumentValues);
+        if (fillMethod != null) {
+            return new CompiledVectorProducer(parentObject, methodName,
+                    dataType, argumentDataTypes, argumentValues, description,
+                    compile(theMethod, null, 0,
+                            MethodType.methodType(Object.class)),
+                    compile(fillMethod, null, 0, MethodType.methodType(
+                            double[].class, double[].class)));
+        }
+        return new CompiledProducer(parentObject, methodName, dataType,
+                argumentDataTypes, argumentValues, description, compile(
+                        theMethod, argumentValues, 0, MethodType
+                                .methodType(Object.class)));
     }
 
     /**
@@ -194,7 +147,10 @@ public class AttributeManager {
      * forward to it. Note that, unlike createProducer, this does not have a
      * main datatype argument, because that is implicitly the first element of
      * argument dataTypes. For more information on these fields see the
-     * documentation for <code>Attribute</code>.
+     * documentation for <code>Attribute</code>. The setter is compiled once to
+     * a method handle with the auxiliary arguments bound;
+     * setters taking a <code>double</code> make a {@link DoubleConsumer}, and
+     * setters marked {@link CopiesArray} make a {@link VectorConsumer}.
      *
      * @param parentObject parent object
      * @param methodName name of method
@@ -208,111 +164,45 @@ public class AttributeManager {
             final String methodName, final Class<?>[] argumentDataTypes,
             final Object[] argumentValues, final String description) {
 
-        Consumer<?> consumer = new Consumer() {
-
-            private Method theMethod;
-
-            // Static initializer
-            {
-                // System.out.println(Arrays.asList(argumentDataTypes));
-                try {
-                    theMethod = parentObject.getClass().getMethod(methodName,
-                            argumentDataTypes);
-                } catch (SecurityException e1) {
-                    e1.printStackTrace();
-                } catch (NoSuchMethodException e1) {
-                    System.err.print("Could not find method " + methodName
-                            + " ");
-                    if (argumentDataTypes != null) {
-                        System.err.print("with arguments of type ");
-                        for (Class<?> type : argumentDataTypes) {
-                            System.err.print(type.getCanonicalName());
-                        }
-                        System.err.println();
-                    }
-                    e1.printStackTrace();
-                }
-            }
-
-            /**
-             * {@inheritDoc}
-             */
-            public void setValue(Object value) {
-                try {
-
-                    if (argumentDataTypes.length == 1) {
-                        theMethod.invoke(parentObject, new Object[] { value });
-                    } else {
-                        Object[] concatArray = new Object[argumentValues.length + 1];
-                        concatArray[0] = value;
-                        System.arraycopy(argumentValues, 0, concatArray, 1,
-                                argumentValues.length);
-                        theMethod.invoke(parentObject, concatArray);
-                    }
-                } catch (IllegalArgumentException e) {
-                    // TODO Auto-generated catch block
-                    e.printStackTrace();
-                } catch (IllegalAccessException e) {
-                    // TODO Auto-generated catch block
-                    e.printStackTrace();
-                } catch (InvocationTargetException e) {
-                    // TODO Auto-generated catch block
-                    e.printStackTrace();
+        Method theMethod = null;
+        try {
+            theMethod = parentObject.getClass().getMethod(methodName,
+                    argumentDataTypes);
+        } catch (SecurityException e1) {
+            e1.printStackTrace();
+        } catch (NoSuchMethodException e1) {
+            System.err.print("Could not find method " + methodName + " ");
+            if (argumentDataTypes != null) {
+                System.err.print("with arguments of type ");
+                for (Class<?> type : argumentDataTypes) {
+                    System.err.print(type.getCanonicalName());
                 }
+                System.err.println();
             }
-
-            /**
-             * {@inheritDoc}
-             */
-            public WorkspaceComponent getParentComponent() {
-                return parentComponent;
-            }
-
-            /**
-             * {@inheritDoc}
-             */
-            public Object getBaseObject() {
-                return parentObject;
-            }
-
-            /**
-             * {@inheritDoc}
-             */
-            public String getMethodName() {
-                return methodName;
-            }
-
-            /**
-             * {@inheritDoc}
-             */
-            public Class<?>[] getArgumentDataTypes() {
-                return argumentDataTypes;
-            }
-
-            /**
-             * {@inheritDoc}
-             */
-            public Object[] getArgumentValues() {
-                return argumentValues;
-            }
-
-            /**
-             * {@inheritDoc}
-             */
-            public String getDescription() {
-                return description;
-            }
-
-            /**
-             * Assume first argument datatype is the "main" data type.
-             */
-            public Class<?> getDataType() {
-                return argumentDataTypes[0];
-            }
-
-        };
-        return consumer;
-
+            e1.printStackTrace();
+        }
+
+        if ((theMethod != null)
+                && (theMethod.getParameterTypes().length > 0)
+                && (theMethod.getParameterTypes()[0] == double.class)) {
+            return new CompiledDoubleConsumer(parentObject, methodName,
+                    argumentDataTypes[0], argumentDataTypes, argumentValues,
+                    description, compile(theMethod, argumentValues, 1,
+                            MethodType.methodType(void.class, double.class)));
+        }
+        if ((theMethod != null)
+                && (theMethod.getParameterTypes().length == 1)
+                && (theMethod.getParameterTypes()[0] == double[].class)
+                && theMethod.isAnnotationPresent(CopiesArray.class)) {
+            return new CompiledVectorConsumer(parentObject, methodName,
+                    argumentDataTypes[0], argumentDataTypes, argumentValues,
+                    description, compile(theMethod, null, 1,
+                            MethodType.methodType(void.class, Object.class)));
+        }
+        return new CompiledConsumer(parentObject, methodName,
+                argumentDataTypes[0], argumentDataTypes, argumentValues,
+                description, compile(theMethod, argumentValues, 1,
+                        MethodType.methodType(void.class, Object.class)));
     }
 
     /**
@@ -461,4 +351,410 @@ public class AttributeManager {
             Class<?> dataType) {
         return baseObject.getClass().getSimpleName() + ":" + methodName;
     }
+
+    /**
+     * Compile a method to a handle taking the base object (as an Object) and
+     * then the coupled value (if any), with any auxiliary arguments already
+     * bound, so that calls need no reflection or argument arrays. The base
+     * object is passed on each call rather than bound, so that every
+     * attribute on the same method (e.g. the activation of every neuron)
+     * shares one handle instead of each building its own.
+     *
+     * @param method the method, or null if it was not found
+     * @param argumentValues auxiliary arguments, or null
+     * @param position index among the method's arguments of the first
+     *            auxiliary argument
+     * @param type type of the resulting handle, without the base object
+     * @return the handle, or null if the method cannot be compiled
+     */
+    private static MethodHandle compile(final Method method,
+            final Object[] argumentValues, final int position,
+            final MethodType type) {
+        if (method == null) {
+            return null;
+        }
+        try {
+            MethodHandle handle = HANDLES.get(method);
+            if (handle == null) {
+                try {
+                    handle = MethodHandles.publicLookup().unreflect(method);
+                } catch (IllegalAccessException e) {
+                    // A public method declared in a non-public class
+                    method.setAccessible(true);
+                    handle = MethodHandles.lookup().unreflect(method);
+                }
+                if (Modifier.isStatic(method.getModifiers())) {
+                    handle = MethodHandles.dropArguments(handle, 0,
+                            Object.class);
+                }
+                HANDLES.putIfAbsent(method, handle);
+            }
+            if ((argumentValues != null) && (argumentValues.length > 0)) {
+                handle = MethodHandles.insertArguments(handle, position + 1,
+                        argumentValues);
+            }
+            return handle.asType(type.insertParameterTypes(0, Object.class));
+        } catch (IllegalAccessException e) {
+            e.printStackTrace();
+        } catch (IllegalArgumentException e) {
+            e.printStackTrace();
+        } catch (WrongMethodTypeException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Find the variant of a <code>double[]</code> getter that fills an array,
+     * i.e. a public method with the same name taking a <code>double[]</code>
+     * and returning a <code>double[]</code>.
+     *
+     * @param method the getter, or null
+     * @param parentObject base object
+     * @param argumentValues auxiliary arguments of the getter, or null
+     * @return the filling variant, or null if there is none
+     */
+    private static Method findFillMethod(final Method method,
+            final Object parentObject, final Object[] argumentValues) {
+        if ((method == null) || (method.getReturnType() != double[].class)
+                || (method.getParameterTypes().length != 0)
+                || ((argumentValues != null) && (argumentValues.length > 0))) {
+            return null;
+        }
+        try {
+            Method fill = parentObject.getClass().getMethod(method.getName(),
+                    double[].class);
+            if (fill.getReturnType() == double[].class) {
+                return fill;
+            }
+        } catch (NoSuchMethodException e) {
+            // Not a vector producer
+        }
+        return null;
+    }
+
+    /**
+     * @param methodName name of the invoked method
+     * @param e what the invocation threw
+     * @return the exception to throw
+     */
+    private static RuntimeException invocationError(final String methodName,
+            final Throwable e) {
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        return new RuntimeException("Error invoking " + methodName, e);
+    }
+
+    /**
+     * Fields shared by compiled producers and consumers.
+     */
+    private abstract class CompiledAttribute implements Attribute {
+
+        /** Base object. */
+        private final Object parentObject;
+
+        /** Name of method. */
+        private final String methodName;
+
+        /** Main data type. */
+        private final Class<?> dataType;
+
+        /** Data types of all arguments to the method. */
+        private final Class<?>[] argumentDataTypes;
+
+        /** Auxiliary arguments. */
+        private final Object[] argumentValues;
+
+        /** Description. */
+        private final String description;
+
+        /** Compiled method, or null if the method was not found. */
+        protected final MethodHandle handle;
+
+        /**
+         * @param parentObject base object
+         * @param methodName name of method
+         * @param dataType main data type
+         * @param argumentDataTypes data types of all arguments to the method
+         * @param argumentValues auxiliary arguments
+         * @param description description
+         * @param handle compiled method
+         */
+        CompiledAttribute(final Object parentObject, final String methodName,
+                final Class<?> dataType, final Class<?>[] argumentDataTypes,
+                final Object[] argumentValues, final String description,
+                final MethodHandle handle) {
+            this.parentObject = parentObject;
+            this.methodName = methodName;
+            this.dataType = dataType;
+            this.argumentDataTypes = argumentDataTypes;
+            this.argumentValues = argumentValues;
+            this.description = description;
+            this.handle = handle;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public WorkspaceComponent getParentComponent() {
+            return parentComponent;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public Object getBaseObject() {
+            return parentObject;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public String getMethodName() {
+            return methodName;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public Class<?> getDataType() {
+            return dataType;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public Class<?>[] getArgumentDataTypes() {
+            return argumentDataTypes;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public Object[] getArgumentValues() {
+            return argumentValues;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    /**
+     * Producer calling a compiled getter returning an Object.
+     */
+    private class CompiledProducer extends CompiledAttribute implements
+            Producer<Object> {
+
+        /**
+         * See {@link CompiledAttribute}.
+         */
+        CompiledProducer(final Object parentObject, final String methodName,
+                final Class<?> dataType, final Class<?>[] argumentDataTypes,
+                final Object[] argumentValues, final String description,
+                final MethodHandle handle) {
+            super(parentObject, methodName, dataType, argumentDataTypes,
+                    argumentValues, description, handle);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public Object getValue() {
+            try {
+                return (Object) handle.invokeExact(getBaseObject());
+            } catch (Throwable e) {
+                throw invocationError(getMethodName(), e);
+            }
+        }
+    }
+
+    /**
+     * Producer calling a compiled getter returning a double.
+     */
+    private class CompiledDoubleProducer extends CompiledAttribute implements
+            DoubleProducer {
+
+        /**
+         * See {@link CompiledAttribute}.
+         */
+        CompiledDoubleProducer(final Object parentObject,
+                final String methodName, final Class<?> dataType,
+                final Class<?>[] argumentDataTypes,
+                final Object[] argumentValues, final String description,
+                final MethodHandle handle) {
+            super(parentObject, methodName, dataType, argumentDataTypes,
+                    argumentValues, description, handle);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public double getDoubleValue() {
+            try {
+                return (double) handle.invokeExact(getBaseObject());
+            } catch (Throwable e) {
+                throw invocationError(getMethodName(), e);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public Double getValue() {
+            return getDoubleValue();
+        }
+    }
+
+    /**
+     * Vector producer calling a compiled getter returning a double[], and its
+     * filling variant.
+     */
+    private class CompiledVectorProducer extends CompiledAttribute implements
+            VectorProducer {
+
+        /** Compiled filling variant of the getter. */
+        private final MethodHandle fillHandle;
+
+        /**
+         * See {@link CompiledAttribute}.
+         *
+         * @param fillHandle compiled filling variant of the getter
+         */
+        CompiledVectorProducer(final Object parentObject,
+                final String methodName, final Class<?> dataType,
+                final Class<?>[] argumentDataTypes,
+                final Object[] argumentValues, final String description,
+                final MethodHandle handle, final MethodHandle fillHandle) {
+            super(parentObject, methodName, dataType, argumentDataTypes,
+                    argumentValues, description, handle);
+            this.fillHandle = fillHandle;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public double[] getValues(final double[] buffer) {
+            try {
+                return (double[]) fillHandle.invokeExact(getBaseObject(),
+                        buffer);
+            } catch (Throwable e) {
+                throw invocationError(getMethodName(), e);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public double[] getValue() {
+            try {
+                return (double[]) (Object) handle.invokeExact(getBaseObject());
+            } catch (Throwable e) {
+                throw invocationError(getMethodName(), e);
+            }
+        }
+    }
+
+    /**
+     * Consumer calling a compiled setter taking an Object.
+     */
+    private class CompiledConsumer extends CompiledAttribute implements
+            Consumer<Object> {
+
+        /**
+         * See {@link CompiledAttribute}.
+         */
+        CompiledConsumer(final Object parentObject, final String methodName,
+                final Class<?> dataType, final Class<?>[] argumentDataTypes,
+                final Object[] argumentValues, final String description,
+                final MethodHandle handle) {
+            super(parentObject, methodName, dataType, argumentDataTypes,
+                    argumentValues, description, handle);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void setValue(final Object value) {
+            try {
+                handle.invokeExact(getBaseObject(), value);
+            } catch (Throwable e) {
+                throw invocationError(getMethodName(), e);
+            }
+        }
+    }
+
+    /**
+     * Consumer calling a compiled setter taking a double.
+     */
+    private class CompiledDoubleConsumer extends CompiledAttribute implements
+            DoubleConsumer {
+
+        /**
+         * See {@link CompiledAttribute}.
+         */
+        CompiledDoubleConsumer(final Object parentObject,
+                final String methodName, final Class<?> dataType,
+                final Class<?>[] argumentDataTypes,
+                final Object[] argumentValues, final String description,
+                final MethodHandle handle) {
+            super(parentObject, methodName, dataType, argumentDataTypes,
+                    argumentValues, description, handle);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void setDoubleValue(final double value) {
+            try {
+                handle.invokeExact(getBaseObject(), value);
+            } catch (Throwable e) {
+                throw invocationError(getMethodName(), e);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void setValue(final Double value) {
+            setDoubleValue(value);
+        }
+    }
+
+    /**
+     * Vector consumer calling a compiled setter taking a double[].
+     */
+    private class CompiledVectorConsumer extends CompiledAttribute implements
+            VectorConsumer {
+
+        /**
+         * See {@link CompiledAttribute}.
+         */
+        CompiledVectorConsumer(final Object parentObject,
+                final String methodName, final Class<?> dataType,
+                final Class<?>[] argumentDataTypes,
+                final Object[] argumentValues, final String description,
+                final MethodHandle handle) {
+            super(parentObject, methodName, dataType, argumentDataTypes,
+                    argumentValues, description, handle);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void setValue(final double[] value) {
+            try {
+                handle.invokeExact(getBaseObject(), (Object) value);
+            } catch (Throwable e) {
+                throw invocationError(getMethodName(), e);
+            }
+        }
+    }
 }
@@ -18,6 +18,7 @@
  */
 package org.simbrain.workspace;
 
+import java.util.Arrays;
 import java.util.concurrent.Callable;
 
 import org.apache.log4j.Logger;
@@ -62,6 +63,18 @@ public final class Coupling<E> {
     /** Value of buffer. */
     public E buffer;
 
+    /**
+     * Value of buffer when both attributes handle doubles, which are passed
+     * without boxing.
+     */
+    private double doubleBuffer;
+
+    /**
+     * Value of buffer when a vector producer feeds a vector consumer; the
+     * same array is refilled every update.
+     */
+    private double[] vectorBuffer;
+
     /**
      * Create a coupling between a specified consuming attribute, without yet
      * specifying the corresponding producing attribute.
@@ -124,10 +137,11 @@ public final class Coupling<E> {
                 .getParentComponent();
 
         try {
-            buffer = Workspace.syncRest(
-                    producerComponent.getLocks().iterator(), new Callable<E>() {
-                        public E call() throws Exception {
-                            return producer.getValue();
+            Workspace.syncRest(producerComponent.getLocks().iterator(),
+                    new Callable<Void>() {
+                        public Void call() throws Exception {
+                            readProducer();
+                            return null;
                         }
                     });
         } catch (Exception e) {
@@ -135,7 +149,25 @@ public final class Coupling<E> {
             e.printStackTrace();
         }
 
-        LOGGER.debug("buffer set: " + buffer);
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("buffer set: "
+                    + (isDouble() ? Double.valueOf(doubleBuffer)
+                            : isVector() ? Arrays.toString(vectorBuffer)
+                                    : buffer));
+        }
+    }
+
+    /**
+     * Set value of buffer, with the producer's component already locked.
+     */
+    void readProducer() {
+        if (isDouble()) {
+            doubleBuffer = ((DoubleProducer) producer).getDoubleValue();
+        } else if (isVector()) {
+            vectorBuffer = ((VectorProducer) producer).getValues(vectorBuffer);
+        } else {
+            buffer = producer.getValue();
+        }
     }
 
     /**
@@ -147,17 +179,9 @@ public final class Coupling<E> {
                     .getParentComponent();
             try {
                 Workspace.syncRest(consumerComponent.getLocks().iterator(),
-                        new Callable<E>() {
-                            public E call() throws Exception {
-                                consumer.setValue(buffer);
-                                LOGGER.debug(consumer.getParentComponent()
-                                        .getName()
-                                        + " just consumed "
-                                        + producer.getValue()
-                                        + " from "
-                                        + producer.getParentComponent()
-                                                .getName());
-
+                        new Callable<Void>() {
+                            public Void call() throws Exception {
+                                writeConsumer();
                                 return null;
                             }
                         });
@@ -168,6 +192,43 @@ public final class Coupling<E> {
         }
     }
 
+    /**
+     * Pass the buffer to the consumer, with the consumer's component already
+     * locked.
+     */
+    void writeConsumer() {
+        if (isDouble()) {
+            ((DoubleConsumer) consumer).setDoubleValue(doubleBuffer);
+        } else if (isVector()) {
+            ((VectorConsumer) consumer).setValue(vectorBuffer);
+        } else {
+            consumer.setValue(buffer);
+        }
+        // Guarded, since the message calls the producer again
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(consumer.getParentComponent().getName()
+                    + " just consumed " + producer.getValue() + " from "
+                    + producer.getParentComponent().getName());
+        }
+    }
+
+    /**
+     * @return whether values pass from producer to consumer as unboxed
+     *         doubles
+     */
+    private boolean isDouble() {
+        return (producer instanceof DoubleProducer)
+                && (consumer instanceof DoubleConsumer);
+    }
+
+    /**
+     * @return whether values pass from producer to consumer in a reused array
+     */
+    private boolean isVector() {
+        return (producer instanceof VectorProducer)
+                && (consumer instanceof VectorConsumer);
+    }
+
     /**
      * @return the Producer
      */
@@ -24,9 +24,14 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
 
@@ -74,6 +79,15 @@ public class CouplingManager {
     /** Priority of this component; used in priority based workspace update. */
     private int priority = DEFAULT_PRIORITY;
 
+    /**
+     * Couplings grouped by source and target component, for updating; null
+     * when they must be rebuilt because couplings were added or removed.
+     */
+    private volatile List<CouplingGroup> couplingGroups;
+
+    /** Smallest number of couplings worth updating in parallel. */
+    private static final int PARALLEL_THRESHOLD = 256;
+
     /** List of listeners to fire updates when couplings are changed. */
     private List<CouplingListener> couplingListeners = new ArrayList<CouplingListener>();
 
@@ -172,6 +186,7 @@ public class CouplingManager {
      */
     public void clearCouplings() {
         couplingList.clear();
+        couplingGroups = null;
     }
 
     /**
@@ -200,17 +215,109 @@ public class CouplingManager {
      * Updates all couplings in the workspace.
      */
     public void updateAllCouplings() {
+        updateAllCouplings(null);
+    }
+
+    /**
+     * Updates all couplings in the workspace. Couplings are grouped by source
+     * and target component, and each group locks its source once to read all
+     * its producers, then (after every group has read) locks its target once
+     * to write all its consumers. Groups are run in parallel on the executor
+     * when there are enough couplings to be worth it.
+     *
+     * A coupling that fails is logged and does not stop the others.
+     *
+     * @param executor executor on which to run groups in parallel, or null to
+     *            run them on the calling thread
+     */
+    public void updateAllCouplings(final ExecutorService executor) {
         LOGGER.debug("updating all couplings");
-        for (Coupling<?> coupling : getCouplings()) {
-            LOGGER.trace(coupling.getClass());
-            coupling.setBuffer();
+        List<CouplingGroup> groups = getCouplingGroups();
+        if ((executor == null) || (groups.size() < 2)
+                || (couplingList.size() < PARALLEL_THRESHOLD)) {
+            for (CouplingGroup group : groups) {
+                group.read();
+            }
+            for (CouplingGroup group : groups) {
+                group.write();
+            }
+            return;
+        }
+        List<Callable<Void>> reads = new ArrayList<Callable<Void>>();
+        List<Callable<Void>> writes = new ArrayList<Callable<Void>>();
+        for (final CouplingGroup group : groups) {
+            reads.add(new Callable<Void>() {
+                public Void call() {
+                    group.read();
+                    return null;
+                }
+            });
+            writes.add(new Callable<Void>() {
+                public Void call() {
+                    group.write();
+                    return null;
+                }
+            });
         }
+        try {
+            // invokeAll returns when every task is done, so every producer is
+            // read before any consumer is written
+            for (Future<Void> f : executor.invokeAll(reads)) {
+                awaitGroup(f);
+            }
+            for (Future<Void> f : executor.invokeAll(writes)) {
+                awaitGroup(f);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
-        for (Coupling<?> coupling : getCouplings()) {
-            coupling.update();
+    /**
+     * Waits for a group's read or write, logging it if it failed.
+     *
+     * @param f the group's task
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private static void awaitGroup(final Future<Void> f)
+            throws InterruptedException {
+        try {
+            f.get();
+        } catch (ExecutionException e) {
+            LOGGER.error("Error updating couplings.", e.getCause());
         }
     }
 
+    /**
+     * Returns the couplings grouped by source and target component, in the
+     * order of the couplings list, building the groups if the couplings have
+     * changed. The same list is returned until couplings are added or
+     * removed, so schedulers can tell when to rebuild.
+     *
+     * @return an unmodifiable list of the groups
+     */
+    public List<CouplingGroup> getCouplingGroups() {
+        List<CouplingGroup> groups = couplingGroups;
+        if (groups == null) {
+            Map<SourceTarget, List<Coupling<?>>> bySourceTarget = new LinkedHashMap<SourceTarget, List<Coupling<?>>>();
+            for (Coupling<?> coupling : couplingList) {
+                SourceTarget sourceTarget = new SourceTarget(coupling
+                        .getProducer().getParentComponent(), coupling
+                        .getConsumer().getParentComponent());
+                bySourceTarget.put(sourceTarget, addCouplingToList(
+                        bySourceTarget.get(sourceTarget), coupling));
+            }
+            groups = new ArrayList<CouplingGroup>();
+            for (Map.Entry<SourceTarget, List<Coupling<?>>> entry : bySourceTarget
+                    .entrySet()) {
+                groups.add(new CouplingGroup(entry.getKey(), entry.getValue()));
+            }
+            groups = Collections.unmodifiableList(groups);
+            couplingGroups = groups;
+        }
+        return groups;
+    }
+
     /**
      * Removes all couplings associated with a producer or consumer.
      *
@@ -323,6 +430,7 @@ public class CouplingManager {
             throw new UmatchedAttributesException(warning);
         }
         couplingList.add(coupling);
+        couplingGroups = null;
 
         // Populate source / target maps (used to return lists of couplings
         // connecting particular workspace components together)
@@ -399,7 +507,7 @@ public class CouplingManager {
                 try {
                     addCoupling(new Coupling(producer, consumer));
                 } catch (UmatchedAttributesException e) {
-                    e.printStackTrace();
+                    LOGGER.error("Could not replace coupling " + coupling, e);
                 }
             }
         }
@@ -470,6 +578,7 @@ public class CouplingManager {
         // consumingAttributes.remove(coupling.getConsumingAttribute());
 
         couplingList.remove(coupling);
+        couplingGroups = null;
 
         removeCouplingFromList(sourceTargetCouplings.get(sourceTarget),
                 coupling);
@@ -555,6 +664,152 @@ public class CouplingManager {
         }
     }
 
+    /**
+     * Couplings from one source component to one target component, updated
+     * together so that each component's locks are taken once per update
+     * instead of once per coupling. Scalar couplings between double
+     * attributes are read into, and written from, one packed array. Every
+     * read must be followed by a write before the next read.
+     */
+    public static final class CouplingGroup {
+
+        /** The source component. */
+        private final WorkspaceComponent source;
+
+        /** The target component. */
+        private final WorkspaceComponent target;
+
+        /** Producers of the scalar couplings. */
+        private final DoubleProducer[] doubleProducers;
+
+        /** Consumers of the scalar couplings. */
+        private final DoubleConsumer[] doubleConsumers;
+
+        /** Values of the scalar couplings. */
+        private final double[] values;
+
+        /** The other couplings, which keep their own buffers. */
+        private final List<Coupling<?>> others = new ArrayList<Coupling<?>>();
+
+        /**
+         * Creates an instance.
+         *
+         * @param sourceTarget the source and target components
+         * @param couplings the couplings between them
+         */
+        CouplingGroup(final SourceTarget sourceTarget,
+                final List<Coupling<?>> couplings) {
+            this.source = sourceTarget.source;
+            this.target = sourceTarget.target;
+            List<Coupling<?>> scalars = new ArrayList<Coupling<?>>();
+            for (Coupling<?> coupling : couplings) {
+                if ((coupling.getProducer() instanceof DoubleProducer)
+                        && (coupling.getConsumer() instanceof DoubleConsumer)) {
+                    scalars.add(coupling);
+                } else {
+                    others.add(coupling);
+                }
+            }
+            doubleProducers = new DoubleProducer[scalars.size()];
+            doubleConsumers = new DoubleConsumer[scalars.size()];
+            values = new double[scalars.size()];
+            for (int i = 0; i < values.length; i++) {
+                doubleProducers[i] = (DoubleProducer) scalars.get(i)
+                        .getProducer();
+                doubleConsumers[i] = (DoubleConsumer) scalars.get(i)
+                        .getConsumer();
+            }
+        }
+
+        /**
+         * @return the source component
+         */
+        public WorkspaceComponent getSource() {
+            return source;
+        }
+
+        /**
+         * @return the target component
+         */
+        public WorkspaceComponent getTarget() {
+            return target;
+        }
+
+        /**
+         * Read every producer, holding the source component's locks. A
+         * producer that fails is logged, keeps its last value, and does not
+         * stop the others.
+         */
+        public void read() {
+            sync(source, new Callable<Void>() {
+                public Void call() {
+                    for (int i = 0; i < values.length; i++) {
+                        try {
+                            values[i] = doubleProducers[i].getDoubleValue();
+                        } catch (RuntimeException e) {
+                            LOGGER.error("Could not read "
+                                    + doubleProducers[i].getDescription(), e);
+                        }
+                    }
+                    for (Coupling<?> coupling : others) {
+                        try {
+                            coupling.readProducer();
+                        } catch (RuntimeException e) {
+                            LOGGER.error("Could not read "
+                                    + coupling.getProducer().getDescription(),
+                                    e);
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+
+        /**
+         * Write every consumer, holding the target component's locks. A
+         * consumer that fails is logged and does not stop the others.
+         */
+        public void write() {
+            sync(target, new Callable<Void>() {
+                public Void call() {
+                    for (int i = 0; i < values.length; i++) {
+                        try {
+                            doubleConsumers[i].setDoubleValue(values[i]);
+                        } catch (RuntimeException e) {
+                            LOGGER.error("Could not write "
+                                    + doubleConsumers[i].getDescription(), e);
+                        }
+                    }
+                    for (Coupling<?> coupling : others) {
+                        try {
+                            coupling.writeConsumer();
+                        } catch (RuntimeException e) {
+                            LOGGER.error("Could not write "
+                                    + coupling.getConsumer().getDescription(),
+                                    e);
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+
+        /**
+         * Run a task holding a component's locks.
+         *
+         * @param component the component to lock
+         * @param task the task
+         */
+        private void sync(final WorkspaceComponent component,
+                final Callable<Void> task) {
+            try {
+                Workspace.syncRest(component.getLocks().iterator(), task);
+            } catch (Exception e) {
+                LOGGER.error("Error updating couplings.", e);
+            }
+        }
+    }
+
     /**
      * Get the priority. Used to set updating of couplings to a specific
      * priority when managing custom workspace update.
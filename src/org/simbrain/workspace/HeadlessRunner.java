@@ -0,0 +1,431 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.workspace;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * <b>HeadlessRunner</b> opens a saved workspace and iterates it without a
+ * desktop, then reports how fast it ran: steps per second, the time spent
+ * updating each component, and the peak heap. Parameters of the simulation can
+ * be overridden before the run, so that parameter sweeps can be farmed out to
+ * machines with no display.
+ * <p>
+ * From the command line:
+ *
+ * <pre>
+ * java -Djava.awt.headless=true org.simbrain.workspace.HeadlessRunner
+ *     workspace.zip [-iterations n] [-warmup n] [-threads n]
+ *     [-set component/key/property=value]... [-save file] [-minrate r]
+ * </pre>
+ *
+ * An override names a component, the key of an object in that component (as
+ * used by couplings, e.g. "Neuron_5" or "NeuronGroup:Group_1" in a network)
+ * and a bean property of that object, which may be a path such as
+ * "updateRule.bias". Leave out the key to set a property of the component
+ * itself. With -minrate the runner exits with status 2 if fewer steps per
+ * second are achieved, for use in performance checks.
+ */
+public class HeadlessRunner {
+
+    /** Number of bytes in a megabyte. */
+    private static final double MEGABYTE = 1024 * 1024;
+
+    /** Exit status when the run is slower than the minimum rate. */
+    private static final int TOO_SLOW = 2;
+
+    /** The workspace to run. */
+    private final Workspace workspace;
+
+    /** Number of iterations in the last timed run. */
+    private int iterations;
+
+    /** Duration of the last timed run in nanoseconds. */
+    private long elapsed;
+
+    /** Peak heap use during the last timed run in bytes. */
+    private long peakHeap;
+
+    /** Time spent updating each component in the last timed run. */
+    private Map<WorkspaceComponent, Long> componentTimes;
+
+    /**
+     * Construct a runner for a workspace.
+     *
+     * @param workspace the workspace to run
+     */
+    public HeadlessRunner(final Workspace workspace) {
+        this.workspace = workspace;
+    }
+
+    /**
+     * Open a saved workspace without creating a desktop for it.
+     *
+     * @param file the workspace zip file
+     * @return the workspace
+     * @throws IOException if the file cannot be read
+     */
+    public static Workspace open(final File file) throws IOException {
+        Workspace workspace = new Workspace();
+        InputStream input = new FileInputStream(file);
+        try {
+            new WorkspaceSerializer(workspace).deserialize(input);
+        } finally {
+            input.close();
+        }
+        workspace.setCurrentFile(file);
+        workspace.setWorkspaceChanged(false);
+        return workspace;
+    }
+
+    /**
+     * Override a parameter of the workspace.
+     *
+     * @param spec the override, as component/key/property=value or
+     *            component/property=value
+     * @throws IllegalArgumentException if the override cannot be applied
+     */
+    public void applyOverride(final String spec) {
+        int equals = spec.indexOf('=');
+        if (equals < 0) {
+            throw new IllegalArgumentException("Override " + spec
+                    + " has no value");
+        }
+        String[] names = spec.substring(0, equals).split("/");
+        String value = spec.substring(equals + 1);
+        if (names.length < 2 || names.length > 3) {
+            throw new IllegalArgumentException("Override " + spec
+                    + " is not component/key/property=value");
+        }
+        WorkspaceComponent component = workspace.getComponent(names[0]);
+        if (component == null) {
+            throw new IllegalArgumentException("No component named "
+                    + names[0]);
+        }
+        Object target = component;
+        if (names.length == 3) {
+            target = component.getObjectFromKey(names[1]);
+            if (target == null) {
+                throw new IllegalArgumentException("No object " + names[1]
+                        + " in " + names[0]);
+            }
+        }
+        setProperty(target, names[names.length - 1], value);
+    }
+
+    /**
+     * Set a bean property, following getters for each dot in the name.
+     *
+     * @param target the object whose property to set
+     * @param property name or path of the property
+     * @param value string form of the new value
+     */
+    private static void setProperty(Object target, final String property,
+            final String value) {
+        String[] path = property.split("\\.");
+        try {
+            for (int i = 0; i < path.length - 1; i++) {
+                Method getter = findMethod(target.getClass(), path[i], 0);
+                if (getter == null) {
+                    throw new IllegalArgumentException(target.getClass()
+                            .getSimpleName() + " has no property " + path[i]);
+                }
+                target = getter.invoke(target);
+                if (target == null) {
+                    throw new IllegalArgumentException(path[i] + " is null");
+                }
+            }
+            String name = path[path.length - 1];
+            Method setter = findMethod(target.getClass(), name, 1);
+            if (setter == null) {
+                throw new IllegalArgumentException(target.getClass()
+                        .getSimpleName() + " has no settable property "
+                        + name);
+            }
+            setter.invoke(target,
+                    convert(value, setter.getParameterTypes()[0]));
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException(e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalArgumentException(e.getCause());
+        }
+    }
+
+    /**
+     * Find a public getter (no arguments) or setter (one argument) for a
+     * property.
+     *
+     * @param clazz the class to search
+     * @param property the property name
+     * @param arguments 0 for a getter, 1 for a setter
+     * @return the method, or null if there is none
+     */
+    private static Method findMethod(final Class<?> clazz,
+            final String property, final int arguments) {
+        String suffix = Character.toUpperCase(property.charAt(0))
+                + property.substring(1);
+        for (Method method : clazz.getMethods()) {
+            if (method.getParameterTypes().length != arguments) {
+                continue;
+            }
+            String name = method.getName();
+            if (arguments == 1 && name.equals("set" + suffix)) {
+                return method;
+            } else if (arguments == 0
+                    && (name.equals("get" + suffix) || name.equals("is"
+                            + suffix))) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Convert a string to the type of a setter argument.
+     *
+     * @param value the string
+     * @param type the type to convert to
+     * @return the converted value
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Object convert(final String value, final Class<?> type) {
+        if (type == double.class || type == Double.class) {
+            return Double.parseDouble(value);
+        } else if (type == float.class || type == Float.class) {
+            return Float.parseFloat(value);
+        } else if (type == int.class || type == Integer.class) {
+            return Integer.parseInt(value);
+        } else if (type == long.class || type == Long.class) {
+            return Long.parseLong(value);
+        } else if (type == boolean.class || type == Boolean.class) {
+            return Boolean.parseBoolean(value);
+        } else if (type == String.class) {
+            return value;
+        } else if (type.isEnum()) {
+            return Enum.valueOf((Class) type, value);
+        }
+        throw new IllegalArgumentException("Cannot set a property of type "
+                + type.getSimpleName());
+    }
+
+    /**
+     * Iterate the workspace without timing it, e.g. to let the JIT compile
+     * the update code before a timed run.
+     *
+     * @param numIterations number of iterations
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void warmUp(final int numIterations) throws InterruptedException {
+        iterate(numIterations);
+    }
+
+    /**
+     * Iterate the workspace, timing the run and each component.
+     *
+     * @param numIterations number of iterations
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void run(final int numIterations) throws InterruptedException {
+        List<MemoryPoolMXBean> heapPools = new ArrayList<MemoryPoolMXBean>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                heapPools.add(pool);
+            }
+        }
+        workspace.getUpdater().setProfiling(true);
+        long start = System.nanoTime();
+        iterate(numIterations);
+        elapsed = System.nanoTime() - start;
+        componentTimes = workspace.getUpdater().getComponentTimes();
+        workspace.getUpdater().setProfiling(false);
+        iterations = numIterations;
+        peakHeap = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peakHeap += pool.getPeakUsage().getUsed();
+        }
+    }
+
+    /**
+     * Iterate the workspace and wait for it to finish.
+     *
+     * @param numIterations number of iterations
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private void iterate(final int numIterations) throws InterruptedException {
+        if (numIterations <= 0) {
+            return;
+        }
+        CountDownLatch latch = new CountDownLatch(1);
+        workspace.iterate(latch, numIterations);
+        latch.await();
+    }
+
+    /**
+     * @return iterations per second in the last timed run
+     */
+    public double getStepsPerSecond() {
+        return elapsed == 0 ? 0 : iterations / (elapsed / 1e9);
+    }
+
+    /**
+     * @return duration of the last timed run in nanoseconds
+     */
+    public long getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * @return peak heap use during the last timed run in bytes
+     */
+    public long getPeakHeap() {
+        return peakHeap;
+    }
+
+    /**
+     * @return nanoseconds spent updating each component in the last timed
+     *         run
+     */
+    public Map<WorkspaceComponent, Long> getComponentTimes() {
+        return componentTimes;
+    }
+
+    /**
+     * Print the results of the last timed run.
+     *
+     * @param out where to print them
+     */
+    public void printReport(final PrintStream out) {
+        out.println(String.format("Iterations:  %d", iterations));
+        out.println(String.format("Elapsed:     %.3f s", elapsed / 1e9));
+        out.println(String.format("Steps/sec:   %.1f", getStepsPerSecond()));
+        out.println(String.format("Peak heap:   %.1f MB", peakHeap
+                / MEGABYTE));
+        out.println("Component update time:");
+        for (WorkspaceComponent component : workspace.getComponentList()) {
+            Long time = componentTimes == null ? null : componentTimes
+                    .get(component);
+            long nanos = time == null ? 0 : time;
+            out.println(String.format("  %-24s %10.1f ms %6.1f%%",
+                    component.getName(), nanos / 1e6, elapsed == 0 ? 0
+                            : 100.0 * nanos / elapsed));
+        }
+    }
+
+    /**
+     * Print how to use the runner and exit.
+     */
+    private static void usage() {
+        System.err.println("Usage: HeadlessRunner workspace.zip"
+                + " [-iterations n] [-warmup n] [-threads n]"
+                + " [-set component/key/property=value]... [-save file]"
+                + " [-minrate stepsPerSecond]");
+        System.exit(1);
+    }
+
+    /**
+     * Run a workspace from the command line.
+     *
+     * @param args see the class documentation
+     */
+    public static void main(final String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        if (args.length < 1) {
+            usage();
+        }
+        File file = new File(args[0]);
+        int numIterations = 1000;
+        int warmup = 0;
+        int threads = 0;
+        double minRate = 0;
+        File saveFile = null;
+        List<String> overrides = new ArrayList<String>();
+        try {
+            for (int i = 1; i < args.length; i++) {
+                String arg = args[i];
+                if (i + 1 >= args.length) {
+                    usage();
+                }
+                String value = args[++i];
+                if (arg.equals("-iterations")) {
+                    numIterations = Integer.parseInt(value);
+                } else if (arg.equals("-warmup")) {
+                    warmup = Integer.parseInt(value);
+                } else if (arg.equals("-threads")) {
+                    threads = Integer.parseInt(value);
+                } else if (arg.equals("-set")) {
+                    overrides.add(value);
+                } else if (arg.equals("-save")) {
+                    saveFile = new File(value);
+                } else if (arg.equals("-minrate")) {
+                    minRate = Double.parseDouble(value);
+                } else {
+                    usage();
+                }
+            }
+        } catch (NumberFormatException e) {
+            usage();
+        }
+
+        int status = 0;
+        try {
+            Workspace workspace = open(file);
+            // A headless run goes as fast as it can
+            workspace.setUpdateDelay(0);
+            if (threads > 0) {
+                workspace.getUpdater().setNumThreads(threads);
+            }
+            HeadlessRunner runner = new HeadlessRunner(workspace);
+            for (String override : overrides) {
+                runner.applyOverride(override);
+            }
+            runner.warmUp(warmup);
+            runner.run(numIterations);
+            System.out.println("Workspace:   " + file);
+            runner.printReport(System.out);
+            if (saveFile != null) {
+                WorkspaceSerializer.save(saveFile, workspace);
+            }
+            if (runner.getStepsPerSecond() < minRate) {
+                System.err.println(String.format(
+                        "%.1f steps/sec is below the minimum of %.1f",
+                        runner.getStepsPerSecond(), minRate));
+                status = TOO_SLOW;
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            status = 1;
+        }
+        // The updater's threads would otherwise keep the JVM alive
+        System.exit(status);
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.workspace;
+
+/**
+ * A producer of <code>double[]</code> values which can write into an array
+ * supplied by the coupling, so that a coupling moving a whole vector (e.g. a
+ * neuron group's activations or a table row) each update reuses one array
+ * instead of allocating one. Created by <code>AttributeManager</code> when the
+ * base object has, besides the getter, a method of the same name taking the
+ * array to fill, like <code>double[] getActivations(double[] buffer)</code>.
+ *
+ * @see VectorConsumer
+ * @see Coupling
+ */
+public interface VectorProducer extends Producer<double[]> {
+
+    /**
+     * Write the values for this producer into an array.
+     *
+     * @param buffer the array to write into if it has the right length, or
+     *            null
+     * @return <code>buffer</code>, or a new array if it did not have the right
+     *         length
+     */
+    double[] getValues(double[] buffer);
+
+}
@@ -31,6 +31,7 @@ import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.Lock;
 
 import org.apache.log4j.Logger;
 import org.simbrain.util.SimbrainPreferences;
@@ -580,7 +581,8 @@ public class Workspace {
 
     /**
      * Recursively synchronizes on the components in the provided iterator and
-     * executes the provided task if there are no more components.
+     * executes the provided task if there are no more components. A
+     * {@link Lock} is locked rather than synchronized on.
      *
      * @param <E> The return type of task.
      * @param iterator The iterator of the remaining components to synchronize
@@ -592,7 +594,17 @@ public class Workspace {
     public static <E> E syncRest(final Iterator<? extends Object> iterator,
             final Callable<E> task) throws Exception {
         if (iterator.hasNext()) {
-            synchronized (iterator.next()) {
+            Object next = iterator.next();
+            if (next instanceof Lock) {
+                Lock lock = (Lock) next;
+                lock.lock();
+                try {
+                    return syncRest(iterator, task);
+                } finally {
+                    lock.unlock();
+                }
+            }
+            synchronized (next) {
                 return syncRest(iterator, task);
             }
         } else {
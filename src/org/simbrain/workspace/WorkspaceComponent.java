@@ -25,6 +25,8 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.log4j.Logger;
 import org.simbrain.workspace.gui.ComponentPanel;
@@ -90,6 +92,9 @@ public abstract class WorkspaceComponent {
      */
     private int serializePriority = 0;
 
+    /** Held while this component is updated or its couplings are updated. */
+    private final Lock updateLock = new ReentrantLock();
+
     /**
      * Initializer
      */
@@ -280,18 +285,19 @@ public abstract class WorkspaceComponent {
         };
 
         return Collections.singleton(new ComponentUpdatePart(this, callable,
-                toString(), this));
+                toString(), updateLock));
     }
 
     /**
      * Returns the locks for the update parts. There should be one lock per
      * part. These locks need to be the same ones used to lock the update of
-     * each part.
+     * each part. Locks that are {@link Lock}s are locked, and other objects
+     * are synchronized on.
      *
      * @return The locks for the update parts.
      */
     public Collection<? extends Object> getLocks() {
-        return Collections.singleton(this);
+        return Collections.singleton(updateLock);
     }
 
     /**
@@ -86,6 +86,8 @@ public class WorkspaceSerializer {
                 zipStream);
         ArchiveContents archive = new ArchiveContents(workspace, serializer);
 
+        // Don't save components in the middle of a pipelined step
+        workspace.getUpdater().finishUpdate();
         workspace.preSerializationInit();
 
         // Serialize components
@@ -131,8 +133,10 @@ public class WorkspaceSerializer {
             zipStream.putNextEntry(entry);
             serializer.serializeComponent(component);
 
-            GuiComponent<?> desktopComponent = SimbrainDesktop.getDesktop(
-                    workspace).getDesktopComponent(component);
+            GuiComponent<?> desktopComponent = null;
+            if (desktop != null) {
+                desktopComponent = desktop.getDesktopComponent(component);
+            }
 
             /*
              * If there is a desktop component associated with the component
@@ -220,7 +224,8 @@ public class WorkspaceSerializer {
                 // created
                 workspace.addWorkspaceComponent(wc);
 
-                if (archivedComponent.getDesktopComponent() != null) {
+                if (archivedComponent.getDesktopComponent() != null
+                        && desktop != null) {
                     Rectangle bounds = (Rectangle) new XStream(new DomDriver())
                             .fromXML(new ByteArrayInputStream(entries
                                     .get(archivedComponent
@@ -39,6 +39,8 @@ import org.simbrain.util.StandardDialog;
 import org.simbrain.workspace.Workspace;
 import org.simbrain.workspace.WorkspaceComponent;
 import org.simbrain.workspace.updater.ComponentUpdateListener;
+import org.simbrain.workspace.updater.ExecutorStrategy;
+import org.simbrain.workspace.updater.StandardExecutorStrategy;
 import org.simbrain.workspace.updater.WorkspaceUpdaterListener;
 
 /**
@@ -76,6 +78,10 @@ public class ThreadViewerPanel extends JPanel {
     /** Number of update threads. */
     private JTextField updaterNumThreads = new JTextField();
 
+    /** How component updates are run. */
+    private JComboBox executorComboBox = new JComboBox(
+            StandardExecutorStrategy.values());
+
     /**
      * Constructor for viewer panel.
      *
@@ -127,6 +133,18 @@ public class ThreadViewerPanel extends JPanel {
         });
         topStatsPanel.add(setThreadsButton);
         topStatsPanel.addSeparator();
+        topStatsPanel.add(new JLabel("Executor: "));
+        executorComboBox.setSelectedItem(workspace.getUpdater()
+                .getExecutorStrategy());
+        executorComboBox.setMaximumSize(new Dimension(150, 100));
+        executorComboBox.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent arg0) {
+                workspace.getUpdater().setExecutorStrategy(
+                        (ExecutorStrategy) executorComboBox.getSelectedItem());
+            }
+        });
+        topStatsPanel.add(executorComboBox);
+        topStatsPanel.addSeparator();
         topStatsPanel.add(new JLabel("Number of Processors: "
                 + Runtime.getRuntime().availableProcessors()));
         updateStats();
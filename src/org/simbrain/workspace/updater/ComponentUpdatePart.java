@@ -1,5 +1,8 @@
 package org.simbrain.workspace.updater;
 
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
 import org.simbrain.workspace.WorkspaceComponent;
 
 /**
@@ -22,8 +25,12 @@ public class ComponentUpdatePart {
     /** The description of the part. */
     private final String description;
 
-    /** The lock for synchronization. */
-    private final Object lock;
+    /**
+     * The lock for synchronization. A lock rather than a monitor, since a
+     * virtual thread cannot give up its carrier thread while it holds a
+     * monitor.
+     */
+    private final Lock lock;
 
     /**
      * Creates a new instance with the given parent, runnable, description and
@@ -35,7 +42,7 @@ public class ComponentUpdatePart {
      * @param lock The lock to use.
      */
     public ComponentUpdatePart(final WorkspaceComponent parent,
-            final Runnable runnable, final String description, final Object lock) {
+            final Runnable runnable, final String description, final Lock lock) {
         this.parent = parent;
         this.runnable = runnable;
         this.description = description;
@@ -43,8 +50,8 @@ public class ComponentUpdatePart {
     }
 
     /**
-     * Creates a new instance with the given parent, runnable, description using
-     * this object as the lock.
+     * Creates a new instance with the given parent, runnable, description and
+     * its own lock.
      *
      * @param parent The parent component.
      * @param runnable The task to execute.
@@ -55,7 +62,7 @@ public class ComponentUpdatePart {
         this.parent = parent;
         this.runnable = runnable;
         this.description = description;
-        this.lock = this;
+        this.lock = new ReentrantLock();
     }
 
     /**
@@ -72,7 +79,7 @@ public class ComponentUpdatePart {
      *
      * @return the lock for this object.
      */
-    Object getLock() {
+    Lock getLock() {
         return lock;
     }
 
@@ -86,25 +93,34 @@ public class ComponentUpdatePart {
     }
 
     /**
-     * Get's a runnable that counts down the latch after completion.
+     * Get's a runnable that counts down the latch after completion, whether
+     * or not the update succeeded.
      *
+     * @param updater the updater to notify, and to record the time with
      * @param signal the latch to count down on.
      * @return The runnable to execute.
      */
-    Runnable getUpdate(final CompletionSignal signal) {
+    Runnable getUpdate(final WorkspaceUpdater updater,
+            final CompletionSignal signal) {
         return new Runnable() {
             public void run() {
-                synchronized (lock) {
-                    UpdateThread thread = (UpdateThread) Thread.currentThread();
-
-                    thread.setCurrentTask(ComponentUpdatePart.this);
+                int thread = updater.getThreadNumber();
+                lock.lock();
+                long start = System.nanoTime();
+                try {
+                    updater.notifyComponentUpdateStarted(parent, thread);
 
                     WorkspaceUpdater.LOGGER.trace("updating component part: "
                             + getDescription());
 
                     runnable.run();
-
-                    thread.clearCurrentTask(ComponentUpdatePart.this);
+                } finally {
+                    // Signal even if the update failed, or whoever waits on
+                    // the signal waits forever
+                    updater.addComponentTime(parent, System.nanoTime()
+                            - start);
+                    updater.notifyComponentUpdateFinished(parent, thread);
+                    lock.unlock();
                     signal.done();
                 }
             }
@@ -0,0 +1,49 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.workspace.updater;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Makes the executor that runs component updates (and, when there is more
+ * than one thread, coupling updates). The strategy can be changed while the
+ * workspace runs: work already submitted finishes on the old executor, and
+ * new work goes to the new one.
+ *
+ * @see StandardExecutorStrategy
+ * @see WorkspaceUpdater#setExecutorStrategy(ExecutorStrategy)
+ */
+public interface ExecutorStrategy {
+
+    /**
+     * Make an executor.
+     *
+     * @param numThreads the number of threads the updater is set to use
+     * @param threadFactory makes numbered update threads, for executors that
+     *            use their own threads
+     * @return the executor
+     */
+    ExecutorService createExecutor(int numThreads, ThreadFactory threadFactory);
+
+    /**
+     * @return a short description, for display
+     */
+    String getDescription();
+}
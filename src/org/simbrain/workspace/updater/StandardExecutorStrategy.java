@@ -0,0 +1,132 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.workspace.updater;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.log4j.Logger;
+
+/**
+ * The executor strategies that come with the workspace updater.
+ */
+public enum StandardExecutorStrategy implements ExecutorStrategy {
+
+    /**
+     * A fixed pool with the configured number of threads. Suits components
+     * that keep the processors busy.
+     */
+    FIXED_POOL("Fixed thread pool") {
+        @Override
+        public ExecutorService createExecutor(final int numThreads,
+                final ThreadFactory threadFactory) {
+            return Executors.newFixedThreadPool(numThreads, threadFactory);
+        }
+    },
+
+    /**
+     * A work-stealing pool with the configured number of threads. Idle
+     * threads take queued work from busy ones, which suits many small
+     * components of uneven cost.
+     */
+    WORK_STEALING("Work-stealing pool") {
+        @Override
+        public ExecutorService createExecutor(final int numThreads,
+                final ThreadFactory threadFactory) {
+            // Async mode runs submitted tasks in the order submitted
+            return new ForkJoinPool(numThreads,
+                    ForkJoinPool.defaultForkJoinWorkerThreadFactory, null,
+                    true);
+        }
+    },
+
+    /**
+     * A new thread for every task, so that components that block (on I/O,
+     * for example) do not hold up others. Virtual threads are used when the
+     * Java runtime has them (Java 21 or later), and otherwise cached platform
+     * threads. The configured number of threads only numbers the threads
+     * for display.
+     */
+    THREAD_PER_TASK("Thread per task") {
+        @Override
+        public ExecutorService createExecutor(final int numThreads,
+                final ThreadFactory threadFactory) {
+            if (VIRTUAL_EXECUTOR != null) {
+                try {
+                    return (ExecutorService) VIRTUAL_EXECUTOR.invoke(null);
+                } catch (Exception e) {
+                    LOGGER.warn("Could not create virtual threads", e);
+                }
+            }
+            return Executors.newCachedThreadPool(threadFactory);
+        }
+    };
+
+    /** The static logger for the class. */
+    static final Logger LOGGER = Logger
+            .getLogger(StandardExecutorStrategy.class);
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor, or null if the runtime does
+     * not have virtual threads. Found by reflection, since the code is built
+     * for older runtimes.
+     */
+    private static final Method VIRTUAL_EXECUTOR = findVirtualExecutor();
+
+    /** Description, for display. */
+    private final String description;
+
+    /**
+     * @param description description, for display
+     */
+    private StandardExecutorStrategy(final String description) {
+        this.description = description;
+    }
+
+    /**
+     * @return Executors.newVirtualThreadPerTaskExecutor, or null
+     */
+    private static Method findVirtualExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return whether {@link #THREAD_PER_TASK} uses virtual threads
+     */
+    public static boolean hasVirtualThreads() {
+        return VIRTUAL_EXECUTOR != null;
+    }
+
+    @Override
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
@@ -297,6 +297,10 @@ public class UpdateActionManager {
         // Default updater
         availableActionList.add(new UpdateAllBuffered(workspaceUpdater));
 
+        // Dependency ordered updaters
+        availableActionList.add(new UpdateAllScheduled(workspaceUpdater));
+        availableActionList.add(new UpdateAllScheduled(workspaceUpdater, true));
+
         // Add update actions for all components available
         for (WorkspaceComponent component : workspaceUpdater.getComponents()) {
             availableActionList.add(new UpdateComponent(workspaceUpdater,
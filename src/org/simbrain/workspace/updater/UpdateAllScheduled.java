@@ -0,0 +1,538 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.workspace.updater;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.simbrain.workspace.CouplingManager.CouplingGroup;
+import org.simbrain.workspace.WorkspaceComponent;
+
+/**
+ * Update components in the order given by the couplings between them. Each
+ * component is a node of a graph with an edge from the source to the target of
+ * every coupling. Components that couple to each other in a cycle form one
+ * node, and the nodes are updated in waves: first the components no other
+ * component feeds, then the components fed only by the first wave, and so on.
+ * Before each wave the couplings into it are updated, so that values travel
+ * down a chain of components in one step instead of one step per link.
+ * Components in a wave are updated in parallel. Couplings within a cycle
+ * carry values from the previous step, as in {@link UpdateAllBuffered}.
+ * <p>
+ * In pipelined mode components are not updated in waves. Every coupling
+ * carries values from the previous step, which gives the same results as
+ * {@link UpdateAllBuffered}, but there is no barrier between steps: a
+ * component starts its next step as soon as its own inputs are ready, and
+ * each call returns once the previous step is done, so one step is in flight
+ * while the workspace runs. Workspace listeners and synchronized tasks run
+ * while that step is in flight, so they see the state of the step before.
+ * Each step is finished before returning when the workspace is not running
+ * (for example when stepping it once), and when there are other update
+ * actions, since they would change components that are still being updated.
+ * <p>
+ * In both modes a coupling that fails is logged by its coupling group and
+ * does not stop the step.
+ * <p>
+ * Time spent updating each component is available from
+ * {@link WorkspaceUpdater#getComponentTimes()} when profiling is on.
+ */
+public class UpdateAllScheduled implements UpdateAction {
+
+    /** The static logger for the class. */
+    static final Logger LOGGER = Logger.getLogger(UpdateAllScheduled.class);
+
+    /** Provides access to workspace updater. */
+    private final WorkspaceUpdater updater;
+
+    /** Whether steps are pipelined instead of updated in waves. */
+    private final boolean pipelined;
+
+    /** Coupling groups the schedule was made for. */
+    private List<CouplingGroup> scheduledGroups;
+
+    /** Components the schedule was made for. */
+    private List<WorkspaceComponent> scheduledComponents;
+
+    /** Components of each wave. */
+    private List<List<WorkspaceComponent>> waves;
+
+    /** Coupling groups to update before each wave. */
+    private List<List<CouplingGroup>> waveGroups;
+
+    /** Update of each component in the last pipelined step. */
+    private Map<WorkspaceComponent, Task> lastUpdates;
+
+    /** Counts down as the tasks of the last pipelined step finish. */
+    private volatile CountDownLatch lastStep;
+
+    /**
+     * @param controls update controls
+     */
+    public UpdateAllScheduled(final WorkspaceUpdater controls) {
+        this(controls, false);
+    }
+
+    /**
+     * @param controls update controls
+     * @param pipelined whether to pipeline steps instead of updating in waves
+     */
+    public UpdateAllScheduled(final WorkspaceUpdater controls,
+            final boolean pipelined) {
+        this.updater = controls;
+        this.pipelined = pipelined;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void invoke() {
+        List<? extends WorkspaceComponent> components = updater.getComponents();
+        if (components.isEmpty()) {
+            return;
+        }
+        List<CouplingGroup> groups = updater.getWorkspace()
+                .getCouplingManager().getCouplingGroups();
+        if (groups != scheduledGroups
+                || !components.equals(scheduledComponents)) {
+            // Let the step in flight finish with the old schedule
+            awaitLastStep();
+            lastUpdates = null;
+            schedule(components, groups);
+        }
+        if (pipelined) {
+            invokePipelined();
+        } else {
+            invokeWaves();
+        }
+    }
+
+    /**
+     * Update each wave after the couplings into it. Every coupling into a wave
+     * is read before any is written, so a coupling within a cycle never reads
+     * a value written in the same step.
+     */
+    private void invokeWaves() {
+        for (int w = 0; w < waves.size(); w++) {
+            List<CouplingGroup> groups = waveGroups.get(w);
+            for (CouplingGroup group : groups) {
+                group.read();
+            }
+            for (CouplingGroup group : groups) {
+                group.write();
+            }
+            List<WorkspaceComponent> wave = waves.get(w);
+            LatchCompletionSignal latch = new LatchCompletionSignal(
+                    wave.size());
+            for (WorkspaceComponent component : wave) {
+                updater.updateComponent(component, latch);
+            }
+            latch.await();
+        }
+        updater.notifyCouplingsUpdated();
+        LOGGER.trace("update complete");
+    }
+
+    /**
+     * Start a step, then wait for the previous one.
+     */
+    private void invokePipelined() {
+        Map<WorkspaceComponent, Task> previous = lastUpdates;
+        Map<WorkspaceComponent, Task> updates = new HashMap<WorkspaceComponent, Task>();
+        List<Task> tasks = new ArrayList<Task>();
+        Map<WorkspaceComponent, List<CouplingGroup>> incoming = new HashMap<WorkspaceComponent, List<CouplingGroup>>();
+        Map<WorkspaceComponent, List<Task>> reads = new HashMap<WorkspaceComponent, List<Task>>();
+
+        // A read must follow the previous updates of both ends: the source has
+        // produced its values, and the target has taken the last ones
+        for (final CouplingGroup group : scheduledGroups) {
+            Task read = new Task() {
+                @Override
+                void execute() {
+                    group.read();
+                    finish();
+                }
+            };
+            if (previous != null) {
+                read.dependOn(previous.get(group.getSource()));
+                read.dependOn(previous.get(group.getTarget()));
+            }
+            tasks.add(read);
+            listFor(incoming, group.getTarget()).add(group);
+            listFor(reads, group.getTarget()).add(read);
+            listFor(reads, group.getSource()).add(read);
+        }
+
+        // An update follows the component's previous update and every read
+        // of its inputs and outputs for this step
+        for (final WorkspaceComponent component : scheduledComponents) {
+            final List<CouplingGroup> inputs = listFor(incoming, component);
+            Task update = new Task() {
+                @Override
+                void execute() {
+                    for (CouplingGroup group : inputs) {
+                        group.write();
+                    }
+                    updater.updateComponent(component, new CompletionSignal() {
+                        public void done() {
+                            finish();
+                        }
+                    });
+                }
+            };
+            if (previous != null) {
+                update.dependOn(previous.get(component));
+            }
+            for (Task read : listFor(reads, component)) {
+                update.dependOn(read);
+            }
+            tasks.add(update);
+            updates.put(component, update);
+        }
+
+        CountDownLatch step = new CountDownLatch(tasks.size());
+        for (Task task : tasks) {
+            task.step = step;
+        }
+        for (Task task : tasks) {
+            task.release();
+        }
+        awaitLastStep();
+        lastUpdates = updates;
+        lastStep = step;
+        if (!updater.isRunning() || !isOnlyAction()) {
+            awaitLastStep();
+        }
+        updater.notifyCouplingsUpdated();
+    }
+
+    /**
+     * @return whether this is the workspace's only update action
+     */
+    private boolean isOnlyAction() {
+        List<UpdateAction> actions = updater.getUpdateManager()
+                .getActionList();
+        return actions.size() == 1 && actions.get(0) == this;
+    }
+
+    /**
+     * Wait for the pipelined step in flight, if any, to finish. Called when
+     * the workspace stops running and before it is saved, so that no
+     * component is still being updated.
+     */
+    public void finish() {
+        awaitLastStep();
+    }
+
+    /**
+     * Wait for the tasks of the last pipelined step to finish.
+     */
+    private void awaitLastStep() {
+        CountDownLatch step = lastStep;
+        if (step == null) {
+            return;
+        }
+        try {
+            step.await();
+            lastStep = null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @param map lists by component
+     * @param component the component
+     * @param <T> type of the list items
+     * @return the component's list, added if missing
+     */
+    private static <T> List<T> listFor(
+            final Map<WorkspaceComponent, List<T>> map,
+            final WorkspaceComponent component) {
+        List<T> list = map.get(component);
+        if (list == null) {
+            list = new ArrayList<T>();
+            map.put(component, list);
+        }
+        return list;
+    }
+
+    /**
+     * Find the waves. Cycles are found with Tarjan's algorithm, and each is
+     * placed in the wave after the last wave that feeds it.
+     *
+     * @param components the components
+     * @param groups the coupling groups
+     */
+    private void schedule(final List<? extends WorkspaceComponent> components,
+            final List<CouplingGroup> groups) {
+        int n = components.size();
+        Map<WorkspaceComponent, Integer> index = new IdentityHashMap<WorkspaceComponent, Integer>();
+        for (int i = 0; i < n; i++) {
+            index.put(components.get(i), i);
+        }
+        List<List<Integer>> edges = new ArrayList<List<Integer>>();
+        for (int i = 0; i < n; i++) {
+            edges.add(new ArrayList<Integer>());
+        }
+        for (CouplingGroup group : groups) {
+            Integer source = index.get(group.getSource());
+            Integer target = index.get(group.getTarget());
+            if (source != null && target != null
+                    && source.intValue() != target.intValue()) {
+                edges.get(source).add(target);
+            }
+        }
+
+        // Tarjan finds cycles in reverse topological order
+        Tarjan tarjan = new Tarjan(edges);
+        int numCycles = tarjan.count;
+        int[] level = new int[numCycles];
+        int numWaves = 0;
+        for (int c = numCycles - 1; c >= 0; c--) {
+            numWaves = Math.max(numWaves, level[c] + 1);
+            for (int i = 0; i < n; i++) {
+                if (tarjan.cycle[i] != c) {
+                    continue;
+                }
+                for (int j : edges.get(i)) {
+                    int d = tarjan.cycle[j];
+                    if (d != c) {
+                        level[d] = Math.max(level[d], level[c] + 1);
+                    }
+                }
+            }
+        }
+
+        waves = new ArrayList<List<WorkspaceComponent>>();
+        waveGroups = new ArrayList<List<CouplingGroup>>();
+        for (int w = 0; w < numWaves; w++) {
+            waves.add(new ArrayList<WorkspaceComponent>());
+            waveGroups.add(new ArrayList<CouplingGroup>());
+        }
+        for (int i = 0; i < n; i++) {
+            waves.get(level[tarjan.cycle[i]]).add(components.get(i));
+        }
+        for (CouplingGroup group : groups) {
+            Integer target = index.get(group.getTarget());
+            if (target != null) {
+                waveGroups.get(level[tarjan.cycle[target]]).add(group);
+            }
+        }
+        scheduledGroups = groups;
+        scheduledComponents = Collections
+                .unmodifiableList(new ArrayList<WorkspaceComponent>(components));
+        LOGGER.debug("scheduled " + n + " components in " + numWaves
+                + " waves");
+    }
+
+    /**
+     * Tarjan's strongly connected components algorithm, numbering the
+     * components (cycles) in reverse topological order.
+     */
+    private static class Tarjan {
+
+        /** Edges from each node. */
+        private final List<List<Integer>> edges;
+
+        /** Cycle of each node. */
+        private final int[] cycle;
+
+        /** Order in which each node was visited, or -1. */
+        private final int[] order;
+
+        /** Smallest order reachable from each node. */
+        private final int[] low;
+
+        /** Nodes visited but not yet assigned to a cycle. */
+        private final int[] stack;
+
+        /** Size of the stack. */
+        private int top;
+
+        /** Number of nodes visited. */
+        private int visited;
+
+        /** Number of cycles. */
+        private int count;
+
+        /**
+         * @param edges edges from each node
+         */
+        Tarjan(final List<List<Integer>> edges) {
+            this.edges = edges;
+            int n = edges.size();
+            cycle = new int[n];
+            order = new int[n];
+            low = new int[n];
+            stack = new int[n];
+            Arrays.fill(order, -1);
+            Arrays.fill(cycle, -1);
+            for (int i = 0; i < n; i++) {
+                if (order[i] < 0) {
+                    visit(i);
+                }
+            }
+        }
+
+        /**
+         * @param i node to visit
+         */
+        private void visit(final int i) {
+            order[i] = visited;
+            low[i] = visited;
+            visited++;
+            stack[top++] = i;
+            for (int j : edges.get(i)) {
+                if (order[j] < 0) {
+                    visit(j);
+                    low[i] = Math.min(low[i], low[j]);
+                } else if (cycle[j] < 0) {
+                    low[i] = Math.min(low[i], order[j]);
+                }
+            }
+            if (low[i] == order[i]) {
+                int j;
+                do {
+                    j = stack[--top];
+                    cycle[j] = count;
+                } while (j != i);
+                count++;
+            }
+        }
+    }
+
+    /**
+     * Part of a pipelined step, run on the component update threads once the
+     * tasks it depends on have finished.
+     */
+    private abstract class Task implements Runnable {
+
+        /**
+         * Number of unfinished tasks this task depends on, plus one until the
+         * step is scheduled.
+         */
+        private final AtomicInteger pending = new AtomicInteger(1);
+
+        /** Tasks that depend on this one. */
+        private final List<Task> dependents = new ArrayList<Task>();
+
+        /** Whether this task has finished. */
+        private boolean finished;
+
+        /** Counts down as the step's tasks finish. */
+        private CountDownLatch step;
+
+        /**
+         * Run this task after another.
+         *
+         * @param other the task to follow, or null for none
+         */
+        void dependOn(final Task other) {
+            if (other == null) {
+                return;
+            }
+            synchronized (other) {
+                if (!other.finished) {
+                    pending.incrementAndGet();
+                    other.dependents.add(this);
+                }
+            }
+        }
+
+        /**
+         * Count down the unfinished dependencies, and start this task after
+         * the last one.
+         */
+        void release() {
+            if (pending.decrementAndGet() == 0) {
+                updater.submitTask(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                execute();
+            } catch (RuntimeException e) {
+                LOGGER.error("Error in pipelined update.", e);
+                finish();
+            }
+        }
+
+        /**
+         * Do the work, calling {@link #finish()} when it is done.
+         */
+        abstract void execute();
+
+        /**
+         * Mark this task finished and release the tasks that depend on it.
+         */
+        void finish() {
+            List<Task> released;
+            synchronized (this) {
+                if (finished) {
+                    return;
+                }
+                finished = true;
+                released = new ArrayList<Task>(dependents);
+                dependents.clear();
+            }
+            step.countDown();
+            for (Task task : released) {
+                task.release();
+            }
+        }
+    }
+
+    /**
+     * @return whether steps are pipelined instead of updated in waves
+     */
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    @Override
+    public String getDescription() {
+        if (pipelined) {
+            return "Pipelined update of components in dependency order.";
+        }
+        return "Scheduled update of components in dependency order.";
+    }
+
+    @Override
+    public String getLongDescription() {
+        if (pipelined) {
+            return "Pipelined update of components, each starting its next "
+                    + "step when its coupled inputs are ready, with the "
+                    + "results of buffered update.";
+        }
+        return "Update of components in waves, each after the components "
+                + "coupled into it, so values pass along a chain of "
+                + "components in one step.";
+    }
+
+}
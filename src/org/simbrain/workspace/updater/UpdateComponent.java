@@ -51,7 +51,13 @@ public class UpdateComponent implements UpdateAction {
 //        LatchCompletionSignal latch = new LatchCompletionSignal(1);
 //        updater.updateComponent(component, latch);
 //        latch.await();
-    	component.update();
+        if (updater.isProfiling()) {
+            long start = System.nanoTime();
+            component.update();
+            updater.addComponentTime(component, System.nanoTime() - start);
+        } else {
+            component.update();
+        }
     }
 
     /**
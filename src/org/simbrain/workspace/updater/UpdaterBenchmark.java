@@ -0,0 +1,316 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.workspace.updater;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.simbrain.workspace.Workspace;
+import org.simbrain.workspace.WorkspaceComponent;
+
+/**
+ * <b>UpdaterBenchmark</b> measures workspace steps per second under each
+ * {@link StandardExecutorStrategy}, for workspaces of small components that
+ * compute, that block (as components doing I/O do), or a mix of both. Each
+ * benchmark is a new workspace updated with the default buffered update. Like
+ * NetworkBenchmark it is warmed up for a fixed time and then measured over
+ * several fixed-time iterations, reporting the mean and standard deviation of
+ * steps per second. Run with no arguments for the default suite, or e.g.
+ *
+ * <pre>
+ * UpdaterBenchmark -strategies FIXED_POOL,THREAD_PER_TASK -workloads mixed
+ *     -threads 4 -compute 32 -blocking 16 -work 20000 -sleep 1
+ *     -warmup 1 -iterations 3 -time 1 -csv results.csv
+ * </pre>
+ */
+public class UpdaterBenchmark {
+
+    /** The workloads that can be benchmarked. */
+    private static final List<String> WORKLOADS = Arrays.asList("compute",
+            "blocking", "mixed");
+
+    /** Header of the CSV output. */
+    private static final String CSV_HEADER = "strategy,workload,threads,"
+            + "compute,blocking,stepsPerSec,stdDev";
+
+    /** Strategies to benchmark. */
+    private List<StandardExecutorStrategy> strategies = Arrays
+            .asList(StandardExecutorStrategy.values());
+
+    /** Workloads to benchmark. */
+    private List<String> workloads = WORKLOADS;
+
+    /** Number of update threads. */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /** Number of computing components. */
+    private int compute = 32;
+
+    /** Number of blocking components. */
+    private int blocking = 16;
+
+    /** Arithmetic steps per update of a computing component. */
+    private int work = 20000;
+
+    /** Milliseconds per update of a blocking component. */
+    private long sleep = 1;
+
+    /** Warm-up time in seconds. */
+    private double warmup = 1;
+
+    /** Number of measurement iterations. */
+    private int iterations = 3;
+
+    /** Length of each measurement iteration in seconds. */
+    private double iterationTime = 1;
+
+    /**
+     * A component that computes, or blocks, for a fixed time each update.
+     */
+    private static class BenchmarkComponent extends WorkspaceComponent {
+
+        /** Arithmetic steps per update, or 0 to block instead. */
+        private final int work;
+
+        /** Milliseconds to block per update. */
+        private final long sleep;
+
+        /** Result of the arithmetic, kept so it is not optimized away. */
+        private volatile double sink;
+
+        /**
+         * @param name name of the component
+         * @param work arithmetic steps per update, or 0 to block instead
+         * @param sleep milliseconds to block per update
+         */
+        BenchmarkComponent(final String name, final int work,
+                final long sleep) {
+            super(name);
+            this.work = work;
+            this.sleep = sleep;
+        }
+
+        @Override
+        public void update() {
+            if (work > 0) {
+                double x = sink;
+                for (int i = 0; i < work; i++) {
+                    x = x * 0.999999 + 1e-6;
+                }
+                sink = x;
+            } else {
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public void save(final OutputStream output, final String format) {
+            // Not saved
+        }
+
+        @Override
+        protected void closing() {
+            // Nothing to release
+        }
+    }
+
+    /**
+     * Run every combination of the configured strategies and workloads,
+     * printing each result as it completes.
+     *
+     * @return the results as CSV lines
+     */
+    public List<String> runAll() {
+        List<String> results = new ArrayList<String>();
+        System.out.println(String.format("%-16s %-9s %7s %7s %8s %12s %10s",
+                "Strategy", "Workload", "Threads", "Compute", "Blocking",
+                "Steps/s", "StdDev"));
+        for (String workload : workloads) {
+            for (StandardExecutorStrategy strategy : strategies) {
+                int numCompute = workload.equals("blocking") ? 0 : compute;
+                int numBlocking = workload.equals("compute") ? 0 : blocking;
+                double[] rates = run(strategy, numCompute, numBlocking);
+                System.out.println(String.format(
+                        "%-16s %-9s %7d %7d %8d %12.1f %10.1f", strategy
+                                .name(), workload, threads, numCompute,
+                        numBlocking, rates[0], rates[1]));
+                results.add(strategy.name() + "," + workload + "," + threads
+                        + "," + numCompute + "," + numBlocking + ","
+                        + rates[0] + "," + rates[1]);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Build and measure one benchmark.
+     *
+     * @param strategy the executor strategy
+     * @param numCompute number of computing components
+     * @param numBlocking number of blocking components
+     * @return mean and standard deviation of steps per second
+     */
+    public double[] run(final StandardExecutorStrategy strategy,
+            final int numCompute, final int numBlocking) {
+        Workspace workspace = new Workspace();
+        WorkspaceUpdater updater = workspace.getUpdater();
+        updater.setNumThreads(threads);
+        updater.setExecutorStrategy(strategy);
+        for (int i = 0; i < numCompute; i++) {
+            workspace.addWorkspaceComponent(new BenchmarkComponent("Compute "
+                    + i, work, 0));
+        }
+        for (int i = 0; i < numBlocking; i++) {
+            workspace.addWorkspaceComponent(new BenchmarkComponent("Blocking "
+                    + i, 0, sleep));
+        }
+
+        long end = System.nanoTime() + (long) (warmup * 1e9);
+        while (System.nanoTime() < end) {
+            step(updater);
+        }
+
+        double[] rates = new double[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            end = start + (long) (iterationTime * 1e9);
+            long steps = 0;
+            long now;
+            do {
+                step(updater);
+                steps++;
+                now = System.nanoTime();
+            } while (now < end);
+            rates[i] = steps / ((now - start) / 1e9);
+        }
+        // Let the threads of the strategy go
+        updater.setExecutorStrategy(StandardExecutorStrategy.FIXED_POOL);
+        updater.setNumThreads(1);
+
+        double mean = 0;
+        for (double r : rates) {
+            mean += r;
+        }
+        mean /= rates.length;
+        double var = 0;
+        for (double r : rates) {
+            var += (r - mean) * (r - mean);
+        }
+        double stdDev = rates.length > 1 ? Math.sqrt(var / (rates.length - 1))
+                : 0;
+        return new double[] {mean, stdDev};
+    }
+
+    /**
+     * Update the workspace once and wait for the update to finish.
+     *
+     * @param updater the updater
+     */
+    private static void step(final WorkspaceUpdater updater) {
+        CountDownLatch latch = new CountDownLatch(1);
+        updater.runOnce(latch);
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Run the benchmarks given on the command line. See the class
+     * documentation.
+     *
+     * @param args the command line arguments
+     * @throws IOException if the CSV file cannot be written
+     */
+    public static void main(final String[] args) throws IOException {
+        UpdaterBenchmark benchmark = new UpdaterBenchmark();
+        File csv = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String arg = args[i];
+            String value = args[i + 1];
+            if (arg.equals("-strategies")) {
+                benchmark.strategies = new ArrayList<StandardExecutorStrategy>();
+                for (String name : value.split(",")) {
+                    benchmark.strategies.add(StandardExecutorStrategy
+                            .valueOf(name));
+                }
+            } else if (arg.equals("-workloads")) {
+                benchmark.workloads = Arrays.asList(value.split(","));
+                for (String name : benchmark.workloads) {
+                    if (!WORKLOADS.contains(name)) {
+                        throw new IllegalArgumentException(name
+                                + " is not one of " + WORKLOADS);
+                    }
+                }
+            } else if (arg.equals("-threads")) {
+                benchmark.threads = Integer.parseInt(value);
+            } else if (arg.equals("-compute")) {
+                benchmark.compute = Integer.parseInt(value);
+            } else if (arg.equals("-blocking")) {
+                benchmark.blocking = Integer.parseInt(value);
+            } else if (arg.equals("-work")) {
+                benchmark.work = Integer.parseInt(value);
+            } else if (arg.equals("-sleep")) {
+                benchmark.sleep = Long.parseLong(value);
+            } else if (arg.equals("-warmup")) {
+                benchmark.warmup = Double.parseDouble(value);
+            } else if (arg.equals("-iterations")) {
+                benchmark.iterations = Integer.parseInt(value);
+            } else if (arg.equals("-time")) {
+                benchmark.iterationTime = Double.parseDouble(value);
+            } else if (arg.equals("-csv")) {
+                csv = new File(value);
+            } else {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        System.out.println(System.getProperty("java.vm.name") + " "
+                + System.getProperty("java.version") + ", "
+                + Runtime.getRuntime().availableProcessors()
+                + " processors, virtual threads "
+                + (StandardExecutorStrategy.hasVirtualThreads() ? "available"
+                        : "not available"));
+        List<String> results = benchmark.runAll();
+        if (csv != null) {
+            PrintWriter writer = new PrintWriter(new FileWriter(csv));
+            try {
+                writer.println(CSV_HEADER);
+                for (String line : results) {
+                    writer.println(line);
+                }
+            } finally {
+                writer.close();
+            }
+        }
+        // The workspaces keep their update threads
+        System.exit(0);
+    }
+}
@@ -20,12 +20,20 @@ package org.simbrain.workspace.updater;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.log4j.Logger;
 import org.simbrain.workspace.Workspace;
@@ -42,9 +50,10 @@ import org.simbrain.workspace.WorkspaceComponent;
  * when they have all finished updating, couplings are updated. The update
  * action manager can also be used to customize update. Three executor services
  * are here, one for workspace updates (a single thread), one for event
- * notification updates (a single thread), and one for component updates (a
- * thread pool with multiple threads that can be configured), for cases when
- * component updating happens concurrently.
+ * notification updates (a single thread), and one for component updates (by
+ * default a thread pool with multiple threads that can be configured; see
+ * {@link ExecutorStrategy}), for cases when component updating happens
+ * concurrently.
  *
  * @author Matt Watson
  * @author Jeff Yoshimi
@@ -61,7 +70,16 @@ public class WorkspaceUpdater {
     private final ExecutorService workspaceUpdates;
 
     /** The executor service for doing the component updates. */
-    private ExecutorService componentUpdates;
+    private volatile ExecutorService componentUpdates;
+
+    /** Makes the executor service for component updates. */
+    private volatile ExecutorStrategy executorStrategy = StandardExecutorStrategy.FIXED_POOL;
+
+    /**
+     * Held (read) while couplings are updated on the component update
+     * executor, so it is not shut down until the update is done.
+     */
+    private final ReadWriteLock executorLock = new ReentrantReadWriteLock();
 
     /** The executor service for notifying listeners. */
     private final ExecutorService notificationEvents;
@@ -87,6 +105,12 @@ public class WorkspaceUpdater {
     /** The update Manager. */
     private UpdateActionManager updateActionManager;
 
+    /**
+     * Nanoseconds spent updating each component since profiling was turned
+     * on, or null if profiling is off.
+     */
+    private volatile ConcurrentHashMap<WorkspaceComponent, AtomicLong> componentTimes;
+
     /**
      * Constructor for the updater that uses the provided controller and
      * threads.
@@ -104,7 +128,7 @@ public class WorkspaceUpdater {
 
         // In some cases components can be updated in parallel. So
         // a thread pool with a configurable number of threads is used
-        componentUpdates = Executors.newFixedThreadPool(threads,
+        componentUpdates = executorStrategy.createExecutor(threads,
                 new UpdaterThreadFactory());
 
         // A single thread to fire notification events
@@ -164,6 +188,70 @@ public class WorkspaceUpdater {
         time = 0;
     }
 
+    /**
+     * Turns the timing of component updates on or off. Turning it on resets
+     * the times collected so far.
+     *
+     * @param profiling whether to time component updates
+     */
+    public void setProfiling(final boolean profiling) {
+        if (profiling) {
+            componentTimes = new ConcurrentHashMap<WorkspaceComponent, AtomicLong>();
+        } else {
+            componentTimes = null;
+        }
+    }
+
+    /**
+     * @return whether component updates are being timed
+     */
+    public boolean isProfiling() {
+        return componentTimes != null;
+    }
+
+    /**
+     * Returns the total time spent updating each component since profiling
+     * was turned on. Components updated in parallel are timed separately, so
+     * the times can add up to more than the elapsed time.
+     *
+     * @return nanoseconds spent updating each component, empty if profiling
+     *         is off
+     */
+    public Map<WorkspaceComponent, Long> getComponentTimes() {
+        Map<WorkspaceComponent, Long> ret = new HashMap<WorkspaceComponent, Long>();
+        Map<WorkspaceComponent, AtomicLong> times = componentTimes;
+        if (times != null) {
+            for (Map.Entry<WorkspaceComponent, AtomicLong> entry : times
+                    .entrySet()) {
+                ret.put(entry.getKey(), entry.getValue().get());
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Add to the time spent updating a component, if profiling is on.
+     *
+     * @param component the component that was updated
+     * @param nanos how long the update took
+     */
+    void addComponentTime(final WorkspaceComponent component,
+            final long nanos) {
+        ConcurrentHashMap<WorkspaceComponent, AtomicLong> times = componentTimes;
+        if (times == null) {
+            return;
+        }
+        AtomicLong total = times.get(component);
+        if (total == null) {
+            total = new AtomicLong();
+            AtomicLong previous = times.putIfAbsent(component, total);
+            if (previous != null) {
+                total = previous;
+            }
+        }
+        total.addAndGet(nanos);
+    }
+
     /**
      * Stops the update thread.
      */
@@ -201,6 +289,7 @@ public class WorkspaceUpdater {
                         e.printStackTrace();
                     }
                 }
+                finishUpdate();
 
                 synchManager.releaseTasks();
                 synchManager.runTasks();
@@ -264,6 +353,18 @@ public class WorkspaceUpdater {
         });
     }
 
+    /**
+     * Waits for update actions that leave work running after a step, like
+     * pipelined updates, to finish it.
+     */
+    public void finishUpdate() {
+        for (UpdateAction action : updateActionManager.getActionList()) {
+            if (action instanceof UpdateAllScheduled) {
+                ((UpdateAllScheduled) action).finish();
+            }
+        }
+    }
+
     /**
      * Executes the main workspace update.
      */
@@ -463,18 +564,92 @@ public class WorkspaceUpdater {
      * @param numThreads number of threads.
      */
     public void setNumThreads(final int numThreads) {
-        if (isRunning()) {
-            stop();
-        }
         this.numThreads = numThreads;
-        this.componentUpdates = Executors.newFixedThreadPool(numThreads,
-                new UpdaterThreadFactory());
+        replaceExecutor();
         for (WorkspaceUpdaterListener listener : updaterListeners) {
             listener.changeNumThreads();
         }
 
     }
 
+    /**
+     * @return the strategy that makes the component update executor
+     */
+    public ExecutorStrategy getExecutorStrategy() {
+        return executorStrategy;
+    }
+
+    /**
+     * Change how component updates are run. This can be done while the
+     * workspace runs: updates already started finish on the old executor.
+     *
+     * @param strategy the strategy that makes the component update executor
+     */
+    public void setExecutorStrategy(final ExecutorStrategy strategy) {
+        if (strategy == null) {
+            throw new IllegalArgumentException("No executor strategy");
+        }
+        this.executorStrategy = strategy;
+        replaceExecutor();
+    }
+
+    /**
+     * Replace the component update executor with a new one from the current
+     * strategy, and shut down the old one once its queued work is done.
+     * Waits for a coupling update running on the old executor to finish.
+     */
+    private synchronized void replaceExecutor() {
+        executorLock.writeLock().lock();
+        try {
+            ExecutorService old = componentUpdates;
+            componentUpdates = executorStrategy.createExecutor(numThreads,
+                    new UpdaterThreadFactory());
+            old.shutdown();
+        } finally {
+            executorLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Submit a task to the component update executor, retrying on the new
+     * executor if the executor was replaced in the meantime.
+     *
+     * @param task the task
+     */
+    private void submit(final Runnable task) {
+        while (true) {
+            ExecutorService executor = componentUpdates;
+            try {
+                executor.submit(task);
+                return;
+            } catch (RejectedExecutionException e) {
+                if (executor == componentUpdates) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of the current update thread, for listeners. Threads
+     * are numbered from 1 to the number of threads; with more threads than
+     * that (a thread per task, for example) numbers are shared.
+     *
+     * @return the thread number
+     */
+    int getThreadNumber() {
+        Thread current = Thread.currentThread();
+        long index;
+        if (current instanceof UpdateThread) {
+            index = ((UpdateThread) current).thread - 1;
+        } else if (current instanceof ForkJoinWorkerThread) {
+            index = ((ForkJoinWorkerThread) current).getPoolIndex();
+        } else {
+            index = current.getId();
+        }
+        return (int) (index % Math.max(1, numThreads)) + 1;
+    }
+
     /**
      * Iterate the updater for a specified number of iterations.
      *
@@ -562,8 +737,7 @@ public class WorkspaceUpdater {
          */
         public Thread newThread(final Runnable runnable) {
             synchronized (this) {
-                return new UpdateThread(WorkspaceUpdater.this, runnable,
-                        nextThread++);
+                return new UpdateThread(runnable, nextThread++);
             }
         }
     }
@@ -626,15 +800,31 @@ public class WorkspaceUpdater {
         };
 
         for (ComponentUpdatePart part : parts) {
-            componentUpdates.submit(part.getUpdate(partsSignal));
+            submit(part.getUpdate(this, partsSignal));
         }
     }
 
     /**
-     * Update couplings.
+     * Run a task on the component update threads.
+     *
+     * @param task the task
+     */
+    void submitTask(final Runnable task) {
+        submit(task);
+    }
+
+    /**
+     * Update couplings. Groups of couplings between different components are
+     * updated in parallel on the component update threads.
      */
     public void updateCouplings() {
-        workspace.getCouplingManager().updateAllCouplings();
+        executorLock.readLock().lock();
+        try {
+            workspace.getCouplingManager().updateAllCouplings(
+                    numThreads > 1 ? componentUpdates : null);
+        } finally {
+            executorLock.readLock().unlock();
+        }
         LOGGER.trace("couplings updated");
         workspace.getUpdater().notifyCouplingsUpdated();
     }
@@ -278,8 +278,8 @@ public final class Sensor {
     /** {@inheritDoc} 
      * @return
      */
-    public Double getValue() {
-        return Double.valueOf(sample);
+    public double getValue() {
+        return sample;
     }
 
 }
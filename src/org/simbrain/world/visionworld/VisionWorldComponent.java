@@ -32,6 +32,9 @@ import org.simbrain.workspace.WorkspaceComponent;
  */
 public final class VisionWorldComponent extends WorkspaceComponent {
 
+    /** Key of the whole sensor matrix, as a coupling base object. */
+    private static final String SENSOR_MATRIX_KEY = "sensorMatrix";
+
     /** Vision world. */
     private final VisionWorld visionWorld;
 
@@ -64,6 +67,8 @@ public final class VisionWorldComponent extends WorkspaceComponent {
         if (getProducerTypes().size() == 0) {
             addProducerType(new AttributeType(this, "Sensor", "getValue",
                     double.class, true));
+            addProducerType(new AttributeType(this, "SensorMatrix",
+                    "getSensorValues", double[].class, false));
         }
         visionWorld.getModel().addModelListener(new VisionWorldModelListener() {
 
@@ -95,13 +100,58 @@ public final class VisionWorldComponent extends WorkspaceComponent {
                         returnList.add(producer);
                     }
                 }
+            } else if (type.getTypeName().equalsIgnoreCase("SensorMatrix")) {
+                PotentialProducer producer = getAttributeManager()
+                        .createPotentialProducer(this, type);
+                producer.setCustomDescription(type
+                        .getDescription(SENSOR_MATRIX_KEY));
+                returnList.add(producer);
             }
         }
         return returnList;
     }
 
+    /**
+     * Return the last sample of every sensor, row by row, so that the whole
+     * sensor matrix can be coupled at once (e.g. to a neuron group) instead
+     * of one coupling per sensor.
+     *
+     * @return the sensor values
+     */
+    public double[] getSensorValues() {
+        return getSensorValues(null);
+    }
+
+    /**
+     * Write the last sample of every sensor, row by row, into an array.
+     *
+     * @param buffer the array to write into if its length is the number of
+     *            sensors, or null
+     * @return buffer, or a new array if it did not have the right length
+     */
+    public double[] getSensorValues(final double[] buffer) {
+        SensorMatrix sensorMatrix = getVisionWorld().getModel()
+                .getSensorMatrix();
+        int rows = sensorMatrix.rows();
+        int columns = sensorMatrix.columns();
+        double[] values = buffer;
+        if ((values == null) || (values.length != rows * columns)) {
+            values = new double[rows * columns];
+        }
+        for (int row = 0, i = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                values[i++] = sensorMatrix.getSensor(row, column)
+                        .getLastSample();
+            }
+        }
+        return values;
+    }
+
     @Override
     public Object getObjectFromKey(String objectKey) {
+        if (SENSOR_MATRIX_KEY.equals(objectKey)) {
+            return this;
+        }
         String[] rowCol = objectKey.split(","); // todo check that string is
                                                 // valid
         int row = Integer.parseInt(rowCol[0]);
@@ -115,6 +165,9 @@ public final class VisionWorldComponent extends WorkspaceComponent {
         if (object instanceof Sensor) {
             return ((Sensor) object).getKey();
         }
+        if (object == this) {
+            return SENSOR_MATRIX_KEY;
+        }
         return null;
     }
 